@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.analytics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.LatencyHistogram;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.MBeanRegistrar;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.RingBuffer;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffers the events published with the publishToAnalytics function and publishes them to the analytics engine in
+ * batches.
+ * Events are kept in a bounded {@link RingBuffer} per tenant and endpoint, and a buffer is published as a single
+ * request carrying a JSON array of its events once it holds a full batch, or when the flush interval elapses. Batches
+ * are published from a background thread, so that publishing an event costs the authentication flow no more than an
+ * offer to the buffer. The number of batches in flight per buffer is bounded, hence when the analytics engine falls
+ * behind, the events pile up in the buffer and the {@link OverflowPolicy} decides which of them are kept.
+ */
+public class AnalyticsEventBatcher implements AnalyticsEventBatcherMBean {
+
+    private static final Log LOG = LogFactory.getLog(AnalyticsEventBatcher.class);
+    private static final String THREAD_NAME = "adaptive-auth-analytics-event-batcher";
+    private static final String MBEAN_TYPE = "EventBatcher";
+    private static final String MBEAN_NAME = "PublishToAnalytics";
+    private static final int MAX_IN_FLIGHT_BATCHES = 4;
+    private static final int FULL_SAMPLE_PERCENTAGE = 100;
+
+    private static final AnalyticsEventBatcher instance = new AnalyticsEventBatcher();
+
+    private final boolean enabled;
+    private final int bufferSize;
+    private final int maxBatchSize;
+    private final long flushInterval;
+    private final OverflowPolicy overflowPolicy;
+    private final ConcurrentMap<String, EventBuffer> buffers = new ConcurrentHashMap<>();
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final LongAdder flushedCount = new LongAdder();
+    private final LongAdder flushedBatchCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder sampledOutCount = new LongAdder();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+    private volatile ScheduledExecutorService scheduler;
+    private volatile boolean running = true;
+
+    /**
+     * Policy applied to an event which is published while its buffer is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Drop the event being published.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Drop the oldest event of the buffer to make room for the event being published.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Flush the buffer on the calling thread to make room for the event being published. The event is dropped
+         * only if the maximum number of batches of the buffer are in flight already.
+         */
+        CALLER_FLUSH
+    }
+
+    /**
+     * Publishes a batch of events to the analytics engine.
+     */
+    @FunctionalInterface
+    public interface BatchSender {
+
+        /**
+         * Publish a batch of events.
+         *
+         * @param tenantDomain Tenant domain the events are published for.
+         * @param epUrl        Path of the analytics engine endpoint receiving the events.
+         * @param payload      JSON array of the events.
+         * @return Future completed with true once the batch is accepted by all the receivers of the analytics engine.
+         */
+        CompletableFuture<Boolean> send(String tenantDomain, String epUrl, String payload);
+    }
+
+    private AnalyticsEventBatcher() {
+
+        this(ConfigProvider.getInstance().isPublishToAnalyticsBatchEnabled(),
+                ConfigProvider.getInstance().getPublishToAnalyticsBatchBufferSize(),
+                ConfigProvider.getInstance().getPublishToAnalyticsBatchMaxSize(),
+                ConfigProvider.getInstance().getPublishToAnalyticsBatchFlushInterval(),
+                resolveOverflowPolicy(ConfigProvider.getInstance().getPublishToAnalyticsBatchOverflowPolicy()));
+    }
+
+    AnalyticsEventBatcher(boolean enabled, int bufferSize, int maxBatchSize, long flushInterval,
+                          OverflowPolicy overflowPolicy) {
+
+        this.enabled = enabled;
+        this.bufferSize = Math.max(bufferSize, 1);
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.flushInterval = Math.max(flushInterval, 1);
+        this.overflowPolicy = overflowPolicy;
+        MBeanRegistrar.register(MBEAN_TYPE, MBEAN_NAME, this);
+    }
+
+    public static AnalyticsEventBatcher getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * @return True if the events are to be published in batches.
+     */
+    public boolean isEnabled() {
+
+        return enabled;
+    }
+
+    /**
+     * Decide whether an event is to be published, according to the sample percentage of its event type.
+     *
+     * @param samplePercentage Percentage of the events of the type to be published.
+     * @return False if the event is sampled out.
+     */
+    public boolean isSampled(int samplePercentage) {
+
+        if (samplePercentage < FULL_SAMPLE_PERCENTAGE &&
+                ThreadLocalRandom.current().nextInt(FULL_SAMPLE_PERCENTAGE) >= samplePercentage) {
+            sampledOutCount.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Add an event to the buffer of the tenant and the endpoint, to be published with the next batch of the buffer.
+     *
+     * @param tenantDomain Tenant domain the event is published for.
+     * @param epUrl        Path of the analytics engine endpoint receiving the event.
+     * @param event        JSON of the event.
+     * @param sender       Publishes the batches of the buffer.
+     * @return False if the event is dropped as the buffer is full.
+     */
+    public boolean add(String tenantDomain, String epUrl, String event, BatchSender sender) {
+
+        if (scheduler == null) {
+            startFlusher();
+        }
+        EventBuffer buffer = buffers.computeIfAbsent(tenantDomain + ":" + epUrl,
+                key -> new EventBuffer(tenantDomain, epUrl, sender));
+        if (!running || (!buffer.events.offer(event) && !handleOverflow(buffer, event))) {
+            droppedCount.increment();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Analytics event buffer is full. Dropping the event published to: " + epUrl +
+                        " of tenant: " + tenantDomain);
+            }
+            return false;
+        }
+        enqueuedCount.increment();
+        if (buffer.events.size() >= maxBatchSize) {
+            requestFlush(buffer);
+        }
+        return true;
+    }
+
+    /**
+     * Publish the events buffered for a tenant and remove the buffers of the tenant, e.g. when the tenant is
+     * unloaded.
+     *
+     * @param tenantDomain Tenant domain.
+     */
+    public void flush(String tenantDomain) {
+
+        Iterator<EventBuffer> iterator = buffers.values().iterator();
+        while (iterator.hasNext()) {
+            EventBuffer buffer = iterator.next();
+            if (buffer.tenantDomain.equals(tenantDomain)) {
+                iterator.remove();
+                flush(buffer);
+            }
+        }
+    }
+
+    /**
+     * Stop the background flusher, after handing the events remaining in the buffers over to be published.
+     */
+    public void shutdown() {
+
+        running = false;
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        buffers.values().forEach(this::flush);
+        buffers.clear();
+        MBeanRegistrar.unregister(MBEAN_TYPE, MBEAN_NAME);
+    }
+
+    @Override
+    public long getEnqueuedCount() {
+
+        return enqueuedCount.sum();
+    }
+
+    @Override
+    public long getFlushedCount() {
+
+        return flushedCount.sum();
+    }
+
+    @Override
+    public long getFlushedBatchCount() {
+
+        return flushedBatchCount.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+
+        return failedCount.sum();
+    }
+
+    @Override
+    public long getDroppedCount() {
+
+        return droppedCount.sum();
+    }
+
+    @Override
+    public long getSampledOutCount() {
+
+        return sampledOutCount.sum();
+    }
+
+    @Override
+    public int getPendingCount() {
+
+        int pendingCount = 0;
+        for (EventBuffer buffer : buffers.values()) {
+            pendingCount += buffer.events.size();
+        }
+        return pendingCount;
+    }
+
+    @Override
+    public String getFlushLatency() {
+
+        return flushLatency.toString();
+    }
+
+    private boolean handleOverflow(EventBuffer buffer, String event) {
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                // The buffer is polled only by the thread holding the flush of the buffer. If a flush is in progress
+                // it is making room in the buffer anyway.
+                if (buffer.flushing.compareAndSet(false, true)) {
+                    try {
+                        if (buffer.events.poll() != null) {
+                            droppedCount.increment();
+                        }
+                    } finally {
+                        buffer.flushing.set(false);
+                    }
+                }
+                return buffer.events.offer(event);
+            case CALLER_FLUSH:
+                flush(buffer);
+                return buffer.events.offer(event);
+            default:
+                return false;
+        }
+    }
+
+    private void requestFlush(EventBuffer buffer) {
+
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null || !buffer.flushRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                buffer.flushRequested.set(false);
+                flush(buffer);
+            });
+        } catch (RejectedExecutionException e) {
+            buffer.flushRequested.set(false);
+        }
+    }
+
+    private void flushAll() {
+
+        for (EventBuffer buffer : buffers.values()) {
+            if (buffer.events.size() > 0) {
+                flush(buffer);
+            }
+        }
+    }
+
+    private void flush(EventBuffer buffer) {
+
+        if (!buffer.flushing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            while (buffer.inFlightBatches.get() < MAX_IN_FLIGHT_BATCHES) {
+                StringJoiner payload = new StringJoiner(",", "[", "]");
+                int batchSize = 0;
+                String event;
+                while (batchSize < maxBatchSize && (event = buffer.events.poll()) != null) {
+                    payload.add(event);
+                    batchSize++;
+                }
+                if (batchSize == 0) {
+                    return;
+                }
+                send(buffer, payload.toString(), batchSize);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Error while flushing the analytics events of tenant: " + buffer.tenantDomain, e);
+        } finally {
+            buffer.flushing.set(false);
+        }
+    }
+
+    private void send(EventBuffer buffer, String payload, int batchSize) {
+
+        buffer.inFlightBatches.incrementAndGet();
+        long startTime = System.nanoTime();
+        CompletableFuture<Boolean> result;
+        try {
+            result = buffer.sender.send(buffer.tenantDomain, buffer.epUrl, payload);
+        } catch (RuntimeException e) {
+            LOG.error("Error while publishing a batch of events to analytics engine for tenant: " +
+                    buffer.tenantDomain, e);
+            result = CompletableFuture.completedFuture(false);
+        }
+        result.whenComplete((published, error) -> {
+            buffer.inFlightBatches.decrementAndGet();
+            flushLatency.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            if (error == null && Boolean.TRUE.equals(published)) {
+                flushedCount.add(batchSize);
+                flushedBatchCount.increment();
+            } else {
+                failedCount.add(batchSize);
+            }
+            if (buffer.events.size() >= maxBatchSize) {
+                requestFlush(buffer);
+            }
+        });
+    }
+
+    private synchronized void startFlusher() {
+
+        if (scheduler != null || !running) {
+            return;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushAll, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        scheduler = executor;
+    }
+
+    private static OverflowPolicy resolveOverflowPolicy(String policy) {
+
+        if (policy == null || policy.trim().isEmpty()) {
+            return OverflowPolicy.DROP_NEWEST;
+        }
+        try {
+            return OverflowPolicy.valueOf(policy.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Invalid overflow policy: " + policy + " configured for publishing analytics events. " +
+                    "Using the policy: " + OverflowPolicy.DROP_NEWEST);
+            return OverflowPolicy.DROP_NEWEST;
+        }
+    }
+
+    /**
+     * Events buffered for a tenant and an endpoint.
+     */
+    private class EventBuffer {
+
+        private final String tenantDomain;
+        private final String epUrl;
+        private final BatchSender sender;
+        private final RingBuffer<String> events = new RingBuffer<>(bufferSize);
+        private final AtomicBoolean flushing = new AtomicBoolean();
+        private final AtomicBoolean flushRequested = new AtomicBoolean();
+        private final AtomicInteger inFlightBatches = new AtomicInteger();
+
+        private EventBuffer(String tenantDomain, String epUrl, BatchSender sender) {
+
+            this.tenantDomain = tenantDomain;
+            this.epUrl = epUrl;
+            this.sender = sender;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.analytics;
+
+/**
+ * JMX view of the statistics of the {@link AnalyticsEventBatcher}.
+ */
+public interface AnalyticsEventBatcherMBean {
+
+    /**
+     * @return Number of events added to the buffers.
+     */
+    long getEnqueuedCount();
+
+    /**
+     * @return Number of events published to the analytics engine in batches.
+     */
+    long getFlushedCount();
+
+    /**
+     * @return Number of batches published to the analytics engine.
+     */
+    long getFlushedBatchCount();
+
+    /**
+     * @return Number of events in batches which could not be published to the analytics engine.
+     */
+    long getFailedCount();
+
+    /**
+     * @return Number of events dropped as the buffer was full.
+     */
+    long getDroppedCount();
+
+    /**
+     * @return Number of events not published as they were sampled out.
+     */
+    long getSampledOutCount();
+
+    /**
+     * @return Number of events waiting in the buffers.
+     */
+    int getPendingCount();
+
+    /**
+     * @return Summary of the time taken to publish a batch to the analytics engine, in milliseconds.
+     */
+    String getFlushLatency();
+}
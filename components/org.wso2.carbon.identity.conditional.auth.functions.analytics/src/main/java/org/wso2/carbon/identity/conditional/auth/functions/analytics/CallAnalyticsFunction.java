@@ -30,7 +30,8 @@ public interface CallAnalyticsFunction {
     /**
      *  Publish data to analytics engine and get the decision.
      *
-     * @param metadata Metadata to call the endpoint.
+     * @param metadata Metadata to call the endpoint. An optional timeout in milliseconds (metadata.timeout) bounds
+     *                 the call.
      * @param payloadData payload data.
      * @param eventHandlers event handlers.
      */
@@ -27,15 +27,20 @@ import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
-import org.apache.http.util.EntityUtils;
 import org.graalvm.polyglot.HostAccess;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncCaller;
 import org.wso2.carbon.identity.application.authentication.framework.AsyncProcess;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncReturn;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.graph.JsGraphBuilder;
 import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ParallelCallFactory;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.CommonUtils;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.HttpCompression;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.HttpResponseReader;
 import org.wso2.carbon.identity.event.IdentityEventException;
 
 import java.io.IOException;
@@ -55,17 +60,42 @@ import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.C
 /**
  * Implementation of the {@link CallAnalyticsFunction}
  */
-public class CallAnalyticsFunctionImpl extends AbstractAnalyticsFunction implements CallAnalyticsFunction {
+public class CallAnalyticsFunctionImpl extends AbstractAnalyticsFunction implements CallAnalyticsFunction,
+        ParallelCallFactory {
 
     private static final Log LOG = LogFactory.getLog(CallAnalyticsFunctionImpl.class);
     private static final String PARAM_APP_NAME = "Application";
     private static final String PARAM_INPUT_STREAM = "InputStream";
+    private static final String PARAM_TIMEOUT = "timeout";
 
     @Override
     @HostAccess.Export
     public void callAnalytics(Map<String, String> metadata,
                               Map<String, Object> payloadData, Map<String, Object> eventHandlers) {
 
+        AsyncProcess asyncProcess = new AsyncProcess(createCall(metadata, payloadData));
+        JsGraphBuilder.addLongWaitProcess(asyncProcess, eventHandlers);
+    }
+
+    /**
+     * Create the call of callAnalytics to be executed in parallel with other calls.
+     * The arguments are the metadata and the payloadData of callAnalytics.
+     *
+     * @param arguments Arguments of callAnalytics, without the event handlers.
+     * @return Call invoking the analytics engine.
+     */
+    @Override
+    public AsyncCaller createCall(Object... arguments) {
+
+        if (arguments.length != 2 || !(arguments[0] instanceof Map) || !(arguments[1] instanceof Map)) {
+            throw new IllegalArgumentException("Invalid arguments for callAnalytics. Expected metadata " +
+                    "(Map<String, String>) and payloadData (Map<String, Object>) respectively.");
+        }
+        return createCall((Map<String, String>) arguments[0], (Map<String, Object>) arguments[1]);
+    }
+
+    private AsyncCaller createCall(Map<String, String> metadata, Map<String, Object> payloadData) {
+
         /*
          * Here, we need to clone the parameters since, even though we're accessing the parameters as Map objects,
          * these may be instances of child classes of Map class (Script Engine specific implementations).
@@ -74,8 +104,11 @@ public class CallAnalyticsFunctionImpl extends AbstractAnalyticsFunction impleme
          */
         Map<String, String> metadataMap = new HashMap<>(metadata);
         Map<String, Object> payloadDataMap = new HashMap<>(payloadData);
-        AsyncProcess asyncProcess = new AsyncProcess((authenticationContext, asyncReturn) -> {
+        return (authenticationContext, flowReturn) -> {
 
+            Deadline deadline = Deadline.forCall(authenticationContext,
+                    Deadline.parseTimeout(metadataMap.get(PARAM_TIMEOUT)));
+            AsyncReturn asyncReturn = deadline.bound(authenticationContext, flowReturn);
             String appName = metadataMap.get(PARAM_APP_NAME);
             String inputStream = metadataMap.get(PARAM_INPUT_STREAM);
             String receiverUrl = metadataMap.get(PARAM_EP_URL);
@@ -107,7 +140,8 @@ public class CallAnalyticsFunctionImpl extends AbstractAnalyticsFunction impleme
                     event.put(dataElements.getKey(), dataElements.getValue());
                 }
                 jsonObject.put("event", event);
-                request.setEntity(new StringEntity(jsonObject.toJSONString()));
+                HttpCompression.getInstance().setEntity(request, new StringEntity(jsonObject.toJSONString()));
+                HttpCompression.getInstance().acceptCompressedResponse(request, request.getURI());
 
                 String[] targetHostUrls = targetHostUrl.split(";");
 
@@ -119,6 +153,9 @@ public class CallAnalyticsFunctionImpl extends AbstractAnalyticsFunction impleme
                 }
 
                 CloseableHttpAsyncClient client = ClientManager.getInstance().getClient(tenantDomain);
+                if (deadline.isBounded()) {
+                    request.setConfig(deadline.capTimeouts(ClientManager.getInstance().getRequestConfig(tenantDomain)));
+                }
 
                 AtomicInteger requestAtomicInteger = new AtomicInteger(targetHosts.length);
 
@@ -132,9 +169,8 @@ public class CallAnalyticsFunctionImpl extends AbstractAnalyticsFunction impleme
                             try {
                                 if (responseCode == 200) {
                                     try {
-                                        String jsonString = EntityUtils.toString(response.getEntity());
-                                        JSONParser parser = new JSONParser();
-                                        JSONObject json = (JSONObject) parser.parse(jsonString);
+                                        JSONObject json = HttpResponseReader.readJsonObject(response.getEntity(),
+                                                ConfigProvider.getInstance().getMaxResponseSize());
                                         asyncReturn.accept(authenticationContext, json, OUTCOME_SUCCESS);
                                     } catch (ParseException e) {
                                         LOG.error("Error while building response from analytics engine call for " +
@@ -210,7 +246,6 @@ public class CallAnalyticsFunctionImpl extends AbstractAnalyticsFunction impleme
                 LOG.error("Error while creating authentication. ", e);
                 asyncReturn.accept(authenticationContext, Collections.emptyMap(), OUTCOME_FAIL);
             }
-        });
-        JsGraphBuilder.addLongWaitProcess(asyncProcess, eventHandlers);
+        };
     }
 }
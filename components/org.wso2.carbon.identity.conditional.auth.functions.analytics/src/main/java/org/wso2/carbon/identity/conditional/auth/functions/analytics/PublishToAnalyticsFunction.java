@@ -31,7 +31,9 @@ public interface PublishToAnalyticsFunction {
     /**
      *  Publish data to analytics engine.
      *
-     * @param metadata Metadata to call the endpoint.
+     * @param metadata Metadata to call the endpoint. An optional percentage (metadata.SamplePercentage) publishes
+     *                 only the given share of the events of the endpoint, for high volume event types where a sample
+     *                 is sufficient.
      * @param payloadData payload data.
      */
     void publishToAnalytics(Map<String, String> metadata, Map<String, Object> payloadData,
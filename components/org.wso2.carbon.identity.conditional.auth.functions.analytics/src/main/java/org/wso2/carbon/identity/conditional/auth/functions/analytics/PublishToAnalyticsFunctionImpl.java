@@ -28,15 +28,20 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.graalvm.polyglot.HostAccess;
 import org.json.simple.JSONObject;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.graph.js.JsAuthenticationContext;
 import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.CommonUtils;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.HttpCompression;
 import org.wso2.carbon.identity.event.IdentityEventException;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.http.HttpHeaders.CONTENT_TYPE;
 
@@ -48,6 +53,8 @@ public class PublishToAnalyticsFunctionImpl extends AbstractAnalyticsFunction im
     private static final Log LOG = LogFactory.getLog(PublishToAnalyticsFunctionImpl.class);
     private static final String PARAM_APP_NAME = "Application";
     private static final String PARAM_INPUT_STREAM = "InputStream";
+    private static final String PARAM_SAMPLE_PERCENTAGE = "SamplePercentage";
+    private static final int FULL_SAMPLE_PERCENTAGE = 100;
 
     @Override
     @HostAccess.Export
@@ -78,79 +85,154 @@ public class PublishToAnalyticsFunctionImpl extends AbstractAnalyticsFunction im
                 return;
             }
             String tenantDomain = context.getWrapped().getTenantDomain();
-            String targetHostUrl = CommonUtils.getConnectorConfig(AnalyticsEngineConfigImpl.RECEIVER, tenantDomain);
-            if (targetHostUrl == null) {
-                LOG.error("Target host cannot be found.");
+            AnalyticsEventBatcher batcher = AnalyticsEventBatcher.getInstance();
+            if (!batcher.isSampled(getSamplePercentage(metadataMap))) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Event published to: " + epUrl + " is sampled out for session data key: " +
+                            contextIdentifier);
+                }
                 return;
             }
 
-            HttpPost request = new HttpPost(epUrl);
-            request.setHeader(CONTENT_TYPE, TYPE_APPLICATION_JSON);
-
-            handleAuthentication(request, tenantDomain);
-
             JSONObject jsonObject = new JSONObject();
             JSONObject event = new JSONObject();
             for (Map.Entry<String, Object> dataElements : payloadDataMap.entrySet()) {
                 event.put(dataElements.getKey(), dataElements.getValue());
             }
             jsonObject.put("event", event);
-            request.setEntity(new StringEntity(jsonObject.toJSONString()));
 
-            String[] targetHostUrls = targetHostUrl.split(";");
+            if (batcher.isEnabled()) {
+                batcher.add(tenantDomain, epUrl, jsonObject.toJSONString(), this::publishBatch);
+                return;
+            }
+            publish(tenantDomain, epUrl, jsonObject.toJSONString(), "session data key: " + contextIdentifier);
+        } catch (IOException e) {
+            LOG.error("Error while calling analytics engine for tenant: " + context.getWrapped().getTenantDomain(), e);
+        } catch (IdentityEventException e) {
+            LOG.error("Error while preparing authentication information for tenant: " + context.getWrapped()
+                    .getTenantDomain(), e);
+        } catch (FrameworkException e) {
+            LOG.error("Error while building client to invoke analytics engine for tenant: " + context.getWrapped()
+                    .getTenantDomain(), e);
+        }
+    }
+
+    /**
+     * Publish a batch of events buffered by the {@link AnalyticsEventBatcher}.
+     *
+     * @param tenantDomain Tenant domain the events are published for.
+     * @param epUrl        Path of the analytics engine endpoint receiving the events.
+     * @param payload      JSON array of the events.
+     * @return Future completed with true once the batch is accepted by all the receivers of the analytics engine.
+     */
+    private CompletableFuture<Boolean> publishBatch(String tenantDomain, String epUrl, String payload) {
+
+        // Batches are published from the background thread of the batcher, which has no tenant in its context.
+        PrivilegedCarbonContext.startTenantFlow();
+        try {
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain, true);
+            return publish(tenantDomain, epUrl, payload, "batch of events published to: " + epUrl);
+        } catch (IOException e) {
+            LOG.error("Error while calling analytics engine for tenant: " + tenantDomain, e);
+        } catch (IdentityEventException e) {
+            LOG.error("Error while preparing authentication information for tenant: " + tenantDomain, e);
+        } catch (FrameworkException e) {
+            LOG.error("Error while building client to invoke analytics engine for tenant: " + tenantDomain, e);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        return CompletableFuture.completedFuture(false);
+    }
+
+    private CompletableFuture<Boolean> publish(String tenantDomain, String epUrl, String payload, String description)
+            throws IOException, IdentityEventException, FrameworkException {
 
-            HttpHost[] targetHosts = new HttpHost[targetHostUrls.length];
+        String targetHostUrl = CommonUtils.getConnectorConfig(AnalyticsEngineConfigImpl.RECEIVER, tenantDomain);
+        if (targetHostUrl == null) {
+            LOG.error("Target host cannot be found.");
+            return CompletableFuture.completedFuture(false);
+        }
 
-            for (int i = 0; i < targetHostUrls.length; i++) {
-                URL hostUrl = new URL(targetHostUrls[i]);
-                targetHosts[i] = new HttpHost(hostUrl.getHost(), hostUrl.getPort(), hostUrl.getProtocol());
-            }
+        HttpPost request = new HttpPost(epUrl);
+        request.setHeader(CONTENT_TYPE, TYPE_APPLICATION_JSON);
 
-            CloseableHttpAsyncClient client = ClientManager.getInstance().getClient(tenantDomain);
+        handleAuthentication(request, tenantDomain);
 
-            for (final HttpHost targetHost : targetHosts) {
-                client.execute(targetHost, request, new FutureCallback<HttpResponse>() {
+        HttpCompression.getInstance().setEntity(request, new StringEntity(payload));
 
-                    @Override
-                    public void completed(final HttpResponse response) {
+        String[] targetHostUrls = targetHostUrl.split(";");
 
-                        int responseCode = response.getStatusLine().getStatusCode();
-                        if (responseCode == 200) {
-                            if (LOG.isDebugEnabled()) {
-                                LOG.debug("Successfully published data to the analytics for session data key: " +
-                                        contextIdentifier);
-                            }
-                        } else {
-                            LOG.error("Error while publishing data to analytics engine for session data key: " +
-                                    contextIdentifier + ". Request completed successfully. " +
-                                    "But response code was not 200");
+        HttpHost[] targetHosts = new HttpHost[targetHostUrls.length];
+
+        for (int i = 0; i < targetHostUrls.length; i++) {
+            URL hostUrl = new URL(targetHostUrls[i]);
+            targetHosts[i] = new HttpHost(hostUrl.getHost(), hostUrl.getPort(), hostUrl.getProtocol());
+        }
+
+        CloseableHttpAsyncClient client = ClientManager.getInstance().getClient(tenantDomain);
+
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        AtomicInteger pendingHosts = new AtomicInteger(targetHosts.length);
+        AtomicBoolean accepted = new AtomicBoolean(true);
+        for (final HttpHost targetHost : targetHosts) {
+            client.execute(targetHost, request, new FutureCallback<HttpResponse>() {
+
+                @Override
+                public void completed(final HttpResponse response) {
+
+                    int responseCode = response.getStatusLine().getStatusCode();
+                    if (responseCode == 200) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Successfully published data to the analytics for " + description);
                         }
+                    } else {
+                        LOG.error("Error while publishing data to analytics engine for " + description +
+                                ". Request completed successfully. But response code was not 200");
+                        accepted.set(false);
                     }
+                    hostCompleted();
+                }
 
-                    @Override
-                    public void failed(final Exception ex) {
+                @Override
+                public void failed(final Exception ex) {
 
-                        LOG.error("Error while publishing data to analytics engine for session data key: " +
-                                contextIdentifier + ". Request failed with: " + ex);
-                    }
+                    LOG.error("Error while publishing data to analytics engine for " + description +
+                            ". Request failed with: " + ex);
+                    accepted.set(false);
+                    hostCompleted();
+                }
+
+                @Override
+                public void cancelled() {
+
+                    LOG.error("Error while publishing data to analytics engine for " + description +
+                            ". Request canceled.");
+                    accepted.set(false);
+                    hostCompleted();
+                }
 
-                    @Override
-                    public void cancelled() {
+                private void hostCompleted() {
 
-                        LOG.error("Error while publishing data to analytics engine for session data key: " +
-                                contextIdentifier + ". Request canceled.");
+                    if (pendingHosts.decrementAndGet() == 0) {
+                        result.complete(accepted.get());
                     }
-                });
-            }
+                }
+            });
+        }
+        return result;
+    }
 
-        } catch (IOException e) {
-            LOG.error("Error while calling analytics engine for tenant: " + context.getWrapped().getTenantDomain(), e);
-        } catch (IdentityEventException e) {
-            LOG.error("Error while preparing authentication information for tenant: " + context.getWrapped()
-                    .getTenantDomain(), e);
-        } catch (FrameworkException e) {
-            LOG.error("Error while building client to invoke analytics engine for tenant: " + context.getWrapped()
-                    .getTenantDomain(), e);
+    private int getSamplePercentage(Map<String, String> metadata) {
+
+        String samplePercentage = metadata.get(PARAM_SAMPLE_PERCENTAGE);
+        if (samplePercentage == null) {
+            return FULL_SAMPLE_PERCENTAGE;
+        }
+        try {
+            return Integer.parseInt(samplePercentage.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid sample percentage: " + samplePercentage + " provided. Publishing all the events.");
+            return FULL_SAMPLE_PERCENTAGE;
         }
     }
 }
@@ -31,11 +31,12 @@ import org.osgi.service.component.annotations.ReferencePolicy;
 import org.wso2.carbon.base.api.ServerConfigurationService;
 import org.wso2.carbon.identity.application.authentication.framework.JsFunctionRegistry;
 import org.wso2.carbon.identity.conditional.auth.functions.analytics.AnalyticsEngineConfigImpl;
-import org.wso2.carbon.identity.conditional.auth.functions.analytics.CallAnalyticsFunction;
+import org.wso2.carbon.identity.conditional.auth.functions.analytics.AnalyticsEventBatcher;
 import org.wso2.carbon.identity.conditional.auth.functions.analytics.CallAnalyticsFunctionImpl;
 import org.wso2.carbon.identity.conditional.auth.functions.analytics.PublishToAnalyticsFunction;
 import org.wso2.carbon.identity.conditional.auth.functions.analytics.PublishToAnalyticsFunctionImpl;
 import org.wso2.carbon.identity.conditional.auth.functions.analytics.listener.AnalyticsAxis2ConfigurationContextObserver;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ParallelCallRegistry;
 import org.wso2.carbon.identity.core.util.IdentityCoreInitializedEvent;
 import org.wso2.carbon.identity.governance.IdentityGovernanceService;
 import org.wso2.carbon.identity.governance.common.IdentityConnectorConfig;
@@ -70,8 +71,9 @@ public class AnalyticsFunctionsServiceComponent {
         try {
             JsFunctionRegistry jsFunctionRegistry = AnalyticsFunctionsServiceHolder.getInstance()
                     .getJsFunctionRegistry();
-            CallAnalyticsFunction callSiddhi = new CallAnalyticsFunctionImpl();
+            CallAnalyticsFunctionImpl callSiddhi = new CallAnalyticsFunctionImpl();
             jsFunctionRegistry.register(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_CALL_SIDDHI, callSiddhi);
+            ParallelCallRegistry.getInstance().register(FUNC_CALL_SIDDHI, callSiddhi);
 
             PublishToAnalyticsFunction publishSiddhi = new PublishToAnalyticsFunctionImpl();
             jsFunctionRegistry.register(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_PUBLISH_SIDDHI,
@@ -110,6 +112,8 @@ public class AnalyticsFunctionsServiceComponent {
             jsFunctionRegistry.deRegister(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_CALL_SIDDHI);
             jsFunctionRegistry.deRegister(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_PUBLISH_SIDDHI);
         }
+        ParallelCallRegistry.getInstance().unregister(FUNC_CALL_SIDDHI);
+        AnalyticsEventBatcher.getInstance().shutdown();
     }
 
     @Reference(
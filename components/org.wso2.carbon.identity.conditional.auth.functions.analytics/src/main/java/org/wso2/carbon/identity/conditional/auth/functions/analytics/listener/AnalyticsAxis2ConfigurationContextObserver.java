@@ -18,30 +18,23 @@
 package org.wso2.carbon.identity.conditional.auth.functions.analytics.listener;
 
 import org.apache.axis2.context.ConfigurationContext;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.conditional.auth.functions.analytics.AnalyticsEventBatcher;
 import org.wso2.carbon.identity.conditional.auth.functions.analytics.ClientManager;
 import org.wso2.carbon.utils.AbstractAxis2ConfigurationContextObserver;
 
-import java.io.IOException;
-
 /**
- * This class is responsible for closing the http client used for the tenant when the tenant is unloaded.
+ * This class is responsible for publishing the buffered analytics events and closing the http client used for the
+ * tenant when the tenant is unloaded.
  */
 public class AnalyticsAxis2ConfigurationContextObserver extends
         AbstractAxis2ConfigurationContextObserver {
 
-    private static final Log log = LogFactory.getLog(
-            AnalyticsAxis2ConfigurationContextObserver.class);
-
     public void terminatingConfigurationContext(ConfigurationContext configContext) {
 
         int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
-        try {
-            ClientManager.getInstance().closeClient(tenantId);
-        } catch (IOException e) {
-            log.error("Error while closing http client for tenant: " + tenantId, e);
-        }
+        String tenantDomain = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        AnalyticsEventBatcher.getInstance().flush(tenantDomain);
+        ClientManager.getInstance().closeClient(tenantId);
     }
 }
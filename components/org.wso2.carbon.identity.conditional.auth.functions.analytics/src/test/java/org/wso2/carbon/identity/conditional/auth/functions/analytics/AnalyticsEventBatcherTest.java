@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.analytics;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.conditional.auth.functions.analytics.AnalyticsEventBatcher.BatchSender;
+import org.wso2.carbon.identity.conditional.auth.functions.analytics.AnalyticsEventBatcher.OverflowPolicy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class AnalyticsEventBatcherTest {
+
+    private static final String TENANT_DOMAIN = "carbon.super";
+    private static final String EP_URL = "/events";
+    private static final long NO_FLUSH_INTERVAL = 60000;
+    private static final long WAIT_TIMEOUT = 5000;
+
+    private List<String> payloads;
+    private List<AnalyticsEventBatcher> batchers;
+
+    @BeforeMethod
+    public void setUp() {
+
+        payloads = new CopyOnWriteArrayList<>();
+        batchers = new ArrayList<>();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        batchers.forEach(AnalyticsEventBatcher::shutdown);
+    }
+
+    @Test
+    public void testFullBatchIsPublished() throws Exception {
+
+        AnalyticsEventBatcher batcher = createBatcher(16, 3, NO_FLUSH_INTERVAL, OverflowPolicy.DROP_NEWEST);
+
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(batcher.add(TENANT_DOMAIN, EP_URL, "{\"id\":" + i + "}", sender(true)));
+        }
+
+        waitFor(() -> batcher.getFlushedBatchCount() == 1);
+        assertEquals(payloads, Collections.singletonList("[{\"id\":1},{\"id\":2},{\"id\":3}]"));
+        assertEquals(batcher.getEnqueuedCount(), 3);
+        assertEquals(batcher.getFlushedCount(), 3);
+        assertEquals(batcher.getPendingCount(), 0);
+    }
+
+    @Test
+    public void testPartialBatchIsPublishedAfterFlushInterval() throws Exception {
+
+        AnalyticsEventBatcher batcher = createBatcher(16, 10, 50, OverflowPolicy.DROP_NEWEST);
+
+        batcher.add(TENANT_DOMAIN, EP_URL, "a", sender(true));
+
+        waitFor(() -> batcher.getFlushedBatchCount() == 1);
+        assertEquals(payloads, Collections.singletonList("[a]"));
+    }
+
+    @Test
+    public void testEventsAreBufferedPerTenantAndEndpoint() {
+
+        AnalyticsEventBatcher batcher = createBatcher(16, 10, NO_FLUSH_INTERVAL, OverflowPolicy.DROP_NEWEST);
+
+        batcher.add(TENANT_DOMAIN, EP_URL, "a", sender(true));
+        batcher.add("wso2.com", EP_URL, "b", sender(true));
+        batcher.add(TENANT_DOMAIN, "/login-events", "c", sender(true));
+        batcher.add(TENANT_DOMAIN, EP_URL, "d", sender(true));
+        batcher.flush(TENANT_DOMAIN);
+
+        List<String> sortedPayloads = new ArrayList<>(payloads);
+        Collections.sort(sortedPayloads);
+        assertEquals(sortedPayloads, Arrays.asList("[a,d]", "[c]"));
+        assertEquals(batcher.getPendingCount(), 1, "The events of the other tenant were published.");
+    }
+
+    @Test
+    public void testDropNewestWhenBufferIsFull() {
+
+        AnalyticsEventBatcher batcher = createBatcher(2, 10, NO_FLUSH_INTERVAL, OverflowPolicy.DROP_NEWEST);
+
+        assertTrue(batcher.add(TENANT_DOMAIN, EP_URL, "a", sender(true)));
+        assertTrue(batcher.add(TENANT_DOMAIN, EP_URL, "b", sender(true)));
+        assertFalse(batcher.add(TENANT_DOMAIN, EP_URL, "c", sender(true)), "An event was added to a full buffer.");
+        batcher.flush(TENANT_DOMAIN);
+
+        assertEquals(payloads, Collections.singletonList("[a,b]"));
+        assertEquals(batcher.getDroppedCount(), 1);
+    }
+
+    @Test
+    public void testDropOldestWhenBufferIsFull() {
+
+        AnalyticsEventBatcher batcher = createBatcher(2, 10, NO_FLUSH_INTERVAL, OverflowPolicy.DROP_OLDEST);
+
+        batcher.add(TENANT_DOMAIN, EP_URL, "a", sender(true));
+        batcher.add(TENANT_DOMAIN, EP_URL, "b", sender(true));
+        assertTrue(batcher.add(TENANT_DOMAIN, EP_URL, "c", sender(true)));
+        batcher.flush(TENANT_DOMAIN);
+
+        assertEquals(payloads, Collections.singletonList("[b,c]"));
+        assertEquals(batcher.getDroppedCount(), 1);
+    }
+
+    @Test
+    public void testCallerFlushWhenBufferIsFull() {
+
+        AnalyticsEventBatcher batcher = createBatcher(2, 10, NO_FLUSH_INTERVAL, OverflowPolicy.CALLER_FLUSH);
+
+        batcher.add(TENANT_DOMAIN, EP_URL, "a", sender(true));
+        batcher.add(TENANT_DOMAIN, EP_URL, "b", sender(true));
+        assertTrue(batcher.add(TENANT_DOMAIN, EP_URL, "c", sender(true)));
+
+        assertEquals(payloads, Collections.singletonList("[a,b]"), "The full buffer was not flushed by the caller.");
+        assertEquals(batcher.getPendingCount(), 1);
+        assertEquals(batcher.getDroppedCount(), 0);
+    }
+
+    @Test
+    public void testInFlightBatchesAreBounded() {
+
+        AnalyticsEventBatcher batcher = createBatcher(16, 1, NO_FLUSH_INTERVAL, OverflowPolicy.DROP_NEWEST);
+        List<CompletableFuture<Boolean>> results = new CopyOnWriteArrayList<>();
+        BatchSender pendingSender = (tenantDomain, epUrl, payload) -> {
+            payloads.add(payload);
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            results.add(result);
+            return result;
+        };
+        for (int i = 0; i < 6; i++) {
+            batcher.add(TENANT_DOMAIN, EP_URL, String.valueOf(i), pendingSender);
+        }
+        batcher.flush(TENANT_DOMAIN);
+
+        assertEquals(payloads.size(), 4, "More batches than the limit were in flight.");
+        assertEquals(payloads.subList(0, 4), Arrays.asList("[0]", "[1]", "[2]", "[3]"));
+        results.forEach(result -> result.complete(true));
+        assertEquals(batcher.getFlushedBatchCount(), 4);
+    }
+
+    @Test
+    public void testFailedBatchIsCounted() {
+
+        AnalyticsEventBatcher batcher = createBatcher(16, 10, NO_FLUSH_INTERVAL, OverflowPolicy.DROP_NEWEST);
+
+        batcher.add(TENANT_DOMAIN, EP_URL, "a", sender(false));
+        batcher.add(TENANT_DOMAIN, EP_URL, "b", sender(false));
+        batcher.flush(TENANT_DOMAIN);
+        batcher.add(TENANT_DOMAIN, EP_URL, "c", (tenantDomain, epUrl, payload) -> {
+            throw new IllegalStateException("Analytics engine is not configured.");
+        });
+        batcher.flush(TENANT_DOMAIN);
+
+        assertEquals(batcher.getFailedCount(), 3);
+        assertEquals(batcher.getFlushedCount(), 0);
+    }
+
+    @Test
+    public void testShutdownPublishesRemainingEvents() {
+
+        AnalyticsEventBatcher batcher = createBatcher(16, 10, NO_FLUSH_INTERVAL, OverflowPolicy.DROP_NEWEST);
+        batcher.add(TENANT_DOMAIN, EP_URL, "a", sender(true));
+
+        batcher.shutdown();
+
+        assertEquals(payloads, Collections.singletonList("[a]"));
+        assertFalse(batcher.add(TENANT_DOMAIN, EP_URL, "b", sender(true)), "An event was added after shutdown.");
+    }
+
+    @Test
+    public void testSampling() {
+
+        AnalyticsEventBatcher batcher = createBatcher(16, 10, NO_FLUSH_INTERVAL, OverflowPolicy.DROP_NEWEST);
+
+        assertTrue(batcher.isSampled(100));
+        assertFalse(batcher.isSampled(0));
+        assertEquals(batcher.getSampledOutCount(), 1);
+    }
+
+    private AnalyticsEventBatcher createBatcher(int bufferSize, int maxBatchSize, long flushInterval,
+                                                OverflowPolicy overflowPolicy) {
+
+        AnalyticsEventBatcher batcher = new AnalyticsEventBatcher(true, bufferSize, maxBatchSize, flushInterval,
+                overflowPolicy);
+        batchers.add(batcher);
+        return batcher;
+    }
+
+    private BatchSender sender(boolean published) {
+
+        return (tenantDomain, epUrl, payload) -> {
+            payloads.add(payload);
+            return CompletableFuture.completedFuture(published);
+        };
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+
+        long timeout = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), "The condition was not met in time.");
+    }
+}
@@ -32,7 +32,12 @@ public interface CallChoreoFunction {
      * the service and authentication script
      *
      * @param connectionMetaData Metadata to call the endpoint. This connectionMetaData map consists with connection url
-     *                          (connectionMetaData.url) and api-key (connectionMetaData.apikey)
+     *                          (connectionMetaData.url) and api-key (connectionMetaData.apikey). An optional
+     *                          timeout in milliseconds (connectionMetaData.timeout) bounds the whole call, including
+     *                          the access token request and the retries. For decision services whose response
+     *                          depends only on the payload, an optional time to live in milliseconds
+     *                          (connectionMetaData.cacheTtl) allows serving successful responses from a cache for
+     *                          calls to the same url with the same payload.
      * @param payloadData        payload data.
      * @param eventHandlers      event handlers.
      */
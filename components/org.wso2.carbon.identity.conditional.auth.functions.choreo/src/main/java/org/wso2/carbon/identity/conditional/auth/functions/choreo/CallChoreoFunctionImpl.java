@@ -21,7 +21,6 @@ package org.wso2.carbon.identity.conditional.auth.functions.choreo;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
-import com.nimbusds.jwt.SignedJWT;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -33,40 +32,52 @@ import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
 import org.graalvm.polyglot.HostAccess;
 import org.json.simple.JSONObject;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncCaller;
 import org.wso2.carbon.identity.application.authentication.framework.AsyncProcess;
 import org.wso2.carbon.identity.application.authentication.framework.AsyncReturn;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.graph.JsGraphBuilder;
 import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
 import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
 import org.wso2.carbon.identity.conditional.auth.functions.choreo.cache.ChoreoAccessTokenCache;
+import org.wso2.carbon.identity.conditional.auth.functions.choreo.cache.ChoreoResponseCache;
+import org.wso2.carbon.identity.conditional.auth.functions.choreo.cache.ChoreoSecretCache;
+import org.wso2.carbon.identity.conditional.auth.functions.choreo.cache.ResolvedSecretEntry;
 import org.wso2.carbon.identity.conditional.auth.functions.choreo.internal.ChoreoFunctionServiceHolder;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ParallelCallFactory;
+import org.wso2.carbon.identity.conditional.auth.functions.common.token.AccessTokenEntry;
+import org.wso2.carbon.identity.conditional.auth.functions.common.token.TokenExpiryResolver;
+import org.wso2.carbon.identity.conditional.auth.functions.common.token.TokenRefreshScheduler;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.CompletionExecutor;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.DomainAllowlist;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.HttpCompression;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.HttpResponseReader;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.LogEventPublisher;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.SingleFlight;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.secret.mgt.core.exception.SecretManagementClientException;
 import org.wso2.carbon.identity.secret.mgt.core.exception.SecretManagementException;
 import org.wso2.carbon.identity.secret.mgt.core.model.ResolvedSecret;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
-import java.text.ParseException;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.http.HttpHeaders.ACCEPT;
@@ -77,7 +88,7 @@ import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.C
 /**
  * Implementation of the {@link CallChoreoFunction}
  */
-public class CallChoreoFunctionImpl implements CallChoreoFunction {
+public class CallChoreoFunctionImpl implements CallChoreoFunction, ParallelCallFactory {
 
     private static final Log LOG = LogFactory.getLog(CallChoreoFunctionImpl.class);
     private static final String TYPE_APPLICATION_JSON = "application/json";
@@ -91,27 +102,34 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
     private static final String CONSUMER_SECRET_VARIABLE_NAME = "consumerSecret";
     private static final String CONSUMER_SECRET_ALIAS_VARIABLE_NAME = "consumerSecretAlias";
     private static final String ASGARDEO_TOKEN_ENDPOINT = "asgardeoTokenEndpoint";
+    private static final String TIMEOUT_VARIABLE_NAME = "timeout";
+    private static final String CACHE_TTL_VARIABLE_NAME = "cacheTtl";
     private static final String SECRET_TYPE = "ADAPTIVE_AUTH_CALL_CHOREO";
-    private static final char DOMAIN_SEPARATOR = '.';
     private static final String ACCESS_TOKEN_KEY = "access_token";
+    private static final String EXPIRES_IN_KEY = "expires_in";
+    private static final String SCOPE_KEY = "scope";
     private static final int HTTP_STATUS_OK = 200;
     private static final int HTTP_STATUS_UNAUTHORIZED = 401;
     private static final String ERROR_CODE_ACCESS_TOKEN_INACTIVE = "900901";
     private static final String CODE = "code";
-    private static final String JWT_EXP_CLAIM = "exp";
-    private final List<String> choreoDomains;
     private static final String BEARER = "Bearer ";
     private static final String BASIC = "Basic ";
     private static final int MAX_TOKEN_REQUEST_ATTEMPTS = 2;
+    private static final char TOKEN_REQUEST_KEY_SEPARATOR = '|';
+    private static final SingleFlight<String, String> TOKEN_REQUESTS =
+            new SingleFlight<>(ConfigProvider.getInstance().getTokenRequestFailureCacheTimeout());
+    private static final TokenRefreshScheduler TOKEN_REFRESH_SCHEDULER =
+            new TokenRefreshScheduler("ChoreoAccessTokens");
     private int maxTokenRequestAttemptsForTimeOut = 2;
     private int maxRequestAttemptsForChoreoAPIEndpointTimeout = 2;
 
     private final ChoreoAccessTokenCache choreoAccessTokenCache;
+    private final ChoreoSecretCache choreoSecretCache;
 
     public CallChoreoFunctionImpl() {
 
-        this.choreoDomains = ConfigProvider.getInstance().getChoreoDomains();
         this.choreoAccessTokenCache = ChoreoAccessTokenCache.getInstance();
+        this.choreoSecretCache = ChoreoSecretCache.getInstance();
 
         if (StringUtils.isNotBlank(IdentityUtil.getProperty(Constants.CALL_CHOREO_TOKEN_REQUEST_RETRY_COUNT))) {
             maxTokenRequestAttemptsForTimeOut = Integer.parseInt
@@ -123,11 +141,42 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
         }
     }
 
+    /**
+     * Stop renewing the cached Choreo access tokens in the background.
+     */
+    public static void stopTokenRefresh() {
+
+        TOKEN_REFRESH_SCHEDULER.shutdown();
+    }
+
     @Override
     @HostAccess.Export
     public void callChoreo(Map<String, String> connectionMetaData, Map<String, Object> payloadData,
                            Map<String, Object> eventHandlers) {
 
+        AsyncProcess asyncProcess = new AsyncProcess(createCall(connectionMetaData, payloadData));
+        JsGraphBuilder.addLongWaitProcess(asyncProcess, eventHandlers);
+    }
+
+    /**
+     * Create the call of callChoreo to be executed in parallel with other calls.
+     * The arguments are the connectionMetaData and the payloadData of callChoreo.
+     *
+     * @param arguments Arguments of callChoreo, without the event handlers.
+     * @return Call invoking the Choreo endpoint.
+     */
+    @Override
+    public AsyncCaller createCall(Object... arguments) {
+
+        if (arguments.length != 2 || !(arguments[0] instanceof Map) || !(arguments[1] instanceof Map)) {
+            throw new IllegalArgumentException("Invalid arguments for callChoreo. Expected connectionMetaData " +
+                    "(Map<String, String>) and payloadData (Map<String, Object>) respectively.");
+        }
+        return createCall((Map<String, String>) arguments[0], (Map<String, Object>) arguments[1]);
+    }
+
+    private AsyncCaller createCall(Map<String, String> connectionMetaData, Map<String, Object> payloadData) {
+
         /*
          * Here, we need to clone the parameters since, even though we're accessing the parameters as Map objects,
          * these may be instances of child classes of Map class (Script Engine specific implementations).
@@ -136,9 +185,13 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
          */
         Map<String, String> connectionMetaDataMap = new HashMap<>(connectionMetaData);
         Map<String, Object> payloadDataMap = new HashMap<>(payloadData);
-        AsyncProcess asyncProcess = new AsyncProcess((authenticationContext, asyncReturn) -> {
-            LOG.info("Starting the callChoreo function for session data key: " +
-                    authenticationContext.getContextIdentifier());
+        return (authenticationContext, flowReturn) -> {
+            LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.REQUEST, () -> LOG.info(
+                    "Starting the callChoreo function for session data key: " +
+                            authenticationContext.getContextIdentifier()));
+            Deadline deadline = Deadline.forCall(authenticationContext,
+                    Deadline.parseTimeout(connectionMetaDataMap.get(TIMEOUT_VARIABLE_NAME)));
+            AsyncReturn asyncReturn = deadline.bound(authenticationContext, flowReturn);
             String epUrl = connectionMetaDataMap.get(URL_VARIABLE_NAME);
             try {
                 if (!isValidChoreoDomain(epUrl)) {
@@ -148,25 +201,42 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
                 }
 
                 String tenantDomain = authenticationContext.getTenantDomain();
+                long responseCacheTtl = Deadline.parseTimeout(connectionMetaDataMap.get(CACHE_TTL_VARIABLE_NAME));
+                String responseCacheKey = null;
+                if (responseCacheTtl > 0 && ChoreoResponseCache.getInstance().isEnabled()) {
+                    responseCacheKey = ChoreoResponseCache.getKey(epUrl, payloadDataMap);
+                    Map<String, Object> cachedResponse = ChoreoResponseCache.getInstance().get(tenantDomain,
+                            responseCacheKey);
+                    if (cachedResponse != null) {
+                        LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.SUCCESS, () -> LOG.info(
+                                "Cached Choreo response available. Session data key: " +
+                                        authenticationContext.getContextIdentifier()));
+                        asyncReturn.accept(authenticationContext, cachedResponse, Constants.OUTCOME_SUCCESS);
+                        return;
+                    }
+                }
+
                 AccessTokenRequestHelper accessTokenRequestHelper = new AccessTokenRequestHelper(
-                        connectionMetaDataMap, asyncReturn, authenticationContext, payloadDataMap);
-                String accessToken = choreoAccessTokenCache.getValueFromCache(accessTokenRequestHelper.getConsumerKey(),
-                        tenantDomain);
-                if (StringUtils.isNotEmpty(accessToken) && !isTokenExpired(accessToken)) {
-                    LOG.info("Unexpired access token available in cache. Session data key: " +
-                            authenticationContext.getContextIdentifier());
-                    accessTokenRequestHelper.callChoreoEndpoint(accessToken);
+                        connectionMetaDataMap, asyncReturn, authenticationContext, payloadDataMap, deadline,
+                        responseCacheKey, responseCacheTtl);
+                AccessTokenEntry accessTokenEntry = choreoAccessTokenCache.getValueFromCache(
+                        accessTokenRequestHelper.getConsumerKey(), tenantDomain);
+                if (accessTokenEntry != null && !accessTokenEntry.isExpired()) {
+                    LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.REQUEST, () -> LOG.info(
+                            "Unexpired access token available in cache. Session data key: " +
+                                    authenticationContext.getContextIdentifier()));
+                    TOKEN_REFRESH_SCHEDULER.recordHit(accessTokenRequestHelper.getTokenRequestKey());
+                    accessTokenRequestHelper.callChoreoEndpoint(accessTokenEntry.getAccessToken());
                 } else {
-                    LOG.info("Requesting the access token from Choreo. Session data key: " +
-                            authenticationContext.getContextIdentifier());
-                    requestAccessToken(tenantDomain, accessTokenRequestHelper);
+                    TOKEN_REFRESH_SCHEDULER.recordMiss();
+                    LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.REQUEST, () -> LOG.info(
+                            "Requesting the access token from Choreo. Session data key: " +
+                                    authenticationContext.getContextIdentifier()));
+                    accessTokenRequestHelper.acquireAccessToken();
                 }
             } catch (IllegalArgumentException e) {
                 LOG.error("Invalid endpoint Url: " + epUrl, e);
                 asyncReturn.accept(authenticationContext, Collections.emptyMap(), OUTCOME_FAIL);
-            } catch (IOException e) {
-                LOG.error("Error while requesting access token from Choreo.", e);
-                asyncReturn.accept(authenticationContext, Collections.emptyMap(), OUTCOME_FAIL);
             } catch (SecretManagementClientException e) {
                 LOG.debug("Client error while resolving Choreo consumer key or secret.", e);
                 asyncReturn.accept(authenticationContext, Collections.emptyMap(), OUTCOME_FAIL);
@@ -177,24 +247,95 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
                 LOG.error("Error while invoking callChoreo.", e);
                 asyncReturn.accept(authenticationContext, Collections.emptyMap(), OUTCOME_FAIL);
             }
-        });
-        JsGraphBuilder.addLongWaitProcess(asyncProcess, eventHandlers);
+        };
     }
 
     /**
-     * This method decodes access token and compare its expiry time with the current time to decide whether it's
-     * expired.
+     * Get a reader over the body of a response received from Choreo. The body is read directly from the entity and
+     * reading fails once the body exceeds the configured maximum response size.
      *
-     * @param accessToken Access token which needs to be evaluated
-     * @return A boolean value indicating whether the token is expired
-     * @throws ParseException {@link ParseException}
+     * @param response HTTP response.
+     * @return Reader over the response body.
+     * @throws IOException If the body could not be read or exceeds the maximum response size.
      */
-    private boolean isTokenExpired(String accessToken) throws ParseException {
+    private static Reader getResponseReader(HttpResponse response) throws IOException {
+
+        return HttpResponseReader.getReader(response.getEntity(), ConfigProvider.getInstance().getMaxResponseSize(),
+                StandardCharsets.UTF_8);
+    }
 
-        SignedJWT decodedToken = SignedJWT.parse(accessToken);
-        Date expiryDate = (Date) decodedToken.getJWTClaimsSet().getClaim(JWT_EXP_CLAIM);
-        LocalDateTime expiryTimestamp = LocalDateTime.ofInstant(expiryDate.toInstant(), ZoneId.systemDefault());
-        return LocalDateTime.now().isAfter(expiryTimestamp);
+    /**
+     * Build the key identifying the token requests which can be shared between concurrent flows.
+     *
+     * @param tenantDomain  The tenant domain which the request belongs to.
+     * @param tokenEndpoint The token endpoint to request the token from.
+     * @param consumerKey   Consumer key of the Choreo application.
+     * @return Token request key.
+     */
+    private static String getTokenRequestKey(String tenantDomain, String tokenEndpoint, String consumerKey) {
+
+        return tenantDomain + TOKEN_REQUEST_KEY_SEPARATOR + tokenEndpoint + TOKEN_REQUEST_KEY_SEPARATOR + consumerKey;
+    }
+
+    /**
+     * Track a received access token so that it is renewed in the background before it expires. The renewal is not
+     * made on behalf of any authentication flow, hence it does not refer to the session data key of the flow which
+     * obtained the token.
+     *
+     * @param expiryTime     Expiry time of the access token in epoch milliseconds.
+     * @param tenantDomain   The tenant domain which the token belongs to.
+     * @param tokenEndpoint  The token endpoint the token was obtained from.
+     * @param consumerKey    Consumer key of the Choreo application.
+     * @param consumerSecret Consumer secret of the Choreo application.
+     */
+    private void scheduleTokenRefresh(long expiryTime, String tenantDomain, String tokenEndpoint,
+                                      String consumerKey, String consumerSecret) {
+
+        String tokenRequestKey = getTokenRequestKey(tenantDomain, tokenEndpoint, consumerKey);
+        TOKEN_REFRESH_SCHEDULER.track(tokenRequestKey, expiryTime,
+                () -> TOKEN_REQUESTS.execute(tokenRequestKey, () -> requestAccessToken(tenantDomain, tokenEndpoint,
+                        consumerKey, consumerSecret, null)));
+    }
+
+    /**
+     * Describe what an access token is requested for, to be included in the logs.
+     *
+     * @param sessionDataKey Session data key of the authentication flow, or null for a background renewal.
+     * @param tokenEndpoint  The token endpoint the token is requested from.
+     * @return Session data key of the authentication flow, or a note that the token is renewed in the background.
+     */
+    private static String getTokenRequestDescription(String sessionDataKey, String tokenEndpoint) {
+
+        return sessionDataKey != null ? "session data key: " + sessionDataKey :
+                "background renewal of the token from: " + tokenEndpoint;
+    }
+
+    /**
+     * Resolve a secret of the Choreo application, serving it from the cache while the cached value is within its
+     * time to live.
+     *
+     * @param name         Alias of the secret.
+     * @param tenantDomain The tenant domain which the secret belongs to.
+     * @return Resolved value of the secret.
+     * @throws SecretManagementException If the secret could not be resolved.
+     */
+    String resolveSecret(String name, String tenantDomain) throws SecretManagementException {
+
+        int secretCacheTimeout = ConfigProvider.getInstance().getChoreoSecretCacheTimeout();
+        if (secretCacheTimeout <= 0 || StringUtils.isEmpty(name)) {
+            return getResolvedSecret(name);
+        }
+        ResolvedSecretEntry secretEntry = choreoSecretCache.getValueFromCache(name, tenantDomain);
+        if (secretEntry != null && !secretEntry.isExpired()) {
+            return secretEntry.getSecretValue();
+        }
+        String secretValue = getResolvedSecret(name);
+        if (secretValue != null) {
+            choreoSecretCache.addToCache(name,
+                    new ResolvedSecretEntry(secretValue, System.currentTimeMillis() + secretCacheTimeout),
+                    tenantDomain);
+        }
+        return secretValue;
     }
 
     public String getResolvedSecret(String name) throws SecretManagementException {
@@ -213,6 +354,7 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
             return false;
         }
 
+        DomainAllowlist choreoDomains = ConfigProvider.getInstance().getChoreoDomainAllowlist();
         if (choreoDomains.isEmpty()) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("No domains configured for domain restriction. Allowing url by default. Url: " + url);
@@ -220,116 +362,108 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
             return true;
         }
 
-        String domain;
+        String host;
         try {
-            domain = getParentDomainFromUrl(url);
+            host = new URI(url).getHost();
         } catch (URISyntaxException e) {
             LOG.error("Error while resolving the domain of the url: " + url, e);
             return false;
         }
 
-        if (StringUtils.isEmpty(domain)) {
+        if (StringUtils.isEmpty(host)) {
             LOG.error("Unable to determine the domain of the url: " + url);
             return false;
         }
 
-        if (choreoDomains.contains(domain)) {
+        if (choreoDomains.isAllowed(host)) {
             return true;
         }
 
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Domain: " + domain + " extracted from url: " + url + " is not available in the " +
-                    "configured choreo domain list: " + StringUtils.join(choreoDomains, ','));
+            LOG.debug("Host: " + host + " extracted from url: " + url + " is not allowed by the " +
+                    "configured choreo domain list: " + choreoDomains);
         }
 
         return false;
     }
 
-    private String getParentDomainFromUrl(String url) throws URISyntaxException {
-
-        URI uri = new URI(url);
-        String parentDomain = null;
-        String domain = uri.getHost();
-        String[] domainArr;
-        if (domain != null) {
-            domainArr = StringUtils.split(domain, DOMAIN_SEPARATOR);
-            if (domainArr.length != 0) {
-                parentDomain = domainArr.length == 1 ? domainArr[0] : domainArr[domainArr.length - 2];
-                parentDomain = parentDomain.toLowerCase();
-            }
-        }
-
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Parent domain: " + parentDomain + " extracted from url: " + url);
-        }
-        return parentDomain;
-    }
-
     /**
      * Performs the access token request using client credentials grant type.
      *
-     * @param tenantDomain       The tenant domain which the request belongs to.
-     * @param accessTokenRequestHelper     The future callback that needs to be called after requesting the token.
-     * @throws SecretManagementException {@link SecretManagementException}
-     * @throws IOException               {@link IOException}
-     * @throws FrameworkException        {@link FrameworkException}
+     * @param tenantDomain   The tenant domain which the request belongs to.
+     * @param tokenEndpoint  The token endpoint to request the token from.
+     * @param consumerKey    Consumer key of the Choreo application.
+     * @param consumerSecret Consumer secret of the Choreo application.
+     * @param sessionDataKey Session data key of the authentication flow that initiated the request, or null for a
+     *                       background renewal.
+     * @return Future which completes with the access token, or exceptionally with a {@link TokenRequestException}.
      */
-    private void requestAccessToken(String tenantDomain, AccessTokenRequestHelper accessTokenRequestHelper)
-            throws IOException, FrameworkException {
-
-        String tokenEndpoint;
-        if (StringUtils.isNotEmpty(accessTokenRequestHelper.getAsgardeoTokenEndpoint())) {
-            tokenEndpoint = accessTokenRequestHelper.getAsgardeoTokenEndpoint();
-        } else {
-            tokenEndpoint = ConfigProvider.getInstance().getChoreoTokenEndpoint();
-        }
-        HttpPost request = new HttpPost(tokenEndpoint);
-        request.setHeader(ACCEPT, TYPE_APPLICATION_JSON);
-        request.setHeader(CONTENT_TYPE, TYPE_FORM_DATA);
-
-        request.setHeader(AUTHORIZATION, BASIC + Base64.getEncoder()
-                .encodeToString((accessTokenRequestHelper.consumerKey + ":" + accessTokenRequestHelper.consumerSecret)
-                .getBytes(StandardCharsets.UTF_8)));
-
-        List<BasicNameValuePair> bodyParams = new ArrayList<>();
-        bodyParams.add(new BasicNameValuePair(GRANT_TYPE, GRANT_TYPE_CLIENT_CREDENTIALS));
-        request.setEntity(new UrlEncodedFormEntity(bodyParams));
-
-        CloseableHttpAsyncClient client = ChoreoFunctionServiceHolder.getInstance().getClientManager()
-                .getClient(tenantDomain);
-        LOG.info("CloseableHttpAsyncClient executing access token request for session data key: " +
-                accessTokenRequestHelper.authenticationContext.getContextIdentifier());
-        client.execute(request, accessTokenRequestHelper);
-    }
+    private CompletableFuture<String> requestAccessToken(String tenantDomain, String tokenEndpoint,
+                                                         String consumerKey, String consumerSecret,
+                                                         String sessionDataKey) {
 
-    private class AccessTokenRequestHelper implements FutureCallback<HttpResponse> {
+        CompletableFuture<String> accessTokenFuture = new CompletableFuture<>();
+        String requestDescription = getTokenRequestDescription(sessionDataKey, tokenEndpoint);
+        try {
+            HttpPost request = new HttpPost(tokenEndpoint);
+            request.setHeader(ACCEPT, TYPE_APPLICATION_JSON);
+            request.setHeader(CONTENT_TYPE, TYPE_FORM_DATA);
+
+            request.setHeader(AUTHORIZATION, BASIC + Base64.getEncoder()
+                    .encodeToString((consumerKey + ":" + consumerSecret).getBytes(StandardCharsets.UTF_8)));
+
+            List<BasicNameValuePair> bodyParams = new ArrayList<>();
+            bodyParams.add(new BasicNameValuePair(GRANT_TYPE, GRANT_TYPE_CLIENT_CREDENTIALS));
+            request.setEntity(new UrlEncodedFormEntity(bodyParams));
+
+            CloseableHttpAsyncClient client = ChoreoFunctionServiceHolder.getInstance().getClientManager()
+                    .getClient(tenantDomain);
+            LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.REQUEST, () -> LOG.info(
+                    "CloseableHttpAsyncClient executing access token request for " + requestDescription));
+            // The response is handled on the completion executor, so that the I/O dispatcher threads only do I/O.
+            client.execute(request, CompletionExecutor.getInstance().dispatch(new AccessTokenResponseCallback(client,
+                    request, tenantDomain, tokenEndpoint, consumerKey, consumerSecret, requestDescription,
+                    accessTokenFuture)));
+        } catch (IOException | FrameworkException | IllegalArgumentException e) {
+            LOG.error("Error while requesting access token from Choreo for " + requestDescription, e);
+            accessTokenFuture.completeExceptionally(new TokenRequestException(OUTCOME_FAIL,
+                    "Error while requesting access token from Choreo.", e));
+        }
+        return accessTokenFuture;
+    }
 
-        private final Map<String, String> connectionMetaData;
-        private final AsyncReturn asyncReturn;
-        private final AuthenticationContext authenticationContext;
-        private final Map<String, Object> payloadData;
+    /**
+     * Handles the response of an access token request, retrying the request when it fails due to a timeout or
+     * a connection failure. The result is published through a future, so that every authentication flow waiting on
+     * the token request is notified.
+     */
+    private class AccessTokenResponseCallback implements FutureCallback<HttpResponse> {
+
+        private final CloseableHttpAsyncClient client;
+        private final HttpPost request;
+        private final String tenantDomain;
+        private final String tokenEndpoint;
+        private final String consumerKey;
+        private final String consumerSecret;
+        private final String requestDescription;
+        private final CompletableFuture<String> accessTokenFuture;
         private final Gson gson;
-        private final AtomicInteger tokenRequestAttemptCount;
         private final AtomicInteger tokenRequestAttemptCountForTimeOut;
-        private final AtomicInteger requestAttemptCountForChoreoAPIEndpointTimeOut;
-        private String consumerKey;
-        private String consumerSecret;
-        private String asgardeoTokenEndpoint;
 
-        public AccessTokenRequestHelper(Map<String, String> connectionMetaData,
-                                        AsyncReturn asyncReturn,
-                                        AuthenticationContext authenticationContext,
-                                        Map<String, Object> payloadData) throws SecretManagementException {
+        private AccessTokenResponseCallback(CloseableHttpAsyncClient client, HttpPost request, String tenantDomain,
+                                            String tokenEndpoint, String consumerKey, String consumerSecret,
+                                            String requestDescription, CompletableFuture<String> accessTokenFuture) {
 
-            this.connectionMetaData = connectionMetaData;
-            this.asyncReturn = asyncReturn;
-            this.authenticationContext = authenticationContext;
-            this.payloadData = payloadData;
+            this.client = client;
+            this.request = request;
+            this.tenantDomain = tenantDomain;
+            this.tokenEndpoint = tokenEndpoint;
+            this.consumerKey = consumerKey;
+            this.consumerSecret = consumerSecret;
+            this.requestDescription = requestDescription;
+            this.accessTokenFuture = accessTokenFuture;
             this.gson = new GsonBuilder().create();
-            this.tokenRequestAttemptCount = new AtomicInteger(0);
             this.tokenRequestAttemptCountForTimeOut = new AtomicInteger(0);
-            this.requestAttemptCountForChoreoAPIEndpointTimeOut = new AtomicInteger(0);
-            resolveConsumerKeySecrete();
         }
 
         /**
@@ -340,47 +474,45 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
         @Override
         public void completed(HttpResponse httpResponse) {
 
-            boolean isFailure = false;
             try {
                 LOG.debug("Access token response received.");
                 int responseCode = httpResponse.getStatusLine().getStatusCode();
                 if (responseCode == HTTP_STATUS_OK) {
                     Type responseBodyType = new TypeToken<Map<String, String>>() { }.getType();
-                    Map<String, String> responseBody = this.gson
-                            .fromJson(EntityUtils.toString(httpResponse.getEntity()), responseBodyType);
+                    Map<String, String> responseBody;
+                    try (Reader reader = getResponseReader(httpResponse)) {
+                        responseBody = this.gson.fromJson(reader, responseBodyType);
+                    }
                     String accessToken = responseBody.get(ACCESS_TOKEN_KEY);
                     if (accessToken != null) {
-                        choreoAccessTokenCache.addToCache(this.consumerKey, accessToken,
-                                this.authenticationContext.getTenantDomain());
-                        callChoreoEndpoint(accessToken);
-                    } else {
-                        LOG.error("Token response does not contain an access token. Session data key: " +
-                                authenticationContext.getContextIdentifier());
-                        isFailure = true;
+                        long expiryTime = TokenExpiryResolver.resolveExpiryTime(accessToken,
+                                responseBody.get(EXPIRES_IN_KEY));
+                        if (expiryTime > 0) {
+                            choreoAccessTokenCache.addToCache(consumerKey,
+                                    new AccessTokenEntry(accessToken, expiryTime, responseBody.get(SCOPE_KEY)),
+                                    tenantDomain);
+                            scheduleTokenRefresh(expiryTime, tenantDomain, tokenEndpoint, consumerKey,
+                                    consumerSecret);
+                        } else {
+                            LOG.warn("Expiry of the Choreo access token for " + requestDescription +
+                                    " could not be resolved. The access token will not be cached.");
+                        }
+                        accessTokenFuture.complete(accessToken);
+                        return;
                     }
+                    LOG.error("Token response does not contain an access token for " + requestDescription);
                 } else {
                     LOG.error("Failed to retrieve access token from Choreo. Response Code: " + responseCode +
-                            ". Session data key: " + authenticationContext.getContextIdentifier());
-                    isFailure = true;
+                            " for " + requestDescription);
                 }
             } catch (IOException e) {
-                LOG.error("Failed to parse access token response to string. Session data key: " +
-                        authenticationContext.getContextIdentifier(), e);
-                isFailure = true;
+                LOG.error("Failed to parse access token response to string for " + requestDescription, e);
             } catch (Exception e) {
-                LOG.error("Error occurred while handling the token response from Choreo. Session data key: " +
-                        authenticationContext.getContextIdentifier(), e);
-                isFailure = true;
-            }
-
-            if (isFailure) {
-                try {
-                    asyncReturn.accept(authenticationContext, Collections.emptyMap(), OUTCOME_FAIL);
-                } catch (Exception e) {
-                    LOG.error("Error while trying to return after handling the token request failure from Choreo. " +
-                            "Session data key: " + authenticationContext.getContextIdentifier(), e);
-                }
+                LOG.error("Error occurred while handling the token response from Choreo for " +
+                        requestDescription, e);
             }
+            accessTokenFuture.completeExceptionally(new TokenRequestException(OUTCOME_FAIL,
+                    "Failed to retrieve access token from Choreo."));
         }
 
         /**
@@ -391,20 +523,27 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
         @Override
         public void failed(Exception e) {
 
-            LOG.warn("Failed to request access token from Choreo for the session data key: " +
-                    authenticationContext.getContextIdentifier(), e);
-            try {
-                String outcome = OUTCOME_FAIL;
-                if ((e instanceof SocketTimeoutException) || (e instanceof ConnectTimeoutException)) {
-                    outcome = OUTCOME_TIMEOUT;
+            LOG.warn("Failed to request access token from Choreo for " + requestDescription, e);
+            String outcome = OUTCOME_FAIL;
+            if ((e instanceof SocketTimeoutException) || (e instanceof ConnectTimeoutException)) {
+                outcome = OUTCOME_TIMEOUT;
+            }
+            // Retry if the access token request failed due to a timeout or failed scenario.
+            if (tokenRequestAttemptCountForTimeOut.get() < maxTokenRequestAttemptsForTimeOut) {
+                LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.RETRY, () -> LOG.info(
+                        "Retrying token request for " + requestDescription));
+                tokenRequestAttemptCountForTimeOut.incrementAndGet();
+                try {
+                    client.execute(request, CompletionExecutor.getInstance().dispatch(this));
+                    return;
+                } catch (Exception ex) {
+                    LOG.error("Error while retrying the access token request for " + requestDescription, ex);
                 }
-                // Retry if the access token request failed due to a timeout or failed scenario.
-                handleRetryTokenRequest(tokenRequestAttemptCountForTimeOut, outcome,
-                        maxTokenRequestAttemptsForTimeOut);
-            } catch (Exception ex) {
-                LOG.error("Error while proceeding after failing to request access token for the session data key: " +
-                        authenticationContext.getContextIdentifier(), e);
+            } else {
+                LOG.warn("Maximum token request attempt count exceeded for " + requestDescription);
             }
+            accessTokenFuture.completeExceptionally(new TokenRequestException(outcome,
+                    "Failed to request access token from Choreo.", e));
         }
 
         /**
@@ -413,13 +552,135 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
         @Override
         public void cancelled() {
 
-            LOG.error("Requesting access token from Choreo for the session data key: " +
-                    authenticationContext.getContextIdentifier() + " is cancelled.");
+            LOG.error("Requesting access token from Choreo for " + requestDescription + " is cancelled.");
+            accessTokenFuture.completeExceptionally(new TokenRequestException(OUTCOME_FAIL,
+                    "Access token request to Choreo got cancelled."));
+        }
+    }
+
+    /**
+     * Exception used to notify the authentication flows waiting on an access token request about its failure,
+     * along with the outcome that should be returned to the flows.
+     */
+    private static class TokenRequestException extends Exception {
+
+        private static final long serialVersionUID = 6415703541230283461L;
+        private final String outcome;
+
+        private TokenRequestException(String outcome, String message) {
+
+            super(message);
+            this.outcome = outcome;
+        }
+
+        private TokenRequestException(String outcome, String message, Throwable cause) {
+
+            super(message, cause);
+            this.outcome = outcome;
+        }
+
+        private String getOutcome() {
+
+            return outcome;
+        }
+    }
+
+    private class AccessTokenRequestHelper {
+
+        private final Map<String, String> connectionMetaData;
+        private final AsyncReturn asyncReturn;
+        private final AuthenticationContext authenticationContext;
+        private final Map<String, Object> payloadData;
+        private final Deadline deadline;
+        private final Gson gson;
+        private final AtomicInteger tokenRequestAttemptCount;
+        private final AtomicInteger requestAttemptCountForChoreoAPIEndpointTimeOut;
+        private final String responseCacheKey;
+        private final long responseCacheTtl;
+        private String consumerKey;
+        private String consumerSecret;
+        private String asgardeoTokenEndpoint;
+
+        public AccessTokenRequestHelper(Map<String, String> connectionMetaData,
+                                        AsyncReturn asyncReturn,
+                                        AuthenticationContext authenticationContext,
+                                        Map<String, Object> payloadData,
+                                        Deadline deadline,
+                                        String responseCacheKey,
+                                        long responseCacheTtl) throws SecretManagementException {
+
+            this.connectionMetaData = connectionMetaData;
+            this.asyncReturn = asyncReturn;
+            this.authenticationContext = authenticationContext;
+            this.payloadData = payloadData;
+            this.deadline = deadline;
+            this.gson = new GsonBuilder().create();
+            this.tokenRequestAttemptCount = new AtomicInteger(0);
+            this.requestAttemptCountForChoreoAPIEndpointTimeOut = new AtomicInteger(0);
+            this.responseCacheKey = responseCacheKey;
+            this.responseCacheTtl = responseCacheTtl;
+            resolveConsumerKeySecrete();
+        }
+
+        /**
+         * Obtains an access token for the Choreo application and invokes the Choreo API endpoint with it.
+         * Concurrent flows requesting a token for the same application share a single token request.
+         */
+        private void acquireAccessToken() {
+
+            String tenantDomain = this.authenticationContext.getTenantDomain();
+            String tokenEndpoint = getTokenEndpoint();
+            String tokenRequestKey = getTokenRequestKey();
+            TOKEN_REQUESTS.execute(tokenRequestKey, () -> requestAccessToken(tenantDomain, tokenEndpoint,
+                            this.consumerKey, this.consumerSecret, authenticationContext.getContextIdentifier()))
+                    .whenComplete(this::handleAccessToken);
+        }
+
+        /**
+         * Get the token endpoint of the Choreo application.
+         *
+         * @return Asgardeo token endpoint given in the connection metadata, or the configured Choreo token endpoint.
+         */
+        private String getTokenEndpoint() {
+
+            return StringUtils.isNotEmpty(getAsgardeoTokenEndpoint()) ? getAsgardeoTokenEndpoint() :
+                    ConfigProvider.getInstance().getChoreoTokenEndpoint();
+        }
+
+        /**
+         * Get the key identifying the token requests of the Choreo application.
+         *
+         * @return Token request key.
+         */
+        private String getTokenRequestKey() {
+
+            return CallChoreoFunctionImpl.getTokenRequestKey(this.authenticationContext.getTenantDomain(),
+                    getTokenEndpoint(), this.consumerKey);
+        }
+
+        /**
+         * Proceeds with the result of the access token request.
+         *
+         * @param accessToken Access token, if the request succeeded.
+         * @param error       Cause of the failure, if the request failed.
+         */
+        private void handleAccessToken(String accessToken, Throwable error) {
+
+            if (error == null) {
+                callChoreoEndpoint(accessToken);
+                return;
+            }
+            String outcome = error instanceof TokenRequestException ?
+                    ((TokenRequestException) error).getOutcome() : OUTCOME_FAIL;
+            if (OUTCOME_FAIL.equals(outcome)) {
+                // The credentials may have been rotated in the secret manager. Resolve them again on the next call.
+                invalidateResolvedSecrets();
+            }
             try {
-                asyncReturn.accept(authenticationContext, Collections.emptyMap(), OUTCOME_FAIL);
+                asyncReturn.accept(authenticationContext, Collections.emptyMap(), outcome);
             } catch (Exception e) {
-                LOG.error("Error while proceeding after access token request to Choreo got cancelled " +
-                        "for session data key: " + authenticationContext.getContextIdentifier(), e);
+                LOG.error("Error while trying to return after handling the token request failure from Choreo. " +
+                        "Session data key: " + authenticationContext.getContextIdentifier(), e);
             }
         }
 
@@ -439,19 +700,23 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
             try {
                 JSONObject jsonObject = new JSONObject();
                 jsonObject.putAll(this.payloadData);
-                request.setEntity(new StringEntity(jsonObject.toJSONString()));
-                CloseableHttpAsyncClient client = ChoreoFunctionServiceHolder.getInstance().getClientManager()
-                        .getClient(this.authenticationContext.getTenantDomain());
-                LOG.info("Calling Choreo endpoint for session data key: " +
-                        authenticationContext.getContextIdentifier());
+                HttpCompression.getInstance().setEntity(request, new StringEntity(jsonObject.toJSONString()));
+                HttpCompression.getInstance().acceptCompressedResponse(request, request.getURI());
+                ClientManager clientManager = ChoreoFunctionServiceHolder.getInstance().getClientManager();
+                CloseableHttpAsyncClient client = clientManager.getClient(
+                        this.authenticationContext.getTenantDomain());
+                LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.REQUEST, () -> LOG.info(
+                        "Calling Choreo endpoint for session data key: " +
+                                authenticationContext.getContextIdentifier()));
                 FutureCallback<HttpResponse> callChoreoEndpointCallback = new FutureCallback<HttpResponse>() {
 
                     @Override
                     public void completed(final HttpResponse response) {
 
                         try {
-                            LOG.info("Choreo call completed for session data key: " +
-                                    authenticationContext.getContextIdentifier());
+                            LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.REQUEST, () -> LOG.info(
+                                    "Choreo call completed for session data key: " +
+                                            authenticationContext.getContextIdentifier()));
                             handleChoreoEndpointResponse(response);
                         } catch (Exception e) {
                             LOG.error("Error while proceeding after handling the response from Choreo call for " +
@@ -471,10 +736,12 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
                             }
 
                             if (requestAttemptCountForChoreoAPIEndpointTimeOut
-                                    .get() < maxRequestAttemptsForChoreoAPIEndpointTimeout) {
-                                LOG.info("Retrying request for session data key: " +
-                                        authenticationContext.getContextIdentifier());
-                                client.execute(request, this);
+                                    .get() < maxRequestAttemptsForChoreoAPIEndpointTimeout && !deadline.isExpired()) {
+                                LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.RETRY,
+                                        () -> LOG.info("Retrying request for session data key: " +
+                                                authenticationContext.getContextIdentifier()));
+                                capTimeouts(request, clientManager);
+                                client.execute(request, CompletionExecutor.getInstance().dispatch(this));
                                 requestAttemptCountForChoreoAPIEndpointTimeOut.incrementAndGet();
                             } else {
                                 LOG.warn("Maximum request attempt count exceeded for session data key: " +
@@ -502,7 +769,10 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
                     }
                 };
 
-                client.execute(request, callChoreoEndpointCallback);
+                capTimeouts(request, clientManager);
+                // The response is handled and the flow is resumed on the completion executor, so that the I/O
+                // dispatcher threads only do I/O.
+                client.execute(request, CompletionExecutor.getInstance().dispatch(callChoreoEndpointCallback));
             } catch (UnsupportedEncodingException e) {
                 LOG.error("Error while constructing request payload for calling choreo endpoint. session data key: " +
                         authenticationContext.getContextIdentifier(), e);
@@ -527,6 +797,19 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
             }
         }
 
+        /**
+         * Caps the timeouts of the request to the time left until the deadline of the call, if the call is bounded.
+         *
+         * @param request       Request to the Choreo endpoint.
+         * @param clientManager Client manager providing the default request config.
+         */
+        private void capTimeouts(HttpPost request, ClientManager clientManager) {
+
+            if (deadline.isBounded()) {
+                request.setConfig(deadline.capTimeouts(clientManager.getRequestConfig()));
+            }
+        }
+
         /**
          * Handles the response from the API call to the Choreo endpoint specified in the connection metadata.
          *
@@ -541,24 +824,36 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
                 Map<String, Object> successResponseBody;
                 if (statusCode >= 200 && statusCode < 300) { // Accepting 2xx as success.
                     responseBodyType = new TypeToken<Map<String, Object>>() { }.getType();
-                    String responseBodyString = EntityUtils.toString(response.getEntity());
-                    if (StringUtils.isEmpty(responseBodyString)) {
+                    if (response.getEntity() == null) {
+                        successResponseBody = null;
+                    } else {
+                        try (Reader reader = getResponseReader(response)) {
+                            successResponseBody = this.gson.fromJson(reader, responseBodyType);
+                        }
+                    }
+                    if (successResponseBody == null) {
                         // To handle the case where the response body is empty.
                         successResponseBody = Collections.emptyMap();
-                    } else {
-                        successResponseBody = this.gson.fromJson(responseBodyString, responseBodyType);
                     }
-                    LOG.info("Received 2xx response from Choreo. Status Code: " + statusCode +
-                            " Session data key: " + authenticationContext.getContextIdentifier());
+                    if (responseCacheKey != null) {
+                        ChoreoResponseCache.getInstance().put(authenticationContext.getTenantDomain(),
+                                responseCacheKey, successResponseBody, responseCacheTtl);
+                    }
+                    LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.SUCCESS, () -> LOG.info(
+                            "Received 2xx response from Choreo. Status Code: " + statusCode + " Session data key: " +
+                                    authenticationContext.getContextIdentifier()));
                     this.asyncReturn.accept(authenticationContext, successResponseBody, Constants.OUTCOME_SUCCESS);
                 } else if (statusCode == HTTP_STATUS_UNAUTHORIZED) {
                     responseBodyType = new TypeToken<Map<String, String>>() { }.getType();
-                    Map<String, String> responseBody = this.gson
-                            .fromJson(EntityUtils.toString(response.getEntity()), responseBodyType);
+                    Map<String, String> responseBody;
+                    try (Reader reader = getResponseReader(response)) {
+                        responseBody = this.gson.fromJson(reader, responseBodyType);
+                    }
 
                     if (ERROR_CODE_ACCESS_TOKEN_INACTIVE.equals(responseBody.get(CODE))) {
-                        LOG.info("Access token inactive for session data key: " +
-                                authenticationContext.getContextIdentifier());
+                        LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.FAILURE, () -> LOG.info(
+                                "Access token inactive for session data key: " +
+                                        authenticationContext.getContextIdentifier()));
                         handleRetryTokenRequest(tokenRequestAttemptCount, OUTCOME_FAIL, MAX_TOKEN_REQUEST_ATTEMPTS);
                     } else {
                         LOG.warn("Received 401 response from Choreo. Session data key: " +
@@ -582,24 +877,26 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
         }
 
         /**
-         * Handles the scenario where the response from the Choreo API call is 401 Unauthorized due to an expired
-         * token or if it's a time-out. The program will retry the token request flow until it exceeds the specified
-         * max request attempt count.
+         * Handles the scenario where the response from the Choreo API call is 401 Unauthorized due to an inactive
+         * token. The program will retry the token request flow until it exceeds the specified max request attempt
+         * count.
          *
          * @param tokenRequestAttemptCount {@link AtomicInteger}
          * @param outcome {@link String}
          * @param maxTokenRequestAttempts {@link Integer}
-         * @throws IOException {@link IOException}
          * @throws FrameworkException {@link FrameworkException}
          */
         private void handleRetryTokenRequest(AtomicInteger tokenRequestAttemptCount, String outcome,
-                                             int maxTokenRequestAttempts) throws IOException, FrameworkException {
+                                             int maxTokenRequestAttempts) throws FrameworkException {
 
             if (tokenRequestAttemptCount.get() < maxTokenRequestAttempts) {
-                LOG.info("Retrying token request for session data key: " +
-                        this.authenticationContext.getContextIdentifier());
-                requestAccessToken(this.authenticationContext.getTenantDomain(), this);
+                LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.RETRY, () -> LOG.info(
+                        "Retrying token request for session data key: " +
+                                this.authenticationContext.getContextIdentifier()));
                 tokenRequestAttemptCount.incrementAndGet();
+                choreoAccessTokenCache.clearCacheEntry(this.consumerKey, this.authenticationContext.getTenantDomain());
+                TOKEN_REFRESH_SCHEDULER.untrack(getTokenRequestKey());
+                acquireAccessToken();
             } else {
                 LOG.warn("Maximum token request attempt count exceeded for session data key: " +
                         this.authenticationContext.getContextIdentifier());
@@ -610,18 +907,19 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
 
         public void resolveConsumerKeySecrete() throws SecretManagementException {
 
+            String tenantDomain = this.authenticationContext.getTenantDomain();
             if (StringUtils.isNotEmpty(connectionMetaData.get(CONSUMER_KEY_VARIABLE_NAME))) {
                 this.consumerKey = connectionMetaData.get(CONSUMER_KEY_VARIABLE_NAME);
             } else {
                 String consumerKeyAlias = connectionMetaData.get(CONSUMER_KEY_ALIAS_VARIABLE_NAME);
-                this.consumerKey = getResolvedSecret(consumerKeyAlias);
+                this.consumerKey = resolveSecret(consumerKeyAlias, tenantDomain);
             }
 
             if (StringUtils.isNotEmpty(connectionMetaData.get(CONSUMER_SECRET_VARIABLE_NAME))) {
                 this.consumerSecret = connectionMetaData.get(CONSUMER_SECRET_VARIABLE_NAME);
             } else {
                 String consumerSecretAlias = connectionMetaData.get(CONSUMER_SECRET_ALIAS_VARIABLE_NAME);
-                this.consumerSecret = getResolvedSecret(consumerSecretAlias);
+                this.consumerSecret = resolveSecret(consumerSecretAlias, tenantDomain);
             }
 
             if (StringUtils.isNotEmpty(connectionMetaData.get(ASGARDEO_TOKEN_ENDPOINT))) {
@@ -629,6 +927,24 @@ public class CallChoreoFunctionImpl implements CallChoreoFunction {
             }
         }
 
+        /**
+         * Remove the consumer key and secret resolved from the secret manager from the cache.
+         */
+        private void invalidateResolvedSecrets() {
+
+            String tenantDomain = this.authenticationContext.getTenantDomain();
+            String consumerKeyAlias = connectionMetaData.get(CONSUMER_KEY_ALIAS_VARIABLE_NAME);
+            if (StringUtils.isEmpty(connectionMetaData.get(CONSUMER_KEY_VARIABLE_NAME)) &&
+                    StringUtils.isNotEmpty(consumerKeyAlias)) {
+                choreoSecretCache.clearCacheEntry(consumerKeyAlias, tenantDomain);
+            }
+            String consumerSecretAlias = connectionMetaData.get(CONSUMER_SECRET_ALIAS_VARIABLE_NAME);
+            if (StringUtils.isEmpty(connectionMetaData.get(CONSUMER_SECRET_VARIABLE_NAME)) &&
+                    StringUtils.isNotEmpty(consumerSecretAlias)) {
+                choreoSecretCache.clearCacheEntry(consumerSecretAlias, tenantDomain);
+            }
+        }
+
         public void setConsumerKey(String consumerKey) {
 
             this.consumerKey = consumerKey;
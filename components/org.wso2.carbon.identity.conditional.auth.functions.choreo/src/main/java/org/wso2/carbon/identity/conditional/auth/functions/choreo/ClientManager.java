@@ -24,43 +24,39 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
-import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
-import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
-import org.apache.http.impl.nio.client.HttpAsyncClients;
-import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
-import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
-import org.apache.http.nio.reactor.ConnectingIOReactor;
-import org.apache.http.nio.reactor.IOReactorException;
 import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
 import org.wso2.carbon.identity.conditional.auth.functions.choreo.internal.ChoreoFunctionServiceHolder;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.SharedHttpTransport;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.TenantTransportConfig;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 
 import java.io.IOException;
 import java.security.KeyManagementException;
+import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.net.ssl.SSLContext;
 
 /**
  * Class to retrieve the HTTP Clients.
+ * The clients of the tenants are logical connection pools over the {@link SharedHttpTransport}, so the tenants share
+ * the I/O threads and the connections to the Choreo endpoints.
  */
 public class ClientManager {
 
     private static final Log LOG = LogFactory.getLog(ClientManager.class);
+    private static final String TRANSPORT_NAME = "choreo";
+    private static final String TLS_PROFILE = "choreo";
 
-    private static Map<Integer, CloseableHttpAsyncClient> clientMap = new HashMap<>();
-
-    private PoolingNHttpClientConnectionManager poolingHttpClientConnectionManager;
+    private volatile RequestConfig requestConfig;
 
     private static final int HTTP_CONNECTION_TIMEOUT = 1000;
     private static final int HTTP_CONNECTION_REQUEST_TIMEOUT = 1000;
-    private static final int DEFAULT_MAX_CONNECTIONS = 20;
     private static int httpReadTimeout = 1000;
 
     public ClientManager() {
@@ -75,20 +71,22 @@ public class ClientManager {
      */
     public CloseableHttpAsyncClient getClient(String tenantDomain) throws FrameworkException, IOException {
 
-        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
-        CloseableHttpAsyncClient client = clientMap.get(tenantId);
-        if (client == null) {
-            PoolingNHttpClientConnectionManager poolingHttpClientConnectionManager = createPoolingConnectionManager();
-            RequestConfig config = createRequestConfig();
-            HttpAsyncClientBuilder httpClientBuilder = HttpAsyncClients.custom().setDefaultRequestConfig(config);
-            addSslContext(httpClientBuilder, tenantDomain);
-            httpClientBuilder.setConnectionManager(poolingHttpClientConnectionManager);
-            client = httpClientBuilder.build();
-            client.start();
-            clientMap.put(tenantId, client);
-        }
+        return SharedHttpTransport.getInstance().getClient(TRANSPORT_NAME, tenantDomain, this::createTransportConfig);
+    }
 
-        return client;
+    /**
+     * Get the request config the Choreo HTTP clients use by default.
+     *
+     * @return Default request config.
+     */
+    public RequestConfig getRequestConfig() {
+
+        RequestConfig config = requestConfig;
+        if (config == null) {
+            config = createRequestConfig();
+            requestConfig = config;
+        }
+        return config;
     }
 
     private RequestConfig createRequestConfig() {
@@ -112,62 +110,32 @@ public class ClientManager {
                 .build();
     }
 
-    private PoolingNHttpClientConnectionManager createPoolingConnectionManager() throws FrameworkException {
+    private TenantTransportConfig createTransportConfig(String tenantDomain) throws IOException {
 
-        String maxConnectionsString = IdentityUtil.getProperty(Constants.CONNECTION_POOL_MAX_CONNECTIONS);
-        String maxConnectionsPerRouteString = IdentityUtil.getProperty(Constants
-                .CONNECTION_POOL_MAX_CONNECTIONS_PER_ROUTE);
-        int maxConnections = DEFAULT_MAX_CONNECTIONS;
-        int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS;
-        try {
-            maxConnections = Integer.parseInt(maxConnectionsString);
-        } catch (NumberFormatException e) {
-            // Default value is used.
-            LOG.error("Error while converting MaxConnection " + maxConnections + " to integer. So proceed with " +
-                    "default value ", e);
-        }
-        try {
-            maxConnectionsPerRoute = Integer.parseInt(maxConnectionsPerRouteString);
-        } catch (NumberFormatException e) {
-            // Default value is used.
-            LOG.error("Error while converting MaxConnectionsPerRoute " + maxConnectionsPerRoute + " to integer. " +
-                    "So proceed with default value ", e);
-        }
-
-        ConnectingIOReactor ioReactor;
-        try {
-            ioReactor = new DefaultConnectingIOReactor();
-        } catch (IOReactorException e) {
-            throw new FrameworkException("Error while creating ConnectingIOReactor", e);
-        }
-        PoolingNHttpClientConnectionManager poolingHttpClientConnectionManager = new
-                PoolingNHttpClientConnectionManager(ioReactor);
-        // Increase max total connection to 20.
-        poolingHttpClientConnectionManager.setMaxTotal(maxConnections);
-        // Increase default max connection per route to 20.
-        poolingHttpClientConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
-        return poolingHttpClientConnectionManager;
+        KeyStore trustStore = ChoreoFunctionServiceHolder.getInstance().getTrustStore();
+        return new TenantTransportConfig(TLS_PROFILE, createSslContext(trustStore, tenantDomain), trustStore,
+                SSLConnectionSocketFactory.STRICT_HOSTNAME_VERIFIER, getRequestConfig(),
+                ConfigProvider.getInstance().getMaxConnections());
     }
 
-    public void closeClient(int tenantId) throws IOException {
+    /**
+     * Evict the client of an unloaded tenant.
+     *
+     * Requests already sent by the client are left to complete.
+     *
+     * @param tenantId Tenant id.
+     */
+    public void closeClient(int tenantId) {
 
-        CloseableHttpAsyncClient client = clientMap.get(tenantId);
-        if (client != null) {
-            clientMap.remove(tenantId);
-            client.close();
-        }
+        SharedHttpTransport.getInstance().evict(TRANSPORT_NAME, IdentityTenantUtil.getTenantDomain(tenantId));
     }
 
-    private void addSslContext(HttpAsyncClientBuilder builder, String tenantDomain) throws IOException {
+    private SSLContext createSslContext(KeyStore trustStore, String tenantDomain) throws IOException {
 
         try {
-            SSLContext sslContext = SSLContexts.custom()
-                    .loadTrustMaterial(ChoreoFunctionServiceHolder.getInstance().getTrustStore())
+            return SSLContexts.custom()
+                    .loadTrustMaterial(trustStore)
                     .build();
-            X509HostnameVerifier hostnameVerifier = SSLConnectionSocketFactory.STRICT_HOSTNAME_VERIFIER;
-            builder.setSSLContext(sslContext);
-            builder.setHostnameVerifier(hostnameVerifier);
-
         } catch (NoSuchAlgorithmException | KeyStoreException | KeyManagementException e) {
             LOG.error("Error while creating ssl context for Choreo endpoint invocation in tenant domain: " +
                     tenantDomain, e);
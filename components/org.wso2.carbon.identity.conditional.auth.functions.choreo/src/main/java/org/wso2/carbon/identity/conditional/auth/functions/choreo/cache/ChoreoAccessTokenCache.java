@@ -17,12 +17,14 @@
  */
 package org.wso2.carbon.identity.conditional.auth.functions.choreo.cache;
 
+import org.wso2.carbon.identity.conditional.auth.functions.common.token.AccessTokenEntry;
 import org.wso2.carbon.identity.core.cache.BaseCache;
 
 /**
- * The cache implementation which stores the access tokens received from Choreo.
+ * The cache implementation which stores the access tokens received from Choreo along with
+ * their expiry metadata.
  */
-public class ChoreoAccessTokenCache extends BaseCache<String, String> {
+public class ChoreoAccessTokenCache extends BaseCache<String, AccessTokenEntry> {
 
     private static final String ACCESS_TOKEN_CACHE_NAME = "ChoreoAccessTokenCache";
 
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.choreo.cache;
+
+import org.json.simple.JSONValue;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.MBeanRegistrar;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.TenantLruCache;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * In memory cache of the successful responses received from the Choreo decision services.
+ * Caching is opted in per call with a time to live, for the services which are pure functions of the payload. The
+ * responses are cached against the endpoint URL and a hash of the canonical form of the payload, so that payloads
+ * with the same content map to the same response regardless of the order of their attributes.
+ * Responses are isolated per tenant, and the cache of each tenant is bounded to the configured number of entries,
+ * evicting the least recently used response. The bodies are deep copied on the way in and out, as the authentication
+ * scripts may modify the nested objects of the bodies they receive.
+ */
+public class ChoreoResponseCache implements ChoreoResponseCacheMBean {
+
+    private static final String MBEAN_TYPE = "ResponseCache";
+    private static final String MBEAN_NAME = "CallChoreo";
+    private static final char KEY_SEPARATOR = '#';
+
+    private static final ChoreoResponseCache instance = new ChoreoResponseCache();
+
+    private final TenantLruCache<CachedResponse> responses;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final int maxEntriesPerTenant;
+    private final LongSupplier clock;
+
+    private ChoreoResponseCache() {
+
+        this(ConfigProvider.getInstance().getChoreoResponseCacheMaxEntriesPerTenant());
+    }
+
+    ChoreoResponseCache(int maxEntriesPerTenant) {
+
+        this(maxEntriesPerTenant, System::currentTimeMillis);
+    }
+
+    ChoreoResponseCache(int maxEntriesPerTenant, LongSupplier clock) {
+
+        this.maxEntriesPerTenant = maxEntriesPerTenant;
+        this.clock = clock;
+        this.responses = new TenantLruCache<>(maxEntriesPerTenant);
+        MBeanRegistrar.register(MBEAN_TYPE, MBEAN_NAME, this);
+    }
+
+    public static ChoreoResponseCache getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Check whether responses can be cached at all. Caching is disabled by bounding the cache of each tenant to
+     * zero entries.
+     *
+     * @return True if the responses can be cached.
+     */
+    public boolean isEnabled() {
+
+        return maxEntriesPerTenant > 0;
+    }
+
+    /**
+     * Build the key of the response of a call.
+     *
+     * @param url     URL of the Choreo endpoint.
+     * @param payload Payload sent to the endpoint.
+     * @return Cache key.
+     */
+    public static String getKey(String url, Map<String, Object> payload) {
+
+        StringBuilder canonicalPayload = new StringBuilder();
+        appendCanonical(canonicalPayload, payload);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return url + KEY_SEPARATOR + Base64.getEncoder().encodeToString(
+                    digest.digest(canonicalPayload.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandated by the Java platform.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the cached response of a call.
+     *
+     * @param tenantDomain Tenant domain of the authentication flow the call belongs to.
+     * @param key          Cache key of the call.
+     * @return Copy of the cached response body, or null if there is no unexpired response.
+     */
+    public Map<String, Object> get(String tenantDomain, String key) {
+
+        CachedResponse cachedResponse = responses.get(tenantDomain, key);
+        if (cachedResponse == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (clock.getAsLong() >= cachedResponse.expiryTime) {
+            responses.remove(tenantDomain, key, cachedResponse);
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        // The body is handed over to the authentication script, hence do not share the cached instance.
+        return copyBody(cachedResponse.body);
+    }
+
+    /**
+     * Cache the response of a call.
+     *
+     * @param tenantDomain Tenant domain of the authentication flow the call belongs to.
+     * @param key          Cache key of the call.
+     * @param body         Body of the successful response.
+     * @param timeToLive   Time in milliseconds the response can be served from the cache.
+     */
+    public void put(String tenantDomain, String key, Map<String, Object> body, long timeToLive) {
+
+        if (!isEnabled() || timeToLive <= 0) {
+            return;
+        }
+        responses.put(tenantDomain, key, new CachedResponse(copyBody(body), clock.getAsLong() + timeToLive));
+    }
+
+    /**
+     * Remove the cached responses of a tenant.
+     *
+     * @param tenantDomain Tenant domain.
+     */
+    public void clear(String tenantDomain) {
+
+        responses.clear(tenantDomain);
+    }
+
+    /**
+     * Remove all the cached responses and the MBean of the cache.
+     */
+    public void close() {
+
+        responses.clear();
+        MBeanRegistrar.unregister(MBEAN_TYPE, MBEAN_NAME);
+    }
+
+    @Override
+    public long getHitCount() {
+
+        return hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+
+        return missCount.get();
+    }
+
+    @Override
+    public long getEvictionCount() {
+
+        return responses.getEvictionCount();
+    }
+
+    @Override
+    public int getEntryCount() {
+
+        return responses.size();
+    }
+
+    /**
+     * Copy a response body along with the objects and the arrays nested in it.
+     *
+     * @param body Response body.
+     * @return Copy of the body which shares no mutable state with the given body.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> copyBody(Map<String, Object> body) {
+
+        return (Map<String, Object>) copyValue(body);
+    }
+
+    private static Object copyValue(Object value) {
+
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((name, attribute) -> copy.put(name, copyValue(attribute)));
+            return copy;
+        }
+        if (value instanceof Collection || value instanceof Object[]) {
+            Collection<?> elements = value instanceof Collection ? (Collection<?>) value :
+                    Arrays.asList((Object[]) value);
+            List<Object> copy = new ArrayList<>(elements.size());
+            for (Object element : elements) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        }
+        // Strings, numbers and booleans are immutable.
+        return value;
+    }
+
+    /**
+     * Write the canonical JSON form of a payload value. Attributes of objects are written in the order of their
+     * names, and numbers are written in their shortest plain form so that e.g. 1 and 1.0 are treated alike.
+     *
+     * @param builder Builder to write to.
+     * @param value   Payload value.
+     */
+    private static void appendCanonical(StringBuilder builder, Object value) {
+
+        if (value instanceof Map) {
+            Map<String, Object> sortedMap = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((name, attribute) -> sortedMap.put(String.valueOf(name), attribute));
+            builder.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : sortedMap.entrySet()) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                builder.append('"').append(JSONValue.escape(entry.getKey())).append("\":");
+                appendCanonical(builder, entry.getValue());
+            }
+            builder.append('}');
+        } else if (value instanceof Collection || value instanceof Object[]) {
+            Iterable<?> elements = value instanceof Collection ? (Collection<?>) value :
+                    Arrays.asList((Object[]) value);
+            builder.append('[');
+            boolean first = true;
+            for (Object element : elements) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                appendCanonical(builder, element);
+            }
+            builder.append(']');
+        } else if (value instanceof Number) {
+            builder.append(toCanonicalNumber((Number) value));
+        } else if (value == null || value instanceof Boolean) {
+            builder.append(value);
+        } else {
+            builder.append('"').append(JSONValue.escape(value.toString())).append('"');
+        }
+    }
+
+    private static String toCanonicalNumber(Number number) {
+
+        try {
+            return new BigDecimal(number.toString()).stripTrailingZeros().toPlainString();
+        } catch (NumberFormatException e) {
+            // NaN and infinite values.
+            return number.toString();
+        }
+    }
+
+    /**
+     * A cached response.
+     */
+    private static class CachedResponse {
+
+        private final Map<String, Object> body;
+        private final long expiryTime;
+
+        private CachedResponse(Map<String, Object> body, long expiryTime) {
+
+            this.body = body;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.choreo.cache;
+
+import org.wso2.carbon.identity.core.cache.BaseCache;
+
+/**
+ * The cache implementation which stores the consumer keys and secrets of the Choreo applications resolved from the
+ * secret manager, against the alias of the secret and the tenant domain.
+ */
+public class ChoreoSecretCache extends BaseCache<String, ResolvedSecretEntry> {
+
+    private static final String SECRET_CACHE_NAME = "ChoreoResolvedSecretCache";
+
+    private ChoreoSecretCache() {
+
+        super(SECRET_CACHE_NAME);
+    }
+
+    private static class SecretCacheHolder {
+        static final ChoreoSecretCache INSTANCE = new ChoreoSecretCache();
+    }
+
+    public static ChoreoSecretCache getInstance() {
+        return SecretCacheHolder.INSTANCE;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.choreo.cache;
+
+import java.io.Serializable;
+
+/**
+ * Cached value of a secret resolved from the secret manager.
+ */
+public class ResolvedSecretEntry implements Serializable {
+
+    private static final long serialVersionUID = 3215498842739506427L;
+
+    private final String secretValue;
+    private final long expiryTime;
+
+    /**
+     * Create a cache entry for a resolved secret.
+     *
+     * @param secretValue Resolved value of the secret.
+     * @param expiryTime  Time in epoch milliseconds after which the secret should be resolved again.
+     */
+    public ResolvedSecretEntry(String secretValue, long expiryTime) {
+
+        this.secretValue = secretValue;
+        this.expiryTime = expiryTime;
+    }
+
+    public String getSecretValue() {
+
+        return secretValue;
+    }
+
+    /**
+     * Check whether the cached value has outlived its time to live.
+     *
+     * @return True if the secret should be resolved again.
+     */
+    public boolean isExpired() {
+
+        return System.currentTimeMillis() >= expiryTime;
+    }
+}
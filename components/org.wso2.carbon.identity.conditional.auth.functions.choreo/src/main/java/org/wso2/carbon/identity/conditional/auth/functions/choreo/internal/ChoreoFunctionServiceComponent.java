@@ -31,10 +31,11 @@ import org.osgi.service.component.annotations.ReferencePolicy;
 import org.wso2.carbon.base.api.ServerConfigurationService;
 import org.wso2.carbon.identity.application.authentication.framework.JsFunctionRegistry;
 import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
-import org.wso2.carbon.identity.conditional.auth.functions.choreo.CallChoreoFunction;
 import org.wso2.carbon.identity.conditional.auth.functions.choreo.CallChoreoFunctionImpl;
 import org.wso2.carbon.identity.conditional.auth.functions.choreo.ClientManager;
+import org.wso2.carbon.identity.conditional.auth.functions.choreo.cache.ChoreoResponseCache;
 import org.wso2.carbon.identity.conditional.auth.functions.choreo.listener.ChoreoAxis2ConfigurationContextObserver;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ParallelCallRegistry;
 import org.wso2.carbon.identity.core.util.IdentityCoreInitializedEvent;
 import org.wso2.carbon.identity.secret.mgt.core.SecretResolveManager;
 import org.wso2.carbon.identity.secret.mgt.core.SecretResolveManagerImpl;
@@ -67,8 +68,9 @@ public class ChoreoFunctionServiceComponent {
 
         JsFunctionRegistry jsFunctionRegistry = ChoreoFunctionServiceHolder.getInstance().getJsFunctionRegistry();
 
-        CallChoreoFunction callChoreo = new CallChoreoFunctionImpl();
+        CallChoreoFunctionImpl callChoreo = new CallChoreoFunctionImpl();
         jsFunctionRegistry.register(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_CALL_CHOREO, callChoreo);
+        ParallelCallRegistry.getInstance().register(FUNC_CALL_CHOREO, callChoreo);
 
         BundleContext bundleContext = context.getBundleContext();
 
@@ -103,6 +105,9 @@ public class ChoreoFunctionServiceComponent {
         if (jsFunctionRegistry != null) {
             jsFunctionRegistry.deRegister(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_CALL_CHOREO);
         }
+        ParallelCallRegistry.getInstance().unregister(FUNC_CALL_CHOREO);
+        CallChoreoFunctionImpl.stopTokenRefresh();
+        ChoreoResponseCache.getInstance().close();
     }
 
     @Reference(
@@ -19,29 +19,25 @@
 package org.wso2.carbon.identity.conditional.auth.functions.choreo.listener;
 
 import org.apache.axis2.context.ConfigurationContext;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.conditional.auth.functions.choreo.cache.ChoreoResponseCache;
+import org.wso2.carbon.identity.conditional.auth.functions.choreo.cache.ChoreoSecretCache;
 import org.wso2.carbon.identity.conditional.auth.functions.choreo.internal.ChoreoFunctionServiceHolder;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.utils.AbstractAxis2ConfigurationContextObserver;
 
-import java.io.IOException;
-
 /**
- * This class is responsible for closing the http client used for the tenant when the tenant is unloaded.
+ * This class is responsible for closing the http client and clearing the secrets and responses cached for the
+ * tenant when the tenant is unloaded.
  */
 public class ChoreoAxis2ConfigurationContextObserver extends AbstractAxis2ConfigurationContextObserver {
 
-    private static final Log LOG = LogFactory.getLog(
-            ChoreoAxis2ConfigurationContextObserver.class);
-
     public void terminatingConfigurationContext(ConfigurationContext configContext) {
 
         int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
-        try {
-            ChoreoFunctionServiceHolder.getInstance().getClientManager().closeClient(tenantId);
-        } catch (IOException e) {
-            LOG.error("Error while closing http client for tenant: " + tenantId, e);
-        }
+        ChoreoFunctionServiceHolder.getInstance().getClientManager().closeClient(tenantId);
+        String tenantDomain = IdentityTenantUtil.getTenantDomain(tenantId);
+        ChoreoSecretCache.getInstance().clear(tenantDomain);
+        ChoreoResponseCache.getInstance().clear(tenantDomain);
     }
 }
@@ -51,17 +51,23 @@ import org.wso2.carbon.identity.common.testng.WithH2Database;
 import org.wso2.carbon.identity.common.testng.WithMicroService;
 import org.wso2.carbon.identity.common.testng.WithRealmService;
 import org.wso2.carbon.identity.conditional.auth.functions.choreo.cache.ChoreoAccessTokenCache;
+import org.wso2.carbon.identity.conditional.auth.functions.choreo.cache.ChoreoSecretCache;
+import org.wso2.carbon.identity.conditional.auth.functions.choreo.cache.ResolvedSecretEntry;
 import org.wso2.carbon.identity.conditional.auth.functions.choreo.internal.ChoreoFunctionServiceHolder;
 import org.wso2.carbon.identity.conditional.auth.functions.common.internal.FunctionsDataHolder;
+import org.wso2.carbon.identity.conditional.auth.functions.common.token.AccessTokenEntry;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
 import org.wso2.carbon.identity.conditional.auth.functions.test.utils.sequence.JsSequenceHandlerAbstractTest;
 import org.wso2.carbon.identity.conditional.auth.functions.test.utils.sequence.JsTestException;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.secret.mgt.core.SecretResolveManager;
+import org.wso2.carbon.identity.secret.mgt.core.model.ResolvedSecret;
 import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.core.service.RealmService;
 
 import java.lang.reflect.Field;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -99,6 +105,8 @@ public class CallChoreoFunctionImplTest extends JsSequenceHandlerAbstractTest {
     private static final String TENANT_DOMAIN = "test_domain";
     private static final String CONSUMER_KEY = "dummyKey";
     private static final String CONSUMER_SECRET = "dummySecret";
+    private static final String SECRET_ALIAS = "dummySecretAlias";
+    private static final String RESOLVED_SECRET = "dummyResolvedSecret";
 
     @WithRealmService
     private RealmService realmService;
@@ -143,6 +151,8 @@ public class CallChoreoFunctionImplTest extends JsSequenceHandlerAbstractTest {
     private void cleanup() {
 
         ChoreoAccessTokenCache.getInstance().clear(TENANT_DOMAIN);
+        ChoreoSecretCache.getInstance().clear(TENANT_DOMAIN);
+        ChoreoFunctionServiceHolder.getInstance().setSecretConfigManager(null);
         requestCount.set(0);
     }
 
@@ -207,7 +217,8 @@ public class CallChoreoFunctionImplTest extends JsSequenceHandlerAbstractTest {
         LOG.info("===== Testing callChoreo expired token in cache");
 
         // set an expired token to the cache.
-        ChoreoAccessTokenCache.getInstance().addToCache(CONSUMER_KEY, generateTestAccessToken(true), TENANT_DOMAIN);
+        ChoreoAccessTokenCache.getInstance().addToCache(CONSUMER_KEY, new AccessTokenEntry(
+                generateTestAccessToken(true), System.currentTimeMillis() - 1000, null), TENANT_DOMAIN);
 
         AuthenticationContext context = getAuthenticationContext(CHOREO_SERVICE_SUCCESS_PATH);
         setChoreoDomain("localhost");
@@ -290,6 +301,35 @@ public class CallChoreoFunctionImplTest extends JsSequenceHandlerAbstractTest {
 
     }
 
+    @Test
+    public void testResolvedSecretIsCached() throws Exception {
+
+        SecretResolveManager secretResolveManager = mockSecretResolveManager();
+        CallChoreoFunctionImpl callChoreoFunction = new CallChoreoFunctionImpl();
+
+        assertEquals(callChoreoFunction.resolveSecret(SECRET_ALIAS, TENANT_DOMAIN), RESOLVED_SECRET);
+        assertEquals(callChoreoFunction.resolveSecret(SECRET_ALIAS, TENANT_DOMAIN), RESOLVED_SECRET);
+
+        // The second resolution is served from the cache.
+        Mockito.verify(secretResolveManager, Mockito.times(1))
+                .getResolvedSecret(Mockito.anyString(), Mockito.eq(SECRET_ALIAS));
+    }
+
+    @Test
+    public void testExpiredSecretIsResolvedAgain() throws Exception {
+
+        ChoreoSecretCache.getInstance().addToCache(SECRET_ALIAS,
+                new ResolvedSecretEntry("staleSecret", System.currentTimeMillis() - 1), TENANT_DOMAIN);
+        SecretResolveManager secretResolveManager = mockSecretResolveManager();
+
+        assertEquals(new CallChoreoFunctionImpl().resolveSecret(SECRET_ALIAS, TENANT_DOMAIN), RESOLVED_SECRET);
+
+        Mockito.verify(secretResolveManager, Mockito.times(1))
+                .getResolvedSecret(Mockito.anyString(), Mockito.eq(SECRET_ALIAS));
+        assertEquals(ChoreoSecretCache.getInstance().getValueFromCache(SECRET_ALIAS, TENANT_DOMAIN).getSecretValue(),
+                RESOLVED_SECRET, "The expired secret was not replaced in the cache.");
+    }
+
     /**
      * Create and returns an authentication context.
      *
@@ -318,10 +358,26 @@ public class CallChoreoFunctionImplTest extends JsSequenceHandlerAbstractTest {
         return context;
     }
 
+    /**
+     * Register a mocked secret manager which resolves any secret to {@link #RESOLVED_SECRET}.
+     *
+     * @return The mocked secret manager.
+     * @throws Exception {@link Exception}
+     */
+    private SecretResolveManager mockSecretResolveManager() throws Exception {
+
+        ResolvedSecret resolvedSecret = Mockito.mock(ResolvedSecret.class);
+        Mockito.when(resolvedSecret.getResolvedSecretValue()).thenReturn(RESOLVED_SECRET);
+        SecretResolveManager secretResolveManager = Mockito.mock(SecretResolveManager.class);
+        Mockito.when(secretResolveManager.getResolvedSecret(Mockito.anyString(), Mockito.anyString()))
+                .thenReturn(resolvedSecret);
+        ChoreoFunctionServiceHolder.getInstance().setSecretConfigManager(secretResolveManager);
+        return secretResolveManager;
+    }
+
     private void setChoreoDomain(String domain) {
 
-        ConfigProvider.getInstance().getChoreoDomains().clear();
-        ConfigProvider.getInstance().getChoreoDomains().add(domain);
+        ConfigProvider.getInstance().setChoreoDomains(Collections.singletonList(domain));
     }
 
     /**
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.choreo.cache;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ChoreoResponseCacheTest {
+
+    private static final String CHOREO_URL = "https://e1-us-east-azure.choreoapis.dev/risk/v1";
+    private static final String TENANT_DOMAIN = "carbon.super";
+    private static final long TIME_TO_LIVE = 60000;
+
+    private ChoreoResponseCache responseCache;
+    private AtomicLong time;
+
+    @BeforeMethod
+    public void setUp() {
+
+        time = new AtomicLong();
+        responseCache = new ChoreoResponseCache(10, time::get);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        responseCache.close();
+    }
+
+    @Test
+    public void testKeyIgnoresAttributeOrder() {
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("username", "alice");
+        payload.put("ip", "10.0.0.1");
+        payload.put("context", Collections.singletonMap("loginAttempts", 3));
+        Map<String, Object> reorderedPayload = new LinkedHashMap<>();
+        reorderedPayload.put("context", Collections.singletonMap("loginAttempts", 3));
+        reorderedPayload.put("ip", "10.0.0.1");
+        reorderedPayload.put("username", "alice");
+
+        assertEquals(ChoreoResponseCache.getKey(CHOREO_URL, reorderedPayload),
+                ChoreoResponseCache.getKey(CHOREO_URL, payload));
+    }
+
+    @Test
+    public void testKeyTreatsEqualNumbersAlike() {
+
+        assertEquals(ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("score", 1.0)),
+                ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("score", 1)));
+        assertEquals(ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("score", 2.50)),
+                ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("score", 2.5f)));
+    }
+
+    @Test
+    public void testKeyDistinguishesPayloads() {
+
+        String key = ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("ip", "10.0.0.1"));
+
+        assertNotEquals(ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("ip", "10.0.0.2")), key);
+        assertNotEquals(ChoreoResponseCache.getKey(CHOREO_URL + "/v2", Collections.singletonMap("ip", "10.0.0.1")),
+                key);
+        assertNotEquals(ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("ip", "\"10.0.0.1\"")), key);
+        assertNotEquals(ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("ips",
+                Arrays.asList("10.0.0.1", "10.0.0.2"))), ChoreoResponseCache.getKey(CHOREO_URL,
+                Collections.singletonMap("ips", Arrays.asList("10.0.0.2", "10.0.0.1"))),
+                "The order of the elements of an array was ignored.");
+        assertNotEquals(ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("flag", "true")),
+                ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("flag", true)));
+    }
+
+    @Test
+    public void testCachedResponseIsServed() {
+
+        String key = ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("ip", "10.0.0.1"));
+        Map<String, Object> body = new HashMap<>();
+        body.put("riskScore", 1);
+
+        assertNull(responseCache.get(TENANT_DOMAIN, key));
+        responseCache.put(TENANT_DOMAIN, key, body, TIME_TO_LIVE);
+        Map<String, Object> cachedBody = responseCache.get(TENANT_DOMAIN, key);
+
+        assertEquals(cachedBody, body);
+        assertEquals(responseCache.getHitCount(), 1);
+        assertEquals(responseCache.getMissCount(), 1);
+    }
+
+    @Test
+    public void testCachedResponseIsCopied() {
+
+        String key = ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("ip", "10.0.0.1"));
+        Map<String, Object> body = new HashMap<>();
+        body.put("riskScore", 1);
+        responseCache.put(TENANT_DOMAIN, key, body, TIME_TO_LIVE);
+        body.put("riskScore", 2);
+
+        Map<String, Object> cachedBody = responseCache.get(TENANT_DOMAIN, key);
+        cachedBody.put("riskScore", 3);
+
+        assertEquals(responseCache.get(TENANT_DOMAIN, key), Collections.singletonMap("riskScore", 1),
+                "The cached response was modified through a body handed over to the caller.");
+        assertNotSame(responseCache.get(TENANT_DOMAIN, key), responseCache.get(TENANT_DOMAIN, key));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNestedValuesAreCopied() {
+
+        String key = ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("ip", "10.0.0.1"));
+        Map<String, Object> details = new HashMap<>();
+        details.put("level", "low");
+        List<Object> reasons = new ArrayList<>();
+        reasons.add("knownDevice");
+        Map<String, Object> body = new HashMap<>();
+        body.put("details", details);
+        body.put("reasons", reasons);
+        responseCache.put(TENANT_DOMAIN, key, body, TIME_TO_LIVE);
+        details.put("level", "high");
+        reasons.add("newLocation");
+
+        Map<String, Object> cachedBody = responseCache.get(TENANT_DOMAIN, key);
+        ((Map<String, Object>) cachedBody.get("details")).put("level", "medium");
+        ((List<Object>) cachedBody.get("reasons")).clear();
+
+        Map<String, Object> servedBody = responseCache.get(TENANT_DOMAIN, key);
+        assertEquals(servedBody.get("details"), Collections.singletonMap("level", "low"),
+                "A nested object of the cached response was shared with the caller.");
+        assertEquals(servedBody.get("reasons"), Collections.singletonList("knownDevice"),
+                "A nested array of the cached response was shared with the caller.");
+    }
+
+    @Test
+    public void testExpiredResponseIsNotServed() {
+
+        String key = ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("ip", "10.0.0.1"));
+        responseCache.put(TENANT_DOMAIN, key, Collections.singletonMap("riskScore", 1), 10);
+
+        time.addAndGet(9);
+        assertEquals(responseCache.get(TENANT_DOMAIN, key), Collections.singletonMap("riskScore", 1),
+                "The response was not served within its time to live.");
+        time.addAndGet(1);
+
+        assertNull(responseCache.get(TENANT_DOMAIN, key));
+        assertEquals(responseCache.getEntryCount(), 0, "The expired response was not removed.");
+    }
+
+    @Test
+    public void testResponsesAreIsolatedPerTenant() {
+
+        String key = ChoreoResponseCache.getKey(CHOREO_URL, Collections.singletonMap("ip", "10.0.0.1"));
+        responseCache.put(TENANT_DOMAIN, key, Collections.singletonMap("riskScore", 1), TIME_TO_LIVE);
+
+        assertNull(responseCache.get("wso2.com", key), "The response cached for a tenant was served to another.");
+
+        responseCache.clear(TENANT_DOMAIN);
+        assertNull(responseCache.get(TENANT_DOMAIN, key));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResponseIsEvicted() {
+
+        ChoreoResponseCache boundedCache = new ChoreoResponseCache(2);
+        try {
+            boundedCache.put(TENANT_DOMAIN, "1", Collections.singletonMap("riskScore", 1), TIME_TO_LIVE);
+            boundedCache.put(TENANT_DOMAIN, "2", Collections.singletonMap("riskScore", 2), TIME_TO_LIVE);
+            // Use the first response, so that the second one is the least recently used.
+            boundedCache.get(TENANT_DOMAIN, "1");
+            boundedCache.put(TENANT_DOMAIN, "3", Collections.singletonMap("riskScore", 3), TIME_TO_LIVE);
+
+            assertEquals(boundedCache.getEntryCount(), 2);
+            assertEquals(boundedCache.getEvictionCount(), 1);
+            assertNull(boundedCache.get(TENANT_DOMAIN, "2"));
+            assertEquals(boundedCache.get(TENANT_DOMAIN, "1"), Collections.singletonMap("riskScore", 1));
+        } finally {
+            boundedCache.close();
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+
+        ChoreoResponseCache disabledCache = new ChoreoResponseCache(0);
+        try {
+            disabledCache.put(TENANT_DOMAIN, "1", Collections.singletonMap("riskScore", 1), TIME_TO_LIVE);
+
+            assertFalse(disabledCache.isEnabled());
+            assertNull(disabledCache.get(TENANT_DOMAIN, "1"));
+        } finally {
+            disabledCache.close();
+        }
+        assertTrue(responseCache.isEnabled());
+    }
+
+    @Test
+    public void testNonPositiveTimeToLiveIsNotCached() {
+
+        responseCache.put(TENANT_DOMAIN, "1", Collections.singletonMap("riskScore", 1), 0);
+
+        assertEquals(responseCache.getEntryCount(), 0);
+    }
+}
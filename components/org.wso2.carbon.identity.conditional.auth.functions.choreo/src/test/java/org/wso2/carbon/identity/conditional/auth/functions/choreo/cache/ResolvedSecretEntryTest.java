@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.choreo.cache;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ResolvedSecretEntryTest {
+
+    private static final String SECRET_VALUE = "dummySecret";
+
+    @Test
+    public void testEntryWithinTimeToLiveIsNotExpired() {
+
+        ResolvedSecretEntry entry = new ResolvedSecretEntry(SECRET_VALUE,
+                System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(15));
+
+        assertFalse(entry.isExpired(), "The secret expired before its time to live.");
+        assertEquals(entry.getSecretValue(), SECRET_VALUE);
+    }
+
+    @Test
+    public void testEntryPastTimeToLiveIsExpired() {
+
+        assertTrue(new ResolvedSecretEntry(SECRET_VALUE, System.currentTimeMillis() - 1).isExpired());
+        assertTrue(new ResolvedSecretEntry(SECRET_VALUE, 0).isExpired());
+    }
+
+    @Test
+    public void testEntryIsSerializable() throws Exception {
+
+        // Cache entries are serialized when the cache is distributed across the nodes of a cluster.
+        long expiryTime = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(15);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ResolvedSecretEntry(SECRET_VALUE, expiryTime));
+        }
+
+        ResolvedSecretEntry entry;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            entry = (ResolvedSecretEntry) in.readObject();
+        }
+
+        assertEquals(entry.getSecretValue(), SECRET_VALUE);
+        assertFalse(entry.isExpired());
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.wso2.carbon.identity.conditional.auth.functions.common.internal;
 
+import org.wso2.carbon.identity.application.authentication.framework.JsFunctionRegistry;
 import org.wso2.carbon.identity.governance.IdentityGovernanceService;
 
 /**
@@ -27,6 +28,7 @@ public class FunctionsDataHolder {
 
     private static FunctionsDataHolder instance = new FunctionsDataHolder();
     private IdentityGovernanceService identityGovernanceService;
+    private JsFunctionRegistry jsFunctionRegistry;
 
     public static FunctionsDataHolder getInstance() {
 
@@ -42,4 +44,14 @@ public class FunctionsDataHolder {
 
         this.identityGovernanceService = identityGovernanceService;
     }
+
+    public JsFunctionRegistry getJsFunctionRegistry() {
+
+        return jsFunctionRegistry;
+    }
+
+    public void setJsFunctionRegistry(JsFunctionRegistry jsFunctionRegistry) {
+
+        this.jsFunctionRegistry = jsFunctionRegistry;
+    }
 }
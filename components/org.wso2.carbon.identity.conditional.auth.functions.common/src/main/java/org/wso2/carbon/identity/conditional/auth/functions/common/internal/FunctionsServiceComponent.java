@@ -20,10 +20,22 @@ package org.wso2.carbon.identity.conditional.auth.functions.common.internal;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
+import org.wso2.carbon.identity.application.authentication.framework.JsFunctionRegistry;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ExecuteParallelFunction;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ExecuteParallelFunctionImpl;
+import org.wso2.carbon.identity.conditional.auth.functions.common.token.TokenRefreshScheduler;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.CompletionExecutor;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.LogEventPublisher;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.RetryPolicy;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.SharedHttpTransport;
 import org.wso2.carbon.identity.governance.IdentityGovernanceService;
 
 @Component(
@@ -33,6 +45,31 @@ import org.wso2.carbon.identity.governance.IdentityGovernanceService;
 public class FunctionsServiceComponent {
 
     private static final Log LOG = LogFactory.getLog(FunctionsServiceComponent.class);
+    public static final String FUNC_EXECUTE_PARALLEL = "executeParallel";
+
+    @Activate
+    protected void activate(ComponentContext context) {
+
+        JsFunctionRegistry jsFunctionRegistry = FunctionsDataHolder.getInstance().getJsFunctionRegistry();
+        ExecuteParallelFunction executeParallel = new ExecuteParallelFunctionImpl();
+        jsFunctionRegistry.register(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_EXECUTE_PARALLEL,
+                executeParallel);
+    }
+
+    @Deactivate
+    protected void deactivate(ComponentContext context) {
+
+        JsFunctionRegistry jsFunctionRegistry = FunctionsDataHolder.getInstance().getJsFunctionRegistry();
+        if (jsFunctionRegistry != null) {
+            jsFunctionRegistry.deRegister(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_EXECUTE_PARALLEL);
+        }
+        LogEventPublisher.getInstance().shutdown();
+        SharedHttpTransport.getInstance().shutdown();
+        RetryPolicy.getInstance().shutdown();
+        TokenRefreshScheduler.shutdownScheduler();
+        Deadline.shutdown();
+        CompletionExecutor.getInstance().shutdown();
+    }
 
     @Reference(
             name = "identity.governance.service",
@@ -56,4 +93,20 @@ public class FunctionsServiceComponent {
         }
         FunctionsDataHolder.getInstance().setIdentityGovernanceService(null);
     }
+
+    @Reference(
+            service = JsFunctionRegistry.class,
+            cardinality = ReferenceCardinality.MANDATORY,
+            policy = ReferencePolicy.DYNAMIC,
+            unbind = "unsetJsFunctionRegistry"
+    )
+    public void setJsFunctionRegistry(JsFunctionRegistry jsFunctionRegistry) {
+
+        FunctionsDataHolder.getInstance().setJsFunctionRegistry(jsFunctionRegistry);
+    }
+
+    public void unsetJsFunctionRegistry(JsFunctionRegistry jsFunctionRegistry) {
+
+        FunctionsDataHolder.getInstance().setJsFunctionRegistry(null);
+    }
 }
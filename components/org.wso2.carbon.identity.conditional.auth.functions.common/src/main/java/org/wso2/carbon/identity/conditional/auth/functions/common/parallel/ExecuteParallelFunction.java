@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.parallel;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Function to execute several long wait functions at the same time, so that the authentication flow waits for the
+ * slowest of them instead of the sum of their latencies.
+ */
+@FunctionalInterface
+public interface ExecuteParallelFunction {
+
+    /**
+     * Execute the given calls in parallel and return their outcomes once all of them have completed.
+     * Each call is given as {@code {name: 'risk', function: 'httpGet', args: [url, headers]}}, where the arguments
+     * are the ones of the function without the event handlers. The event handlers receive a map with the outcome and
+     * the data of each call by its name. The outcome is success when all the calls succeed, and fail otherwise.
+     *
+     * @param calls         Calls to execute.
+     * @param eventHandlers Event handlers.
+     */
+    void executeParallel(List<Map<String, Object>> calls, Map<String, Object> eventHandlers);
+}
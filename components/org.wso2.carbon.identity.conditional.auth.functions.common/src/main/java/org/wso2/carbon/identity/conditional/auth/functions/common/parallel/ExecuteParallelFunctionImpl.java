@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.parallel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.graalvm.polyglot.HostAccess;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncCaller;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncProcess;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncReturn;
+import org.wso2.carbon.identity.application.authentication.framework.config.model.graph.JsGraphBuilder;
+import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
+import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_FAIL;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_SUCCESS;
+
+/**
+ * Implementation of {@link ExecuteParallelFunction}.
+ * All the calls are started by a single long wait process. The outcome of each call is recorded as it arrives, and
+ * the authentication flow is resumed once the last call has completed.
+ */
+public class ExecuteParallelFunctionImpl implements ExecuteParallelFunction {
+
+    private static final Log LOG = LogFactory.getLog(ExecuteParallelFunctionImpl.class);
+    private static final String CALL_NAME = "name";
+    private static final String CALL_FUNCTION = "function";
+    private static final String CALL_ARGUMENTS = "args";
+    private static final String RESULT_OUTCOME = "outcome";
+    private static final String RESULT_DATA = "data";
+
+    @Override
+    @HostAccess.Export
+    public void executeParallel(List<Map<String, Object>> calls, Map<String, Object> eventHandlers) {
+
+        if (calls == null || calls.isEmpty()) {
+            throw new IllegalArgumentException("At least one call is required to execute in parallel.");
+        }
+        List<String> callNames = new ArrayList<>(calls.size());
+        List<AsyncCaller> callers = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            Map<String, Object> call = calls.get(i);
+            Object name = call.get(CALL_NAME);
+            String callName = name != null ? String.valueOf(name) : String.valueOf(i);
+            if (callNames.contains(callName)) {
+                throw new IllegalArgumentException("Duplicate call name: " + callName);
+            }
+            Object functionName = call.get(CALL_FUNCTION);
+            ParallelCallFactory factory = functionName instanceof String ?
+                    ParallelCallRegistry.getInstance().getFactory((String) functionName) : null;
+            if (factory == null) {
+                throw new IllegalArgumentException("Function: " + functionName + " of call: " + callName +
+                        " cannot be executed in parallel.");
+            }
+            Object arguments = call.get(CALL_ARGUMENTS);
+            Object[] callArguments = arguments instanceof List ? ((List<?>) arguments).toArray() : new Object[0];
+            callNames.add(callName);
+            callers.add(factory.createCall(callArguments));
+        }
+
+        AsyncProcess asyncProcess = new AsyncProcess(new ParallelCaller(callNames, callers));
+        JsGraphBuilder.addLongWaitProcess(asyncProcess, eventHandlers);
+    }
+
+    /**
+     * Starts all the calls and returns their joined outcome once all of them have completed.
+     */
+    static class ParallelCaller implements AsyncCaller {
+
+        private final List<String> callNames;
+        private final List<AsyncCaller> callers;
+
+        ParallelCaller(List<String> callNames, List<AsyncCaller> callers) {
+
+            this.callNames = callNames;
+            this.callers = callers;
+        }
+
+        @Override
+        public void accept(AuthenticationContext context, AsyncReturn asyncReturn) throws FrameworkException {
+
+            AtomicReferenceArray<Map<String, Object>> results = new AtomicReferenceArray<>(callers.size());
+            AtomicInteger remainingCalls = new AtomicInteger(callers.size());
+            for (int i = 0; i < callers.size(); i++) {
+                int index = i;
+                // Some functions may report more than one outcome, e.g. once per failed host. Only the first one
+                // is recorded.
+                AsyncReturn callReturn = (authenticationContext, data, outcome) -> {
+                    Map<String, Object> result = new HashMap<>();
+                    result.put(RESULT_OUTCOME, outcome);
+                    result.put(RESULT_DATA, data != null ? data : Collections.emptyMap());
+                    if (results.compareAndSet(index, null, result) && remainingCalls.decrementAndGet() == 0) {
+                        complete(authenticationContext, results, asyncReturn);
+                    }
+                };
+                try {
+                    callers.get(i).accept(context, callReturn);
+                } catch (FrameworkException | RuntimeException e) {
+                    LOG.error("Error while starting the call: " + callNames.get(i) + " of parallel execution.", e);
+                    callReturn.accept(context, Collections.emptyMap(), OUTCOME_FAIL);
+                }
+            }
+        }
+
+        private void complete(AuthenticationContext context, AtomicReferenceArray<Map<String, Object>> results,
+                              AsyncReturn asyncReturn) throws FrameworkException {
+
+            Map<String, Object> joinedResults = new LinkedHashMap<>();
+            String outcome = OUTCOME_SUCCESS;
+            for (int i = 0; i < callNames.size(); i++) {
+                Map<String, Object> result = results.get(i);
+                if (!OUTCOME_SUCCESS.equals(result.get(RESULT_OUTCOME))) {
+                    outcome = OUTCOME_FAIL;
+                }
+                joinedResults.put(callNames.get(i), result);
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Parallel execution of " + callNames.size() + " calls completed with outcome: " + outcome);
+            }
+            asyncReturn.accept(context, joinedResults, outcome);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.parallel;
+
+import org.wso2.carbon.identity.application.authentication.framework.AsyncCaller;
+
+/**
+ * Creates the call of a long wait function, so that the call can be executed along with the calls of other long wait
+ * functions by {@link ExecuteParallelFunction}.
+ */
+@FunctionalInterface
+public interface ParallelCallFactory {
+
+    /**
+     * Create the call of the function with the given arguments. The arguments are the ones accepted by the function,
+     * without the event handlers. The arguments should be copied, as they may not be accessible once the script has
+     * been evaluated.
+     *
+     * @param arguments Arguments of the function.
+     * @return Call which starts the function and returns its outcome.
+     * @throws IllegalArgumentException If the arguments are not valid for the function.
+     */
+    AsyncCaller createCall(Object... arguments);
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.parallel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the long wait functions which can be executed in parallel by {@link ExecuteParallelFunction}.
+ * Functions are registered by name when their bundle is activated.
+ */
+public class ParallelCallRegistry {
+
+    private static final ParallelCallRegistry instance = new ParallelCallRegistry();
+
+    private final Map<String, ParallelCallFactory> factories = new ConcurrentHashMap<>();
+
+    private ParallelCallRegistry() {
+
+    }
+
+    public static ParallelCallRegistry getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Register a function which can be executed in parallel.
+     *
+     * @param functionName Name of the function as used in the authentication script.
+     * @param factory      Creates the calls of the function.
+     */
+    public void register(String functionName, ParallelCallFactory factory) {
+
+        factories.put(functionName, factory);
+    }
+
+    /**
+     * Remove a function registered to be executed in parallel.
+     *
+     * @param functionName Name of the function as used in the authentication script.
+     */
+    public void unregister(String functionName) {
+
+        factories.remove(functionName);
+    }
+
+    /**
+     * Get the factory of the calls of a function.
+     *
+     * @param functionName Name of the function as used in the authentication script.
+     * @return Factory of the calls of the function, or null if the function is not registered.
+     */
+    public ParallelCallFactory getFactory(String functionName) {
+
+        return factories.get(functionName);
+    }
+}
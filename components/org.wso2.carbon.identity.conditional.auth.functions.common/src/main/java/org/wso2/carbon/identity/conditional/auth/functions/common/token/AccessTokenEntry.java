@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.token;
+
+import java.io.Serializable;
+
+/**
+ * Cached access token along with the metadata resolved when the token was obtained.
+ * The expiry time is resolved once from the token response, so that checking the validity of a cached token does not
+ * require decoding the token. This also allows caching opaque access tokens.
+ */
+public class AccessTokenEntry implements Serializable {
+
+    private static final long serialVersionUID = -2476938264317703129L;
+
+    private final String accessToken;
+    private final long expiryTime;
+    private final String scope;
+
+    /**
+     * Create a cache entry for an access token.
+     *
+     * @param accessToken Access token.
+     * @param expiryTime  Expiry time of the access token in epoch milliseconds.
+     * @param scope       Scope the access token was issued for, if any.
+     */
+    public AccessTokenEntry(String accessToken, long expiryTime, String scope) {
+
+        this.accessToken = accessToken;
+        this.expiryTime = expiryTime;
+        this.scope = scope;
+    }
+
+    public String getAccessToken() {
+
+        return accessToken;
+    }
+
+    public long getExpiryTime() {
+
+        return expiryTime;
+    }
+
+    public String getScope() {
+
+        return scope;
+    }
+
+    /**
+     * Check whether the access token is expired.
+     *
+     * @return True if the expiry time of the access token has passed.
+     */
+    public boolean isExpired() {
+
+        return System.currentTimeMillis() >= expiryTime;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.token;
+
+import com.nimbusds.jwt.SignedJWT;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the expiry time of an access token received from a token endpoint, so that it can be cached as an
+ * {@link AccessTokenEntry}.
+ */
+public class TokenExpiryResolver {
+
+    private static final Log LOG = LogFactory.getLog(TokenExpiryResolver.class);
+
+    private TokenExpiryResolver() {
+
+    }
+
+    /**
+     * Resolve the expiry time of a received access token. The expiry is taken from the expires_in attribute of the
+     * token response, or from the exp claim when the access token is a JWT.
+     *
+     * @param accessToken Received access token.
+     * @param expiresIn   Value of the expires_in attribute of the token response, if any.
+     * @return Expiry time in epoch milliseconds, or -1 if the expiry could not be resolved.
+     */
+    public static long resolveExpiryTime(String accessToken, String expiresIn) {
+
+        try {
+            if (StringUtils.isNotBlank(expiresIn)) {
+                return System.currentTimeMillis() +
+                        TimeUnit.SECONDS.toMillis((long) Double.parseDouble(expiresIn.trim()));
+            }
+            Date expiryDate = SignedJWT.parse(accessToken).getJWTClaimsSet().getExpirationTime();
+            if (expiryDate != null) {
+                return expiryDate.getTime();
+            }
+        } catch (NumberFormatException | ParseException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Unable to resolve the expiry of the access token from the token response.", e);
+            }
+        }
+        return -1;
+    }
+}
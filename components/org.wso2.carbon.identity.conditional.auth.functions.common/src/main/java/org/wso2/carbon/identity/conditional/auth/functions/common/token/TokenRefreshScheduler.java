@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.token;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.MBeanRegistrar;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Renews cached access tokens in the background before they expire.
+ * Each token obtained from a token endpoint is tracked along with its expiry time, and a renewal is scheduled once
+ * the configured fraction of its lifetime has elapsed. Only tokens which have been used since they were obtained are
+ * renewed, so tokens of clients that are no longer invoked are left to expire.
+ */
+public class TokenRefreshScheduler implements TokenRefreshSchedulerMBean {
+
+    private static final Log LOG = LogFactory.getLog(TokenRefreshScheduler.class);
+    private static final String MBEAN_TYPE = "TokenRefresh";
+    private static final String THREAD_NAME_PREFIX = "adaptive-auth-token-refresh-";
+    private static final int SCHEDULER_THREAD_COUNT = 2;
+    private static final long MIN_RETRY_DELAY = 1000L;
+    private static volatile ScheduledExecutorService scheduler;
+
+    private final String name;
+    private final boolean enabled;
+    private final double lifetimeFraction;
+    private final ConcurrentMap<String, TrackedToken> trackedTokens = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong refreshFailureCount = new AtomicLong();
+    private final AtomicLong skippedRefreshCount = new AtomicLong();
+
+    /**
+     * Create a refresh scheduler and expose its statistics over JMX.
+     *
+     * @param name Name identifying the tokens tracked by this scheduler, used as the MBean name.
+     */
+    public TokenRefreshScheduler(String name) {
+
+        this(name, ConfigProvider.getInstance().isTokenRefreshAheadEnabled(),
+                ConfigProvider.getInstance().getTokenRefreshAheadLifetimeFraction());
+    }
+
+    TokenRefreshScheduler(String name, boolean enabled, double lifetimeFraction) {
+
+        this.name = name;
+        this.enabled = enabled;
+        this.lifetimeFraction = lifetimeFraction;
+        MBeanRegistrar.register(MBEAN_TYPE, name, this);
+    }
+
+    /**
+     * Track a newly obtained token and schedule its renewal.
+     *
+     * @param key        Key identifying the token.
+     * @param expiryTime Expiry time of the token in epoch milliseconds.
+     * @param refresher  Obtains a new token. The new token is expected to be tracked again once obtained.
+     */
+    public void track(String key, long expiryTime, Supplier<CompletableFuture<?>> refresher) {
+
+        if (!enabled) {
+            return;
+        }
+        long lifetime = expiryTime - System.currentTimeMillis();
+        if (lifetime <= 0) {
+            return;
+        }
+        TrackedToken trackedToken = new TrackedToken(expiryTime, refresher);
+        TrackedToken previous = trackedTokens.put(key, trackedToken);
+        if (previous != null) {
+            previous.cancel();
+        }
+        trackedToken.schedule(key, (long) (lifetime * lifetimeFraction));
+    }
+
+    /**
+     * Record that a cached token was served to a request, which makes the token eligible for renewal.
+     *
+     * @param key Key identifying the token.
+     */
+    public void recordHit(String key) {
+
+        hitCount.incrementAndGet();
+        TrackedToken trackedToken = trackedTokens.get(key);
+        if (trackedToken != null) {
+            trackedToken.accessed = true;
+        }
+    }
+
+    /**
+     * Record that a request could not be served with a cached token.
+     */
+    public void recordMiss() {
+
+        missCount.incrementAndGet();
+    }
+
+    /**
+     * Stop tracking a token, e.g. when the token has been rejected by the resource server.
+     *
+     * @param key Key identifying the token.
+     */
+    public void untrack(String key) {
+
+        TrackedToken trackedToken = trackedTokens.remove(key);
+        if (trackedToken != null) {
+            trackedToken.cancel();
+        }
+    }
+
+    /**
+     * Stop tracking all the tokens and remove the MBean of this scheduler.
+     */
+    public void shutdown() {
+
+        trackedTokens.values().forEach(TrackedToken::cancel);
+        trackedTokens.clear();
+        MBeanRegistrar.unregister(MBEAN_TYPE, name);
+    }
+
+    @Override
+    public long getHitCount() {
+
+        return hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+
+        return missCount.get();
+    }
+
+    @Override
+    public long getRefreshCount() {
+
+        return refreshCount.get();
+    }
+
+    @Override
+    public long getRefreshFailureCount() {
+
+        return refreshFailureCount.get();
+    }
+
+    @Override
+    public long getSkippedRefreshCount() {
+
+        return skippedRefreshCount.get();
+    }
+
+    @Override
+    public int getTrackedTokenCount() {
+
+        return trackedTokens.size();
+    }
+
+    private void refresh(String key, TrackedToken trackedToken) {
+
+        if (trackedTokens.get(key) != trackedToken) {
+            return;
+        }
+        if (!trackedToken.accessed) {
+            trackedTokens.remove(key, trackedToken);
+            skippedRefreshCount.incrementAndGet();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Access token is not used since it was obtained. Skipping the renewal of token: " + key);
+            }
+            return;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Renewing access token ahead of its expiry. Token: " + key);
+        }
+        CompletableFuture<?> renewal;
+        try {
+            renewal = trackedToken.refresher.get();
+        } catch (RuntimeException e) {
+            renewal = new CompletableFuture<>();
+            renewal.completeExceptionally(e);
+        }
+        renewal.whenComplete((result, error) -> {
+            if (error == null) {
+                refreshCount.incrementAndGet();
+                return;
+            }
+            refreshFailureCount.incrementAndGet();
+            LOG.warn("Failed to renew access token ahead of its expiry. Token: " + key, error);
+            // The current token is still valid. Try once more half way to its expiry, if there is time left.
+            long retryDelay = (trackedToken.expiryTime - System.currentTimeMillis()) / 2;
+            if (retryDelay >= MIN_RETRY_DELAY && trackedTokens.get(key) == trackedToken) {
+                trackedToken.schedule(key, retryDelay);
+            } else {
+                trackedTokens.remove(key, trackedToken);
+            }
+        });
+    }
+
+    /**
+     * Stop the scheduler shared by all the refresh schedulers. A new scheduler is started if a token is tracked
+     * afterwards.
+     */
+    public static void shutdownScheduler() {
+
+        ScheduledExecutorService executor;
+        synchronized (TokenRefreshScheduler.class) {
+            executor = scheduler;
+            scheduler = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ScheduledExecutorService getScheduler() {
+
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            synchronized (TokenRefreshScheduler.class) {
+                executor = scheduler;
+                if (executor == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    ScheduledThreadPoolExecutor threadPoolExecutor = new ScheduledThreadPoolExecutor(
+                            SCHEDULER_THREAD_COUNT, runnable -> {
+                                Thread thread = new Thread(runnable,
+                                        THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    threadPoolExecutor.setRemoveOnCancelPolicy(true);
+                    executor = threadPoolExecutor;
+                    scheduler = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * A token tracked for renewal.
+     */
+    private class TrackedToken {
+
+        private final long expiryTime;
+        private final Supplier<CompletableFuture<?>> refresher;
+        private volatile boolean accessed;
+        private volatile ScheduledFuture<?> scheduledRefresh;
+
+        private TrackedToken(long expiryTime, Supplier<CompletableFuture<?>> refresher) {
+
+            this.expiryTime = expiryTime;
+            this.refresher = refresher;
+        }
+
+        private void schedule(String key, long delay) {
+
+            scheduledRefresh = getScheduler().schedule(() -> refresh(key, this), delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void cancel() {
+
+            ScheduledFuture<?> refreshTask = scheduledRefresh;
+            if (refreshTask != null) {
+                refreshTask.cancel(false);
+            }
+        }
+    }
+}
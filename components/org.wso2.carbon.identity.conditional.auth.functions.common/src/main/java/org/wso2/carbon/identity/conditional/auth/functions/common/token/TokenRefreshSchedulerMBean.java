@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.token;
+
+/**
+ * JMX view of the statistics of a {@link TokenRefreshScheduler}.
+ */
+public interface TokenRefreshSchedulerMBean {
+
+    /**
+     * @return Number of requests served with a cached token.
+     */
+    long getHitCount();
+
+    /**
+     * @return Number of requests which had to obtain a token from the token endpoint.
+     */
+    long getMissCount();
+
+    /**
+     * @return Number of tokens renewed ahead of their expiry.
+     */
+    long getRefreshCount();
+
+    /**
+     * @return Number of failed renewal attempts.
+     */
+    long getRefreshFailureCount();
+
+    /**
+     * @return Number of renewals skipped as the token was not used since it was obtained.
+     */
+    long getSkippedRefreshCount();
+
+    /**
+     * @return Number of tokens currently tracked for renewal.
+     */
+    int getTrackedTokenCount();
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Resizes the per route connection limits of a pooled client of the {@link SharedHttpTransport} from the observed
+ * load of the routes.
+ * The connections needed by a route are estimated with Little's law, as the rate of the requests sent to the route
+ * multiplied by their mean latency, and are never less than the peak number of concurrent requests observed within
+ * the interval. The limit of the route is set to the estimate plus a headroom, within the configured floor and
+ * ceiling. Limits are raised at once so that a burst is not starved, and lowered by half the difference at a time so
+ * that a short lull does not shrink the pool of a busy route.
+ */
+class AdaptivePoolSizer {
+
+    private static final Log LOG = LogFactory.getLog(AdaptivePoolSizer.class);
+    private static final String HTTPS = "https";
+    private static final int HTTP_PORT = 80;
+    private static final int HTTPS_PORT = 443;
+    private static final double HEADROOM = 1.25;
+
+    private final String tlsProfile;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final int minConnectionsPerRoute;
+    private final int maxConnectionsPerRoute;
+    private final ConcurrentMap<HttpHost, RouteLoad> routeLoads = new ConcurrentHashMap<>();
+    private final AtomicLong resizeCount = new AtomicLong();
+    private final LongSupplier nanoClock;
+    private long lastResizeTime;
+
+    /**
+     * Create a sizer for the routes of a connection manager.
+     *
+     * @param tlsProfile             TLS profile of the pooled client, used for logging.
+     * @param connectionManager      Connection manager of the pooled client.
+     * @param minConnectionsPerRoute Floor of the connection limit of a route.
+     * @param maxConnectionsPerRoute Ceiling of the connection limit of a route.
+     */
+    AdaptivePoolSizer(String tlsProfile, PoolingNHttpClientConnectionManager connectionManager,
+                      int minConnectionsPerRoute, int maxConnectionsPerRoute) {
+
+        this(tlsProfile, connectionManager, minConnectionsPerRoute, maxConnectionsPerRoute, System::nanoTime);
+    }
+
+    AdaptivePoolSizer(String tlsProfile, PoolingNHttpClientConnectionManager connectionManager,
+                      int minConnectionsPerRoute, int maxConnectionsPerRoute, LongSupplier nanoClock) {
+
+        this.tlsProfile = tlsProfile;
+        this.connectionManager = connectionManager;
+        this.minConnectionsPerRoute = Math.max(1, Math.min(minConnectionsPerRoute, maxConnectionsPerRoute));
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.nanoClock = nanoClock;
+        this.lastResizeTime = nanoClock.getAsLong();
+    }
+
+    /**
+     * Record that a request is sent to a target.
+     *
+     * @param target Target host of the request.
+     * @return Load of the route of the request, to be notified once the request completes.
+     */
+    RouteLoad requestStarted(HttpHost target) {
+
+        RouteLoad routeLoad = routeLoads.computeIfAbsent(normalize(target), host -> new RouteLoad());
+        routeLoad.started();
+        return routeLoad;
+    }
+
+    /**
+     * Resize the connection limits of the routes from the load observed since the previous resize.
+     */
+    synchronized void resize() {
+
+        long now = nanoClock.getAsLong();
+        double intervalSeconds = (now - lastResizeTime) / (double) TimeUnit.SECONDS.toNanos(1);
+        lastResizeTime = now;
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            RouteLoad routeLoad = routeLoads.get(normalize(route.getTargetHost()));
+            if (routeLoad == null) {
+                continue;
+            }
+            int demand = routeLoad.drainDemand(intervalSeconds);
+            int target = Math.max(minConnectionsPerRoute,
+                    Math.min(maxConnectionsPerRoute, (int) Math.ceil(demand * HEADROOM)));
+            int current = connectionManager.getMaxPerRoute(route);
+            int resized = target >= current ? target : target + (current - target) / 2;
+            if (resized != current) {
+                connectionManager.setMaxPerRoute(route, resized);
+                resizeCount.incrementAndGet();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Resized the connection limit of route: " + route + " of TLS profile: " + tlsProfile +
+                            " from " + current + " to " + resized + ". Estimated demand: " + demand);
+                }
+            }
+            if (resized == minConnectionsPerRoute && routeLoad.isIdle()) {
+                // Forget routes which are no longer used. The limit of the route stays at the floor.
+                routeLoads.remove(normalize(route.getTargetHost()), routeLoad);
+            }
+        }
+    }
+
+    long getResizeCount() {
+
+        return resizeCount.get();
+    }
+
+    /**
+     * Get the utilization of the routes of the pooled client.
+     *
+     * @return Leased, pending and available connections, the limit, and the estimated demand of each route.
+     */
+    List<String> getRouteStats() {
+
+        List<String> routeStats = new ArrayList<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            PoolStats stats = connectionManager.getStats(route);
+            RouteLoad routeLoad = routeLoads.get(normalize(route.getTargetHost()));
+            routeStats.add(tlsProfile + " " + route + " [leased: " + stats.getLeased() + "; pending: " +
+                    stats.getPending() + "; available: " + stats.getAvailable() + "; max: " + stats.getMax() +
+                    "; demand: " + (routeLoad != null ? routeLoad.lastDemand : 0) + "]");
+        }
+        return routeStats;
+    }
+
+    /**
+     * Normalize a target host the way the route planner of the client does, so that the targets of the requests
+     * match the target hosts of the routes.
+     */
+    private static HttpHost normalize(HttpHost host) {
+
+        String scheme = host.getSchemeName().toLowerCase(Locale.ENGLISH);
+        int port = host.getPort() > 0 ? host.getPort() : (HTTPS.equals(scheme) ? HTTPS_PORT : HTTP_PORT);
+        return new HttpHost(host.getHostName().toLowerCase(Locale.ENGLISH), port, scheme);
+    }
+
+    /**
+     * Load of a route within the current resize interval.
+     */
+    static class RouteLoad {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peakInFlight = new AtomicInteger();
+        private final AtomicLong completedCount = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private volatile int lastDemand;
+
+        private void started() {
+
+            int current = inFlight.incrementAndGet();
+            int peak;
+            do {
+                peak = peakInFlight.get();
+            } while (current > peak && !peakInFlight.compareAndSet(peak, current));
+        }
+
+        /**
+         * Record that a request sent to the route has completed.
+         *
+         * @param latencyNanos Time taken from sending the request until it completed, in nanoseconds.
+         */
+        void completed(long latencyNanos) {
+
+            inFlight.decrementAndGet();
+            completedCount.incrementAndGet();
+            totalLatency.addAndGet(latencyNanos);
+        }
+
+        /**
+         * Estimate the connections needed by the route within the interval, and start a new interval.
+         */
+        private int drainDemand(double intervalSeconds) {
+
+            long completed = completedCount.getAndSet(0);
+            long latency = totalLatency.getAndSet(0);
+            int peak = peakInFlight.getAndSet(inFlight.get());
+            double arrivalRate = completed / intervalSeconds;
+            double meanLatencySeconds = completed > 0 ?
+                    latency / (double) completed / TimeUnit.SECONDS.toNanos(1) : 0;
+            int demand = Math.max(peak, (int) Math.ceil(arrivalRate * meanLatencySeconds));
+            lastDemand = demand;
+            return demand;
+        }
+
+        private boolean isIdle() {
+
+            return lastDemand == 0 && inFlight.get() == 0;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker guarding the calls made to an external endpoint.
+ * The outcomes of the most recent calls are kept in a sliding window. Once the rate of failed calls or the rate of
+ * slow calls in the window reaches the configured threshold, the breaker opens and calls are rejected without
+ * reaching the endpoint. After the configured wait duration a limited number of trial calls are let through
+ * (half open), which either close the breaker when all of them succeed, or open it again.
+ */
+public class CircuitBreaker {
+
+    private static final Log LOG = LogFactory.getLog(CircuitBreaker.class);
+    private static final int FAILED = 1;
+    private static final int SLOW = 2;
+
+    /**
+     * States of a circuit breaker.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallDurationThreshold;
+    private final int minimumNumberOfCalls;
+    private final long waitDurationInOpenState;
+    private final int permittedCallsInHalfOpenState;
+    private final int[] window;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private long openUntil;
+    private int windowIndex;
+    private int recordedCalls;
+    private int failedCalls;
+    private int slowCalls;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    /**
+     * Create a circuit breaker using the configured thresholds.
+     *
+     * @param name Name of the guarded endpoint, used in the logs.
+     */
+    public CircuitBreaker(String name) {
+
+        this(name, ConfigProvider.getInstance().getCircuitBreakerFailureRateThreshold(),
+                ConfigProvider.getInstance().getCircuitBreakerSlowCallRateThreshold(),
+                ConfigProvider.getInstance().getCircuitBreakerSlowCallDurationThreshold(),
+                ConfigProvider.getInstance().getCircuitBreakerMinimumNumberOfCalls(),
+                ConfigProvider.getInstance().getCircuitBreakerSlidingWindowSize(),
+                ConfigProvider.getInstance().getCircuitBreakerWaitDurationInOpenState(),
+                ConfigProvider.getInstance().getCircuitBreakerPermittedCallsInHalfOpenState(),
+                System::currentTimeMillis);
+    }
+
+    /**
+     * Create a circuit breaker using the given thresholds and clock.
+     *
+     * @param name                          Name of the guarded endpoint, used in the logs.
+     * @param failureRateThreshold          Percentage of failed calls in the window which opens the breaker.
+     * @param slowCallRateThreshold         Percentage of slow calls in the window which opens the breaker.
+     * @param slowCallDurationThreshold     Duration in milliseconds from which a call is considered slow.
+     * @param minimumNumberOfCalls          Number of calls to record before the rates are evaluated.
+     * @param slidingWindowSize             Number of the most recent calls kept in the window.
+     * @param waitDurationInOpenState       Time in milliseconds the breaker stays open.
+     * @param permittedCallsInHalfOpenState Number of trial calls permitted while the breaker is half open.
+     * @param clock                         Source of the current time in milliseconds.
+     */
+    CircuitBreaker(String name, int failureRateThreshold, int slowCallRateThreshold, long slowCallDurationThreshold,
+                   int minimumNumberOfCalls, int slidingWindowSize, long waitDurationInOpenState,
+                   int permittedCallsInHalfOpenState, LongSupplier clock) {
+
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationThreshold = slowCallDurationThreshold;
+        this.minimumNumberOfCalls = Math.max(1, minimumNumberOfCalls);
+        this.waitDurationInOpenState = waitDurationInOpenState;
+        this.permittedCallsInHalfOpenState = Math.max(1, permittedCallsInHalfOpenState);
+        this.window = new int[Math.max(this.minimumNumberOfCalls, slidingWindowSize)];
+        this.clock = clock;
+    }
+
+    /**
+     * Acquire the permission to make a call to the endpoint.
+     *
+     * @return Permit to be completed with the outcome of the call, or null if the call is rejected as the breaker
+     * is open.
+     */
+    public synchronized Permit tryAcquirePermission() {
+
+        if (state == State.OPEN) {
+            if (clock.getAsLong() < openUntil) {
+                return null;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= permittedCallsInHalfOpenState) {
+                return null;
+            }
+            halfOpenPermits++;
+        }
+        return new Permit(generation);
+    }
+
+    public synchronized State getState() {
+
+        return state;
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    private synchronized void onResult(Permit permit, boolean failed) {
+
+        // Calls permitted before the last state transition do not reflect the current state of the endpoint.
+        if (permit.generation != generation) {
+            return;
+        }
+        boolean slow = clock.getAsLong() - permit.startTime >= slowCallDurationThreshold;
+        if (state == State.HALF_OPEN) {
+            if (failed || slow) {
+                LOG.warn("Trial call to " + name + " failed. Opening the circuit breaker again for " +
+                        waitDurationInOpenState + " ms.");
+                transitionTo(State.OPEN);
+            } else if (++halfOpenSuccesses >= permittedCallsInHalfOpenState) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+
+        if (recordedCalls == window.length) {
+            int evicted = window[windowIndex];
+            failedCalls -= evicted & FAILED;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            recordedCalls++;
+        }
+        int outcome = (failed ? FAILED : 0) | (slow ? SLOW : 0);
+        window[windowIndex] = outcome;
+        windowIndex = (windowIndex + 1) % window.length;
+        failedCalls += outcome & FAILED;
+        slowCalls += (outcome & SLOW) >> 1;
+
+        if (recordedCalls >= minimumNumberOfCalls && (failedCalls * 100 >= failureRateThreshold * recordedCalls ||
+                slowCalls * 100 >= slowCallRateThreshold * recordedCalls)) {
+            LOG.warn("Opening the circuit breaker of " + name + " for " + waitDurationInOpenState +
+                    " ms. Failed calls: " + failedCalls + ", slow calls: " + slowCalls + " of the last " +
+                    recordedCalls + " calls.");
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private synchronized void onRelease(Permit permit) {
+
+        if (permit.generation == generation && state == State.HALF_OPEN) {
+            halfOpenPermits--;
+        }
+    }
+
+    private void transitionTo(State newState) {
+
+        if (newState == State.OPEN) {
+            openUntil = clock.getAsLong() + waitDurationInOpenState;
+        } else if (newState == State.CLOSED) {
+            LOG.info("Circuit breaker of " + name + " is closed.");
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Circuit breaker of " + name + " is half open. Permitting " + permittedCallsInHalfOpenState +
+                    " trial calls.");
+        }
+        state = newState;
+        generation++;
+        windowIndex = 0;
+        recordedCalls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+    }
+
+    /**
+     * Permission to make a single call, which should be completed with the outcome of the call.
+     */
+    public final class Permit {
+
+        private final long generation;
+        private final long startTime = clock.getAsLong();
+
+        private Permit(long generation) {
+
+            this.generation = generation;
+        }
+
+        /**
+         * Record that the call completed successfully.
+         */
+        public void onSuccess() {
+
+            onResult(this, false);
+        }
+
+        /**
+         * Record that the call failed due to an error of the endpoint.
+         */
+        public void onFailure() {
+
+            onResult(this, true);
+        }
+
+        /**
+         * Give up the permission without recording an outcome, e.g. when the call is cancelled.
+         */
+        public void release() {
+
+            onRelease(this);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.concurrent.FutureCallback;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the completions of outbound requests, such as parsing the response and resuming the authentication flow,
+ * off the I/O dispatcher threads of the non-blocking HTTP clients. Resuming a flow may block on the session and
+ * store operations of the framework, which would otherwise stall every connection served by the dispatcher thread.
+ * Completions are queued to a bounded pool. When the queue is full, the completion runs on the thread which
+ * submitted it, so that a completion is never lost and the I/O threads are slowed down instead of the queue growing
+ * without bound.
+ */
+public class CompletionExecutor implements Executor {
+
+    private static final String THREAD_NAME_PREFIX = "adaptive-auth-completion-";
+    private static final long KEEP_ALIVE_TIME = 60L;
+
+    private static final CompletionExecutor instance = new CompletionExecutor();
+
+    private final int threadCount;
+    private final int queueSize;
+    private volatile ThreadPoolExecutor executor;
+
+    private CompletionExecutor() {
+
+        this(ConfigProvider.getInstance().getCompletionThreadCount(),
+                ConfigProvider.getInstance().getCompletionQueueSize());
+    }
+
+    /**
+     * Create a completion executor.
+     *
+     * @param threadCount Maximum number of threads running completions. A non positive value uses twice the number
+     *                    of available processors.
+     * @param queueSize   Maximum number of completions waiting for a thread.
+     */
+    CompletionExecutor(int threadCount, int queueSize) {
+
+        this.threadCount = threadCount > 0 ? threadCount : 2 * Runtime.getRuntime().availableProcessors();
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    public static CompletionExecutor getInstance() {
+
+        return instance;
+    }
+
+    @Override
+    public void execute(Runnable completion) {
+
+        getExecutor().execute(completion);
+    }
+
+    /**
+     * Wrap the callback of a request so that it is notified through this executor instead of on the thread which
+     * completes the request.
+     *
+     * @param callback Callback of the request.
+     * @param <T>      Type of the result of the request.
+     * @return Callback handing the notifications over to this executor.
+     */
+    public <T> FutureCallback<T> dispatch(FutureCallback<T> callback) {
+
+        return new FutureCallback<T>() {
+
+            @Override
+            public void completed(T result) {
+
+                execute(() -> callback.completed(result));
+            }
+
+            @Override
+            public void failed(Exception e) {
+
+                execute(() -> callback.failed(e));
+            }
+
+            @Override
+            public void cancelled() {
+
+                execute(callback::cancelled);
+            }
+        };
+    }
+
+    /**
+     * Stop the threads of the executor once the queued completions have run. A new pool is started if a completion
+     * is submitted afterwards.
+     */
+    public void shutdown() {
+
+        ThreadPoolExecutor pool;
+        synchronized (this) {
+            pool = executor;
+            executor = null;
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+
+        ThreadPoolExecutor pool = executor;
+        if (pool == null) {
+            synchronized (this) {
+                pool = executor;
+                if (pool == null) {
+                    AtomicInteger threadNumber = new AtomicInteger();
+                    pool = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(queueSize), runnable -> {
+                                Thread thread = new Thread(runnable, THREAD_NAME_PREFIX +
+                                        threadNumber.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            },
+                            // Rejected completions, including the ones submitted while the pool is being shut down,
+                            // run on the submitting thread.
+                            (runnable, rejectingPool) -> runnable.run());
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                }
+            }
+        }
+        return pool;
+    }
+}
@@ -23,26 +23,193 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CALL_CHOREO_RESPONSE_CACHE_MAX_ENTRIES_PER_TENANT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CALL_CHOREO_SECRET_CACHE_TIMEOUT;
 import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CHOREO_DOMAINS;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CIRCUIT_BREAKER_ENABLE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CIRCUIT_BREAKER_MINIMUM_NUMBER_OF_CALLS;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CIRCUIT_BREAKER_PERMITTED_CALLS_IN_HALF_OPEN_STATE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CIRCUIT_BREAKER_SLIDING_WINDOW_SIZE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CIRCUIT_BREAKER_SLOW_CALL_DURATION_THRESHOLD;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CIRCUIT_BREAKER_WAIT_DURATION_IN_OPEN_STATE;
 import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CHOREO_TOKEN_ENDPOINT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CONNECTION_POOL_MAX_CONNECTIONS;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.CONNECTION_POOL_MAX_CONNECTIONS_PER_ROUTE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP2_ENABLE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP2_FALLBACK_TIMEOUT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP2_PRIOR_KNOWLEDGE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_COMPRESSION_DOMAINS;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_COMPRESSION_MIN_SIZE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_CONNECTION_EVICTION_INTERVAL;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_CONNECTION_IDLE_TIMEOUT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_CONNECTION_KEEP_ALIVE_TIMEOUT;
 import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_CONNECTION_REQUEST_TIMEOUT;
 import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_CONNECTION_TIMEOUT;
 import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_FUNCTION_ALLOWED_DOMAINS;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_HEDGING_BUDGET_PERCENTAGE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_HEDGING_DELAY;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_HEDGING_DOMAINS;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_HEDGING_ENABLE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_MAX_RESPONSE_SIZE;
 import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_READ_TIMEOUT;
 import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_REQUEST_RETRY_COUNT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_RESPONSE_CACHE_ENABLE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_RESPONSE_CACHE_MAX_ENTRIES_PER_TENANT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.HTTP_RESPONSE_CACHE_MAX_ENTRY_SIZE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.LOG_EVENTS_ASYNC_ENABLE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.LOG_EVENTS_BUFFER_SIZE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.LOG_EVENTS_FAILURE_SAMPLE_PERCENTAGE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.LOG_EVENTS_MAX_PER_SECOND;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.LOG_EVENTS_REQUEST_SAMPLE_PERCENTAGE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.LOG_EVENTS_RETRY_SAMPLE_PERCENTAGE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.LOG_EVENTS_SUCCESS_SAMPLE_PERCENTAGE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTBOUND_REQUEST_COMPLETION_QUEUE_SIZE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTBOUND_REQUEST_COMPLETION_THREAD_COUNT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTBOUND_REQUEST_FLOW_TIMEOUT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTBOUND_REQUEST_TIMEOUT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.PUBLISH_TO_ANALYTICS_BATCH_BUFFER_SIZE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.PUBLISH_TO_ANALYTICS_BATCH_ENABLE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.PUBLISH_TO_ANALYTICS_BATCH_FLUSH_INTERVAL;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.PUBLISH_TO_ANALYTICS_BATCH_MAX_SIZE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.PUBLISH_TO_ANALYTICS_BATCH_OVERFLOW_POLICY;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.RETRY_BUDGET_MIN_RETRIES_PER_SECOND;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.RETRY_BUDGET_PERCENTAGE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.RETRY_DEADLINE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.RETRY_INITIAL_BACKOFF;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.RETRY_MAX_BACKOFF;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_ENABLE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_INTERVAL;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_MIN_CONNECTIONS_PER_ROUTE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.SHARED_HTTP_TRANSPORT_IO_THREAD_COUNT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.SHARED_HTTP_TRANSPORT_MAX_CONNECTIONS;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.SHARED_HTTP_TRANSPORT_MAX_CONNECTIONS_PER_ROUTE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.SHARED_HTTP_TRANSPORT_TENANT_IDLE_TIMEOUT;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.TOKEN_REFRESH_AHEAD_ENABLE;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.TOKEN_REFRESH_AHEAD_LIFETIME_FRACTION;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.TOKEN_REQUEST_FAILURE_CACHE_TIMEOUT;
 
 public class ConfigProvider {
 
     private static final Log LOG = LogFactory.getLog(ConfigProvider.class);
+    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+    private static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 60000;
+    private static final int DEFAULT_CONNECTION_IDLE_TIMEOUT = 30000;
+    private static final int DEFAULT_CONNECTION_EVICTION_INTERVAL = 5000;
+    private static final int DEFAULT_TOKEN_REQUEST_FAILURE_CACHE_TIMEOUT = 2000;
+    private static final double DEFAULT_TOKEN_REFRESH_AHEAD_LIFETIME_FRACTION = 0.8;
+    private static final int DEFAULT_HTTP_RESPONSE_CACHE_MAX_ENTRIES_PER_TENANT = 1000;
+    private static final int DEFAULT_HTTP_RESPONSE_CACHE_MAX_ENTRY_SIZE = 65536;
+    private static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD = 50;
+    private static final int DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD = 80;
+    private static final int DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_DURATION_THRESHOLD = 3000;
+    private static final int DEFAULT_CIRCUIT_BREAKER_MINIMUM_NUMBER_OF_CALLS = 10;
+    private static final int DEFAULT_CIRCUIT_BREAKER_SLIDING_WINDOW_SIZE = 20;
+    private static final int DEFAULT_CIRCUIT_BREAKER_WAIT_DURATION_IN_OPEN_STATE = 30000;
+    private static final int DEFAULT_CIRCUIT_BREAKER_PERMITTED_CALLS_IN_HALF_OPEN_STATE = 3;
+    private static final int DEFAULT_RETRY_INITIAL_BACKOFF = 100;
+    private static final int DEFAULT_RETRY_MAX_BACKOFF = 2000;
+    private static final int DEFAULT_RETRY_BUDGET_PERCENTAGE = 10;
+    private static final int DEFAULT_RETRY_BUDGET_MIN_RETRIES_PER_SECOND = 1;
+    private static final int DEFAULT_RETRY_DEADLINE = 15000;
+    private static final int DEFAULT_MAX_RESPONSE_SIZE = 1048576;
+    private static final int DEFAULT_HTTP_HEDGING_DELAY = 0;
+    private static final int DEFAULT_HTTP_HEDGING_BUDGET_PERCENTAGE = 5;
+    private static final int DEFAULT_OUTBOUND_REQUEST_TIMEOUT = 0;
+    private static final int DEFAULT_OUTBOUND_REQUEST_FLOW_TIMEOUT = 0;
+    private static final int DEFAULT_OUTBOUND_REQUEST_COMPLETION_THREAD_COUNT = 0;
+    private static final int DEFAULT_OUTBOUND_REQUEST_COMPLETION_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_HTTP_COMPRESSION_MIN_SIZE = 1024;
+    private static final int DEFAULT_LOG_EVENTS_BUFFER_SIZE = 8192;
+    private static final int DEFAULT_LOG_EVENTS_SUCCESS_SAMPLE_PERCENTAGE = 100;
+    private static final int DEFAULT_LOG_EVENTS_FAILURE_SAMPLE_PERCENTAGE = 100;
+    private static final int DEFAULT_LOG_EVENTS_RETRY_SAMPLE_PERCENTAGE = 100;
+    private static final int DEFAULT_LOG_EVENTS_MAX_PER_SECOND = 0;
+    private static final int DEFAULT_LOG_EVENTS_REQUEST_SAMPLE_PERCENTAGE = 100;
+    private static final int DEFAULT_SHARED_HTTP_TRANSPORT_IO_THREAD_COUNT = 0;
+    private static final int DEFAULT_SHARED_HTTP_TRANSPORT_MAX_CONNECTIONS = 500;
+    private static final int DEFAULT_SHARED_HTTP_TRANSPORT_MAX_CONNECTIONS_PER_ROUTE = 200;
+    private static final int DEFAULT_SHARED_HTTP_TRANSPORT_TENANT_IDLE_TIMEOUT = 1800000;
+    private static final int DEFAULT_CALL_CHOREO_SECRET_CACHE_TIMEOUT = 900000;
+    private static final int DEFAULT_CALL_CHOREO_RESPONSE_CACHE_MAX_ENTRIES_PER_TENANT = 1000;
+    private static final int DEFAULT_SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_MIN_CONNECTIONS_PER_ROUTE = 4;
+    private static final int DEFAULT_SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_INTERVAL = 10000;
+    private static final int DEFAULT_PUBLISH_TO_ANALYTICS_BATCH_BUFFER_SIZE = 4096;
+    private static final int DEFAULT_PUBLISH_TO_ANALYTICS_BATCH_MAX_SIZE = 100;
+    private static final int DEFAULT_PUBLISH_TO_ANALYTICS_BATCH_FLUSH_INTERVAL = 1000;
+    private static final int DEFAULT_HTTP2_FALLBACK_TIMEOUT = 600000;
 
     private int connectionTimeout;
     private int readTimeout;
     private int connectionRequestTimeout;
     private int requestRetryCount = 2;
-    private List<String> httpFunctionAllowedDomainList = new ArrayList<>();
-    private List<String> choreoDomainList = new ArrayList<>();
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final int connectionKeepAliveTimeout;
+    private final int connectionIdleTimeout;
+    private final int connectionEvictionInterval;
+    private final int tokenRequestFailureCacheTimeout;
+    private final boolean tokenRefreshAheadEnabled;
+    private double tokenRefreshAheadLifetimeFraction = DEFAULT_TOKEN_REFRESH_AHEAD_LIFETIME_FRACTION;
+    private final boolean httpResponseCacheEnabled;
+    private final int httpResponseCacheMaxEntriesPerTenant;
+    private final int httpResponseCacheMaxEntrySize;
+    private final boolean circuitBreakerEnabled;
+    private final int circuitBreakerFailureRateThreshold;
+    private final int circuitBreakerSlowCallRateThreshold;
+    private final int circuitBreakerSlowCallDurationThreshold;
+    private final int circuitBreakerMinimumNumberOfCalls;
+    private final int circuitBreakerSlidingWindowSize;
+    private final int circuitBreakerWaitDurationInOpenState;
+    private final int circuitBreakerPermittedCallsInHalfOpenState;
+    private final int retryInitialBackoff;
+    private final int retryMaxBackoff;
+    private final int retryBudgetPercentage;
+    private final int retryBudgetMinRetriesPerSecond;
+    private final int retryDeadline;
+    private final int maxResponseSize;
+    private final boolean httpHedgingEnabled;
+    private final int httpHedgingDelay;
+    private final int httpHedgingBudgetPercentage;
+    private final int outboundRequestTimeout;
+    private final int outboundRequestFlowTimeout;
+    private final int completionThreadCount;
+    private final int completionQueueSize;
+    private final boolean http2Enabled;
+    private final boolean http2PriorKnowledge;
+    private final int http2FallbackTimeout;
+    private final int compressionMinSize;
+    private final boolean logEventsAsyncEnabled;
+    private final int logEventsBufferSize;
+    private final int logEventsSuccessSamplePercentage;
+    private final int logEventsFailureSamplePercentage;
+    private final int logEventsRetrySamplePercentage;
+    private final int logEventsMaxPerSecond;
+    private final int logEventsRequestSamplePercentage;
+    private final int sharedTransportIoThreadCount;
+    private final int sharedTransportMaxConnections;
+    private final int sharedTransportMaxConnectionsPerRoute;
+    private final int sharedTransportTenantIdleTimeout;
+    private final int choreoSecretCacheTimeout;
+    private final int choreoResponseCacheMaxEntriesPerTenant;
+    private final boolean sharedTransportAdaptivePoolSizingEnabled;
+    private final int sharedTransportMinConnectionsPerRoute;
+    private final int sharedTransportPoolSizingInterval;
+    private final boolean publishToAnalyticsBatchEnabled;
+    private final int publishToAnalyticsBatchBufferSize;
+    private final int publishToAnalyticsBatchMaxSize;
+    private final int publishToAnalyticsBatchFlushInterval;
+    private final String publishToAnalyticsBatchOverflowPolicy;
+    private volatile List<String> httpFunctionAllowedDomainList = Collections.emptyList();
+    private volatile List<String> choreoDomainList = Collections.emptyList();
+    private volatile DomainAllowlist httpFunctionDomainAllowlist;
+    private volatile DomainAllowlist choreoDomainAllowlist;
+    private volatile DomainAllowlist compressionDomainAllowlist;
+    private final DomainAllowlist hedgingDomainAllowlist;
     private final String choreoTokenEndpoint;
 
     private static ConfigProvider instance = new ConfigProvider();
@@ -56,8 +223,104 @@ public class ConfigProvider {
         String requestRetryCountString = IdentityUtil.getProperty(HTTP_REQUEST_RETRY_COUNT);
         List<String> httpFunctionAllowedDomainList = IdentityUtil.getPropertyAsList(HTTP_FUNCTION_ALLOWED_DOMAINS);
         List<String> choreoDomainList = IdentityUtil.getPropertyAsList(CHOREO_DOMAINS);
+        List<String> compressionDomainList = IdentityUtil.getPropertyAsList(HTTP_COMPRESSION_DOMAINS);
+        List<String> hedgingDomainList = IdentityUtil.getPropertyAsList(HTTP_HEDGING_DOMAINS);
 
         this.choreoTokenEndpoint = IdentityUtil.getProperty(CHOREO_TOKEN_ENDPOINT);
+        this.maxConnections = getIntProperty(CONNECTION_POOL_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+        this.maxConnectionsPerRoute = getIntProperty(CONNECTION_POOL_MAX_CONNECTIONS_PER_ROUTE,
+                DEFAULT_MAX_CONNECTIONS);
+        this.connectionKeepAliveTimeout = getIntProperty(HTTP_CONNECTION_KEEP_ALIVE_TIMEOUT,
+                DEFAULT_KEEP_ALIVE_TIMEOUT);
+        this.connectionIdleTimeout = getIntProperty(HTTP_CONNECTION_IDLE_TIMEOUT, DEFAULT_CONNECTION_IDLE_TIMEOUT);
+        this.connectionEvictionInterval = getIntProperty(HTTP_CONNECTION_EVICTION_INTERVAL,
+                DEFAULT_CONNECTION_EVICTION_INTERVAL);
+        this.tokenRequestFailureCacheTimeout = getIntProperty(TOKEN_REQUEST_FAILURE_CACHE_TIMEOUT,
+                DEFAULT_TOKEN_REQUEST_FAILURE_CACHE_TIMEOUT);
+        this.tokenRefreshAheadEnabled = Boolean.parseBoolean(IdentityUtil.getProperty(TOKEN_REFRESH_AHEAD_ENABLE));
+        this.httpResponseCacheEnabled = Boolean.parseBoolean(IdentityUtil.getProperty(HTTP_RESPONSE_CACHE_ENABLE));
+        this.httpResponseCacheMaxEntriesPerTenant = getIntProperty(HTTP_RESPONSE_CACHE_MAX_ENTRIES_PER_TENANT,
+                DEFAULT_HTTP_RESPONSE_CACHE_MAX_ENTRIES_PER_TENANT);
+        this.httpResponseCacheMaxEntrySize = getIntProperty(HTTP_RESPONSE_CACHE_MAX_ENTRY_SIZE,
+                DEFAULT_HTTP_RESPONSE_CACHE_MAX_ENTRY_SIZE);
+        this.circuitBreakerEnabled = Boolean.parseBoolean(IdentityUtil.getProperty(CIRCUIT_BREAKER_ENABLE));
+        this.circuitBreakerFailureRateThreshold = getIntProperty(CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD,
+                DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD);
+        this.circuitBreakerSlowCallRateThreshold = getIntProperty(CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD,
+                DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD);
+        this.circuitBreakerSlowCallDurationThreshold = getIntProperty(CIRCUIT_BREAKER_SLOW_CALL_DURATION_THRESHOLD,
+                DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_DURATION_THRESHOLD);
+        this.circuitBreakerMinimumNumberOfCalls = getIntProperty(CIRCUIT_BREAKER_MINIMUM_NUMBER_OF_CALLS,
+                DEFAULT_CIRCUIT_BREAKER_MINIMUM_NUMBER_OF_CALLS);
+        this.circuitBreakerSlidingWindowSize = getIntProperty(CIRCUIT_BREAKER_SLIDING_WINDOW_SIZE,
+                DEFAULT_CIRCUIT_BREAKER_SLIDING_WINDOW_SIZE);
+        this.circuitBreakerWaitDurationInOpenState = getIntProperty(CIRCUIT_BREAKER_WAIT_DURATION_IN_OPEN_STATE,
+                DEFAULT_CIRCUIT_BREAKER_WAIT_DURATION_IN_OPEN_STATE);
+        this.circuitBreakerPermittedCallsInHalfOpenState = getIntProperty(
+                CIRCUIT_BREAKER_PERMITTED_CALLS_IN_HALF_OPEN_STATE,
+                DEFAULT_CIRCUIT_BREAKER_PERMITTED_CALLS_IN_HALF_OPEN_STATE);
+        this.retryInitialBackoff = getIntProperty(RETRY_INITIAL_BACKOFF, DEFAULT_RETRY_INITIAL_BACKOFF);
+        this.retryMaxBackoff = getIntProperty(RETRY_MAX_BACKOFF, DEFAULT_RETRY_MAX_BACKOFF);
+        this.retryBudgetPercentage = getIntProperty(RETRY_BUDGET_PERCENTAGE, DEFAULT_RETRY_BUDGET_PERCENTAGE);
+        this.retryBudgetMinRetriesPerSecond = getIntProperty(RETRY_BUDGET_MIN_RETRIES_PER_SECOND,
+                DEFAULT_RETRY_BUDGET_MIN_RETRIES_PER_SECOND);
+        this.retryDeadline = getIntProperty(RETRY_DEADLINE, DEFAULT_RETRY_DEADLINE);
+        this.maxResponseSize = getIntProperty(HTTP_MAX_RESPONSE_SIZE, DEFAULT_MAX_RESPONSE_SIZE);
+        this.httpHedgingEnabled = Boolean.parseBoolean(IdentityUtil.getProperty(HTTP_HEDGING_ENABLE));
+        this.httpHedgingDelay = getIntProperty(HTTP_HEDGING_DELAY, DEFAULT_HTTP_HEDGING_DELAY);
+        this.httpHedgingBudgetPercentage = getIntProperty(HTTP_HEDGING_BUDGET_PERCENTAGE,
+                DEFAULT_HTTP_HEDGING_BUDGET_PERCENTAGE);
+        this.outboundRequestTimeout = getIntProperty(OUTBOUND_REQUEST_TIMEOUT, DEFAULT_OUTBOUND_REQUEST_TIMEOUT);
+        this.outboundRequestFlowTimeout = getIntProperty(OUTBOUND_REQUEST_FLOW_TIMEOUT,
+                DEFAULT_OUTBOUND_REQUEST_FLOW_TIMEOUT);
+        this.completionThreadCount = getIntProperty(OUTBOUND_REQUEST_COMPLETION_THREAD_COUNT,
+                DEFAULT_OUTBOUND_REQUEST_COMPLETION_THREAD_COUNT);
+        this.completionQueueSize = getIntProperty(OUTBOUND_REQUEST_COMPLETION_QUEUE_SIZE,
+                DEFAULT_OUTBOUND_REQUEST_COMPLETION_QUEUE_SIZE);
+        this.http2Enabled = Boolean.parseBoolean(IdentityUtil.getProperty(HTTP2_ENABLE));
+        this.http2PriorKnowledge = Boolean.parseBoolean(IdentityUtil.getProperty(HTTP2_PRIOR_KNOWLEDGE));
+        this.http2FallbackTimeout = getIntProperty(HTTP2_FALLBACK_TIMEOUT, DEFAULT_HTTP2_FALLBACK_TIMEOUT);
+        this.compressionMinSize = getIntProperty(HTTP_COMPRESSION_MIN_SIZE, DEFAULT_HTTP_COMPRESSION_MIN_SIZE);
+        this.logEventsAsyncEnabled = Boolean.parseBoolean(IdentityUtil.getProperty(LOG_EVENTS_ASYNC_ENABLE));
+        this.logEventsBufferSize = getIntProperty(LOG_EVENTS_BUFFER_SIZE, DEFAULT_LOG_EVENTS_BUFFER_SIZE);
+        this.logEventsSuccessSamplePercentage = getIntProperty(LOG_EVENTS_SUCCESS_SAMPLE_PERCENTAGE,
+                DEFAULT_LOG_EVENTS_SUCCESS_SAMPLE_PERCENTAGE);
+        this.logEventsFailureSamplePercentage = getIntProperty(LOG_EVENTS_FAILURE_SAMPLE_PERCENTAGE,
+                DEFAULT_LOG_EVENTS_FAILURE_SAMPLE_PERCENTAGE);
+        this.logEventsRetrySamplePercentage = getIntProperty(LOG_EVENTS_RETRY_SAMPLE_PERCENTAGE,
+                DEFAULT_LOG_EVENTS_RETRY_SAMPLE_PERCENTAGE);
+        this.logEventsMaxPerSecond = getIntProperty(LOG_EVENTS_MAX_PER_SECOND, DEFAULT_LOG_EVENTS_MAX_PER_SECOND);
+        this.logEventsRequestSamplePercentage = getIntProperty(LOG_EVENTS_REQUEST_SAMPLE_PERCENTAGE,
+                DEFAULT_LOG_EVENTS_REQUEST_SAMPLE_PERCENTAGE);
+        this.sharedTransportIoThreadCount = getIntProperty(SHARED_HTTP_TRANSPORT_IO_THREAD_COUNT,
+                DEFAULT_SHARED_HTTP_TRANSPORT_IO_THREAD_COUNT);
+        this.sharedTransportMaxConnections = getIntProperty(SHARED_HTTP_TRANSPORT_MAX_CONNECTIONS,
+                DEFAULT_SHARED_HTTP_TRANSPORT_MAX_CONNECTIONS);
+        this.sharedTransportMaxConnectionsPerRoute = getIntProperty(SHARED_HTTP_TRANSPORT_MAX_CONNECTIONS_PER_ROUTE,
+                DEFAULT_SHARED_HTTP_TRANSPORT_MAX_CONNECTIONS_PER_ROUTE);
+        this.sharedTransportTenantIdleTimeout = getIntProperty(SHARED_HTTP_TRANSPORT_TENANT_IDLE_TIMEOUT,
+                DEFAULT_SHARED_HTTP_TRANSPORT_TENANT_IDLE_TIMEOUT);
+        this.choreoSecretCacheTimeout = getIntProperty(CALL_CHOREO_SECRET_CACHE_TIMEOUT,
+                DEFAULT_CALL_CHOREO_SECRET_CACHE_TIMEOUT);
+        this.choreoResponseCacheMaxEntriesPerTenant = getIntProperty(CALL_CHOREO_RESPONSE_CACHE_MAX_ENTRIES_PER_TENANT,
+                DEFAULT_CALL_CHOREO_RESPONSE_CACHE_MAX_ENTRIES_PER_TENANT);
+        this.sharedTransportAdaptivePoolSizingEnabled = Boolean.parseBoolean(
+                IdentityUtil.getProperty(SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_ENABLE));
+        this.sharedTransportMinConnectionsPerRoute = getIntProperty(
+                SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_MIN_CONNECTIONS_PER_ROUTE,
+                DEFAULT_SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_MIN_CONNECTIONS_PER_ROUTE);
+        this.sharedTransportPoolSizingInterval = getIntProperty(SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_INTERVAL,
+                DEFAULT_SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_INTERVAL);
+        this.publishToAnalyticsBatchEnabled = Boolean.parseBoolean(
+                IdentityUtil.getProperty(PUBLISH_TO_ANALYTICS_BATCH_ENABLE));
+        this.publishToAnalyticsBatchBufferSize = getIntProperty(PUBLISH_TO_ANALYTICS_BATCH_BUFFER_SIZE,
+                DEFAULT_PUBLISH_TO_ANALYTICS_BATCH_BUFFER_SIZE);
+        this.publishToAnalyticsBatchMaxSize = getIntProperty(PUBLISH_TO_ANALYTICS_BATCH_MAX_SIZE,
+                DEFAULT_PUBLISH_TO_ANALYTICS_BATCH_MAX_SIZE);
+        this.publishToAnalyticsBatchFlushInterval = getIntProperty(PUBLISH_TO_ANALYTICS_BATCH_FLUSH_INTERVAL,
+                DEFAULT_PUBLISH_TO_ANALYTICS_BATCH_FLUSH_INTERVAL);
+        this.publishToAnalyticsBatchOverflowPolicy =
+                IdentityUtil.getProperty(PUBLISH_TO_ANALYTICS_BATCH_OVERFLOW_POLICY);
         connectionTimeout = defaultTimeout;
         readTimeout = defaultTimeout;
         connectionRequestTimeout = defaultTimeout;
@@ -93,8 +356,25 @@ public class ConfigProvider {
             }
         }
 
+        String tokenRefreshAheadLifetimeFractionString =
+                IdentityUtil.getProperty(TOKEN_REFRESH_AHEAD_LIFETIME_FRACTION);
+        if (tokenRefreshAheadLifetimeFractionString != null) {
+            try {
+                double fraction = Double.parseDouble(tokenRefreshAheadLifetimeFractionString.trim());
+                if (fraction > 0 && fraction < 1) {
+                    tokenRefreshAheadLifetimeFraction = fraction;
+                } else {
+                    LOG.error("Token refresh ahead lifetime fraction should be between 0 and 1 : " +
+                            tokenRefreshAheadLifetimeFractionString);
+                }
+            } catch (NumberFormatException e) {
+                LOG.error("Error while parsing token refresh ahead lifetime fraction : " +
+                        tokenRefreshAheadLifetimeFractionString, e);
+            }
+        }
+
         if (httpFunctionAllowedDomainList != null) {
-            this.httpFunctionAllowedDomainList = httpFunctionAllowedDomainList;
+            this.httpFunctionAllowedDomainList = Collections.unmodifiableList(httpFunctionAllowedDomainList);
         }
         if (this.httpFunctionAllowedDomainList.isEmpty() && LOG.isDebugEnabled()) {
             LOG.debug("Allowed domains for http functions are not configured therefore domain restriction is " +
@@ -103,12 +383,41 @@ public class ConfigProvider {
         }
 
         if (choreoDomainList != null) {
-            this.choreoDomainList = choreoDomainList;
+            this.choreoDomainList = Collections.unmodifiableList(choreoDomainList);
         }
         if (this.choreoDomainList.isEmpty() && LOG.isDebugEnabled()) {
             LOG.debug("Choreo domain list used by the callChore function is not configured therefore domain" +
                     " restriction is turned off for callChoreo function.");
         }
+        this.httpFunctionDomainAllowlist = DomainAllowlist.compile(this.httpFunctionAllowedDomainList);
+        this.choreoDomainAllowlist = DomainAllowlist.compile(this.choreoDomainList);
+        this.compressionDomainAllowlist = DomainAllowlist.compile(compressionDomainList != null ?
+                compressionDomainList : new ArrayList<>());
+        this.hedgingDomainAllowlist = DomainAllowlist.compile(hedgingDomainList != null ?
+                hedgingDomainList : new ArrayList<>());
+    }
+
+    /**
+     * Read an integer property from the identity configuration, falling back to the given default when the
+     * property is not set or cannot be parsed.
+     *
+     * @param key          Property key.
+     * @param defaultValue Value to use when the property is absent or invalid.
+     * @return Resolved property value.
+     */
+    private static int getIntProperty(String key, int defaultValue) {
+
+        String value = IdentityUtil.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.error("Error while parsing " + key + " : " + value + ". Proceeding with default value: " +
+                    defaultValue, e);
+            return defaultValue;
+        }
     }
 
     public static ConfigProvider getInstance() {
@@ -136,16 +445,384 @@ public class ConfigProvider {
         return requestRetryCount;
     }
 
+    public int getMaxConnections() {
+
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+
+        return maxConnectionsPerRoute;
+    }
+
+    public int getConnectionKeepAliveTimeout() {
+
+        return connectionKeepAliveTimeout;
+    }
+
+    public int getConnectionIdleTimeout() {
+
+        return connectionIdleTimeout;
+    }
+
+    public int getConnectionEvictionInterval() {
+
+        return connectionEvictionInterval;
+    }
+
+    public int getTokenRequestFailureCacheTimeout() {
+
+        return tokenRequestFailureCacheTimeout;
+    }
+
+    public boolean isTokenRefreshAheadEnabled() {
+
+        return tokenRefreshAheadEnabled;
+    }
+
+    public double getTokenRefreshAheadLifetimeFraction() {
+
+        return tokenRefreshAheadLifetimeFraction;
+    }
+
+    public boolean isHttpResponseCacheEnabled() {
+
+        return httpResponseCacheEnabled;
+    }
+
+    public int getHttpResponseCacheMaxEntriesPerTenant() {
+
+        return httpResponseCacheMaxEntriesPerTenant;
+    }
+
+    public int getHttpResponseCacheMaxEntrySize() {
+
+        return httpResponseCacheMaxEntrySize;
+    }
+
+    public boolean isCircuitBreakerEnabled() {
+
+        return circuitBreakerEnabled;
+    }
+
+    public int getCircuitBreakerFailureRateThreshold() {
+
+        return circuitBreakerFailureRateThreshold;
+    }
+
+    public int getCircuitBreakerSlowCallRateThreshold() {
+
+        return circuitBreakerSlowCallRateThreshold;
+    }
+
+    public int getCircuitBreakerSlowCallDurationThreshold() {
+
+        return circuitBreakerSlowCallDurationThreshold;
+    }
+
+    public int getCircuitBreakerMinimumNumberOfCalls() {
+
+        return circuitBreakerMinimumNumberOfCalls;
+    }
+
+    public int getCircuitBreakerSlidingWindowSize() {
+
+        return circuitBreakerSlidingWindowSize;
+    }
+
+    public int getCircuitBreakerWaitDurationInOpenState() {
+
+        return circuitBreakerWaitDurationInOpenState;
+    }
+
+    public int getCircuitBreakerPermittedCallsInHalfOpenState() {
+
+        return circuitBreakerPermittedCallsInHalfOpenState;
+    }
+
+    public int getRetryInitialBackoff() {
+
+        return retryInitialBackoff;
+    }
+
+    public int getRetryMaxBackoff() {
+
+        return retryMaxBackoff;
+    }
+
+    public int getRetryBudgetPercentage() {
+
+        return retryBudgetPercentage;
+    }
+
+    public int getRetryBudgetMinRetriesPerSecond() {
+
+        return retryBudgetMinRetriesPerSecond;
+    }
+
+    public int getRetryDeadline() {
+
+        return retryDeadline;
+    }
+
+    public int getMaxResponseSize() {
+
+        return maxResponseSize;
+    }
+
+    public boolean isHttpHedgingEnabled() {
+
+        return httpHedgingEnabled;
+    }
+
+    public int getHttpHedgingDelay() {
+
+        return httpHedgingDelay;
+    }
+
+    public int getHttpHedgingBudgetPercentage() {
+
+        return httpHedgingBudgetPercentage;
+    }
+
+    public int getOutboundRequestTimeout() {
+
+        return outboundRequestTimeout;
+    }
+
+    /**
+     * Get the budget in milliseconds shared by the outbound calls made while an authentication flow is in the same
+     * step. The budget starts with the first call of the step, so the time the user spends on an earlier step is not
+     * counted. A non positive value disables the budget.
+     *
+     * @return Outbound request budget of a step of the authentication flow.
+     */
+    public int getOutboundRequestFlowTimeout() {
+
+        return outboundRequestFlowTimeout;
+    }
+
+    public int getCompletionThreadCount() {
+
+        return completionThreadCount;
+    }
+
+    public int getCompletionQueueSize() {
+
+        return completionQueueSize;
+    }
+
+    public boolean isHttp2Enabled() {
+
+        return http2Enabled;
+    }
+
+    public boolean isHttp2PriorKnowledge() {
+
+        return http2PriorKnowledge;
+    }
+
+    public int getHttp2FallbackTimeout() {
+
+        return http2FallbackTimeout;
+    }
+
+    public int getCompressionMinSize() {
+
+        return compressionMinSize;
+    }
+
+    public boolean isLogEventsAsyncEnabled() {
+
+        return logEventsAsyncEnabled;
+    }
+
+    public int getLogEventsBufferSize() {
+
+        return logEventsBufferSize;
+    }
+
+    public int getLogEventsSuccessSamplePercentage() {
+
+        return logEventsSuccessSamplePercentage;
+    }
+
+    public int getLogEventsFailureSamplePercentage() {
+
+        return logEventsFailureSamplePercentage;
+    }
+
+    public int getLogEventsRetrySamplePercentage() {
+
+        return logEventsRetrySamplePercentage;
+    }
+
+    public int getLogEventsMaxPerSecond() {
+
+        return logEventsMaxPerSecond;
+    }
+
+    public int getLogEventsRequestSamplePercentage() {
+
+        return logEventsRequestSamplePercentage;
+    }
+
+    public int getSharedTransportIoThreadCount() {
+
+        return sharedTransportIoThreadCount;
+    }
+
+    public int getSharedTransportMaxConnections() {
+
+        return sharedTransportMaxConnections;
+    }
+
+    public int getSharedTransportMaxConnectionsPerRoute() {
+
+        return sharedTransportMaxConnectionsPerRoute;
+    }
+
+    public int getSharedTransportTenantIdleTimeout() {
+
+        return sharedTransportTenantIdleTimeout;
+    }
+
+    public int getChoreoSecretCacheTimeout() {
+
+        return choreoSecretCacheTimeout;
+    }
+
+    public int getChoreoResponseCacheMaxEntriesPerTenant() {
+
+        return choreoResponseCacheMaxEntriesPerTenant;
+    }
+
+    public boolean isSharedTransportAdaptivePoolSizingEnabled() {
+
+        return sharedTransportAdaptivePoolSizingEnabled;
+    }
+
+    public int getSharedTransportMinConnectionsPerRoute() {
+
+        return sharedTransportMinConnectionsPerRoute;
+    }
+
+    public int getSharedTransportPoolSizingInterval() {
+
+        return sharedTransportPoolSizingInterval;
+    }
+
+    public boolean isPublishToAnalyticsBatchEnabled() {
+
+        return publishToAnalyticsBatchEnabled;
+    }
+
+    public int getPublishToAnalyticsBatchBufferSize() {
+
+        return publishToAnalyticsBatchBufferSize;
+    }
+
+    public int getPublishToAnalyticsBatchMaxSize() {
+
+        return publishToAnalyticsBatchMaxSize;
+    }
+
+    public int getPublishToAnalyticsBatchFlushInterval() {
+
+        return publishToAnalyticsBatchFlushInterval;
+    }
+
+    public String getPublishToAnalyticsBatchOverflowPolicy() {
+
+        return publishToAnalyticsBatchOverflowPolicy;
+    }
+
     public List<String> getAllowedDomainsForHttpFunctions() {
 
         return httpFunctionAllowedDomainList;
     }
 
+    /**
+     * Replace the domains the http functions are allowed to call, and compile their allowlist.
+     *
+     * @param allowedDomains Allowed domains for http functions.
+     */
+    public void setAllowedDomainsForHttpFunctions(List<String> allowedDomains) {
+
+        List<String> domains = Collections.unmodifiableList(new ArrayList<>(allowedDomains));
+        httpFunctionDomainAllowlist = DomainAllowlist.compile(domains);
+        httpFunctionAllowedDomainList = domains;
+    }
+
     public List<String> getChoreoDomains() {
 
         return choreoDomainList;
     }
 
+    /**
+     * Replace the domains the callChoreo function is allowed to call, and compile their allowlist.
+     *
+     * @param choreoDomains Choreo domains.
+     */
+    public void setChoreoDomains(List<String> choreoDomains) {
+
+        List<String> domains = Collections.unmodifiableList(new ArrayList<>(choreoDomains));
+        choreoDomainAllowlist = DomainAllowlist.compile(domains);
+        choreoDomainList = domains;
+    }
+
+    /**
+     * Get the compiled allowlist of the domains the http functions are allowed to call.
+     *
+     * @return Compiled domain allowlist for http functions.
+     */
+    public DomainAllowlist getHttpFunctionDomainAllowlist() {
+
+        return httpFunctionDomainAllowlist;
+    }
+
+    /**
+     * Get the compiled allowlist of the domains the callChoreo function is allowed to call.
+     *
+     * @return Compiled domain allowlist for the callChoreo function.
+     */
+    public DomainAllowlist getChoreoDomainAllowlist() {
+
+        return choreoDomainAllowlist;
+    }
+
+    /**
+     * Replace the domains which have opted in to compressed request and response bodies, and compile their list.
+     *
+     * @param compressionDomains Domains for compression.
+     */
+    public void setCompressionDomains(List<String> compressionDomains) {
+
+        compressionDomainAllowlist = DomainAllowlist.compile(new ArrayList<>(compressionDomains));
+    }
+
+    /**
+     * Get the compiled list of the domains which have opted in to compressed request and response bodies.
+     *
+     * @return Compiled domain list for compression.
+     */
+    public DomainAllowlist getCompressionDomainAllowlist() {
+
+        return compressionDomainAllowlist;
+    }
+
+    /**
+     * Get the compiled list of the domains which have opted in to hedged requests. Hedging sends a GET request more
+     * than once, hence it is only applied to the endpoints in this list, which are expected to be replicated. No
+     * request is hedged when the list is empty, even if hedging is enabled.
+     *
+     * @return Compiled domain list for hedging.
+     */
+    public DomainAllowlist getHttpHedgingDomainAllowlist() {
+
+        return hedgingDomainAllowlist;
+    }
+
     public String getChoreoTokenEndpoint() {
 
         return choreoTokenEndpoint;
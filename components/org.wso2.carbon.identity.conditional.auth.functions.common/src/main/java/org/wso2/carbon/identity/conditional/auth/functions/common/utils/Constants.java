@@ -38,6 +38,9 @@ public class Constants {
 
     public static final String CONNECTION_POOL_MAX_CONNECTIONS = "AdaptiveAuth.MaxTotalConnections";
     public static final String CONNECTION_POOL_MAX_CONNECTIONS_PER_ROUTE = "AdaptiveAuth.MaxTotalConnectionsPerRoute";
+    public static final String HTTP_CONNECTION_KEEP_ALIVE_TIMEOUT = "AdaptiveAuth.HTTPConnectionKeepAliveTimeout";
+    public static final String HTTP_CONNECTION_IDLE_TIMEOUT = "AdaptiveAuth.HTTPConnectionIdleTimeout";
+    public static final String HTTP_CONNECTION_EVICTION_INTERVAL = "AdaptiveAuth.HTTPConnectionEvictionInterval";
 
     public static final String CALL_CHOREO_HTTP_CONNECTION_TIMEOUT = "AdaptiveAuth.CallChoreo.HTTPConnectionTimeout";
 
@@ -49,6 +52,80 @@ public class Constants {
     public static final String HTTP_FUNCTION_ALLOWED_DOMAINS = "AdaptiveAuth.HTTPFunctionAllowedDomains.Domain";
     public static final String CHOREO_DOMAINS = "AdaptiveAuth.ChoreoDomains.Domain";
     public static final String CHOREO_TOKEN_ENDPOINT = "AdaptiveAuth.ChoreoTokenEndpoint";
+    public static final String TOKEN_REQUEST_FAILURE_CACHE_TIMEOUT = "AdaptiveAuth.TokenRequestFailureCacheTimeout";
+    public static final String TOKEN_REFRESH_AHEAD_ENABLE = "AdaptiveAuth.TokenRefreshAhead.Enable";
+    public static final String TOKEN_REFRESH_AHEAD_LIFETIME_FRACTION =
+            "AdaptiveAuth.TokenRefreshAhead.LifetimeFraction";
+    public static final String HTTP_RESPONSE_CACHE_ENABLE = "AdaptiveAuth.HTTPResponseCache.Enable";
+    public static final String HTTP_RESPONSE_CACHE_MAX_ENTRIES_PER_TENANT =
+            "AdaptiveAuth.HTTPResponseCache.MaxEntriesPerTenant";
+    public static final String HTTP_RESPONSE_CACHE_MAX_ENTRY_SIZE = "AdaptiveAuth.HTTPResponseCache.MaxEntrySize";
+    public static final String CIRCUIT_BREAKER_ENABLE = "AdaptiveAuth.CircuitBreaker.Enable";
+    public static final String CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD =
+            "AdaptiveAuth.CircuitBreaker.FailureRateThreshold";
+    public static final String CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD =
+            "AdaptiveAuth.CircuitBreaker.SlowCallRateThreshold";
+    public static final String CIRCUIT_BREAKER_SLOW_CALL_DURATION_THRESHOLD =
+            "AdaptiveAuth.CircuitBreaker.SlowCallDurationThreshold";
+    public static final String CIRCUIT_BREAKER_MINIMUM_NUMBER_OF_CALLS =
+            "AdaptiveAuth.CircuitBreaker.MinimumNumberOfCalls";
+    public static final String CIRCUIT_BREAKER_SLIDING_WINDOW_SIZE = "AdaptiveAuth.CircuitBreaker.SlidingWindowSize";
+    public static final String CIRCUIT_BREAKER_WAIT_DURATION_IN_OPEN_STATE =
+            "AdaptiveAuth.CircuitBreaker.WaitDurationInOpenState";
+    public static final String CIRCUIT_BREAKER_PERMITTED_CALLS_IN_HALF_OPEN_STATE =
+            "AdaptiveAuth.CircuitBreaker.PermittedCallsInHalfOpenState";
+    public static final String RETRY_INITIAL_BACKOFF = "AdaptiveAuth.Retry.InitialBackoff";
+    public static final String RETRY_MAX_BACKOFF = "AdaptiveAuth.Retry.MaxBackoff";
+    public static final String RETRY_BUDGET_PERCENTAGE = "AdaptiveAuth.Retry.BudgetPercentage";
+    public static final String RETRY_BUDGET_MIN_RETRIES_PER_SECOND = "AdaptiveAuth.Retry.BudgetMinRetriesPerSecond";
+    public static final String RETRY_DEADLINE = "AdaptiveAuth.Retry.Deadline";
+    public static final String HTTP_MAX_RESPONSE_SIZE = "AdaptiveAuth.HTTPMaxResponseSize";
+    public static final String HTTP_HEDGING_ENABLE = "AdaptiveAuth.HTTPHedging.Enable";
+    public static final String HTTP_HEDGING_DELAY = "AdaptiveAuth.HTTPHedging.Delay";
+    public static final String HTTP_HEDGING_BUDGET_PERCENTAGE = "AdaptiveAuth.HTTPHedging.BudgetPercentage";
+    public static final String HTTP_HEDGING_DOMAINS = "AdaptiveAuth.HTTPHedging.Domains.Domain";
+    public static final String OUTBOUND_REQUEST_TIMEOUT = "AdaptiveAuth.OutboundRequest.Timeout";
+    public static final String OUTBOUND_REQUEST_FLOW_TIMEOUT = "AdaptiveAuth.OutboundRequest.FlowTimeout";
+    public static final String OUTBOUND_REQUEST_COMPLETION_THREAD_COUNT =
+            "AdaptiveAuth.OutboundRequest.CompletionThreadCount";
+    public static final String OUTBOUND_REQUEST_COMPLETION_QUEUE_SIZE =
+            "AdaptiveAuth.OutboundRequest.CompletionQueueSize";
+    public static final String HTTP2_ENABLE = "AdaptiveAuth.HTTP2.Enable";
+    public static final String HTTP2_PRIOR_KNOWLEDGE = "AdaptiveAuth.HTTP2.PriorKnowledge";
+    public static final String HTTP2_FALLBACK_TIMEOUT = "AdaptiveAuth.HTTP2.FallbackTimeout";
+    public static final String HTTP_COMPRESSION_DOMAINS = "AdaptiveAuth.HTTPCompression.Domains.Domain";
+    public static final String HTTP_COMPRESSION_MIN_SIZE = "AdaptiveAuth.HTTPCompression.MinSize";
+    public static final String LOG_EVENTS_ASYNC_ENABLE = "AdaptiveAuth.LogEvents.Async.Enable";
+    public static final String LOG_EVENTS_BUFFER_SIZE = "AdaptiveAuth.LogEvents.Async.BufferSize";
+    public static final String LOG_EVENTS_REQUEST_SAMPLE_PERCENTAGE = "AdaptiveAuth.LogEvents.SamplePercentage.Request";
+    public static final String LOG_EVENTS_SUCCESS_SAMPLE_PERCENTAGE = "AdaptiveAuth.LogEvents.SamplePercentage.Success";
+    public static final String LOG_EVENTS_FAILURE_SAMPLE_PERCENTAGE = "AdaptiveAuth.LogEvents.SamplePercentage.Failure";
+    public static final String LOG_EVENTS_RETRY_SAMPLE_PERCENTAGE = "AdaptiveAuth.LogEvents.SamplePercentage.Retry";
+    public static final String LOG_EVENTS_MAX_PER_SECOND = "AdaptiveAuth.LogEvents.MaxEventsPerSecond";
+    public static final String SHARED_HTTP_TRANSPORT_IO_THREAD_COUNT = "AdaptiveAuth.SharedHttpTransport.IOThreadCount";
+    public static final String SHARED_HTTP_TRANSPORT_MAX_CONNECTIONS =
+            "AdaptiveAuth.SharedHttpTransport.MaxConnections";
+    public static final String SHARED_HTTP_TRANSPORT_MAX_CONNECTIONS_PER_ROUTE =
+            "AdaptiveAuth.SharedHttpTransport.MaxConnectionsPerRoute";
+    public static final String SHARED_HTTP_TRANSPORT_TENANT_IDLE_TIMEOUT =
+            "AdaptiveAuth.SharedHttpTransport.TenantIdleTimeout";
+    public static final String CALL_CHOREO_SECRET_CACHE_TIMEOUT = "AdaptiveAuth.CallChoreo.SecretCacheTimeout";
+    public static final String CALL_CHOREO_RESPONSE_CACHE_MAX_ENTRIES_PER_TENANT =
+            "AdaptiveAuth.CallChoreo.ResponseCache.MaxEntriesPerTenant";
+    public static final String SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_ENABLE =
+            "AdaptiveAuth.SharedHttpTransport.AdaptivePoolSizing.Enable";
+    public static final String SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_MIN_CONNECTIONS_PER_ROUTE =
+            "AdaptiveAuth.SharedHttpTransport.AdaptivePoolSizing.MinConnectionsPerRoute";
+    public static final String SHARED_HTTP_TRANSPORT_ADAPTIVE_POOL_SIZING_INTERVAL =
+            "AdaptiveAuth.SharedHttpTransport.AdaptivePoolSizing.Interval";
+    public static final String PUBLISH_TO_ANALYTICS_BATCH_ENABLE = "AdaptiveAuth.PublishToAnalytics.Batch.Enable";
+    public static final String PUBLISH_TO_ANALYTICS_BATCH_BUFFER_SIZE =
+            "AdaptiveAuth.PublishToAnalytics.Batch.BufferSize";
+    public static final String PUBLISH_TO_ANALYTICS_BATCH_MAX_SIZE = "AdaptiveAuth.PublishToAnalytics.Batch.MaxSize";
+    public static final String PUBLISH_TO_ANALYTICS_BATCH_FLUSH_INTERVAL =
+            "AdaptiveAuth.PublishToAnalytics.Batch.FlushInterval";
+    public static final String PUBLISH_TO_ANALYTICS_BATCH_OVERFLOW_POLICY =
+            "AdaptiveAuth.PublishToAnalytics.Batch.OverflowPolicy";
 
     /**
      * Define logging constants.
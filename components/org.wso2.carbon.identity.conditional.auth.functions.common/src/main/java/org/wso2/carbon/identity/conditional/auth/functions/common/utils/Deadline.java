@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.config.RequestConfig;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncReturn;
+import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
+import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_TIMEOUT;
+
+/**
+ * End-to-end deadline of a call to an external endpoint.
+ * The deadline covers everything the call does, i.e. obtaining credentials, waiting for a pooled connection,
+ * connecting, reading the response and every retry. The timeouts of each attempt are capped to the time remaining
+ * until the deadline, and no retry is started once the deadline has passed.
+ * <p>
+ * The deadline of a call is given by the script, or by the configured outbound request timeout. It may be further
+ * limited by the configured flow timeout, which is a budget shared by all the calls made while the authentication
+ * flow is in the same step. The budget starts with the first call of the step, so the time the user spends on an
+ * earlier step, e.g. entering a password or an OTP, is not counted against the calls of a later step.
+ */
+public final class Deadline {
+
+    private static final Log LOG = LogFactory.getLog(Deadline.class);
+    private static final String FLOW_DEADLINE_PROPERTY = "adaptiveAuthOutboundRequestDeadline";
+    private static final String FLOW_DEADLINE_STEP_PROPERTY = "adaptiveAuthOutboundRequestDeadlineStep";
+    private static final String THREAD_NAME_PREFIX = "adaptive-auth-deadline-";
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+    private static volatile ScheduledExecutorService scheduler;
+
+    private final long expiryTime;
+
+    Deadline(long expiryTime) {
+
+        this.expiryTime = expiryTime;
+    }
+
+    /**
+     * Get a deadline which never expires.
+     *
+     * @return Unbounded deadline.
+     */
+    public static Deadline none() {
+
+        return NONE;
+    }
+
+    /**
+     * Get a deadline expiring after the given timeout.
+     *
+     * @param timeout Timeout in milliseconds. A non positive value gives an unbounded deadline.
+     * @return Deadline.
+     */
+    public static Deadline after(long timeout) {
+
+        return timeout > 0 ? new Deadline(System.currentTimeMillis() + timeout) : NONE;
+    }
+
+    /**
+     * Get the deadline of a call made by the given authentication flow. When a flow timeout is configured, the budget
+     * of the current step of the flow is started by the first call made in the step.
+     *
+     * @param context Authentication context of the flow.
+     * @param timeout Timeout of the call given by the script in milliseconds. A non positive value uses the
+     *                configured outbound request timeout.
+     * @return Deadline of the call.
+     */
+    public static Deadline forCall(AuthenticationContext context, long timeout) {
+
+        ConfigProvider configProvider = ConfigProvider.getInstance();
+        return forCall(context, timeout, configProvider.getOutboundRequestTimeout(),
+                configProvider.getOutboundRequestFlowTimeout());
+    }
+
+    static Deadline forCall(AuthenticationContext context, long timeout, long defaultTimeout, long flowTimeout) {
+
+        Deadline deadline = after(timeout > 0 ? timeout : defaultTimeout);
+        if (flowTimeout <= 0 || context == null) {
+            return deadline;
+        }
+        // The budget is kept along with the step it was started in, and a new budget is started once the flow has
+        // moved to another step, so that the time the user spends between the steps is not counted.
+        Integer currentStep = context.getCurrentStep();
+        Object flowExpiryTime = context.getProperty(FLOW_DEADLINE_PROPERTY);
+        Deadline flowDeadline;
+        if (flowExpiryTime instanceof Long && currentStep.equals(context.getProperty(FLOW_DEADLINE_STEP_PROPERTY))) {
+            flowDeadline = new Deadline((Long) flowExpiryTime);
+        } else {
+            flowDeadline = after(flowTimeout);
+            context.setProperty(FLOW_DEADLINE_PROPERTY, flowDeadline.expiryTime);
+            context.setProperty(FLOW_DEADLINE_STEP_PROPERTY, currentStep);
+        }
+        return deadline.min(flowDeadline);
+    }
+
+    /**
+     * Parse the timeout given by a script for a call.
+     *
+     * @param timeout Timeout given by the script, as a number or a string, if any.
+     * @return Timeout in milliseconds, or 0 if no valid timeout is given.
+     */
+    public static long parseTimeout(Object timeout) {
+
+        if (timeout instanceof Number) {
+            return ((Number) timeout).longValue();
+        }
+        if (timeout instanceof String) {
+            try {
+                return Long.parseLong(((String) timeout).trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring the invalid timeout: " + timeout);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the earlier of this and the given deadline.
+     *
+     * @param other Deadline to compare with.
+     * @return Earlier deadline.
+     */
+    public Deadline min(Deadline other) {
+
+        return other.expiryTime < expiryTime ? other : this;
+    }
+
+    public boolean isBounded() {
+
+        return expiryTime != Long.MAX_VALUE;
+    }
+
+    /**
+     * @return Expiry time in epoch milliseconds, or {@link Long#MAX_VALUE} if the deadline is unbounded.
+     */
+    public long getExpiryTime() {
+
+        return expiryTime;
+    }
+
+    /**
+     * @return Time remaining until the deadline in milliseconds, which is 0 once the deadline has passed.
+     */
+    public long getRemaining() {
+
+        return isBounded() ? Math.max(0, expiryTime - System.currentTimeMillis()) : Long.MAX_VALUE;
+    }
+
+    public boolean isExpired() {
+
+        return getRemaining() == 0;
+    }
+
+    /**
+     * Cap the timeouts of the given request config to the time remaining until the deadline, so that an attempt
+     * made with the config does not outlive the deadline.
+     *
+     * @param config Request config the attempt would be made with.
+     * @return Request config with the capped timeouts.
+     */
+    public RequestConfig capTimeouts(RequestConfig config) {
+
+        if (!isBounded()) {
+            return config;
+        }
+        int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, getRemaining()));
+        return RequestConfig.copy(config)
+                .setConnectionRequestTimeout(cap(config.getConnectionRequestTimeout(), remaining))
+                .setConnectTimeout(cap(config.getConnectTimeout(), remaining))
+                .setSocketTimeout(cap(config.getSocketTimeout(), remaining))
+                .build();
+    }
+
+    /**
+     * Bound the given future by the deadline. The returned future completes with the result of the given future,
+     * or exceptionally with a {@link DeadlineExceededException} if the deadline passes first. In that case the given
+     * future is abandoned as in {@link #abandon(CompletableFuture, Throwable)}, so that the work producing its result
+     * can be aborted.
+     *
+     * @param future Future to bound.
+     * @param <T>    Type of the result.
+     * @return Future completing no later than the deadline.
+     */
+    public <T> CompletableFuture<T> bound(CompletableFuture<T> future) {
+
+        if (!isBounded() || future.isDone()) {
+            return future;
+        }
+        CompletableFuture<T> bounded = new CompletableFuture<>();
+        ScheduledFuture<?> timer = schedule(() -> {
+            DeadlineExceededException exception =
+                    new DeadlineExceededException("Deadline exceeded while waiting for the response.");
+            // The source is abandoned first, so that the work behind it knows of the deadline once the caller does.
+            abandon(future, exception);
+            bounded.completeExceptionally(exception);
+        });
+        future.whenComplete((result, error) -> {
+            timer.cancel(false);
+            if (error != null) {
+                bounded.completeExceptionally(error instanceof CompletionException && error.getCause() != null ?
+                        error.getCause() : error);
+            } else {
+                bounded.complete(result);
+            }
+        });
+        return bounded;
+    }
+
+    /**
+     * Abandon the given future on behalf of a caller which no longer waits for its result. If the caller gave up
+     * because the deadline passed, the future is completed exceptionally with the {@link DeadlineExceededException},
+     * so that the work producing its result can tell a call cut off by the deadline apart from a call which is
+     * simply no longer needed. Otherwise the future is cancelled.
+     *
+     * @param future Future to abandon.
+     * @param reason Failure the caller gave up with, or null if the caller is no longer interested in the result.
+     */
+    public static void abandon(CompletableFuture<?> future, Throwable reason) {
+
+        if (isExceeded(reason)) {
+            future.completeExceptionally(reason instanceof CompletionException ? reason.getCause() : reason);
+        } else {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Check whether the given failure is due to a deadline which has passed.
+     *
+     * @param error Failure to check, possibly wrapped in a {@link CompletionException}.
+     * @return True if the failure is a {@link DeadlineExceededException}.
+     */
+    public static boolean isExceeded(Throwable error) {
+
+        if (error instanceof CompletionException) {
+            error = error.getCause();
+        }
+        return error instanceof DeadlineExceededException;
+    }
+
+    /**
+     * Bound the given async return by the deadline. If no outcome has been returned when the deadline passes, the
+     * timeout outcome is returned to the authentication flow, and the outcomes returned later are dropped.
+     *
+     * @param context     Authentication context of the flow.
+     * @param asyncReturn Async return of the long wait process.
+     * @return Async return which returns the outcome to the flow no later than the deadline.
+     */
+    public AsyncReturn bound(AuthenticationContext context, AsyncReturn asyncReturn) {
+
+        if (!isBounded()) {
+            return asyncReturn;
+        }
+        return new BoundedAsyncReturn(context, asyncReturn);
+    }
+
+    /**
+     * Stop the scheduler which fires the deadlines. A new scheduler is started if a deadline is bounded afterwards.
+     */
+    public static void shutdown() {
+
+        ScheduledExecutorService executor;
+        synchronized (Deadline.class) {
+            executor = scheduler;
+            scheduler = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private ScheduledFuture<?> schedule(Runnable task) {
+
+        return getScheduler().schedule(task, getRemaining(), TimeUnit.MILLISECONDS);
+    }
+
+    private static int cap(int timeout, int remaining) {
+
+        // A non positive timeout is infinite, and is replaced by the remaining time.
+        return timeout > 0 ? Math.min(timeout, remaining) : remaining;
+    }
+
+    private static ScheduledExecutorService getScheduler() {
+
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            synchronized (Deadline.class) {
+                executor = scheduler;
+                if (executor == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    ScheduledThreadPoolExecutor threadPoolExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                        Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    threadPoolExecutor.setRemoveOnCancelPolicy(true);
+                    executor = threadPoolExecutor;
+                    scheduler = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Async return which returns the timeout outcome to the authentication flow when the deadline passes.
+     */
+    private class BoundedAsyncReturn implements AsyncReturn {
+
+        private static final int PENDING = 0;
+        private static final int RETURNED = 1;
+        private static final int EXPIRED = 2;
+
+        private final AsyncReturn asyncReturn;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final ScheduledFuture<?> timer;
+
+        private BoundedAsyncReturn(AuthenticationContext context, AsyncReturn asyncReturn) {
+
+            this.asyncReturn = asyncReturn;
+            this.timer = schedule(() -> expire(context));
+        }
+
+        @Override
+        public void accept(AuthenticationContext context, Map<String, Object> data, String outcome)
+                throws FrameworkException {
+
+            if (state.compareAndSet(PENDING, RETURNED)) {
+                timer.cancel(false);
+            } else if (state.get() == EXPIRED) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Dropping the outcome: " + outcome + " returned after the deadline for session data " +
+                            "key: " + context.getContextIdentifier());
+                }
+                return;
+            }
+            asyncReturn.accept(context, data, outcome);
+        }
+
+        private void expire(AuthenticationContext context) {
+
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return;
+            }
+            LOG.warn("Deadline exceeded before the call completed for session data key: " +
+                    context.getContextIdentifier());
+            try {
+                asyncReturn.accept(context, Collections.emptyMap(), OUTCOME_TIMEOUT);
+            } catch (FrameworkException e) {
+                LOG.error("Error while returning the timeout outcome for session data key: " +
+                        context.getContextIdentifier(), e);
+            }
+        }
+    }
+}
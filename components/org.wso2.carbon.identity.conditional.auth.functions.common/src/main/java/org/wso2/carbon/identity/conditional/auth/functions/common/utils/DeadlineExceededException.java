@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * Signals that the deadline of a call to an external endpoint has passed before the call could complete.
+ * This is a timeout, so the call is reported to the authentication flow with the timeout outcome.
+ */
+public class DeadlineExceededException extends SocketTimeoutException {
+
+    private static final long serialVersionUID = 4120468823127319251L;
+
+    public DeadlineExceededException(String message) {
+
+        super(message);
+    }
+}
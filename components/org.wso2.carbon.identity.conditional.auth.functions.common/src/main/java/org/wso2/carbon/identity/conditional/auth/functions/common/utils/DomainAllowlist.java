@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled matcher for the domains a function is allowed to call.
+ * The configured rules are compiled once into a trie keyed by the characters of the host read from right to left,
+ * so that a host is matched by a single walk over its labels without splitting or lower casing it. The following
+ * rules are supported.
+ * <ul>
+ *     <li>{@code example.co.uk} - matches the host {@code example.co.uk} only.</li>
+ *     <li>{@code *.example.co.uk} - matches hosts one label below {@code example.co.uk}, e.g.
+ *     {@code api.example.co.uk}.</li>
+ *     <li>{@code .example.co.uk} - matches {@code example.co.uk} and any host below it.</li>
+ *     <li>{@code example} - a single label matches hosts whose second level label is {@code example}, e.g.
+ *     {@code api.example.com}. This is how the domains were matched before the other rules were introduced.</li>
+ * </ul>
+ * Rules are matched case insensitively.
+ */
+public class DomainAllowlist {
+
+    private static final Log LOG = LogFactory.getLog(DomainAllowlist.class);
+    private static final char DOMAIN_SEPARATOR = '.';
+    private static final String WILDCARD_PREFIX = "*.";
+
+    private final String[] rules;
+    private final Node hostRules = new Node();
+    private final Node labelRules = new Node();
+
+    private DomainAllowlist(String[] rules) {
+
+        this.rules = rules;
+        for (String rule : rules) {
+            addRule(rule);
+        }
+    }
+
+    /**
+     * Compile the given domain rules.
+     *
+     * @param rules Configured domain rules.
+     * @return Compiled allowlist.
+     */
+    public static DomainAllowlist compile(List<String> rules) {
+
+        return new DomainAllowlist(rules.toArray(new String[0]));
+    }
+
+    /**
+     * Check whether the allowlist has no rules, in which case domain restriction is turned off.
+     *
+     * @return True if there are no rules.
+     */
+    public boolean isEmpty() {
+
+        return rules.length == 0;
+    }
+
+    /**
+     * Check whether the given host is allowed.
+     *
+     * @param host Host to check.
+     * @return True if the host matches any of the rules.
+     */
+    public boolean isAllowed(String host) {
+
+        if (StringUtils.isEmpty(host)) {
+            return false;
+        }
+        int end = host.length();
+        // A fully qualified host may end with the root label separator.
+        if (host.charAt(end - 1) == DOMAIN_SEPARATOR) {
+            end--;
+        }
+        return end > 0 && (matchesHostRule(host, end) || matchesLabelRule(host, end));
+    }
+
+    @Override
+    public String toString() {
+
+        return StringUtils.join(rules, ',');
+    }
+
+    private boolean matchesHostRule(String host, int end) {
+
+        Node node = hostRules;
+        for (int i = end - 1; i >= 0; i--) {
+            node = node.getChild(Character.toLowerCase(host.charAt(i)));
+            if (node == null) {
+                return false;
+            }
+            if (i == 0) {
+                return node.exact || node.suffix;
+            }
+            if (host.charAt(i - 1) == DOMAIN_SEPARATOR) {
+                if (node.suffix) {
+                    return true;
+                }
+                // A wildcard covers a single label, so the remaining part of the host should not have a separator.
+                if (node.wildcard && i > 1 && host.lastIndexOf(DOMAIN_SEPARATOR, i - 2) < 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesLabelRule(String host, int end) {
+
+        // Resolve the bounds of the second level label, or of the only label if the host has a single label.
+        int labelEnd = end;
+        int labelStart = host.lastIndexOf(DOMAIN_SEPARATOR, end - 1) + 1;
+        if (labelStart > 0) {
+            labelEnd = labelStart - 1;
+            labelStart = host.lastIndexOf(DOMAIN_SEPARATOR, labelEnd - 1) + 1;
+        }
+        if (labelStart >= labelEnd) {
+            return false;
+        }
+
+        Node node = labelRules;
+        for (int i = labelStart; i < labelEnd; i++) {
+            node = node.getChild(Character.toLowerCase(host.charAt(i)));
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.exact;
+    }
+
+    private void addRule(String rule) {
+
+        String domain = StringUtils.removeEnd(StringUtils.trimToEmpty(rule).toLowerCase(), ".");
+        boolean wildcard = domain.startsWith(WILDCARD_PREFIX);
+        boolean suffix = !wildcard && domain.indexOf(DOMAIN_SEPARATOR) == 0;
+        if (wildcard) {
+            domain = domain.substring(WILDCARD_PREFIX.length());
+        } else if (suffix) {
+            domain = domain.substring(1);
+        }
+        if (domain.isEmpty() || domain.startsWith(".") || domain.contains("..") || domain.contains("*")) {
+            LOG.warn("Ignoring invalid domain rule: " + rule);
+            return;
+        }
+
+        if (!wildcard && !suffix && domain.indexOf(DOMAIN_SEPARATOR) < 0) {
+            Node node = labelRules;
+            for (int i = 0; i < domain.length(); i++) {
+                node = node.addChild(domain.charAt(i));
+            }
+            node.exact = true;
+            return;
+        }
+
+        Node node = hostRules;
+        for (int i = domain.length() - 1; i >= 0; i--) {
+            node = node.addChild(domain.charAt(i));
+        }
+        if (wildcard) {
+            node.wildcard = true;
+        } else if (suffix) {
+            node.suffix = true;
+        } else {
+            node.exact = true;
+        }
+    }
+
+    /**
+     * A node of the trie, keyed by a single character. Children are kept in arrays sorted by their key, as the
+     * number of distinct characters at a position is small.
+     */
+    private static class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean exact;
+        private boolean wildcard;
+        private boolean suffix;
+
+        private Node getChild(char key) {
+
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node addChild(char key) {
+
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertionPoint = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertionPoint);
+            System.arraycopy(children, 0, newChildren, 0, insertionPoint);
+            System.arraycopy(keys, insertionPoint, newKeys, insertionPoint + 1, keys.length - insertionPoint);
+            System.arraycopy(children, insertionPoint, newChildren, insertionPoint + 1,
+                    children.length - insertionPoint);
+            Node child = new Node();
+            newKeys[insertionPoint] = key;
+            newChildren[insertionPoint] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the request bodies and decompresses the response bodies of the outbound functions.
+ * Compression is opted in per endpoint, by listing the domain of the endpoint in the compression domain list. Request
+ * bodies of opted in endpoints are compressed with gzip once they reach the configured minimum size, and gzip
+ * compressed responses are requested from them. Compressed responses are decompressed when read, regardless of the
+ * endpoint.
+ * The bytes transferred before and after compression are exposed over JMX.
+ */
+public class HttpCompression implements HttpCompressionMBean {
+
+    private static final Log LOG = LogFactory.getLog(HttpCompression.class);
+    private static final String GZIP = "gzip";
+    private static final String X_GZIP = "x-gzip";
+    private static final String MBEAN_TYPE = "Compression";
+    private static final String MBEAN_NAME = "OutboundFunctions";
+
+    private static final HttpCompression instance = new HttpCompression();
+
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong requestBytesSent = new AtomicLong();
+    private final AtomicLong compressedRequestCount = new AtomicLong();
+    private final AtomicLong responseBytesReceived = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final AtomicLong compressedResponseCount = new AtomicLong();
+
+    private HttpCompression() {
+
+        MBeanRegistrar.register(MBEAN_TYPE, MBEAN_NAME, this);
+    }
+
+    public static HttpCompression getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Check whether the endpoint has opted in to compression.
+     *
+     * @param uri URI of the endpoint.
+     * @return True if the domain of the endpoint is in the compression domain list.
+     */
+    public boolean isEnabled(URI uri) {
+
+        DomainAllowlist domains = ConfigProvider.getInstance().getCompressionDomainAllowlist();
+        return uri != null && !domains.isEmpty() && domains.isAllowed(uri.getHost());
+    }
+
+    /**
+     * Request a gzip compressed response, if the endpoint has opted in to compression.
+     *
+     * @param request Request to the endpoint.
+     * @param uri     URI of the endpoint.
+     */
+    public void acceptCompressedResponse(HttpRequest request, URI uri) {
+
+        if (isEnabled(uri) && !request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            request.setHeader(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        }
+    }
+
+    /**
+     * Set the body of the request. If the endpoint has opted in to compression, the body is compressed with gzip when
+     * it reaches the configured minimum size, and a gzip compressed response is requested.
+     * If the body could not be compressed, it is sent uncompressed.
+     *
+     * @param request Request to the endpoint.
+     * @param entity  Uncompressed request body.
+     */
+    public void setEntity(HttpEntityEnclosingRequestBase request, HttpEntity entity) {
+
+        long length = entity.getContentLength();
+        requestBytes.addAndGet(Math.max(length, 0));
+        if (!isEnabled(request.getURI())) {
+            requestBytesSent.addAndGet(Math.max(length, 0));
+            request.setEntity(entity);
+            return;
+        }
+        acceptCompressedResponse(request, request.getURI());
+        if (length < ConfigProvider.getInstance().getCompressionMinSize() || entity.getContentEncoding() != null) {
+            requestBytesSent.addAndGet(Math.max(length, 0));
+            request.setEntity(entity);
+            return;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) Math.min(length, Integer.MAX_VALUE) / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            entity.writeTo(gzip);
+        } catch (IOException e) {
+            LOG.warn("Error while compressing the request body. The body is sent uncompressed. Endpoint: " +
+                    request.getURI().getHost(), e);
+            requestBytesSent.addAndGet(length);
+            request.setEntity(entity);
+            return;
+        }
+        ByteArrayEntity compressedEntity = new ByteArrayEntity(compressed.toByteArray());
+        compressedEntity.setContentType(entity.getContentType());
+        compressedEntity.setContentEncoding(GZIP);
+        request.setEntity(compressedEntity);
+        requestBytesSent.addAndGet(compressedEntity.getContentLength());
+        compressedRequestCount.incrementAndGet();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Compressed request body of " + length + " bytes to " + compressedEntity.getContentLength() +
+                    " bytes. Endpoint: " + request.getURI().getHost());
+        }
+    }
+
+    /**
+     * Get the content of the response body, decompressed if the body is gzip compressed. The bytes received before and
+     * after decompression are recorded as the content is read.
+     *
+     * @param entity Response entity.
+     * @return Content of the response body, or null if the entity has no content.
+     * @throws IOException If the content could not be read.
+     */
+    InputStream getContent(HttpEntity entity) throws IOException {
+
+        InputStream content = entity.getContent();
+        if (content == null) {
+            return null;
+        }
+        Header contentEncoding = entity.getContentEncoding();
+        String encoding = contentEncoding != null ? contentEncoding.getValue().trim() : null;
+        if (GZIP.equalsIgnoreCase(encoding) || X_GZIP.equalsIgnoreCase(encoding)) {
+            compressedResponseCount.incrementAndGet();
+            CountingInputStream received = new CountingInputStream(content, responseBytesReceived);
+            return new CountingInputStream(new GZIPInputStream(received), responseBytes);
+        }
+        return new CountingInputStream(content, responseBytesReceived, responseBytes);
+    }
+
+    @Override
+    public long getRequestBytes() {
+
+        return requestBytes.get();
+    }
+
+    @Override
+    public long getRequestBytesSent() {
+
+        return requestBytesSent.get();
+    }
+
+    @Override
+    public long getCompressedRequestCount() {
+
+        return compressedRequestCount.get();
+    }
+
+    @Override
+    public long getResponseBytesReceived() {
+
+        return responseBytesReceived.get();
+    }
+
+    @Override
+    public long getResponseBytes() {
+
+        return responseBytes.get();
+    }
+
+    @Override
+    public long getCompressedResponseCount() {
+
+        return compressedResponseCount.get();
+    }
+
+    /**
+     * Input stream which adds the number of bytes read to the given counters.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong[] counters;
+
+        private CountingInputStream(InputStream in, AtomicLong... counters) {
+
+            super(in);
+            this.counters = counters;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            int value = super.read();
+            if (value != -1) {
+                count(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long read) {
+
+            for (AtomicLong counter : counters) {
+                counter.addAndGet(read);
+            }
+        }
+    }
+}
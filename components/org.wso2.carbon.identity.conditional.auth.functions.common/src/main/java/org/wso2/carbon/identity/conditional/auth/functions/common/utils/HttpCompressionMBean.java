@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+/**
+ * JMX view of the bytes transferred by the outbound functions, before and after compression.
+ */
+public interface HttpCompressionMBean {
+
+    /**
+     * @return Number of request body bytes before compression.
+     */
+    long getRequestBytes();
+
+    /**
+     * @return Number of request body bytes sent, after compression.
+     */
+    long getRequestBytesSent();
+
+    /**
+     * @return Number of requests with a compressed body.
+     */
+    long getCompressedRequestCount();
+
+    /**
+     * @return Number of response body bytes received, before decompression.
+     */
+    long getResponseBytesReceived();
+
+    /**
+     * @return Number of response body bytes after decompression.
+     */
+    long getResponseBytes();
+
+    /**
+     * @return Number of responses with a compressed body.
+     */
+    long getCompressedResponseCount();
+}
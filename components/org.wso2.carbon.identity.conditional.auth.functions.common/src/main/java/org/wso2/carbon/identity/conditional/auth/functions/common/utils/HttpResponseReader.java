@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the bodies of responses received from external endpoints.
+ * Bodies are read straight from the entity stream instead of being copied into an intermediate string, and reading
+ * is aborted with a {@link ResponseTooLargeException} as soon as the body is known to exceed the maximum size.
+ * Compressed bodies are decompressed while reading, and the maximum size applies to the decompressed body.
+ */
+public class HttpResponseReader {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private HttpResponseReader() {
+
+    }
+
+    /**
+     * Parse the body of the response as a JSON object.
+     *
+     * @param entity  Response entity.
+     * @param maxSize Maximum size of the body in bytes.
+     * @return Parsed JSON object.
+     * @throws IOException    If the body could not be read or exceeds the maximum size.
+     * @throws ParseException If the body is not valid JSON.
+     */
+    public static JSONObject readJsonObject(HttpEntity entity, long maxSize) throws IOException, ParseException {
+
+        try (Reader reader = getReader(entity, maxSize, StandardCharsets.UTF_8)) {
+            Object json = new JSONParser().parse(reader);
+            if (json != null && !(json instanceof JSONObject)) {
+                throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, json);
+            }
+            return (JSONObject) json;
+        }
+    }
+
+    /**
+     * Read the body of the response as a string.
+     *
+     * @param entity  Response entity.
+     * @param maxSize Maximum size of the body in bytes.
+     * @return Body of the response.
+     * @throws IOException If the body could not be read or exceeds the maximum size.
+     */
+    public static String readString(HttpEntity entity, long maxSize) throws IOException {
+
+        try (Reader reader = getReader(entity, maxSize, StandardCharsets.ISO_8859_1)) {
+            StringWriter writer = new StringWriter();
+            char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                writer.write(buffer, 0, read);
+            }
+            return writer.toString();
+        }
+    }
+
+    /**
+     * Get a reader over the body of the response, which fails once more than the maximum size is read.
+     *
+     * @param entity         Response entity.
+     * @param maxSize        Maximum size of the body in bytes.
+     * @param defaultCharset Charset to use when the response does not specify one.
+     * @return Reader over the body of the response.
+     * @throws IOException If the body could not be read, or the declared length of the body exceeds the maximum
+     *                     size.
+     */
+    public static Reader getReader(HttpEntity entity, long maxSize, Charset defaultCharset) throws IOException {
+
+        if (entity.getContentLength() > maxSize) {
+            throw new ResponseTooLargeException(maxSize);
+        }
+        Charset charset = null;
+        ContentType contentType = ContentType.get(entity);
+        if (contentType != null) {
+            charset = contentType.getCharset();
+        }
+        InputStream content = HttpCompression.getInstance().getContent(entity);
+        if (content == null) {
+            content = new ByteArrayInputStream(new byte[0]);
+        }
+        return new InputStreamReader(new BoundedInputStream(content, maxSize),
+                charset != null ? charset : defaultCharset);
+    }
+
+    /**
+     * Input stream which fails once more than the given number of bytes are read.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private final long maxSize;
+        private long count;
+
+        private BoundedInputStream(InputStream in, long maxSize) {
+
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            int value = super.read();
+            if (value != -1) {
+                onRead(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                onRead(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+
+            long skipped = super.skip(n);
+            onRead(skipped);
+            return skipped;
+        }
+
+        private void onRead(long read) throws ResponseTooLargeException {
+
+            count += read;
+            if (count > maxSize) {
+                throw new ResponseTooLargeException(maxSize);
+            }
+        }
+    }
+}
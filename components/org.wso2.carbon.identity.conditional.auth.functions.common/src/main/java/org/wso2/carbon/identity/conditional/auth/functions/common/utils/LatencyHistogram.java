@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies with a bounded relative error, in the style of an HDR histogram.
+ * Latencies are recorded in microseconds into log-linear buckets: each power of two range is split into a fixed number
+ * of linear sub-buckets, so the width of a bucket grows with its values and any latency up to several hours is
+ * tracked with a relative error of less than 7%, in a fixed amount of memory.
+ * Recording a latency only updates atomic counters, so it does not take a lock and can be done on the I/O threads.
+ * Reads are not synchronized with concurrent recordings, hence a percentile may be computed over a partially
+ * updated histogram, which is acceptable for monitoring.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 36;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param latency  Latency to record. Negative latencies are ignored.
+     * @param timeUnit Unit of the latency.
+     */
+    public void record(long latency, TimeUnit timeUnit) {
+
+        if (latency < 0) {
+            return;
+        }
+        long value = Math.min(timeUnit.toMicros(latency), MAX_VALUE);
+        buckets.incrementAndGet(getBucketIndex(value));
+        count.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return Number of latencies recorded.
+     */
+    public long getCount() {
+
+        return count.sum();
+    }
+
+    /**
+     * @return Mean of the recorded latencies in milliseconds, or 0 if no latency is recorded.
+     */
+    public double getMean() {
+
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : sum.sum() / (double) recorded / 1000;
+    }
+
+    /**
+     * @return Highest recorded latency in milliseconds.
+     */
+    public double getMax() {
+
+        return max.get() / 1000d;
+    }
+
+    /**
+     * Get the latency at the given percentile. The value is the highest latency of the bucket the percentile falls in,
+     * so it overestimates the actual latency by at most the width of the bucket.
+     *
+     * @param percentile Percentile, between 0 and 100.
+     * @return Latency at the percentile in milliseconds, or 0 if no latency is recorded.
+     */
+    public double getValueAtPercentile(double percentile) {
+
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(i), max.get()) / 1000d;
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return Summary of the recorded latencies in milliseconds.
+     */
+    @Override
+    public String toString() {
+
+        return String.format("count: %d; mean: %.2f; p50: %.2f; p90: %.2f; p99: %.2f; max: %.2f", getCount(),
+                getMean(), getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), getMax());
+    }
+
+    private static int getBucketIndex(long value) {
+
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        // The sub-bucket is given by the bits following the highest set bit of the value.
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long getBucketUpperBound(int index) {
+
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long subBucket = SUB_BUCKET_COUNT + (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
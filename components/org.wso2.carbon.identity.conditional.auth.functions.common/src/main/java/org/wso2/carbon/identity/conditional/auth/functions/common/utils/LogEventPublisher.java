@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.slf4j.MDC;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Publishes the diagnostic log events and the informational log lines of the outbound functions.
+ * Events are sampled and rate limited per event type, so that the volume of logs stays bounded under load. When
+ * asynchronous publishing is enabled, events are handed off through a bounded lock-free {@link RingBuffer} to a
+ * background publisher thread, so that building and publishing the events does not add to the latency of the
+ * authentication flow. Events are dropped rather than blocking the caller when the buffer is full. The tenant of the
+ * carbon context and the MDC of the calling thread, which carries the correlation ID, are captured along with each
+ * event and restored on the publisher thread while the event is published.
+ * Events are published on the calling thread when asynchronous publishing is disabled.
+ * Warnings and errors are expected to be logged directly, so that they are never sampled out or dropped.
+ */
+public class LogEventPublisher implements LogEventPublisherMBean {
+
+    private static final Log LOG = LogFactory.getLog(LogEventPublisher.class);
+    private static final String THREAD_NAME = "adaptive-auth-log-event-publisher";
+    private static final String MBEAN_TYPE = "LogEvents";
+    private static final String MBEAN_NAME = "OutboundFunctions";
+    private static final long IDLE_PARK_TIME = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int FULL_SAMPLE_PERCENTAGE = 100;
+
+    private static final LogEventPublisher instance = new LogEventPublisher();
+
+    private final boolean async;
+    private final int maxEventsPerSecond;
+    private final int[] samplePercentages = new int[EventType.values().length];
+    private final RateLimit[] rateLimits = new RateLimit[EventType.values().length];
+    private final RingBuffer<Runnable> buffer;
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder sampledOutCount = new LongAdder();
+    private final LongAdder rateLimitedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile Thread publisherThread;
+    private volatile boolean running = true;
+
+    /**
+     * Type of a log event, which the sampling and the rate limit are applied by.
+     */
+    public enum EventType {
+        REQUEST,
+        SUCCESS,
+        FAILURE,
+        RETRY
+    }
+
+    private LogEventPublisher() {
+
+        ConfigProvider configProvider = ConfigProvider.getInstance();
+        this.async = configProvider.isLogEventsAsyncEnabled();
+        this.maxEventsPerSecond = configProvider.getLogEventsMaxPerSecond();
+        samplePercentages[EventType.REQUEST.ordinal()] = configProvider.getLogEventsRequestSamplePercentage();
+        samplePercentages[EventType.SUCCESS.ordinal()] = configProvider.getLogEventsSuccessSamplePercentage();
+        samplePercentages[EventType.FAILURE.ordinal()] = configProvider.getLogEventsFailureSamplePercentage();
+        samplePercentages[EventType.RETRY.ordinal()] = configProvider.getLogEventsRetrySamplePercentage();
+        for (EventType eventType : EventType.values()) {
+            rateLimits[eventType.ordinal()] = new RateLimit(System::currentTimeMillis);
+        }
+        this.buffer = async ? new RingBuffer<>(configProvider.getLogEventsBufferSize()) : null;
+        MBeanRegistrar.register(MBEAN_TYPE, MBEAN_NAME, this);
+    }
+
+    public static LogEventPublisher getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Publish a log event, unless it is sampled out or the rate limit of its event type is reached.
+     *
+     * @param eventType Type of the event.
+     * @param event     Publishes the event, e.g. by triggering a diagnostic log event or writing a log line. The
+     *                  event may be run on a background thread, hence anything it needs from the calling thread other
+     *                  than the tenant and the MDC, such as a diagnostic log builder, should be prepared beforehand.
+     */
+    public void publish(EventType eventType, Runnable event) {
+
+        if (!isSampled(eventType)) {
+            return;
+        }
+        if (!async) {
+            run(event);
+            return;
+        }
+        if (!buffer.offer(new ContextualEvent(event))) {
+            droppedCount.increment();
+            return;
+        }
+        if (publisherThread == null) {
+            startPublisher();
+        }
+    }
+
+    /**
+     * Stop the background publisher, after publishing the events remaining in the buffer.
+     */
+    public void shutdown() {
+
+        running = false;
+        Thread thread = publisherThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        MBeanRegistrar.unregister(MBEAN_TYPE, MBEAN_NAME);
+    }
+
+    @Override
+    public long getPublishedCount() {
+
+        return publishedCount.sum();
+    }
+
+    @Override
+    public long getSampledOutCount() {
+
+        return sampledOutCount.sum();
+    }
+
+    @Override
+    public long getRateLimitedCount() {
+
+        return rateLimitedCount.sum();
+    }
+
+    @Override
+    public long getDroppedCount() {
+
+        return droppedCount.sum();
+    }
+
+    @Override
+    public int getPendingCount() {
+
+        return buffer != null ? buffer.size() : 0;
+    }
+
+    private boolean isSampled(EventType eventType) {
+
+        int samplePercentage = samplePercentages[eventType.ordinal()];
+        if (samplePercentage < FULL_SAMPLE_PERCENTAGE &&
+                ThreadLocalRandom.current().nextInt(FULL_SAMPLE_PERCENTAGE) >= samplePercentage) {
+            sampledOutCount.increment();
+            return false;
+        }
+        if (maxEventsPerSecond > 0 && !rateLimits[eventType.ordinal()].tryAcquire(maxEventsPerSecond)) {
+            rateLimitedCount.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private void run(Runnable event) {
+
+        try {
+            event.run();
+            publishedCount.increment();
+        } catch (RuntimeException e) {
+            LOG.warn("Error while publishing a log event.", e);
+        }
+    }
+
+    private synchronized void startPublisher() {
+
+        if (publisherThread != null || !running) {
+            return;
+        }
+        Thread thread = new Thread(this::drain, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+        publisherThread = thread;
+    }
+
+    private void drain() {
+
+        while (true) {
+            Runnable event = buffer.poll();
+            if (event != null) {
+                run(event);
+            } else if (running) {
+                // Events are not signalled to the publisher, so that publishing costs the caller nothing more than
+                // an offer to the buffer. The publisher polls the buffer instead.
+                LockSupport.parkNanos(IDLE_PARK_TIME);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Event along with the tenant and the MDC of the thread which published it, so that the event is published in
+     * the same context on the publisher thread.
+     */
+    private static class ContextualEvent implements Runnable {
+
+        private final Runnable event;
+        private final String tenantDomain;
+        private final int tenantId;
+        private final Map<String, String> mdc;
+
+        private ContextualEvent(Runnable event) {
+
+            PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            this.event = event;
+            this.tenantDomain = carbonContext.getTenantDomain();
+            this.tenantId = carbonContext.getTenantId();
+            this.mdc = MDC.getCopyOfContextMap();
+        }
+
+        @Override
+        public void run() {
+
+            PrivilegedCarbonContext.startTenantFlow();
+            try {
+                if (tenantDomain != null) {
+                    PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                    carbonContext.setTenantDomain(tenantDomain);
+                    carbonContext.setTenantId(tenantId);
+                }
+                if (mdc != null) {
+                    MDC.setContextMap(mdc);
+                }
+                event.run();
+            } finally {
+                MDC.clear();
+                PrivilegedCarbonContext.endTenantFlow();
+            }
+        }
+    }
+
+    /**
+     * Number of events allowed in the current second. The second and the count of events in it are kept in a single
+     * atomic value, the second in the upper half and the count in the lower half, so that the count is reset and
+     * incremented atomically with respect to the events racing at the turn of a second.
+     */
+    static class RateLimit {
+
+        private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+        private final AtomicLong state = new AtomicLong();
+        private final LongSupplier clock;
+
+        RateLimit(LongSupplier clock) {
+
+            this.clock = clock;
+        }
+
+        boolean tryAcquire(int maxPerSecond) {
+
+            long second = TimeUnit.MILLISECONDS.toSeconds(clock.getAsLong()) & COUNT_MASK;
+            while (true) {
+                long current = state.get();
+                long count = (current >>> 32) == second ? current & COUNT_MASK : 0;
+                if (count >= maxPerSecond) {
+                    return false;
+                }
+                if (state.compareAndSet(current, (second << 32) | (count + 1))) {
+                    return true;
+                }
+            }
+        }
+    }
+}
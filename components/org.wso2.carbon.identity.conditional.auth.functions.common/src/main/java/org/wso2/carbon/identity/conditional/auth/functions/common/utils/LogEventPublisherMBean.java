@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+/**
+ * JMX view of the statistics of the {@link LogEventPublisher}.
+ */
+public interface LogEventPublisherMBean {
+
+    /**
+     * @return Number of log events published.
+     */
+    long getPublishedCount();
+
+    /**
+     * @return Number of log events left out by sampling.
+     */
+    long getSampledOutCount();
+
+    /**
+     * @return Number of log events left out as the rate limit of their event type was reached.
+     */
+    long getRateLimitedCount();
+
+    /**
+     * @return Number of log events dropped as the buffer was full.
+     */
+    long getDroppedCount();
+
+    /**
+     * @return Number of log events waiting in the buffer to be published.
+     */
+    int getPendingCount();
+}
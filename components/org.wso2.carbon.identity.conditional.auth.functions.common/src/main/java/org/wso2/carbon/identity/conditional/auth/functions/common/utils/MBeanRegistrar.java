@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers the MBeans exposing the runtime statistics of the conditional authentication functions.
+ */
+public class MBeanRegistrar {
+
+    private static final Log LOG = LogFactory.getLog(MBeanRegistrar.class);
+    private static final String DOMAIN = "org.wso2.carbon.identity.conditional.auth.functions";
+
+    private MBeanRegistrar() {
+
+    }
+
+    /**
+     * Register an MBean in the platform MBean server, replacing any MBean already registered with the same name.
+     *
+     * @param type  Type of the MBean, used as the type key property of its object name.
+     * @param name  Name of the MBean, used as the name key property of its object name.
+     * @param mBean MBean to register.
+     */
+    public static void register(String type, String name, Object mBean) {
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(type, name);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(mBean, objectName);
+        } catch (JMException e) {
+            LOG.error("Error while registering the MBean of type: " + type + " and name: " + name, e);
+        }
+    }
+
+    /**
+     * Unregister an MBean from the platform MBean server.
+     *
+     * @param type Type of the MBean.
+     * @param name Name of the MBean.
+     */
+    public static void unregister(String type, String name) {
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(type, name);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOG.error("Error while unregistering the MBean of type: " + type + " and name: " + name, e);
+        }
+    }
+
+    private static ObjectName getObjectName(String type, String name) throws JMException {
+
+        return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the additional requests, such as retries or hedged requests, made to an endpoint to a percentage of the
+ * requests made to it. Requests are counted over a sliding window of one second buckets, so that the budget follows
+ * the recent load of the endpoint.
+ */
+public class RequestBudget {
+
+    private static final int WINDOW_SECONDS = 10;
+
+    private final int percentage;
+    private final int minPerWindow;
+    private final long[] bucketSeconds = new long[WINDOW_SECONDS];
+    private final int[] requests = new int[WINDOW_SECONDS];
+    private final int[] acquired = new int[WINDOW_SECONDS];
+
+    /**
+     * Create a request budget.
+     *
+     * @param percentage   Percentage of the requests which may be followed by an additional request.
+     * @param minPerSecond Number of additional requests per second allowed regardless of the number of requests.
+     */
+    public RequestBudget(int percentage, int minPerSecond) {
+
+        this.percentage = percentage;
+        this.minPerWindow = minPerSecond * WINDOW_SECONDS;
+    }
+
+    /**
+     * Record a request made to the endpoint.
+     */
+    public synchronized void recordRequest() {
+
+        requests[getBucket()]++;
+    }
+
+    /**
+     * Acquire permission for an additional request.
+     *
+     * @return True if the additional request is within the budget.
+     */
+    public synchronized boolean tryAcquire() {
+
+        int bucket = getBucket();
+        long requestCount = 0;
+        long acquiredCount = 0;
+        long oldestSecond = bucketSeconds[bucket] - WINDOW_SECONDS;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            if (bucketSeconds[i] > oldestSecond) {
+                requestCount += requests[i];
+                acquiredCount += acquired[i];
+            }
+        }
+        if (acquiredCount >= Math.max(minPerWindow, requestCount * percentage / 100)) {
+            return false;
+        }
+        acquired[bucket]++;
+        return true;
+    }
+
+    private int getBucket() {
+
+        long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        int bucket = (int) (second % WINDOW_SECONDS);
+        if (bucketSeconds[bucket] != second) {
+            bucketSeconds[bucket] = second;
+            requests[bucket] = 0;
+            acquired[bucket] = 0;
+        }
+        return bucket;
+    }
+}
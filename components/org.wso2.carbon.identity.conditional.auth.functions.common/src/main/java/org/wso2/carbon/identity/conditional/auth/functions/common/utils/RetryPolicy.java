@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Retries calls to external endpoints with exponential backoff and full jitter.
+ * Retries are scheduled on a timer instead of holding the calling thread. Retries to an endpoint are limited by a
+ * retry budget, which allows retries up to the configured percentage of the requests made to the endpoint over the
+ * last few seconds, so that retries do not multiply the load on an endpoint which is already struggling. No retry
+ * is started once the configured deadline, counted from the first attempt, would be exceeded by the backoff.
+ */
+public class RetryPolicy {
+
+    private static final Log LOG = LogFactory.getLog(RetryPolicy.class);
+    private static final String THREAD_NAME_PREFIX = "adaptive-auth-retry-";
+
+    private static final RetryPolicy instance = new RetryPolicy();
+
+    private final ConcurrentMap<String, RequestBudget> retryBudgets = new ConcurrentHashMap<>();
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final int budgetPercentage;
+    private final int budgetMinRetriesPerSecond;
+    private final long deadline;
+    private final LongSupplier clock;
+    private volatile ScheduledExecutorService scheduler;
+
+    private RetryPolicy() {
+
+        this(ConfigProvider.getInstance().getRetryInitialBackoff(), ConfigProvider.getInstance().getRetryMaxBackoff(),
+                ConfigProvider.getInstance().getRetryBudgetPercentage(),
+                ConfigProvider.getInstance().getRetryBudgetMinRetriesPerSecond(),
+                ConfigProvider.getInstance().getRetryDeadline());
+    }
+
+    /**
+     * Create a retry policy using the given backoff, budget and deadline.
+     *
+     * @param initialBackoff            Backoff before the first retry in milliseconds.
+     * @param maxBackoff                Maximum backoff before a retry in milliseconds.
+     * @param budgetPercentage          Percentage of the requests to an endpoint which may be retried.
+     * @param budgetMinRetriesPerSecond Number of retries per second allowed regardless of the number of requests.
+     * @param deadline                  Time in milliseconds from the first attempt after which no retry is started.
+     *                                  A non positive value disables the deadline.
+     */
+    RetryPolicy(long initialBackoff, long maxBackoff, int budgetPercentage, int budgetMinRetriesPerSecond,
+                long deadline) {
+
+        this(initialBackoff, maxBackoff, budgetPercentage, budgetMinRetriesPerSecond, deadline,
+                System::currentTimeMillis);
+    }
+
+    RetryPolicy(long initialBackoff, long maxBackoff, int budgetPercentage, int budgetMinRetriesPerSecond,
+                long deadline, LongSupplier clock) {
+
+        this.initialBackoff = Math.max(1, initialBackoff);
+        this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+        this.budgetPercentage = budgetPercentage;
+        this.budgetMinRetriesPerSecond = budgetMinRetriesPerSecond;
+        this.deadline = deadline;
+        this.clock = clock;
+    }
+
+    public static RetryPolicy getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Execute the call, retrying it while its result is retryable and the retry is permitted by the attempt limit,
+     * the retry budget of the endpoint and the deadline.
+     *
+     * @param endpoint    Endpoint the call is made to, identifying the retry budget.
+     * @param maxRetries  Maximum number of retries.
+     * @param call        Makes an attempt of the call. Receives the number of the attempt, starting from 0.
+     * @param shouldRetry Decides whether the result of an attempt is retryable.
+     * @param <T>         Type of the result.
+     * @return Future which completes with the result of the last attempt.
+     */
+    public <T> CompletableFuture<T> execute(String endpoint, int maxRetries, IntFunction<CompletableFuture<T>> call,
+                                            Predicate<T> shouldRetry) {
+
+        return execute(endpoint, maxRetries, Deadline.none(), call, shouldRetry);
+    }
+
+    /**
+     * Execute the call, retrying it while its result is retryable and the retry is permitted by the attempt limit,
+     * the retry budget of the endpoint, the configured retry deadline and the deadline of the call.
+     *
+     * @param endpoint     Endpoint the call is made to, identifying the retry budget.
+     * @param maxRetries   Maximum number of retries.
+     * @param callDeadline End-to-end deadline of the call.
+     * @param call         Makes an attempt of the call. Receives the number of the attempt, starting from 0.
+     * @param shouldRetry  Decides whether the result of an attempt is retryable.
+     * @param <T>          Type of the result.
+     * @return Future which completes with the result of the last attempt.
+     */
+    public <T> CompletableFuture<T> execute(String endpoint, int maxRetries, Deadline callDeadline,
+                                            IntFunction<CompletableFuture<T>> call, Predicate<T> shouldRetry) {
+
+        RequestBudget retryBudget = retryBudgets.computeIfAbsent(endpoint,
+                key -> new RequestBudget(budgetPercentage, budgetMinRetriesPerSecond));
+        retryBudget.recordRequest();
+        long deadlineTime = Math.min(deadline > 0 ? clock.getAsLong() + deadline : Long.MAX_VALUE,
+                callDeadline.getExpiryTime());
+        return attempt(endpoint, retryBudget, deadlineTime, maxRetries, call, shouldRetry, 0);
+    }
+
+    private <T> CompletableFuture<T> attempt(String endpoint, RequestBudget retryBudget, long deadlineTime,
+                                             int maxRetries, IntFunction<CompletableFuture<T>> call,
+                                             Predicate<T> shouldRetry, int attempt) {
+
+        return call.apply(attempt).thenCompose(result -> {
+            if (!shouldRetry.test(result) || attempt >= maxRetries) {
+                return CompletableFuture.completedFuture(result);
+            }
+            long backoff = getBackoff(attempt + 1);
+            if (clock.getAsLong() + backoff >= deadlineTime) {
+                LOG.warn("Not retrying the call to " + endpoint + " as the retry deadline would be exceeded.");
+                return CompletableFuture.completedFuture(result);
+            }
+            if (!retryBudget.tryAcquire()) {
+                LOG.warn("Not retrying the call to " + endpoint + " as the retry budget of the endpoint is exhausted.");
+                return CompletableFuture.completedFuture(result);
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Retrying the call to " + endpoint + " in " + backoff + " ms.");
+            }
+            return delay(backoff).thenCompose(ignored -> attempt(endpoint, retryBudget, deadlineTime, maxRetries,
+                    call, shouldRetry, attempt + 1));
+        });
+    }
+
+    /**
+     * Get the backoff before the given retry. The backoff is picked uniformly between zero and the exponential
+     * backoff of the retry (full jitter), so that the retries of concurrent callers are spread over time.
+     *
+     * @param retry Number of the retry, starting from 1.
+     * @return Backoff in milliseconds.
+     */
+    private long getBackoff(int retry) {
+
+        long exponentialBackoff = initialBackoff << Math.min(retry - 1, 30);
+        long cappedBackoff = exponentialBackoff > 0 ? Math.min(maxBackoff, exponentialBackoff) : maxBackoff;
+        return ThreadLocalRandom.current().nextLong(cappedBackoff + 1);
+    }
+
+    /**
+     * Stop the scheduler which delays the retries. A new scheduler is started if a retry is delayed afterwards.
+     */
+    public void shutdown() {
+
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+            scheduler = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<Void> delay(long delay) {
+
+        CompletableFuture<Void> timer = new CompletableFuture<>();
+        getScheduler().schedule(() -> timer.complete(null), delay, TimeUnit.MILLISECONDS);
+        return timer;
+    }
+
+    private ScheduledExecutorService getScheduler() {
+
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            synchronized (this) {
+                executor = scheduler;
+                if (executor == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                        Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    scheduler = executor;
+                }
+            }
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue backed by a ring of slots, which can be offered to by many threads and is polled by a
+ * single consumer thread.
+ * Each slot carries a sequence number telling whether it is free for the producer claiming the position or holds an
+ * element for the consumer, so producers only contend on claiming a position and never wait for each other. When the
+ * ring is full, an offer fails instead of blocking the producer.
+ *
+ * @param <E> Type of the elements.
+ */
+public class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Create a ring buffer.
+     *
+     * @param capacity Minimum number of elements the buffer holds. Rounded up to a power of two.
+     */
+    public RingBuffer(int capacity) {
+
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an element to the buffer without blocking.
+     *
+     * @param element Element to add.
+     * @return False if the buffer is full and the element is not added.
+     */
+    public boolean offer(E element) {
+
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    // Publishing the sequence hands the slot over to the consumer.
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // The slot still holds an element of the previous lap, hence the buffer is full.
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Remove the oldest element from the buffer. Must only be called by the consumer thread.
+     *
+     * @return Oldest element, or null if the buffer is empty.
+     */
+    public E poll() {
+
+        long position = head.get();
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        E element = elements.get(index);
+        elements.set(index, null);
+        head.set(position + 1);
+        // Free the slot for the producer of the next lap.
+        sequences.set(index, position + mask + 1);
+        return element;
+    }
+
+    /**
+     * @return Number of elements in the buffer. The value is approximate while elements are added or removed.
+     */
+    public int size() {
+
+        return (int) Math.max(0, Math.min(tail.get() - head.get(), mask + 1));
+    }
+
+    /**
+     * @return Maximum number of elements the buffer holds.
+     */
+    public int capacity() {
+
+        return mask + 1;
+    }
+}
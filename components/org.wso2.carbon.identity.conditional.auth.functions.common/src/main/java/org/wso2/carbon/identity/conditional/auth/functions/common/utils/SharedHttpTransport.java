@@ -0,0 +1,492 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking HTTP transport shared by the tenants of the Choreo, analytics and elastic functions.
+ * Instead of a client with its own I/O reactor per tenant, one pooled client is kept per TLS profile and trust
+ * material, and each tenant
+ * gets a {@link TenantHttpClient} which is a logical connection pool over it, with the request config and the request
+ * limit of the tenant. The number of I/O dispatcher threads therefore depends on the number of TLS profiles, and
+ * does not grow with the number of tenants.
+ * The tenant clients are created without locking, and are evicted when the tenant is idle for longer than the
+ * configured timeout or is unloaded. Expired and idle connections of the pooled clients are closed in the
+ * background, and unless disabled, the per route connection limits of the pooled clients are resized from the
+ * observed load by an {@link AdaptivePoolSizer}.
+ */
+public class SharedHttpTransport implements SharedHttpTransportMBean {
+
+    private static final Log LOG = LogFactory.getLog(SharedHttpTransport.class);
+    private static final String HTTP = "http";
+    private static final String HTTPS = "https";
+    private static final char KEY_SEPARATOR = '|';
+    private static final String IO_DISPATCHER_THREAD_NAME_PREFIX = "adaptive-auth-shared-http-io-";
+    private static final String EVICTOR_THREAD_NAME = "adaptive-auth-shared-http-evictor";
+    private static final long DEFAULT_EVICTION_INTERVAL = 60000L;
+    private static final String MBEAN_TYPE = "HttpTransport";
+    private static final String MBEAN_NAME = "Shared";
+    private static final String DEFAULT_TRUST_MATERIAL = "default";
+    private static final String TRUST_MATERIAL_DIGEST_ALGORITHM = "SHA-256";
+
+    private static final SharedHttpTransport instance = new SharedHttpTransport();
+
+    private final ConcurrentMap<String, SharedClient> sharedClients = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TenantHttpClient> tenantClients = new ConcurrentHashMap<>();
+    private final AtomicLong evictedTenantPoolCount = new AtomicLong();
+    private final AtomicLong poolTimeoutCount = new AtomicLong();
+    private final int ioThreadCount;
+    private volatile ScheduledThreadPoolExecutor evictor;
+
+    private SharedHttpTransport() {
+
+        this(ConfigProvider.getInstance().getSharedTransportIoThreadCount());
+    }
+
+    SharedHttpTransport(int ioThreadCount) {
+
+        this.ioThreadCount = ioThreadCount > 0 ? ioThreadCount : Runtime.getRuntime().availableProcessors();
+    }
+
+    public static SharedHttpTransport getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Get the client of a tenant. The client is created on first use, with the settings resolved by the given
+     * resolver. Concurrent first uses may resolve the settings more than once, but only one client is kept.
+     *
+     * @param name           Name of the functions using the client, e.g. choreo.
+     * @param tenantDomain   Tenant domain.
+     * @param configResolver Resolves the settings of the tenant.
+     * @return Client of the tenant.
+     * @throws IOException If the settings of the tenant could not be resolved, or the pooled client of its TLS
+     *                     profile could not be created.
+     */
+    public TenantHttpClient getClient(String name, String tenantDomain, ConfigResolver configResolver)
+            throws IOException {
+
+        String key = name + KEY_SEPARATOR + tenantDomain;
+        TenantHttpClient client = tenantClients.get(key);
+        if (client != null) {
+            return client;
+        }
+        TenantTransportConfig config = configResolver.resolve(tenantDomain);
+        SharedClient sharedClient = getSharedClient(config);
+        TenantHttpClient created = new TenantHttpClient(this, key, tenantDomain, sharedClient.client,
+                sharedClient.poolSizer, config);
+        client = tenantClients.putIfAbsent(key, created);
+        return client != null ? client : created;
+    }
+
+    /**
+     * Evict the client of a tenant, e.g. when the tenant is unloaded. Requests already sent by the client are not
+     * affected.
+     *
+     * @param name         Name of the functions using the client.
+     * @param tenantDomain Tenant domain.
+     */
+    public void evict(String name, String tenantDomain) {
+
+        TenantHttpClient client = tenantClients.remove(name + KEY_SEPARATOR + tenantDomain);
+        if (client != null) {
+            evictedTenantPoolCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Close the pooled clients and forget the clients of the tenants.
+     */
+    public synchronized void shutdown() {
+
+        if (evictor != null) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+        tenantClients.clear();
+        for (SharedClient sharedClient : sharedClients.values()) {
+            try {
+                sharedClient.client.close();
+            } catch (IOException e) {
+                LOG.error("Error while closing the shared HTTP client of TLS profile: " + sharedClient.tlsProfile, e);
+            }
+        }
+        sharedClients.clear();
+        MBeanRegistrar.unregister(MBEAN_TYPE, MBEAN_NAME);
+    }
+
+    @Override
+    public int getSharedClientCount() {
+
+        return sharedClients.size();
+    }
+
+    @Override
+    public int getIoThreadCount() {
+
+        return sharedClients.size() * ioThreadCount;
+    }
+
+    @Override
+    public int getTenantPoolCount() {
+
+        return tenantClients.size();
+    }
+
+    @Override
+    public long getEvictedTenantPoolCount() {
+
+        return evictedTenantPoolCount.get();
+    }
+
+    @Override
+    public long getPoolTimeoutCount() {
+
+        return poolTimeoutCount.get();
+    }
+
+    @Override
+    public int getLeasedConnectionCount() {
+
+        return sharedClients.values().stream()
+                .mapToInt(sharedClient -> sharedClient.connectionManager.getTotalStats().getLeased()).sum();
+    }
+
+    @Override
+    public int getPendingConnectionCount() {
+
+        return sharedClients.values().stream()
+                .mapToInt(sharedClient -> sharedClient.connectionManager.getTotalStats().getPending()).sum();
+    }
+
+    @Override
+    public int getAvailableConnectionCount() {
+
+        return sharedClients.values().stream()
+                .mapToInt(sharedClient -> sharedClient.connectionManager.getTotalStats().getAvailable()).sum();
+    }
+
+    @Override
+    public long getPoolResizeCount() {
+
+        return sharedClients.values().stream().filter(sharedClient -> sharedClient.poolSizer != null)
+                .mapToLong(sharedClient -> sharedClient.poolSizer.getResizeCount()).sum();
+    }
+
+    @Override
+    public String[] getRoutePoolStats() {
+
+        List<String> routeStats = new ArrayList<>();
+        for (SharedClient sharedClient : sharedClients.values()) {
+            if (sharedClient.poolSizer != null) {
+                routeStats.addAll(sharedClient.poolSizer.getRouteStats());
+            }
+        }
+        return routeStats.toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getTenantPoolStats() {
+
+        return tenantClients.values().stream().map(client -> client.getKey() + " [active: " +
+                client.getActiveRequestCount() + "; pending: " + client.getPendingRequestCount() + "; max: " +
+                client.getMaxConcurrentRequests() + "]").toArray(String[]::new);
+    }
+
+    void evict(TenantHttpClient client) {
+
+        if (tenantClients.remove(client.getKey(), client)) {
+            evictedTenantPoolCount.incrementAndGet();
+        }
+    }
+
+    void recordPoolTimeout() {
+
+        poolTimeoutCount.incrementAndGet();
+    }
+
+    /**
+     * Run a task on the evictor thread after a delay, e.g. to time out a queued request of a tenant.
+     *
+     * @param task  Task to run.
+     * @param delay Delay in milliseconds.
+     * @return Future with which the task can be cancelled.
+     */
+    ScheduledFuture<?> schedule(Runnable task, long delay) {
+
+        return getEvictor().schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the pooled client of the TLS profile and the trust material of a tenant. The client is created and started
+     * on first use.
+     */
+    private SharedClient getSharedClient(TenantTransportConfig config) throws IOException {
+
+        String key = config.getTlsProfile() + KEY_SEPARATOR + getTrustMaterialId(config);
+        SharedClient sharedClient = sharedClients.get(key);
+        if (sharedClient == null) {
+            synchronized (this) {
+                sharedClient = sharedClients.get(key);
+                if (sharedClient == null) {
+                    sharedClient = createSharedClient(config);
+                    sharedClient.client.start();
+                    if (sharedClients.isEmpty()) {
+                        startEvictor();
+                        MBeanRegistrar.register(MBEAN_TYPE, MBEAN_NAME, this);
+                    }
+                    sharedClients.put(key, sharedClient);
+                }
+            }
+        }
+        return sharedClient;
+    }
+
+    /**
+     * Identify the trust material of the SSL context of a tenant by the digest of the trusted certificates, so that
+     * a tenant never uses an SSL context created from different trust material, e.g. after the trust store changed.
+     */
+    private static String getTrustMaterialId(TenantTransportConfig config) throws IOException {
+
+        if (config.getSslContext() == null || config.getTrustStore() == null) {
+            return DEFAULT_TRUST_MATERIAL;
+        }
+        try {
+            KeyStore trustStore = config.getTrustStore();
+            List<String> aliases = Collections.list(trustStore.aliases());
+            Collections.sort(aliases);
+            MessageDigest digest = MessageDigest.getInstance(TRUST_MATERIAL_DIGEST_ALGORITHM);
+            for (String alias : aliases) {
+                Certificate certificate = trustStore.getCertificate(alias);
+                if (certificate != null) {
+                    digest.update(certificate.getEncoded());
+                }
+            }
+            StringBuilder trustMaterialId = new StringBuilder();
+            for (byte value : digest.digest()) {
+                trustMaterialId.append(String.format("%02x", value));
+            }
+            return trustMaterialId.toString();
+        } catch (KeyStoreException | NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new IOException("Error while reading the trust store of TLS profile: " + config.getTlsProfile(), e);
+        }
+    }
+
+    private SharedClient createSharedClient(TenantTransportConfig config) throws IOException {
+
+        ConfigProvider configProvider = ConfigProvider.getInstance();
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreadCount)
+                .setSoKeepAlive(true)
+                .setTcpNoDelay(true)
+                .build();
+        SchemeIOSessionStrategy sslStrategy = config.getSslContext() != null ?
+                new SSLIOSessionStrategy(config.getSslContext(), config.getHostnameVerifier()) :
+                SSLIOSessionStrategy.getDefaultStrategy();
+        Registry<SchemeIOSessionStrategy> sessionStrategyRegistry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register(HTTP, NoopIOSessionStrategy.INSTANCE)
+                .register(HTTPS, sslStrategy)
+                .build();
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+                new DefaultConnectingIOReactor(ioReactorConfig, createThreadFactory(config.getTlsProfile())),
+                sessionStrategyRegistry);
+        connectionManager.setMaxTotal(configProvider.getSharedTransportMaxConnections());
+        AdaptivePoolSizer poolSizer = null;
+        int maxConnectionsPerRoute = configProvider.getSharedTransportMaxConnectionsPerRoute();
+        if (configProvider.isSharedTransportAdaptivePoolSizingEnabled()) {
+            poolSizer = new AdaptivePoolSizer(config.getTlsProfile(), connectionManager,
+                    configProvider.getSharedTransportMinConnectionsPerRoute(), maxConnectionsPerRoute);
+            // New routes start with the static per route limit, and are resized once their load is observed.
+            maxConnectionsPerRoute = Math.max(configProvider.getSharedTransportMinConnectionsPerRoute(),
+                    Math.min(configProvider.getMaxConnectionsPerRoute(), maxConnectionsPerRoute));
+        }
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Creating shared HTTP client for TLS profile: " + config.getTlsProfile() + ". I/O threads: " +
+                    ioThreadCount + ", max connections: " + configProvider.getSharedTransportMaxConnections() +
+                    ", max connections per route: " + maxConnectionsPerRoute + ", adaptive pool sizing: " +
+                    (poolSizer != null));
+        }
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                // Connections and their TLS sessions are reused across the tenants of the TLS profile, so no state
+                // of a tenant must be kept by the client.
+                .disableConnectionState()
+                .disableCookieManagement()
+                .disableAuthCaching()
+                .build();
+        return new SharedClient(config.getTlsProfile(), client, connectionManager, poolSizer);
+    }
+
+    /**
+     * Periodically evict the clients of idle tenants, close the expired and idle connections of the pooled clients,
+     * and resize the connection limits of their routes.
+     */
+    private void startEvictor() {
+
+        ConfigProvider configProvider = ConfigProvider.getInstance();
+        long connectionIdleTimeout = configProvider.getConnectionIdleTimeout();
+        long tenantIdleTimeout = configProvider.getSharedTransportTenantIdleTimeout();
+        long evictionInterval = configProvider.getConnectionEvictionInterval() > 0 ?
+                configProvider.getConnectionEvictionInterval() : DEFAULT_EVICTION_INTERVAL;
+        ScheduledThreadPoolExecutor executor = getEvictor();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                if (tenantIdleTimeout > 0) {
+                    evictIdleTenants(tenantIdleTimeout);
+                }
+                for (SharedClient sharedClient : sharedClients.values()) {
+                    sharedClient.connectionManager.closeExpiredConnections();
+                    if (connectionIdleTimeout > 0) {
+                        sharedClient.connectionManager.closeIdleConnections(connectionIdleTimeout,
+                                TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Error while evicting idle tenants and connections of the shared HTTP transport.", e);
+            }
+        }, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+
+        long poolSizingInterval = configProvider.getSharedTransportPoolSizingInterval();
+        if (configProvider.isSharedTransportAdaptivePoolSizingEnabled() && poolSizingInterval > 0) {
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    for (SharedClient sharedClient : sharedClients.values()) {
+                        if (sharedClient.poolSizer != null) {
+                            sharedClient.poolSizer.resize();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    LOG.error("Error while resizing the connection pools of the shared HTTP transport.", e);
+                }
+            }, poolSizingInterval, poolSizingInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private ScheduledThreadPoolExecutor getEvictor() {
+
+        ScheduledThreadPoolExecutor current = evictor;
+        if (current == null) {
+            synchronized (this) {
+                if (evictor == null) {
+                    evictor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                        Thread thread = new Thread(runnable, EVICTOR_THREAD_NAME);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    // The timeouts of the queued requests are mostly cancelled, so do not keep them until they expire.
+                    evictor.setRemoveOnCancelPolicy(true);
+                }
+                current = evictor;
+            }
+        }
+        return current;
+    }
+
+    private void evictIdleTenants(long tenantIdleTimeout) {
+
+        long now = System.currentTimeMillis();
+        for (TenantHttpClient client : tenantClients.values()) {
+            if (client.isIdle(now, tenantIdleTimeout) && tenantClients.remove(client.getKey(), client)) {
+                evictedTenantPoolCount.incrementAndGet();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Evicted the idle HTTP client of: " + client.getKey());
+                }
+            }
+        }
+    }
+
+    private ThreadFactory createThreadFactory(String tlsProfile) {
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, IO_DISPATCHER_THREAD_NAME_PREFIX + tlsProfile + "-" +
+                    threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Resolves the settings of a tenant when its logical connection pool is created.
+     */
+    @FunctionalInterface
+    public interface ConfigResolver {
+
+        /**
+         * @param tenantDomain Tenant domain.
+         * @return Settings of the tenant.
+         * @throws IOException If the settings of the tenant could not be resolved.
+         */
+        TenantTransportConfig resolve(String tenantDomain) throws IOException;
+    }
+
+    /**
+     * Pooled client of a TLS profile.
+     */
+    private static class SharedClient {
+
+        private final String tlsProfile;
+        private final CloseableHttpAsyncClient client;
+        private final PoolingNHttpClientConnectionManager connectionManager;
+        private final AdaptivePoolSizer poolSizer;
+
+        private SharedClient(String tlsProfile, CloseableHttpAsyncClient client,
+                             PoolingNHttpClientConnectionManager connectionManager, AdaptivePoolSizer poolSizer) {
+
+            this.tlsProfile = tlsProfile;
+            this.client = client;
+            this.connectionManager = connectionManager;
+            this.poolSizer = poolSizer;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+/**
+ * JMX view of the statistics of the {@link SharedHttpTransport}.
+ */
+public interface SharedHttpTransportMBean {
+
+    /**
+     * @return Number of pooled clients, one per TLS profile.
+     */
+    int getSharedClientCount();
+
+    /**
+     * @return Number of I/O dispatcher threads of the pooled clients.
+     */
+    int getIoThreadCount();
+
+    /**
+     * @return Number of tenants with a logical connection pool.
+     */
+    int getTenantPoolCount();
+
+    /**
+     * @return Number of logical connection pools evicted as their tenant was idle or unloaded.
+     */
+    long getEvictedTenantPoolCount();
+
+    /**
+     * @return Number of requests failed as they waited too long for a request slot of their tenant.
+     */
+    long getPoolTimeoutCount();
+
+    /**
+     * @return Number of connections of the pooled clients leased to requests in flight.
+     */
+    int getLeasedConnectionCount();
+
+    /**
+     * @return Number of requests of the pooled clients waiting for a connection.
+     */
+    int getPendingConnectionCount();
+
+    /**
+     * @return Number of idle connections kept alive by the pooled clients.
+     */
+    int getAvailableConnectionCount();
+
+    /**
+     * @return Number of times the connection limit of a route has been resized.
+     */
+    long getPoolResizeCount();
+
+    /**
+     * @return Connection utilization, limit and estimated demand, per route of the pooled clients.
+     */
+    String[] getRoutePoolStats();
+
+    /**
+     * @return Requests in flight and queued, per logical connection pool.
+     */
+    String[] getTenantPoolStats();
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent loads of the same key into a single in-flight operation.
+ * The first caller for a key starts the load, and every caller that arrives while the load is in progress receives
+ * the same {@link CompletableFuture}, so waiting callers are parked as completion callbacks rather than blocked
+ * threads. A failed load is remembered for a short window, during which callers fail fast with the same cause
+ * instead of hammering a struggling backend.
+ *
+ * @param <K> Type of the key.
+ * @param <V> Type of the loaded value.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<K, FailedLoad> failedLoads = new ConcurrentHashMap<>();
+    private final long failureCacheTimeout;
+    private final LongSupplier clock;
+
+    /**
+     * Create a single flight group.
+     *
+     * @param failureCacheTimeout Time in milliseconds a failed load is remembered. A non positive value disables
+     *                            caching of failures.
+     */
+    public SingleFlight(long failureCacheTimeout) {
+
+        this(failureCacheTimeout, System::currentTimeMillis);
+    }
+
+    SingleFlight(long failureCacheTimeout, LongSupplier clock) {
+
+        this.failureCacheTimeout = failureCacheTimeout;
+        this.clock = clock;
+    }
+
+    /**
+     * Get the result of the load for the given key, starting the load only if no load is in progress for the key.
+     *
+     * @param key    Key identifying the load.
+     * @param loader Starts the load and returns a future that completes with its result.
+     * @return Future completing with the loaded value, or exceptionally with the cause of the failure.
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> loader) {
+
+        FailedLoad failedLoad = failedLoads.get(key);
+        if (failedLoad != null) {
+            if (failedLoad.expiryTime > clock.getAsLong()) {
+                CompletableFuture<V> failed = new CompletableFuture<>();
+                failed.completeExceptionally(failedLoad.cause);
+                return failed;
+            }
+            failedLoads.remove(key, failedLoad);
+        }
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return existing;
+        }
+
+        CompletableFuture<V> load;
+        try {
+            load = loader.get();
+        } catch (RuntimeException e) {
+            load = new CompletableFuture<>();
+            load.completeExceptionally(e);
+        }
+        load.whenComplete((value, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ?
+                        error.getCause() : error;
+                if (failureCacheTimeout > 0) {
+                    failedLoads.put(key, new FailedLoad(cause, clock.getAsLong() + failureCacheTimeout));
+                }
+                // Leave the group before completing, so that callers reacting to the result start a fresh load.
+                inFlight.remove(key, flight);
+                flight.completeExceptionally(cause);
+            } else {
+                inFlight.remove(key, flight);
+                flight.complete(value);
+            }
+        });
+        return flight;
+    }
+
+    /**
+     * Forget a remembered failure for the given key, allowing the next caller to start a new load immediately.
+     *
+     * @param key Key identifying the load.
+     */
+    public void forget(K key) {
+
+        failedLoads.remove(key);
+    }
+
+    private static class FailedLoad {
+
+        private final Throwable cause;
+        private final long expiryTime;
+
+        private FailedLoad(Throwable cause, long expiryTime) {
+
+            this.cause = cause;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Logical connection pool of a tenant in the {@link SharedHttpTransport}.
+ * Requests are sent through the pooled client shared by the tenants of the same TLS profile, with the request config
+ * of the tenant applied to the requests which do not have their own. At most the configured number of requests of
+ * the tenant are in flight at a time. Further requests are queued without blocking the caller, and are failed with
+ * a {@link ConnectionPoolTimeoutException} once they waited longer than the connection request timeout. The timeouts
+ * are run by the evictor of the shared transport, so that they do not depend on other requests of the tenant
+ * completing.
+ * Closing the client only removes it from the shared transport. The shared client stays open for the other tenants.
+ */
+public class TenantHttpClient extends CloseableHttpAsyncClient {
+
+    private final SharedHttpTransport transport;
+    private final String key;
+    private final String tenantDomain;
+    private final CloseableHttpAsyncClient client;
+    private final AdaptivePoolSizer poolSizer;
+    private final RequestConfig requestConfig;
+    private final int maxConcurrentRequests;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger pendingRequests = new AtomicInteger();
+    private final Queue<Exchange<?>> pendingExchanges = new ConcurrentLinkedQueue<>();
+    private volatile long lastUsedTime = System.currentTimeMillis();
+
+    TenantHttpClient(SharedHttpTransport transport, String key, String tenantDomain, CloseableHttpAsyncClient client,
+                     AdaptivePoolSizer poolSizer, TenantTransportConfig config) {
+
+        this.transport = transport;
+        this.key = key;
+        this.tenantDomain = tenantDomain;
+        this.client = client;
+        this.poolSizer = poolSizer;
+        this.requestConfig = config.getRequestConfig();
+        this.maxConcurrentRequests = config.getMaxConcurrentRequests();
+    }
+
+    @Override
+    public <T> Future<T> execute(HttpAsyncRequestProducer requestProducer,
+                                 HttpAsyncResponseConsumer<T> responseConsumer, HttpContext context,
+                                 FutureCallback<T> callback) {
+
+        lastUsedTime = System.currentTimeMillis();
+        HttpClientContext clientContext = HttpClientContext.adapt(context != null ? context : new BasicHttpContext());
+        if (requestConfig != null && clientContext.getAttribute(HttpClientContext.REQUEST_CONFIG) == null) {
+            clientContext.setRequestConfig(requestConfig);
+        }
+        Exchange<T> exchange = new Exchange<>(requestProducer, responseConsumer, clientContext, callback);
+        if (tryAcquire()) {
+            exchange.send();
+        } else {
+            pendingRequests.incrementAndGet();
+            pendingExchanges.offer(exchange);
+            exchange.scheduleTimeout();
+            // A request may have completed after the permit was denied, but before the exchange was queued.
+            sendPending();
+        }
+        return exchange;
+    }
+
+    @Override
+    public boolean isRunning() {
+
+        return client.isRunning();
+    }
+
+    @Override
+    public void start() {
+
+        // The shared client is started by the shared transport.
+    }
+
+    @Override
+    public void close() {
+
+        transport.evict(this);
+    }
+
+    public String getTenantDomain() {
+
+        return tenantDomain;
+    }
+
+    String getKey() {
+
+        return key;
+    }
+
+    int getActiveRequestCount() {
+
+        return activeRequests.get();
+    }
+
+    int getPendingRequestCount() {
+
+        return pendingRequests.get();
+    }
+
+    int getMaxConcurrentRequests() {
+
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Check whether the tenant has not sent a request for longer than the given timeout.
+     *
+     * @param now         Current time in epoch milliseconds.
+     * @param idleTimeout Idle timeout in milliseconds.
+     * @return True if no request of the tenant is in flight or queued, and the tenant has been idle for longer than
+     * the timeout.
+     */
+    boolean isIdle(long now, long idleTimeout) {
+
+        return activeRequests.get() == 0 && pendingRequests.get() == 0 && now - lastUsedTime > idleTimeout;
+    }
+
+    private boolean tryAcquire() {
+
+        if (maxConcurrentRequests <= 0) {
+            activeRequests.incrementAndGet();
+            return true;
+        }
+        int active;
+        do {
+            active = activeRequests.get();
+            if (active >= maxConcurrentRequests) {
+                return false;
+            }
+        } while (!activeRequests.compareAndSet(active, active + 1));
+        return true;
+    }
+
+    private void release() {
+
+        activeRequests.decrementAndGet();
+        sendPending();
+    }
+
+    /**
+     * Send the queued requests for which permits are available.
+     */
+    private void sendPending() {
+
+        while (!pendingExchanges.isEmpty()) {
+            if (!tryAcquire()) {
+                return;
+            }
+            Exchange<?> exchange = pendingExchanges.poll();
+            if (exchange == null) {
+                activeRequests.decrementAndGet();
+                continue;
+            }
+            pendingRequests.decrementAndGet();
+            exchange.sendQueued();
+        }
+    }
+
+    /**
+     * A request of the tenant, which completes the future returned to the caller once the response is received.
+     *
+     * @param <T> Type of the result of the response consumer.
+     */
+    private class Exchange<T> extends BasicFuture<T> {
+
+        private final HttpAsyncRequestProducer requestProducer;
+        private final HttpAsyncResponseConsumer<T> responseConsumer;
+        private final HttpClientContext context;
+        private final long createdTime = System.nanoTime();
+        private volatile Future<T> delegate;
+        private volatile ScheduledFuture<?> timeout;
+
+        private Exchange(HttpAsyncRequestProducer requestProducer, HttpAsyncResponseConsumer<T> responseConsumer,
+                         HttpClientContext context, FutureCallback<T> callback) {
+
+            super(callback);
+            this.requestProducer = requestProducer;
+            this.responseConsumer = responseConsumer;
+            this.context = context;
+        }
+
+        /**
+         * Send a request which waited for a permit, unless it has been cancelled or waited too long meanwhile.
+         */
+        private void sendQueued() {
+
+            ScheduledFuture<?> scheduledTimeout = timeout;
+            if (scheduledTimeout != null) {
+                scheduledTimeout.cancel(false);
+            }
+            if (isCancelled()) {
+                release();
+                return;
+            }
+            int waitTimeout = context.getRequestConfig().getConnectionRequestTimeout();
+            if (waitTimeout > 0 && System.nanoTime() - createdTime > TimeUnit.MILLISECONDS.toNanos(waitTimeout)) {
+                release();
+                timedOut();
+                return;
+            }
+            send();
+        }
+
+        /**
+         * Fail the request once it has waited for a permit for longer than the connection request timeout.
+         */
+        private void scheduleTimeout() {
+
+            int waitTimeout = context.getRequestConfig().getConnectionRequestTimeout();
+            if (waitTimeout <= 0) {
+                return;
+            }
+            try {
+                timeout = transport.schedule(() -> {
+                    // The request is only failed if it was not taken from the queue to be sent meanwhile.
+                    if (pendingExchanges.remove(this)) {
+                        pendingRequests.decrementAndGet();
+                        if (!isCancelled()) {
+                            timedOut();
+                        }
+                    }
+                }, waitTimeout);
+            } catch (RejectedExecutionException e) {
+                // The transport is shutting down. The wait is still checked once a permit is available.
+            }
+        }
+
+        private void timedOut() {
+
+            transport.recordPoolTimeout();
+            failed(new ConnectionPoolTimeoutException("Timeout waiting for a request slot of tenant: " +
+                    tenantDomain));
+        }
+
+        private void send() {
+
+            AdaptivePoolSizer.RouteLoad routeLoad = poolSizer != null && requestProducer.getTarget() != null ?
+                    poolSizer.requestStarted(requestProducer.getTarget()) : null;
+            long sentTime = System.nanoTime();
+            try {
+                delegate = client.execute(requestProducer, responseConsumer, context, new FutureCallback<T>() {
+
+                    @Override
+                    public void completed(T result) {
+
+                        done(routeLoad, sentTime);
+                        Exchange.this.completed(result);
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+
+                        done(routeLoad, sentTime);
+                        Exchange.this.failed(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+
+                        done(routeLoad, sentTime);
+                        Exchange.this.cancel();
+                    }
+                });
+            } catch (RuntimeException e) {
+                done(routeLoad, sentTime);
+                failed(e);
+            }
+        }
+
+        private void done(AdaptivePoolSizer.RouteLoad routeLoad, long sentTime) {
+
+            if (routeLoad != null) {
+                routeLoad.completed(System.nanoTime() - sentTime);
+            }
+            release();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<T> sent = delegate;
+            if (cancelled && sent != null) {
+                sent.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+    }
+}
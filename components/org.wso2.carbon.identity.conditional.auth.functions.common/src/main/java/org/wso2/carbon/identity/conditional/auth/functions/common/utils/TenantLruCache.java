@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory cache whose entries are isolated per tenant. The cache of each tenant is bounded to the given number of
+ * entries, evicting the least recently used entry once the bound is reached, so that a tenant cannot evict the
+ * entries of another tenant.
+ *
+ * @param <V> Type of the cached values.
+ */
+public class TenantLruCache<V> {
+
+    private final ConcurrentMap<String, TenantEntries> tenantEntries = new ConcurrentHashMap<>();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final int maxEntriesPerTenant;
+
+    /**
+     * @param maxEntriesPerTenant Maximum number of entries cached per tenant.
+     */
+    public TenantLruCache(int maxEntriesPerTenant) {
+
+        this.maxEntriesPerTenant = maxEntriesPerTenant;
+    }
+
+    /**
+     * Get a cached value, marking it as the most recently used entry of the tenant.
+     *
+     * @param tenantDomain Tenant domain the entry belongs to.
+     * @param key          Key of the entry.
+     * @return Cached value, or null if there is none.
+     */
+    public V get(String tenantDomain, String key) {
+
+        TenantEntries entries = tenantEntries.get(StringUtils.defaultString(tenantDomain));
+        return entries != null ? entries.get(key) : null;
+    }
+
+    /**
+     * Cache a value, evicting the least recently used entry of the tenant if the bound is reached.
+     *
+     * @param tenantDomain Tenant domain the entry belongs to.
+     * @param key          Key of the entry.
+     * @param value        Value to cache.
+     */
+    public void put(String tenantDomain, String key, V value) {
+
+        tenantEntries.computeIfAbsent(StringUtils.defaultString(tenantDomain), tenant -> new TenantEntries())
+                .put(key, value);
+    }
+
+    /**
+     * Remove a cached entry.
+     *
+     * @param tenantDomain Tenant domain the entry belongs to.
+     * @param key          Key of the entry.
+     */
+    public void remove(String tenantDomain, String key) {
+
+        TenantEntries entries = tenantEntries.get(StringUtils.defaultString(tenantDomain));
+        if (entries != null) {
+            entries.remove(key, null);
+        }
+    }
+
+    /**
+     * Remove a cached entry only if it is still mapped to the given value, so that a value cached concurrently is
+     * not removed.
+     *
+     * @param tenantDomain Tenant domain the entry belongs to.
+     * @param key          Key of the entry.
+     * @param value        Value expected to be cached.
+     */
+    public void remove(String tenantDomain, String key, V value) {
+
+        TenantEntries entries = tenantEntries.get(StringUtils.defaultString(tenantDomain));
+        if (entries != null) {
+            entries.remove(key, value);
+        }
+    }
+
+    /**
+     * Remove the cached entries of a tenant.
+     *
+     * @param tenantDomain Tenant domain.
+     */
+    public void clear(String tenantDomain) {
+
+        tenantEntries.remove(StringUtils.defaultString(tenantDomain));
+    }
+
+    /**
+     * Remove the cached entries of all the tenants.
+     */
+    public void clear() {
+
+        tenantEntries.clear();
+    }
+
+    /**
+     * @return Number of entries evicted to keep the cache of a tenant within its bound.
+     */
+    public long getEvictionCount() {
+
+        return evictionCount.get();
+    }
+
+    /**
+     * @return Number of entries currently cached across all the tenants.
+     */
+    public int size() {
+
+        return tenantEntries.values().stream().mapToInt(TenantEntries::size).sum();
+    }
+
+    /**
+     * Cached entries of a tenant, in the order they were last used.
+     */
+    private class TenantEntries {
+
+        private final Map<String, V> entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 2215305672908136718L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+
+                if (size() > maxEntriesPerTenant) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        private synchronized V get(String key) {
+
+            return entries.get(key);
+        }
+
+        private synchronized void put(String key, V value) {
+
+            entries.put(key, value);
+        }
+
+        private synchronized void remove(String key, V value) {
+
+            if (value == null) {
+                entries.remove(key);
+            } else {
+                entries.remove(key, value);
+            }
+        }
+
+        private synchronized int size() {
+
+            return entries.size();
+        }
+    }
+}
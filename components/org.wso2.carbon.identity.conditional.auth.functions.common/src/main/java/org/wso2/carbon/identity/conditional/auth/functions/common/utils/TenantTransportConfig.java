@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.client.config.RequestConfig;
+
+import java.security.KeyStore;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Settings of the logical connection pool of a tenant in the {@link SharedHttpTransport}.
+ * Tenants with the same TLS profile and the same trusted certificates share a pooled client, which uses the SSL
+ * context of the first of them. The TLS profile name must therefore identify the hostname verifier and any other
+ * setting of the SSL context apart from its trust material, e.g. analytics-strict.
+ */
+public class TenantTransportConfig {
+
+    private final String tlsProfile;
+    private final SSLContext sslContext;
+    private final KeyStore trustStore;
+    private final HostnameVerifier hostnameVerifier;
+    private final RequestConfig requestConfig;
+    private final int maxConcurrentRequests;
+
+    /**
+     * Create the settings of a tenant.
+     *
+     * @param tlsProfile            Name of the TLS profile of the tenant.
+     * @param sslContext            SSL context of the TLS profile, or null to use the default SSL context.
+     * @param trustStore            Trust store from which the SSL context was created, or null if the SSL context
+     *                              trusts the default trust material of the JVM.
+     * @param hostnameVerifier      Hostname verifier of the TLS profile.
+     * @param requestConfig         Request config used for the requests of the tenant which do not have their own.
+     * @param maxConcurrentRequests Maximum number of requests of the tenant in flight at a time.
+     */
+    public TenantTransportConfig(String tlsProfile, SSLContext sslContext, KeyStore trustStore,
+                                 HostnameVerifier hostnameVerifier, RequestConfig requestConfig,
+                                 int maxConcurrentRequests) {
+
+        this.tlsProfile = tlsProfile;
+        this.sslContext = sslContext;
+        this.trustStore = trustStore;
+        this.hostnameVerifier = hostnameVerifier;
+        this.requestConfig = requestConfig;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public String getTlsProfile() {
+
+        return tlsProfile;
+    }
+
+    public SSLContext getSslContext() {
+
+        return sslContext;
+    }
+
+    public KeyStore getTrustStore() {
+
+        return trustStore;
+    }
+
+    public HostnameVerifier getHostnameVerifier() {
+
+        return hostnameVerifier;
+    }
+
+    public RequestConfig getRequestConfig() {
+
+        return requestConfig;
+    }
+
+    public int getMaxConcurrentRequests() {
+
+        return maxConcurrentRequests;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.parallel;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncCaller;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncReturn;
+import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
+import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_FAIL;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_SUCCESS;
+
+public class ExecuteParallelFunctionImplTest {
+
+    private static final String TEST_FUNCTION = "testParallelFunction";
+
+    private AuthenticationContext context;
+    private List<Map<String, Object>> joinedData;
+    private List<String> joinedOutcomes;
+    private AsyncReturn asyncReturn;
+
+    @BeforeClass
+    public void setUpClass() {
+
+        ParallelCallRegistry.getInstance().register(TEST_FUNCTION, arguments -> respond(OUTCOME_SUCCESS, null));
+    }
+
+    @AfterClass
+    public void tearDownClass() {
+
+        ParallelCallRegistry.getInstance().unregister(TEST_FUNCTION);
+    }
+
+    @BeforeMethod
+    public void setUp() {
+
+        context = new AuthenticationContext();
+        joinedData = new ArrayList<>();
+        joinedOutcomes = new ArrayList<>();
+        asyncReturn = (authenticationContext, data, outcome) -> {
+            joinedData.add(data);
+            joinedOutcomes.add(outcome);
+        };
+    }
+
+    @Test
+    public void testAllCallsSucceed() throws Exception {
+
+        Map<String, Object> riskData = Collections.singletonMap("riskScore", 1);
+        ExecuteParallelFunctionImpl.ParallelCaller caller = new ExecuteParallelFunctionImpl.ParallelCaller(
+                Arrays.asList("risk", "geo"), Arrays.asList(respond(OUTCOME_SUCCESS, riskData),
+                respond(OUTCOME_SUCCESS, null)));
+
+        caller.accept(context, asyncReturn);
+
+        assertEquals(joinedOutcomes, Collections.singletonList(OUTCOME_SUCCESS));
+        Map<String, Object> results = joinedData.get(0);
+        assertEquals(new ArrayList<>(results.keySet()), Arrays.asList("risk", "geo"));
+        assertEquals(results.get("risk"), createResult(OUTCOME_SUCCESS, riskData));
+        assertEquals(results.get("geo"), createResult(OUTCOME_SUCCESS, Collections.emptyMap()));
+    }
+
+    @Test
+    public void testFailsIfAnyCallFails() throws Exception {
+
+        ExecuteParallelFunctionImpl.ParallelCaller caller = new ExecuteParallelFunctionImpl.ParallelCaller(
+                Arrays.asList("risk", "geo"), Arrays.asList(respond(OUTCOME_SUCCESS, null),
+                respond("timeout", null)));
+
+        caller.accept(context, asyncReturn);
+
+        assertEquals(joinedOutcomes, Collections.singletonList(OUTCOME_FAIL));
+        assertEquals(joinedData.get(0).get("geo"), createResult("timeout", Collections.emptyMap()));
+    }
+
+    @Test
+    public void testCompletesOnceLastCallReturns() throws Exception {
+
+        List<AsyncReturn> callReturns = new ArrayList<>();
+        AsyncCaller deferred = (authenticationContext, callReturn) -> callReturns.add(callReturn);
+        ExecuteParallelFunctionImpl.ParallelCaller caller = new ExecuteParallelFunctionImpl.ParallelCaller(
+                Arrays.asList("first", "second"), Arrays.asList(deferred, deferred));
+
+        caller.accept(context, asyncReturn);
+        callReturns.get(1).accept(context, Collections.emptyMap(), OUTCOME_SUCCESS);
+        assertTrue(joinedOutcomes.isEmpty(), "The flow was resumed before all the calls completed.");
+
+        // An outcome reported more than once by a call is not recorded again.
+        callReturns.get(1).accept(context, Collections.emptyMap(), OUTCOME_FAIL);
+        assertTrue(joinedOutcomes.isEmpty(), "The flow was resumed before all the calls completed.");
+
+        callReturns.get(0).accept(context, Collections.emptyMap(), OUTCOME_SUCCESS);
+        callReturns.get(0).accept(context, Collections.emptyMap(), OUTCOME_SUCCESS);
+        assertEquals(joinedOutcomes, Collections.singletonList(OUTCOME_SUCCESS),
+                "The flow was not resumed exactly once.");
+    }
+
+    @Test
+    public void testCallFailingToStart() throws Exception {
+
+        AsyncCaller failing = (authenticationContext, callReturn) -> {
+            throw new FrameworkException("Error while starting the call.");
+        };
+        ExecuteParallelFunctionImpl.ParallelCaller caller = new ExecuteParallelFunctionImpl.ParallelCaller(
+                Arrays.asList("risk", "geo"), Arrays.asList(failing, respond(OUTCOME_SUCCESS, null)));
+
+        caller.accept(context, asyncReturn);
+
+        assertEquals(joinedOutcomes, Collections.singletonList(OUTCOME_FAIL));
+        assertEquals(joinedData.get(0).get("risk"), createResult(OUTCOME_FAIL, Collections.emptyMap()));
+        assertEquals(joinedData.get(0).get("geo"), createResult(OUTCOME_SUCCESS, Collections.emptyMap()));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNoCalls() {
+
+        new ExecuteParallelFunctionImpl().executeParallel(Collections.emptyList(), Collections.emptyMap());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnregisteredFunction() {
+
+        new ExecuteParallelFunctionImpl().executeParallel(Collections.singletonList(createCall("risk",
+                "unknownFunction")), Collections.emptyMap());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDuplicateCallName() {
+
+        new ExecuteParallelFunctionImpl().executeParallel(Arrays.asList(createCall("risk", TEST_FUNCTION),
+                createCall("risk", TEST_FUNCTION)), Collections.emptyMap());
+    }
+
+    private static AsyncCaller respond(String outcome, Map<String, Object> data) {
+
+        return (authenticationContext, callReturn) -> callReturn.accept(authenticationContext, data, outcome);
+    }
+
+    private static Map<String, Object> createCall(String name, String function) {
+
+        Map<String, Object> call = new HashMap<>();
+        call.put("name", name);
+        call.put("function", function);
+        call.put("args", Collections.emptyList());
+        return call;
+    }
+
+    private static Map<String, Object> createResult(String outcome, Map<String, Object> data) {
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("outcome", outcome);
+        result.put("data", data);
+        return result;
+    }
+}
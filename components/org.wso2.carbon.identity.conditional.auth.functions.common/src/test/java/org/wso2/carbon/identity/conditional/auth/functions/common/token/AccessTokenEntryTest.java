@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.token;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class AccessTokenEntryTest {
+
+    private static final String OPAQUE_TOKEN = "2YotnFZFEjr1zCsicMWpAA";
+    private static final String SCOPE = "risk:read";
+
+    @Test
+    public void testUnexpiredToken() {
+
+        long expiryTime = System.currentTimeMillis() + 60000;
+        AccessTokenEntry entry = new AccessTokenEntry(OPAQUE_TOKEN, expiryTime, SCOPE);
+
+        assertFalse(entry.isExpired(), "A token was expired before its expiry time.");
+        assertEquals(entry.getAccessToken(), OPAQUE_TOKEN);
+        assertEquals(entry.getExpiryTime(), expiryTime);
+        assertEquals(entry.getScope(), SCOPE);
+    }
+
+    @Test
+    public void testExpiredToken() {
+
+        AccessTokenEntry entry = new AccessTokenEntry(OPAQUE_TOKEN, System.currentTimeMillis(), null);
+
+        assertTrue(entry.isExpired(), "A token was not expired at its expiry time.");
+        assertNull(entry.getScope());
+    }
+
+    @Test
+    public void testOpaqueTokenWithExpiresIn() {
+
+        AccessTokenEntry entry = new AccessTokenEntry(OPAQUE_TOKEN,
+                TokenExpiryResolver.resolveExpiryTime(OPAQUE_TOKEN, "3600"), SCOPE);
+
+        assertFalse(entry.isExpired(), "An opaque token was expired although expires_in was given.");
+    }
+
+    @Test
+    public void testTokenWithoutResolvableExpiryIsExpired() {
+
+        AccessTokenEntry entry = new AccessTokenEntry(OPAQUE_TOKEN,
+                TokenExpiryResolver.resolveExpiryTime(OPAQUE_TOKEN, null), SCOPE);
+
+        assertTrue(entry.isExpired(), "A token without a resolvable expiry was served as valid.");
+    }
+
+    @Test
+    public void testEntryIsSerializable() throws Exception {
+
+        AccessTokenEntry entry = new AccessTokenEntry(OPAQUE_TOKEN, 1893456000000L, SCOPE);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(entry);
+        }
+        AccessTokenEntry copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (AccessTokenEntry) in.readObject();
+        }
+
+        assertEquals(copy.getAccessToken(), OPAQUE_TOKEN);
+        assertEquals(copy.getExpiryTime(), 1893456000000L);
+        assertEquals(copy.getScope(), SCOPE);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.token;
+
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TokenExpiryResolverTest {
+
+    private static final String OPAQUE_TOKEN = "2YotnFZFEjr1zCsicMWpAA";
+
+    @Test
+    public void testExpiryFromExpiresIn() {
+
+        long before = System.currentTimeMillis();
+        long expiryTime = TokenExpiryResolver.resolveExpiryTime(OPAQUE_TOKEN, " 3600 ");
+
+        assertTrue(expiryTime >= before + TimeUnit.HOURS.toMillis(1) &&
+                expiryTime <= System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1),
+                "The expiry was not resolved from expires_in.");
+    }
+
+    @Test
+    public void testFractionalExpiresIn() {
+
+        long before = System.currentTimeMillis();
+        long expiryTime = TokenExpiryResolver.resolveExpiryTime(OPAQUE_TOKEN, "60.9");
+
+        assertTrue(expiryTime >= before + TimeUnit.SECONDS.toMillis(60) &&
+                expiryTime <= System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60));
+    }
+
+    @Test
+    public void testExpiresInTakesPrecedenceOverExpClaim() {
+
+        long before = System.currentTimeMillis();
+        long expiryTime = TokenExpiryResolver.resolveExpiryTime(createJwt(1000), "60");
+
+        assertTrue(expiryTime >= before + TimeUnit.SECONDS.toMillis(60));
+    }
+
+    @Test
+    public void testExpiryFromExpClaim() {
+
+        assertEquals(TokenExpiryResolver.resolveExpiryTime(createJwt(1893456000), null), 1893456000000L,
+                "The expiry was not resolved from the exp claim of the JWT.");
+    }
+
+    @Test
+    public void testUnresolvableExpiry() {
+
+        assertEquals(TokenExpiryResolver.resolveExpiryTime(OPAQUE_TOKEN, null), -1);
+        assertEquals(TokenExpiryResolver.resolveExpiryTime(OPAQUE_TOKEN, "soon"), -1);
+        assertEquals(TokenExpiryResolver.resolveExpiryTime(createJwt(null), ""), -1,
+                "An expiry was resolved for a JWT without an exp claim.");
+    }
+
+    private static String createJwt(Integer expiry) {
+
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = "{\"alg\":\"HS256\",\"typ\":\"JWT\"}";
+        String claims = "{\"sub\":\"client\"" + (expiry != null ? ",\"exp\":" + expiry : "") + "}";
+        return encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + "." +
+                encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + "." +
+                encoder.encodeToString("signature".getBytes(StandardCharsets.UTF_8));
+    }
+}
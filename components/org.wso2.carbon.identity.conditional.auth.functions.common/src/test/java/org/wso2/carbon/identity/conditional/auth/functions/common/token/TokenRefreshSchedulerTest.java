@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.token;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TokenRefreshSchedulerTest {
+
+    private static final String TOKEN_KEY = "client-id@https://idp.example.com/token";
+    private static final String LATER_TOKEN_KEY = "other-client-id@https://idp.example.com/token";
+    private static final long WAIT_TIMEOUT = 5000;
+
+    private TokenRefreshScheduler refreshScheduler;
+    private AtomicInteger refreshes;
+
+    @BeforeMethod
+    public void setUp() {
+
+        refreshScheduler = new TokenRefreshScheduler("test", true, 0.5);
+        refreshes = new AtomicInteger();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        refreshScheduler.shutdown();
+    }
+
+    @AfterClass
+    public void tearDownClass() {
+
+        TokenRefreshScheduler.shutdownScheduler();
+    }
+
+    @Test
+    public void testUsedTokenIsRenewed() throws Exception {
+
+        refreshScheduler.track(TOKEN_KEY, System.currentTimeMillis() + 200, succeed());
+        refreshScheduler.recordHit(TOKEN_KEY);
+
+        waitFor(() -> refreshScheduler.getRefreshCount() == 1);
+        assertEquals(refreshes.get(), 1);
+        assertEquals(refreshScheduler.getHitCount(), 1);
+    }
+
+    @Test
+    public void testUnusedTokenIsNotRenewed() throws Exception {
+
+        refreshScheduler.track(TOKEN_KEY, System.currentTimeMillis() + 200, succeed());
+
+        waitFor(() -> refreshScheduler.getSkippedRefreshCount() == 1);
+        assertEquals(refreshes.get(), 0, "A token which was not used was renewed.");
+        assertEquals(refreshScheduler.getTrackedTokenCount(), 0);
+    }
+
+    @Test
+    public void testFailedRenewalIsRetriedWhileTimeRemains() throws Exception {
+
+        // The renewal fails at a tenth of the lifetime, leaving enough time to retry half way to the expiry.
+        TokenRefreshScheduler earlyRefreshScheduler = new TokenRefreshScheduler("test-early", true, 0.1);
+        try {
+            earlyRefreshScheduler.track(TOKEN_KEY, System.currentTimeMillis() + 3000, fail());
+            earlyRefreshScheduler.recordHit(TOKEN_KEY);
+
+            waitFor(() -> earlyRefreshScheduler.getRefreshFailureCount() == 1);
+            assertEquals(earlyRefreshScheduler.getTrackedTokenCount(), 1, "The failed renewal was not rescheduled.");
+        } finally {
+            earlyRefreshScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedRenewalIsDroppedCloseToExpiry() throws Exception {
+
+        refreshScheduler.track(TOKEN_KEY, System.currentTimeMillis() + 200, fail());
+        refreshScheduler.recordHit(TOKEN_KEY);
+
+        waitFor(() -> refreshScheduler.getRefreshFailureCount() == 1);
+        waitFor(() -> refreshScheduler.getTrackedTokenCount() == 0);
+        assertEquals(refreshes.get(), 1);
+    }
+
+    @Test
+    public void testRefresherThrowingIsCountedAsFailure() throws Exception {
+
+        refreshScheduler.track(TOKEN_KEY, System.currentTimeMillis() + 200, () -> {
+            refreshes.incrementAndGet();
+            throw new IllegalStateException("Token endpoint is not configured.");
+        });
+        refreshScheduler.recordHit(TOKEN_KEY);
+
+        waitFor(() -> refreshScheduler.getRefreshFailureCount() == 1);
+        assertEquals(refreshScheduler.getRefreshCount(), 0);
+    }
+
+    @Test
+    public void testUntrackedTokenIsNotRenewed() throws Exception {
+
+        refreshScheduler.track(TOKEN_KEY, System.currentTimeMillis() + 200, succeed());
+        refreshScheduler.recordHit(TOKEN_KEY);
+        refreshScheduler.untrack(TOKEN_KEY);
+        assertEquals(refreshScheduler.getTrackedTokenCount(), 0);
+
+        // A token due after the untracked one is renewed, so the untracked token would have been renewed by then.
+        AtomicInteger laterRefreshes = new AtomicInteger();
+        refreshScheduler.track(LATER_TOKEN_KEY, System.currentTimeMillis() + 400, () -> {
+            laterRefreshes.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+        refreshScheduler.recordHit(LATER_TOKEN_KEY);
+
+        waitFor(() -> refreshScheduler.getRefreshCount() == 1);
+        assertEquals(laterRefreshes.get(), 1);
+        assertEquals(refreshes.get(), 0, "An untracked token was renewed.");
+    }
+
+    @Test
+    public void testTrackingAgainReplacesToken() throws Exception {
+
+        AtomicInteger replacedRefreshes = new AtomicInteger();
+        refreshScheduler.track(TOKEN_KEY, System.currentTimeMillis() + 200, () -> {
+            replacedRefreshes.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+        refreshScheduler.track(TOKEN_KEY, System.currentTimeMillis() + 400, succeed());
+        refreshScheduler.recordHit(TOKEN_KEY);
+
+        assertEquals(refreshScheduler.getTrackedTokenCount(), 1);
+        waitFor(() -> refreshScheduler.getRefreshCount() == 1);
+        assertEquals(replacedRefreshes.get(), 0, "The replaced token was renewed.");
+    }
+
+    @Test
+    public void testExpiredTokenIsNotTracked() {
+
+        refreshScheduler.track(TOKEN_KEY, System.currentTimeMillis() - 1, succeed());
+
+        assertEquals(refreshScheduler.getTrackedTokenCount(), 0);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+
+        TokenRefreshScheduler disabledRefreshScheduler = new TokenRefreshScheduler("test-disabled", false, 0.5);
+        try {
+            disabledRefreshScheduler.track(TOKEN_KEY, System.currentTimeMillis() + 200, succeed());
+            disabledRefreshScheduler.recordHit(TOKEN_KEY);
+            disabledRefreshScheduler.recordMiss();
+
+            assertEquals(disabledRefreshScheduler.getTrackedTokenCount(), 0);
+            assertEquals(refreshes.get(), 0);
+            assertEquals(disabledRefreshScheduler.getHitCount(), 1);
+            assertEquals(disabledRefreshScheduler.getMissCount(), 1);
+        } finally {
+            disabledRefreshScheduler.shutdown();
+        }
+    }
+
+    private Supplier<CompletableFuture<?>> succeed() {
+
+        return () -> {
+            refreshes.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    private Supplier<CompletableFuture<?>> fail() {
+
+        return () -> {
+            refreshes.incrementAndGet();
+            CompletableFuture<Object> renewal = new CompletableFuture<>();
+            renewal.completeExceptionally(new IllegalStateException("Token endpoint is unavailable."));
+            return renewal;
+        };
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+
+        long timeout = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), "The condition was not met in time.");
+    }
+}
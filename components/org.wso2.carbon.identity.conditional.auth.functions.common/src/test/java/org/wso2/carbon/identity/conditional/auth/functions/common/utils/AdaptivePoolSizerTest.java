@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+public class AdaptivePoolSizerTest {
+
+    private static final int MIN_CONNECTIONS_PER_ROUTE = 2;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 20;
+    private static final long INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    private static final HttpHost TARGET = new HttpHost("API.example.com", -1, "https");
+    private static final HttpRoute ROUTE = new HttpRoute(new HttpHost("api.example.com", 443, "https"));
+    private static final HttpRoute OTHER_ROUTE = new HttpRoute(new HttpHost("other.example.com", 443, "https"));
+
+    private final AtomicLong time = new AtomicLong();
+    private RouteLimits connectionManager;
+    private AdaptivePoolSizer poolSizer;
+
+    @BeforeMethod
+    public void setUp() throws IOReactorException {
+
+        connectionManager = new RouteLimits();
+        poolSizer = new AdaptivePoolSizer("default", connectionManager, MIN_CONNECTIONS_PER_ROUTE,
+                MAX_CONNECTIONS_PER_ROUTE, time::get);
+    }
+
+    @Test
+    public void testLimitIsRaisedToPeakConcurrency() {
+
+        connectionManager.setMaxPerRoute(ROUTE, 4);
+        for (int i = 0; i < 10; i++) {
+            poolSizer.requestStarted(TARGET);
+        }
+
+        resize();
+
+        assertEquals(connectionManager.getMaxPerRoute(ROUTE), 13, "The limit was not raised to the peak demand.");
+        assertEquals(poolSizer.getResizeCount(), 1);
+    }
+
+    @Test
+    public void testLimitIsRaisedToArrivalRateTimesLatency() {
+
+        connectionManager.setMaxPerRoute(ROUTE, 4);
+        // 50 sequential requests of 2 seconds each within 10 seconds need 10 connections when sent concurrently.
+        for (int i = 0; i < 50; i++) {
+            poolSizer.requestStarted(TARGET).completed(TimeUnit.SECONDS.toNanos(2));
+        }
+
+        resize();
+
+        assertEquals(connectionManager.getMaxPerRoute(ROUTE), 13, "The limit was not raised to the estimated demand.");
+    }
+
+    @Test
+    public void testLimitIsLoweredByHalfTheDifference() {
+
+        connectionManager.setMaxPerRoute(ROUTE, MAX_CONNECTIONS_PER_ROUTE);
+        poolSizer.requestStarted(TARGET).completed(0);
+
+        resize();
+        assertEquals(connectionManager.getMaxPerRoute(ROUTE), 11, "The limit was not lowered by half the difference.");
+        resize();
+        assertEquals(connectionManager.getMaxPerRoute(ROUTE), 6);
+        resize();
+        assertEquals(connectionManager.getMaxPerRoute(ROUTE), 4);
+        resize();
+        assertEquals(connectionManager.getMaxPerRoute(ROUTE), 3);
+        resize();
+        assertEquals(connectionManager.getMaxPerRoute(ROUTE), MIN_CONNECTIONS_PER_ROUTE);
+        assertEquals(poolSizer.getResizeCount(), 5);
+    }
+
+    @Test
+    public void testLimitIsWithinFloorAndCeiling() {
+
+        connectionManager.setMaxPerRoute(ROUTE, 4);
+        connectionManager.setMaxPerRoute(OTHER_ROUTE, MIN_CONNECTIONS_PER_ROUTE);
+        for (int i = 0; i < 100; i++) {
+            poolSizer.requestStarted(TARGET);
+        }
+        poolSizer.requestStarted(new HttpHost("other.example.com", 443, "https")).completed(0);
+
+        resize();
+
+        assertEquals(connectionManager.getMaxPerRoute(ROUTE), MAX_CONNECTIONS_PER_ROUTE,
+                "The limit was raised above the ceiling.");
+        assertEquals(connectionManager.getMaxPerRoute(OTHER_ROUTE), MIN_CONNECTIONS_PER_ROUTE,
+                "The limit was lowered below the floor.");
+        assertEquals(poolSizer.getResizeCount(), 1);
+    }
+
+    @Test
+    public void testRouteWithoutLoadIsNotResized() {
+
+        connectionManager.setMaxPerRoute(ROUTE, 4);
+
+        resize();
+
+        assertEquals(connectionManager.getMaxPerRoute(ROUTE), 4);
+        assertEquals(poolSizer.getResizeCount(), 0);
+    }
+
+    @Test
+    public void testIdleRouteIsForgotten() {
+
+        connectionManager.setMaxPerRoute(ROUTE, MIN_CONNECTIONS_PER_ROUTE);
+        AdaptivePoolSizer.RouteLoad routeLoad = poolSizer.requestStarted(TARGET);
+
+        resize();
+        assertSame(poolSizer.requestStarted(TARGET), routeLoad, "A route with requests in flight was forgotten.");
+
+        routeLoad.completed(0);
+        routeLoad.completed(0);
+        resize();
+        resize();
+
+        assertNotSame(poolSizer.requestStarted(TARGET), routeLoad, "An idle route was not forgotten.");
+        assertEquals(connectionManager.getMaxPerRoute(ROUTE), MIN_CONNECTIONS_PER_ROUTE);
+    }
+
+    @Test
+    public void testRouteStatsAreExposed() {
+
+        connectionManager.setMaxPerRoute(ROUTE, 4);
+        for (int i = 0; i < 10; i++) {
+            poolSizer.requestStarted(TARGET);
+        }
+
+        resize();
+
+        assertEquals(poolSizer.getRouteStats(), Collections.singletonList("default " + ROUTE +
+                " [leased: 0; pending: 0; available: 0; max: 13; demand: 10]"));
+    }
+
+    private void resize() {
+
+        time.addAndGet(INTERVAL);
+        poolSizer.resize();
+    }
+
+    /**
+     * Connection manager which only keeps the per route limits of a fixed set of routes.
+     */
+    private static class RouteLimits extends PoolingNHttpClientConnectionManager {
+
+        private final Map<HttpRoute, Integer> limits = new LinkedHashMap<>();
+
+        RouteLimits() throws IOReactorException {
+
+            super(new DefaultConnectingIOReactor());
+        }
+
+        @Override
+        public Set<HttpRoute> getRoutes() {
+
+            return limits.keySet();
+        }
+
+        @Override
+        public int getMaxPerRoute(HttpRoute route) {
+
+            return limits.get(route);
+        }
+
+        @Override
+        public void setMaxPerRoute(HttpRoute route, int max) {
+
+            limits.put(route, max);
+        }
+
+        @Override
+        public PoolStats getStats(HttpRoute route) {
+
+            return new PoolStats(0, 0, 0, limits.get(route));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class CircuitBreakerTest {
+
+    private static final int FAILURE_RATE_THRESHOLD = 50;
+    private static final int SLOW_CALL_RATE_THRESHOLD = 50;
+    private static final long SLOW_CALL_DURATION_THRESHOLD = 1000;
+    private static final int MINIMUM_NUMBER_OF_CALLS = 4;
+    private static final int SLIDING_WINDOW_SIZE = 4;
+    private static final long WAIT_DURATION_IN_OPEN_STATE = 10000;
+    private static final int PERMITTED_CALLS_IN_HALF_OPEN_STATE = 2;
+
+    private AtomicLong clock;
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeMethod
+    public void setUp() {
+
+        clock = new AtomicLong(1000000);
+        circuitBreaker = new CircuitBreaker("endpoint", FAILURE_RATE_THRESHOLD, SLOW_CALL_RATE_THRESHOLD,
+                SLOW_CALL_DURATION_THRESHOLD, MINIMUM_NUMBER_OF_CALLS, SLIDING_WINDOW_SIZE,
+                WAIT_DURATION_IN_OPEN_STATE, PERMITTED_CALLS_IN_HALF_OPEN_STATE, clock::get);
+    }
+
+    @Test
+    public void testOpensOnFailureRate() {
+
+        recordSuccess();
+        recordSuccess();
+        recordFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED,
+                "The breaker opened before the minimum number of calls was recorded.");
+
+        recordFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+        assertNull(circuitBreaker.tryAcquirePermission(), "A call was permitted while the breaker is open.");
+    }
+
+    @Test
+    public void testOpenHalfOpenClosed() {
+
+        openCircuitBreaker();
+
+        clock.addAndGet(WAIT_DURATION_IN_OPEN_STATE - 1);
+        assertNull(circuitBreaker.tryAcquirePermission(), "A call was permitted before the wait duration passed.");
+
+        clock.incrementAndGet();
+        CircuitBreaker.Permit firstTrial = circuitBreaker.tryAcquirePermission();
+        assertNotNull(firstTrial);
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        CircuitBreaker.Permit secondTrial = circuitBreaker.tryAcquirePermission();
+        assertNotNull(secondTrial);
+
+        firstTrial.onSuccess();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN,
+                "The breaker closed before all the trial calls succeeded.");
+        secondTrial.onSuccess();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testHalfOpenPermitLimit() {
+
+        openCircuitBreaker();
+        clock.addAndGet(WAIT_DURATION_IN_OPEN_STATE);
+
+        CircuitBreaker.Permit firstTrial = circuitBreaker.tryAcquirePermission();
+        assertNotNull(firstTrial);
+        assertNotNull(circuitBreaker.tryAcquirePermission());
+        assertNull(circuitBreaker.tryAcquirePermission(),
+                "More calls than permitted were let through while the breaker is half open.");
+
+        // A released permit can be acquired by another trial call.
+        firstTrial.release();
+        assertNotNull(circuitBreaker.tryAcquirePermission());
+        assertNull(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testFailedTrialOpensAgain() {
+
+        openCircuitBreaker();
+        clock.addAndGet(WAIT_DURATION_IN_OPEN_STATE);
+
+        circuitBreaker.tryAcquirePermission().onFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+        assertNull(circuitBreaker.tryAcquirePermission(), "A call was permitted after a trial call failed.");
+
+        clock.addAndGet(WAIT_DURATION_IN_OPEN_STATE);
+        assertNotNull(circuitBreaker.tryAcquirePermission());
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() {
+
+        recordSuccess();
+        recordSlowSuccess();
+        recordSuccess();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+
+        recordSlowSuccess();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN,
+                "The breaker did not open once the rate of slow calls reached the threshold.");
+    }
+
+    @Test
+    public void testSlowTrialOpensAgain() {
+
+        openCircuitBreaker();
+        clock.addAndGet(WAIT_DURATION_IN_OPEN_STATE);
+
+        recordSlowSuccess();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void testOutcomesLeaveTheSlidingWindow() {
+
+        recordFailure();
+        recordSuccess();
+        recordSuccess();
+        recordSuccess();
+        // The first failure leaves the window, hence a single failure remains in it.
+        recordFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+
+        recordFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void testOutcomeOfCallPermittedBeforeTransitionIsIgnored() {
+
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquirePermission();
+        openCircuitBreaker();
+        clock.addAndGet(WAIT_DURATION_IN_OPEN_STATE);
+        assertNotNull(circuitBreaker.tryAcquirePermission());
+
+        permit.onFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN,
+                "The outcome of a call permitted before the breaker opened affected the trial calls.");
+    }
+
+    private void openCircuitBreaker() {
+
+        for (int i = 0; i < MINIMUM_NUMBER_OF_CALLS; i++) {
+            recordFailure();
+        }
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    private void recordSuccess() {
+
+        circuitBreaker.tryAcquirePermission().onSuccess();
+    }
+
+    private void recordSlowSuccess() {
+
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquirePermission();
+        clock.addAndGet(SLOW_CALL_DURATION_THRESHOLD);
+        permit.onSuccess();
+    }
+
+    private void recordFailure() {
+
+        circuitBreaker.tryAcquirePermission().onFailure();
+    }
+}
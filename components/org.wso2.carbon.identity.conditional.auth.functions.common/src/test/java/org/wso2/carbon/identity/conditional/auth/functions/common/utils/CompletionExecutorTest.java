@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class CompletionExecutorTest {
+
+    private static final long WAIT_TIMEOUT = 5000;
+    private static final String THREAD_NAME_PREFIX = "adaptive-auth-completion-";
+
+    @Test
+    public void testCompletionRunsOffTheSubmittingThread() throws Exception {
+
+        CompletionExecutor executor = new CompletionExecutor(1, 10);
+        try {
+            CompletableFuture<Thread> completionThread = new CompletableFuture<>();
+            executor.execute(() -> completionThread.complete(Thread.currentThread()));
+
+            Thread thread = completionThread.get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            assertNotSame(thread, Thread.currentThread());
+            assertTrue(thread.getName().startsWith(THREAD_NAME_PREFIX), "Unexpected thread: " + thread.getName());
+            assertTrue(thread.isDaemon());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDispatchNotifiesOnTheExecutor() throws Exception {
+
+        CompletionExecutor executor = new CompletionExecutor(1, 10);
+        try {
+            CompletableFuture<String> completed = new CompletableFuture<>();
+            CompletableFuture<Exception> failed = new CompletableFuture<>();
+            CompletableFuture<Thread> cancelled = new CompletableFuture<>();
+            FutureCallback<String> callback = executor.dispatch(new FutureCallback<String>() {
+
+                @Override
+                public void completed(String result) {
+
+                    completed.complete(Thread.currentThread().getName() + ":" + result);
+                }
+
+                @Override
+                public void failed(Exception e) {
+
+                    failed.complete(e);
+                }
+
+                @Override
+                public void cancelled() {
+
+                    cancelled.complete(Thread.currentThread());
+                }
+            });
+            IllegalStateException cause = new IllegalStateException("Request failed.");
+
+            callback.completed("response");
+            callback.failed(cause);
+            callback.cancelled();
+
+            assertTrue(completed.get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS).startsWith(THREAD_NAME_PREFIX));
+            assertTrue(completed.get().endsWith(":response"));
+            assertSame(failed.get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS), cause);
+            assertTrue(cancelled.get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS).getName().startsWith(THREAD_NAME_PREFIX));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompletionRunsOnSubmittingThreadWhenQueueIsFull() throws Exception {
+
+        CompletionExecutor executor = new CompletionExecutor(1, 1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                running.countDown();
+                awaitQuietly(release);
+            });
+            assertTrue(running.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+            CountDownLatch queuedRun = new CountDownLatch(1);
+            executor.execute(queuedRun::countDown);
+
+            CompletableFuture<Thread> rejectedThread = new CompletableFuture<>();
+            executor.execute(() -> rejectedThread.complete(Thread.currentThread()));
+
+            assertTrue(rejectedThread.isDone(), "A completion rejected by the full queue was not run right away.");
+            assertSame(rejectedThread.get(), Thread.currentThread());
+            release.countDown();
+            assertTrue(queuedRun.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS), "A queued completion was lost.");
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testQueuedCompletionsRunAfterShutdown() throws Exception {
+
+        CompletionExecutor executor = new CompletionExecutor(1, 10);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(running.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+        CountDownLatch queuedRun = new CountDownLatch(1);
+        executor.execute(queuedRun::countDown);
+
+        executor.shutdown();
+        release.countDown();
+
+        assertTrue(queuedRun.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS),
+                "A queued completion was dropped on shutdown.");
+    }
+
+    @Test
+    public void testExecutorRestartsAfterShutdown() throws Exception {
+
+        CompletionExecutor executor = new CompletionExecutor(2, 10);
+        executor.shutdown();
+        try {
+            CountDownLatch completions = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                executor.execute(completions::countDown);
+            }
+
+            assertTrue(completions.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS),
+                    "Completions were not run after the executor was restarted.");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+
+        try {
+            latch.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.client.config.RequestConfig;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncReturn;
+import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_SUCCESS;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_TIMEOUT;
+
+public class DeadlineTest {
+
+    @AfterClass
+    public void tearDown() {
+
+        Deadline.shutdown();
+    }
+
+    @Test
+    public void testUnboundedDeadline() {
+
+        Deadline deadline = Deadline.after(0);
+
+        assertSame(deadline, Deadline.none());
+        assertFalse(deadline.isBounded());
+        assertFalse(deadline.isExpired());
+        assertEquals(deadline.getRemaining(), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testBoundedDeadline() {
+
+        Deadline deadline = Deadline.after(20);
+
+        assertTrue(deadline.isBounded());
+        assertTrue(deadline.getRemaining() > 0 && deadline.getRemaining() <= 20);
+    }
+
+    @Test
+    public void testPassedDeadline() {
+
+        Deadline deadline = new Deadline(System.currentTimeMillis() - 1);
+
+        assertTrue(deadline.isBounded());
+        assertTrue(deadline.isExpired());
+        assertEquals(deadline.getRemaining(), 0);
+    }
+
+    @Test
+    public void testMin() {
+
+        Deadline earlier = Deadline.after(1000);
+        Deadline later = Deadline.after(60000);
+
+        assertSame(earlier.min(later), earlier);
+        assertSame(later.min(earlier), earlier);
+        assertSame(Deadline.none().min(earlier), earlier);
+    }
+
+    @Test
+    public void testParseTimeout() {
+
+        assertEquals(Deadline.parseTimeout(1500), 1500);
+        assertEquals(Deadline.parseTimeout(1500.7), 1500);
+        assertEquals(Deadline.parseTimeout(" 2000 "), 2000);
+        assertEquals(Deadline.parseTimeout("invalid"), 0);
+        assertEquals(Deadline.parseTimeout(null), 0);
+    }
+
+    @Test
+    public void testCallDeadlineWithoutFlowBudget() {
+
+        AuthenticationContext context = new AuthenticationContext();
+
+        assertSame(Deadline.forCall(context, 0, 0, 0), Deadline.none());
+        assertTrue(Deadline.forCall(context, 1000, 60000, 0).getRemaining() <= 1000,
+                "The timeout given by the script was not used.");
+        assertTrue(Deadline.forCall(context, 0, 60000, 0).getRemaining() > 1000,
+                "The default timeout was not used.");
+        assertTrue(Deadline.forCall(null, 1000, 60000, 60000).getRemaining() <= 1000);
+    }
+
+    @Test
+    public void testFlowBudgetIsSharedWithinStep() {
+
+        AuthenticationContext context = new AuthenticationContext();
+        context.setCurrentStep(1);
+
+        Deadline firstCall = Deadline.forCall(context, 0, 0, 1000);
+        Deadline secondCall = Deadline.forCall(context, 60000, 0, 1000);
+
+        assertTrue(firstCall.getRemaining() <= 1000, "The flow budget did not bound the call.");
+        assertEquals(secondCall.getExpiryTime(), firstCall.getExpiryTime(),
+                "The calls of the same step did not share the flow budget.");
+        assertTrue(Deadline.forCall(context, 100, 0, 1000).getRemaining() <= 100,
+                "A shorter call timeout was not preferred over the flow budget.");
+    }
+
+    @Test
+    public void testFlowBudgetRestartsInNextStep() {
+
+        AuthenticationContext context = new AuthenticationContext();
+        context.setCurrentStep(1);
+        Deadline firstStepCall = Deadline.forCall(context, 0, 0, 1000);
+
+        context.setCurrentStep(2);
+        Deadline secondStepCall = Deadline.forCall(context, 0, 0, 60000);
+        Deadline laterSecondStepCall = Deadline.forCall(context, 0, 0, 60000);
+
+        assertTrue(secondStepCall.getExpiryTime() > firstStepCall.getExpiryTime(),
+                "The budget of the previous step was used for the call of the next step.");
+        assertTrue(secondStepCall.getRemaining() > 1000);
+        assertEquals(laterSecondStepCall.getExpiryTime(), secondStepCall.getExpiryTime());
+    }
+
+    @Test
+    public void testCapTimeouts() {
+
+        RequestConfig config = RequestConfig.custom()
+                .setConnectionRequestTimeout(100)
+                .setConnectTimeout(60000)
+                .setSocketTimeout(-1)
+                .build();
+
+        RequestConfig cappedConfig = Deadline.after(5000).capTimeouts(config);
+
+        assertEquals(cappedConfig.getConnectionRequestTimeout(), 100);
+        assertTrue(cappedConfig.getConnectTimeout() > 0 && cappedConfig.getConnectTimeout() <= 5000,
+                "The connect timeout was not capped to the remaining time.");
+        assertTrue(cappedConfig.getSocketTimeout() > 0 && cappedConfig.getSocketTimeout() <= 5000,
+                "The infinite socket timeout was not replaced by the remaining time.");
+        assertSame(Deadline.none().capTimeouts(config), config);
+    }
+
+    @Test
+    public void testBoundFutureCompletesBeforeDeadline() throws Exception {
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> bounded = Deadline.after(5000).bound(future);
+
+        future.complete(OUTCOME_SUCCESS);
+
+        assertEquals(bounded.get(1, TimeUnit.SECONDS), OUTCOME_SUCCESS);
+    }
+
+    @Test
+    public void testBoundFuturePropagatesFailure() throws Exception {
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> bounded = Deadline.after(5000).bound(future);
+        IllegalStateException error = new IllegalStateException("Failed.");
+
+        future.completeExceptionally(error);
+
+        try {
+            bounded.get(1, TimeUnit.SECONDS);
+            fail("The failure of the future was not propagated.");
+        } catch (ExecutionException e) {
+            assertSame(e.getCause(), error);
+        }
+    }
+
+    @Test
+    public void testBoundFutureAbandonedAfterDeadline() throws Exception {
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> bounded = Deadline.after(20).bound(future);
+
+        try {
+            bounded.get(1, TimeUnit.SECONDS);
+            fail("The bounded future did not complete exceptionally after the deadline.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DeadlineExceededException);
+        }
+        assertFalse(future.isCancelled(), "The source future was cancelled instead of being told of the deadline.");
+        try {
+            future.getNow(null);
+            fail("The source future was not completed after the deadline.");
+        } catch (CompletionException e) {
+            assertTrue(Deadline.isExceeded(e), "The source future was not completed with the deadline failure.");
+        }
+    }
+
+    @Test
+    public void testAbandon() {
+
+        CompletableFuture<String> notNeeded = new CompletableFuture<>();
+        Deadline.abandon(notNeeded, null);
+        assertTrue(notNeeded.isCancelled(), "A future which is no longer needed was not cancelled.");
+
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        Deadline.abandon(failed, new IllegalStateException("Request failed."));
+        assertTrue(failed.isCancelled(), "A future abandoned for a failure other than the deadline was not cancelled.");
+
+        CompletableFuture<String> timedOut = new CompletableFuture<>();
+        DeadlineExceededException exception = new DeadlineExceededException("Deadline exceeded.");
+        Deadline.abandon(timedOut, new CompletionException(exception));
+        assertFalse(timedOut.isCancelled());
+        try {
+            timedOut.join();
+            fail("The future abandoned at the deadline was not completed exceptionally.");
+        } catch (CompletionException e) {
+            assertSame(e.getCause(), exception, "The deadline failure was not unwrapped.");
+        }
+    }
+
+    @Test
+    public void testBoundCompletedFuture() {
+
+        CompletableFuture<String> future = CompletableFuture.completedFuture(OUTCOME_SUCCESS);
+
+        assertSame(Deadline.after(20).bound(future), future);
+        assertFalse(Deadline.none().bound(new CompletableFuture<String>()).isDone());
+    }
+
+    @Test
+    public void testBoundAsyncReturnBeforeDeadline() throws Exception {
+
+        List<String> outcomes = new CopyOnWriteArrayList<>();
+        AuthenticationContext context = new AuthenticationContext();
+        AsyncReturn asyncReturn = Deadline.after(50).bound(context,
+                (authenticationContext, data, outcome) -> outcomes.add(outcome));
+
+        asyncReturn.accept(context, Collections.emptyMap(), OUTCOME_SUCCESS);
+
+        // Deadlines fire in order on a single thread, so the first deadline has passed once a later one has fired.
+        CountDownLatch laterDeadlineFired = new CountDownLatch(1);
+        Deadline.after(100).bound(new AuthenticationContext(),
+                (authenticationContext, data, outcome) -> laterDeadlineFired.countDown());
+        assertTrue(laterDeadlineFired.await(1, TimeUnit.SECONDS), "The later deadline did not fire.");
+
+        assertEquals(outcomes, Collections.singletonList(OUTCOME_SUCCESS),
+                "The timeout outcome was returned after the outcome.");
+    }
+
+    @Test
+    public void testBoundAsyncReturnAfterDeadline() throws Exception {
+
+        List<String> outcomes = new CopyOnWriteArrayList<>();
+        CountDownLatch returned = new CountDownLatch(1);
+        AuthenticationContext context = new AuthenticationContext();
+        AsyncReturn asyncReturn = Deadline.after(20).bound(context, (authenticationContext, data, outcome) -> {
+            outcomes.add(outcome);
+            returned.countDown();
+        });
+
+        assertTrue(returned.await(1, TimeUnit.SECONDS), "The timeout outcome was not returned after the deadline.");
+        asyncReturn.accept(context, Collections.emptyMap(), OUTCOME_SUCCESS);
+
+        assertEquals(outcomes, Collections.singletonList(OUTCOME_TIMEOUT),
+                "The outcome returned after the deadline was not dropped.");
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class DomainAllowlistTest {
+
+    @DataProvider(name = "domainRules")
+    public Object[][] getDomainRules() {
+
+        return new Object[][]{
+                // Exact host.
+                {"example.co.uk", "example.co.uk", true},
+                {"example.co.uk", "api.example.co.uk", false},
+                {"example.co.uk", "co.uk", false},
+                {"example.co.uk", "myexample.co.uk", false},
+                {"example.co.uk", "example.co", false},
+                {"a.co.uk", "co.uk", false},
+                {"co.uk", "a.co.uk", false},
+                {"co.uk", "co.uk", true},
+                // A single label below the domain.
+                {"*.example.co.uk", "api.example.co.uk", true},
+                {"*.example.co.uk", "example.co.uk", false},
+                {"*.example.co.uk", "a.api.example.co.uk", false},
+                {"*.example.co.uk", "myexample.co.uk", false},
+                {"*.example.co.uk", ".example.co.uk", false},
+                // The domain and any host below it.
+                {".example.co.uk", "example.co.uk", true},
+                {".example.co.uk", "api.example.co.uk", true},
+                {".example.co.uk", "a.api.example.co.uk", true},
+                {".example.co.uk", "myexample.co.uk", false},
+                {".example.co.uk", "co.uk", false},
+                {".co.uk", "a.co.uk", true},
+                // Legacy second level label.
+                {"example", "api.example.com", true},
+                {"example", "example.com", true},
+                {"example", "example", true},
+                {"example", "api.example.co.uk", false},
+                {"example", "api.myexample.com", false},
+                {"example", "example.com.attacker.org", false},
+                // Trailing dots.
+                {"example.com", "example.com.", true},
+                {"example.com.", "example.com", true},
+                {"*.example.com", "api.example.com.", true},
+                {".example.com.", "api.example.com.", true},
+                {"example", "api.example.com.", true},
+                {"example.com", "example.com..", false},
+                // Mixed case.
+                {"Example.COM", "example.com", true},
+                {"example.com", "API.Example.Com", false},
+                {"*.EXAMPLE.com", "API.Example.Com", true},
+                {".Example.com", "Api.EXAMPLE.com", true},
+                {"EXAMPLE", "api.Example.com", true},
+        };
+    }
+
+    @Test(dataProvider = "domainRules")
+    public void testIsAllowed(String rule, String host, boolean allowed) {
+
+        DomainAllowlist allowlist = DomainAllowlist.compile(Collections.singletonList(rule));
+
+        assertEquals(allowlist.isAllowed(host), allowed, "Unexpected result for the host " + host + " with the rule "
+                + rule + ".");
+    }
+
+    @Test
+    public void testMultipleRules() {
+
+        DomainAllowlist allowlist = DomainAllowlist.compile(Arrays.asList("example.com", "*.example.org",
+                ".example.net", "example"));
+
+        assertTrue(allowlist.isAllowed("example.com"));
+        assertTrue(allowlist.isAllowed("api.example.org"));
+        assertTrue(allowlist.isAllowed("a.api.example.net"));
+        assertTrue(allowlist.isAllowed("api.example.io"));
+        assertFalse(allowlist.isAllowed("api.example.co.uk"));
+        assertFalse(allowlist.isAllowed("example.io.attacker.org"));
+    }
+
+    @Test
+    public void testInvalidRulesAreIgnored() {
+
+        DomainAllowlist allowlist = DomainAllowlist.compile(Arrays.asList("", " ", ".", "*.", "*.*.example.com",
+                "example..com", "..example.com"));
+
+        assertFalse(allowlist.isEmpty());
+        assertFalse(allowlist.isAllowed("example.com"));
+        assertFalse(allowlist.isAllowed("api.example.com"));
+        assertFalse(allowlist.isAllowed("a.api.example.com"));
+    }
+
+    @Test
+    public void testInvalidHosts() {
+
+        DomainAllowlist allowlist = DomainAllowlist.compile(Collections.singletonList(".example.com"));
+
+        assertFalse(allowlist.isAllowed(null));
+        assertFalse(allowlist.isAllowed(""));
+        assertFalse(allowlist.isAllowed("."));
+    }
+
+    @Test
+    public void testEmptyAllowlist() {
+
+        DomainAllowlist allowlist = DomainAllowlist.compile(Collections.emptyList());
+
+        assertTrue(allowlist.isEmpty());
+        assertFalse(allowlist.isAllowed("example.com"));
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class HttpCompressionTest {
+
+    private static final String COMPRESSED_DOMAIN = "compressed.example.com";
+    private static final String UNCOMPRESSED_DOMAIN = "plain.example.com";
+
+    private final HttpCompression compression = HttpCompression.getInstance();
+
+    @BeforeMethod
+    public void setUp() {
+
+        ConfigProvider.getInstance().setCompressionDomains(Collections.singletonList(COMPRESSED_DOMAIN));
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        ConfigProvider.getInstance().setCompressionDomains(Collections.emptyList());
+    }
+
+    @Test
+    public void testIsEnabled() {
+
+        assertTrue(compression.isEnabled(URI.create("https://" + COMPRESSED_DOMAIN + "/risk")));
+        assertFalse(compression.isEnabled(URI.create("https://" + UNCOMPRESSED_DOMAIN + "/risk")));
+        assertFalse(compression.isEnabled(null));
+
+        ConfigProvider.getInstance().setCompressionDomains(Collections.emptyList());
+        assertFalse(compression.isEnabled(URI.create("https://" + COMPRESSED_DOMAIN + "/risk")),
+                "Compression should be disabled when no domain has opted in.");
+    }
+
+    @Test
+    public void testAcceptCompressedResponse() {
+
+        HttpGet optedIn = new HttpGet("https://" + COMPRESSED_DOMAIN + "/risk");
+        compression.acceptCompressedResponse(optedIn, optedIn.getURI());
+        assertEquals(optedIn.getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue(), "gzip");
+
+        HttpGet notOptedIn = new HttpGet("https://" + UNCOMPRESSED_DOMAIN + "/risk");
+        compression.acceptCompressedResponse(notOptedIn, notOptedIn.getURI());
+        assertNull(notOptedIn.getFirstHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    @Test
+    public void testAcceptEncodingOfRequestIsKept() {
+
+        HttpGet request = new HttpGet("https://" + COMPRESSED_DOMAIN + "/risk");
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+
+        compression.acceptCompressedResponse(request, request.getURI());
+
+        assertEquals(request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue(), "identity",
+                "An accept encoding set by the script should not be replaced.");
+    }
+
+    @Test
+    public void testLargeBodyIsCompressed() throws Exception {
+
+        String body = body(ConfigProvider.getInstance().getCompressionMinSize() * 4);
+        HttpPost request = new HttpPost("https://" + COMPRESSED_DOMAIN + "/risk");
+        long compressedRequests = compression.getCompressedRequestCount();
+        long requestBytes = compression.getRequestBytes();
+        long requestBytesSent = compression.getRequestBytesSent();
+
+        compression.setEntity(request, new StringEntity(body, ContentType.APPLICATION_JSON));
+
+        HttpEntity entity = request.getEntity();
+        assertEquals(entity.getContentEncoding().getValue(), "gzip");
+        assertEquals(entity.getContentType().getValue(), ContentType.APPLICATION_JSON.toString());
+        assertTrue(entity.getContentLength() < body.length());
+        assertEquals(gunzip(EntityUtils.toByteArray(entity)), body);
+        assertEquals(request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue(), "gzip");
+        assertEquals(compression.getCompressedRequestCount(), compressedRequests + 1);
+        assertEquals(compression.getRequestBytes(), requestBytes + body.length());
+        assertEquals(compression.getRequestBytesSent(), requestBytesSent + entity.getContentLength());
+    }
+
+    @Test
+    public void testSmallBodyIsNotCompressed() {
+
+        StringEntity entity = new StringEntity(body(ConfigProvider.getInstance().getCompressionMinSize() - 1),
+                ContentType.APPLICATION_JSON);
+        HttpPost request = new HttpPost("https://" + COMPRESSED_DOMAIN + "/risk");
+        long compressedRequests = compression.getCompressedRequestCount();
+
+        compression.setEntity(request, entity);
+
+        assertSame(request.getEntity(), entity, "A body below the minimum size should be sent as it is.");
+        assertEquals(request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue(), "gzip");
+        assertEquals(compression.getCompressedRequestCount(), compressedRequests);
+    }
+
+    @Test
+    public void testBodyOfUncompressedDomainIsNotCompressed() {
+
+        StringEntity entity = new StringEntity(body(ConfigProvider.getInstance().getCompressionMinSize() * 4),
+                ContentType.APPLICATION_JSON);
+        HttpPost request = new HttpPost("https://" + UNCOMPRESSED_DOMAIN + "/risk");
+
+        compression.setEntity(request, entity);
+
+        assertSame(request.getEntity(), entity, "A body of an endpoint not opted in should be sent as it is.");
+        assertNull(request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    @Test
+    public void testEncodedBodyIsNotCompressedAgain() {
+
+        StringEntity entity = new StringEntity(body(ConfigProvider.getInstance().getCompressionMinSize() * 4),
+                ContentType.APPLICATION_JSON);
+        entity.setContentEncoding("br");
+        HttpPost request = new HttpPost("https://" + COMPRESSED_DOMAIN + "/risk");
+
+        compression.setEntity(request, entity);
+
+        assertSame(request.getEntity(), entity, "An already encoded body should be sent as it is.");
+    }
+
+    @Test
+    public void testCompressedResponseIsDecompressed() throws Exception {
+
+        String body = body(4096);
+        byte[] compressed = gzip(body);
+        ByteArrayEntity entity = new ByteArrayEntity(compressed, ContentType.APPLICATION_JSON);
+        entity.setContentEncoding("gzip");
+        long compressedResponses = compression.getCompressedResponseCount();
+        long responseBytesReceived = compression.getResponseBytesReceived();
+        long responseBytes = compression.getResponseBytes();
+
+        assertEquals(read(compression.getContent(entity)), body);
+
+        assertEquals(compression.getCompressedResponseCount(), compressedResponses + 1);
+        assertEquals(compression.getResponseBytesReceived(), responseBytesReceived + compressed.length);
+        assertEquals(compression.getResponseBytes(), responseBytes + body.length());
+    }
+
+    @Test
+    public void testUncompressedResponseIsCounted() throws Exception {
+
+        String body = body(512);
+        long compressedResponses = compression.getCompressedResponseCount();
+        long responseBytesReceived = compression.getResponseBytesReceived();
+        long responseBytes = compression.getResponseBytes();
+
+        assertEquals(read(compression.getContent(new StringEntity(body, ContentType.APPLICATION_JSON))), body);
+
+        assertEquals(compression.getCompressedResponseCount(), compressedResponses);
+        assertEquals(compression.getResponseBytesReceived(), responseBytesReceived + body.length());
+        assertEquals(compression.getResponseBytes(), responseBytes + body.length());
+    }
+
+    private static String body(int length) {
+
+        char[] body = new char[length];
+        Arrays.fill(body, 'a');
+        return new String(body);
+    }
+
+    private static String read(InputStream content) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        try (InputStream in = content) {
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(String body) throws IOException {
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+
+        return read(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    }
+}
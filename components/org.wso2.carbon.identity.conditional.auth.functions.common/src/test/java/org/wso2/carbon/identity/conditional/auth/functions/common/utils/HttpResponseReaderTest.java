@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class HttpResponseReaderTest {
+
+    private static final String JSON_BODY = "{\"riskScore\":1,\"reasons\":[\"newDevice\"]}";
+    private static final long MAX_SIZE = 1024;
+
+    @Test
+    public void testReadJsonObject() throws Exception {
+
+        JSONObject json = HttpResponseReader.readJsonObject(
+                new StringEntity(JSON_BODY, ContentType.APPLICATION_JSON), MAX_SIZE);
+
+        assertEquals(json.get("riskScore"), 1L);
+        assertEquals(json.get("reasons"), Arrays.asList("newDevice"));
+    }
+
+    @Test
+    public void testReadEmptyBody() throws Exception {
+
+        assertNull(HttpResponseReader.readJsonObject(new StringEntity("", ContentType.APPLICATION_JSON), MAX_SIZE));
+    }
+
+    @Test(expectedExceptions = ParseException.class)
+    public void testJsonArrayIsRejected() throws Exception {
+
+        HttpResponseReader.readJsonObject(new StringEntity("[1,2]", ContentType.APPLICATION_JSON), MAX_SIZE);
+    }
+
+    @Test
+    public void testDeclaredLengthOverMaxSizeIsRejectedBeforeReading() throws Exception {
+
+        AtomicInteger reads = new AtomicInteger();
+        InputStream content = new ByteArrayInputStream(new byte[(int) MAX_SIZE + 1]) {
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+
+                reads.incrementAndGet();
+                return super.read(b, off, len);
+            }
+        };
+
+        try {
+            HttpResponseReader.readString(new InputStreamEntity(content, MAX_SIZE + 1), MAX_SIZE);
+            fail("A body declared larger than the maximum size was read.");
+        } catch (ResponseTooLargeException e) {
+            assertEquals(reads.get(), 0, "The body was read although its declared length exceeds the maximum size.");
+        }
+    }
+
+    @Test(expectedExceptions = ResponseTooLargeException.class)
+    public void testUndeclaredLengthOverMaxSizeIsAborted() throws Exception {
+
+        byte[] body = new byte[(int) MAX_SIZE + 1];
+        Arrays.fill(body, (byte) 'a');
+
+        HttpResponseReader.readString(new InputStreamEntity(new ByteArrayInputStream(body), -1), MAX_SIZE);
+    }
+
+    @Test
+    public void testBodyOfMaxSizeIsRead() throws Exception {
+
+        byte[] body = new byte[(int) MAX_SIZE];
+        Arrays.fill(body, (byte) 'a');
+
+        assertEquals(HttpResponseReader.readString(new InputStreamEntity(new ByteArrayInputStream(body), -1),
+                MAX_SIZE).length(), MAX_SIZE);
+    }
+
+    @Test
+    public void testCharsetOfResponseIsUsed() throws Exception {
+
+        String body = "{\"name\":\"Jos\u00e9\"}";
+        HttpEntity entity = new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8),
+                ContentType.create("text/plain", StandardCharsets.UTF_8));
+
+        assertEquals(HttpResponseReader.readString(entity, MAX_SIZE), body);
+    }
+
+    @Test
+    public void testCompressedBodyIsDecompressed() throws Exception {
+
+        ByteArrayEntity entity = new ByteArrayEntity(gzip(JSON_BODY), ContentType.APPLICATION_JSON);
+        entity.setContentEncoding("gzip");
+
+        JSONObject json = HttpResponseReader.readJsonObject(entity, MAX_SIZE);
+
+        assertEquals(json.get("riskScore"), 1L, "The compressed body was not decompressed.");
+    }
+
+    @Test
+    public void testMaxSizeAppliesToDecompressedBody() throws Exception {
+
+        char[] body = new char[(int) MAX_SIZE * 4];
+        Arrays.fill(body, 'a');
+        byte[] compressed = gzip(new String(body));
+        assertTrue(compressed.length < MAX_SIZE);
+        ByteArrayEntity entity = new ByteArrayEntity(compressed, ContentType.TEXT_PLAIN);
+        entity.setContentEncoding("gzip");
+
+        try {
+            HttpResponseReader.readString(entity, MAX_SIZE);
+            fail("A compressed body expanding beyond the maximum size was read.");
+        } catch (ResponseTooLargeException e) {
+            // Expected, as the limit protects the memory used by the decompressed body.
+        }
+    }
+
+    private static byte[] gzip(String body) throws IOException {
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+}
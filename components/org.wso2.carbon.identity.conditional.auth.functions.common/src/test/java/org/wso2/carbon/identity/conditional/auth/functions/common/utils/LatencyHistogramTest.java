@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private static final double MAX_RELATIVE_ERROR = 0.07;
+
+    @Test
+    public void testEmptyHistogram() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getMean(), 0d);
+        assertEquals(histogram.getMax(), 0d);
+        assertEquals(histogram.getValueAtPercentile(99), 0d);
+    }
+
+    @Test
+    public void testMeanAndMax() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int latency = 1; latency <= 100; latency++) {
+            histogram.record(latency, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(histogram.getCount(), 100);
+        assertEquals(histogram.getMean(), 50.5, 0.001);
+        assertEquals(histogram.getMax(), 100d);
+    }
+
+    @Test
+    public void testPercentiles() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int latency = 1; latency <= 1000; latency++) {
+            histogram.record(latency, TimeUnit.MILLISECONDS);
+        }
+
+        assertWithinError(histogram.getValueAtPercentile(50), 500);
+        assertWithinError(histogram.getValueAtPercentile(90), 900);
+        assertWithinError(histogram.getValueAtPercentile(99), 990);
+        assertEquals(histogram.getValueAtPercentile(100), 1000d, "The highest percentile should be the max.");
+        assertWithinError(histogram.getValueAtPercentile(0), 1);
+    }
+
+    @Test
+    public void testRelativeErrorIsBounded() {
+
+        for (long latency = 1; latency < TimeUnit.HOURS.toMicros(1); latency = latency * 3 + 1) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(latency, TimeUnit.MICROSECONDS);
+            // Record a higher latency, so the percentile is not capped by the max.
+            histogram.record(latency * 4, TimeUnit.MICROSECONDS);
+
+            assertWithinError(histogram.getValueAtPercentile(50), latency / 1000d);
+        }
+    }
+
+    @Test
+    public void testSmallLatenciesAreExact() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3, TimeUnit.MICROSECONDS);
+        histogram.record(7, TimeUnit.MICROSECONDS);
+
+        assertEquals(histogram.getValueAtPercentile(50), 0.003);
+        assertEquals(histogram.getValueAtPercentile(100), 0.007);
+    }
+
+    @Test
+    public void testNegativeLatencyIsIgnored() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1, TimeUnit.MILLISECONDS);
+
+        assertEquals(histogram.getCount(), 0);
+    }
+
+    @Test
+    public void testLatencyBeyondRangeIsCapped() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1, TimeUnit.DAYS);
+        histogram.record(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        assertEquals(histogram.getCount(), 2);
+        assertEquals(histogram.getValueAtPercentile(100), histogram.getMax());
+        assertTrue(histogram.getMax() > TimeUnit.HOURS.toMillis(10), "The capped latency should span several hours.");
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+
+        int threadCount = 8;
+        int recordsPerThread = 10000;
+        LatencyHistogram histogram = new LatencyHistogram();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                int thread = i;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        for (int record = 0; record < recordsPerThread; record++) {
+                            histogram.record(thread + 1, TimeUnit.MILLISECONDS);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            start.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS), "The recording threads did not finish in time.");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(histogram.getCount(), threadCount * recordsPerThread, "Concurrent recordings were lost.");
+        assertEquals(histogram.getMax(), (double) threadCount);
+        assertEquals(histogram.getMean(), (threadCount + 1) / 2d, 0.001);
+    }
+
+    private static void assertWithinError(double actual, double expected) {
+
+        assertTrue(actual >= expected && actual <= expected * (1 + MAX_RELATIVE_ERROR),
+                "Percentile " + actual + " is not within the error bound of " + expected + ".");
+    }
+}
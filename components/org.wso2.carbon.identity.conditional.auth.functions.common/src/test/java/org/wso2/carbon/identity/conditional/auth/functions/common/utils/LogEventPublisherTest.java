@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class LogEventPublisherTest {
+
+    private static final int MAX_PER_SECOND = 5;
+
+    @Test
+    public void testRateLimitWithinSecond() {
+
+        AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toMillis(1000));
+        LogEventPublisher.RateLimit rateLimit = new LogEventPublisher.RateLimit(clock::get);
+
+        for (int i = 0; i < MAX_PER_SECOND; i++) {
+            assertTrue(rateLimit.tryAcquire(MAX_PER_SECOND), "Event " + i + " was rate limited.");
+        }
+        assertFalse(rateLimit.tryAcquire(MAX_PER_SECOND), "An event beyond the limit was allowed.");
+
+        clock.addAndGet(999);
+        assertFalse(rateLimit.tryAcquire(MAX_PER_SECOND), "The limit was reset within the same second.");
+    }
+
+    @Test
+    public void testRateLimitResetsInNextSecond() {
+
+        AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toMillis(1000));
+        LogEventPublisher.RateLimit rateLimit = new LogEventPublisher.RateLimit(clock::get);
+        for (int i = 0; i < MAX_PER_SECOND; i++) {
+            rateLimit.tryAcquire(MAX_PER_SECOND);
+        }
+
+        clock.addAndGet(TimeUnit.SECONDS.toMillis(1));
+        for (int i = 0; i < MAX_PER_SECOND; i++) {
+            assertTrue(rateLimit.tryAcquire(MAX_PER_SECOND), "The limit was not reset in the next second.");
+        }
+        assertFalse(rateLimit.tryAcquire(MAX_PER_SECOND));
+    }
+
+    @Test
+    public void testRateLimitUnderContention() throws Exception {
+
+        int threadCount = 8;
+        int attemptsPerThread = 1000;
+        int maxPerSecond = 100;
+        AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toMillis(1000));
+        LogEventPublisher.RateLimit rateLimit = new LogEventPublisher.RateLimit(clock::get);
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        for (int attempt = 0; attempt < attemptsPerThread; attempt++) {
+                            if (rateLimit.tryAcquire(maxPerSecond)) {
+                                acquired.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            start.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS), "The contending threads did not finish in time.");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(acquired.get(), maxPerSecond, "The events allowed under contention did not match the limit.");
+    }
+}
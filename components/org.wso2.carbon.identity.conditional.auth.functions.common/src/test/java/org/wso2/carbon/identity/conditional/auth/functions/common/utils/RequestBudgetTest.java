@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class RequestBudgetTest {
+
+    @Test
+    public void testBudgetFollowsRequests() {
+
+        RequestBudget requestBudget = new RequestBudget(10, 0);
+        for (int i = 0; i < 20; i++) {
+            requestBudget.recordRequest();
+        }
+
+        assertTrue(requestBudget.tryAcquire());
+        assertTrue(requestBudget.tryAcquire());
+        assertFalse(requestBudget.tryAcquire(), "More than 10% of the requests were acquired.");
+
+        for (int i = 0; i < 10; i++) {
+            requestBudget.recordRequest();
+        }
+        assertTrue(requestBudget.tryAcquire(), "The budget did not grow with the requests.");
+        assertFalse(requestBudget.tryAcquire());
+    }
+
+    @Test
+    public void testMinimumBudgetWithoutRequests() {
+
+        // One additional request per second, over the ten second window.
+        RequestBudget requestBudget = new RequestBudget(10, 1);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(requestBudget.tryAcquire(), "The minimum budget was not available without requests.");
+        }
+        assertFalse(requestBudget.tryAcquire(), "The minimum budget was exceeded.");
+    }
+
+    @Test
+    public void testNoBudget() {
+
+        RequestBudget requestBudget = new RequestBudget(0, 0);
+        requestBudget.recordRequest();
+
+        assertFalse(requestBudget.tryAcquire());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+import static org.testng.Assert.assertEquals;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_FAIL;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_SUCCESS;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_TIMEOUT;
+
+public class RetryPolicyTest {
+
+    private static final String ENDPOINT = "https://api.example.com";
+    private static final Predicate<String> RETRY_ON_TIMEOUT = OUTCOME_TIMEOUT::equals;
+
+    private final RetryPolicy retryPolicy = new RetryPolicy(1, 1, 100, 100, 0);
+
+    @AfterClass
+    public void tearDown() {
+
+        retryPolicy.shutdown();
+    }
+
+    @Test
+    public void testRetriesUntilMaxRetries() throws Exception {
+
+        AtomicInteger attempts = new AtomicInteger();
+
+        String outcome = retryPolicy.execute(ENDPOINT, 3, respond(attempts, OUTCOME_TIMEOUT), RETRY_ON_TIMEOUT)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(outcome, OUTCOME_TIMEOUT);
+        assertEquals(attempts.get(), 4, "The call was not attempted once and retried the maximum number of times.");
+    }
+
+    @Test
+    public void testStopsRetryingOnSuccess() throws Exception {
+
+        AtomicInteger attempts = new AtomicInteger();
+
+        String outcome = retryPolicy.execute(ENDPOINT, 3, attempt -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(attempt == 0 ? OUTCOME_TIMEOUT : OUTCOME_SUCCESS);
+        }, RETRY_ON_TIMEOUT).get(5, TimeUnit.SECONDS);
+
+        assertEquals(outcome, OUTCOME_SUCCESS);
+        assertEquals(attempts.get(), 2);
+    }
+
+    @Test
+    public void testNoRetryOnFailClassification() throws Exception {
+
+        AtomicInteger attempts = new AtomicInteger();
+
+        String outcome = retryPolicy.execute(ENDPOINT, 3, respond(attempts, OUTCOME_FAIL), RETRY_ON_TIMEOUT)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(outcome, OUTCOME_FAIL);
+        assertEquals(attempts.get(), 1, "A call classified as failed was retried.");
+    }
+
+    @Test
+    public void testNoRetryWhenBudgetIsExhausted() throws Exception {
+
+        // Retries are limited to the number of requests made to the endpoint.
+        RetryPolicy budgetedRetryPolicy = new RetryPolicy(1, 1, 100, 0, 0);
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            String outcome = budgetedRetryPolicy.execute(ENDPOINT, 5, respond(attempts, OUTCOME_TIMEOUT),
+                    RETRY_ON_TIMEOUT).get(5, TimeUnit.SECONDS);
+
+            assertEquals(outcome, OUTCOME_TIMEOUT);
+            assertEquals(attempts.get(), 2, "The call was retried beyond the retry budget of the endpoint.");
+        } finally {
+            budgetedRetryPolicy.shutdown();
+        }
+    }
+
+    @Test
+    public void testRetryBudgetIsPerEndpoint() throws Exception {
+
+        RetryPolicy budgetedRetryPolicy = new RetryPolicy(1, 1, 100, 0, 0);
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            budgetedRetryPolicy.execute(ENDPOINT, 5, respond(new AtomicInteger(), OUTCOME_TIMEOUT),
+                    RETRY_ON_TIMEOUT).get(5, TimeUnit.SECONDS);
+            budgetedRetryPolicy.execute("https://other.example.com", 1, respond(attempts, OUTCOME_TIMEOUT),
+                    RETRY_ON_TIMEOUT).get(5, TimeUnit.SECONDS);
+
+            assertEquals(attempts.get(), 2, "The retry budget of an endpoint limited the retries to another one.");
+        } finally {
+            budgetedRetryPolicy.shutdown();
+        }
+    }
+
+    @Test
+    public void testNoRetryAfterRetryDeadline() throws Exception {
+
+        AtomicLong time = new AtomicLong();
+        RetryPolicy deadlineRetryPolicy = new RetryPolicy(1, 1, 100, 100, 1, time::get);
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            String outcome = deadlineRetryPolicy.execute(ENDPOINT, 3, slowlyRespond(attempts, OUTCOME_TIMEOUT, time),
+                    RETRY_ON_TIMEOUT).get(5, TimeUnit.SECONDS);
+
+            assertEquals(outcome, OUTCOME_TIMEOUT);
+            assertEquals(attempts.get(), 1, "The call was retried after the retry deadline passed.");
+        } finally {
+            deadlineRetryPolicy.shutdown();
+        }
+    }
+
+    @Test
+    public void testNoRetryAfterCallDeadline() throws Exception {
+
+        AtomicLong time = new AtomicLong();
+        RetryPolicy deadlineRetryPolicy = new RetryPolicy(1, 1, 100, 100, 0, time::get);
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            String outcome = deadlineRetryPolicy.execute(ENDPOINT, 3, new Deadline(time.get() + 1),
+                    slowlyRespond(attempts, OUTCOME_TIMEOUT, time), RETRY_ON_TIMEOUT).get(5, TimeUnit.SECONDS);
+
+            assertEquals(outcome, OUTCOME_TIMEOUT);
+            assertEquals(attempts.get(), 1, "The call was retried after the deadline of the call passed.");
+        } finally {
+            deadlineRetryPolicy.shutdown();
+        }
+    }
+
+    private static IntFunction<CompletableFuture<String>> respond(AtomicInteger attempts, String outcome) {
+
+        return attempt -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(outcome);
+        };
+    }
+
+    private static IntFunction<CompletableFuture<String>> slowlyRespond(AtomicInteger attempts, String outcome,
+                                                                        AtomicLong time) {
+
+        return attempt -> {
+            attempts.incrementAndGet();
+            // Outlive the deadline before the attempt completes.
+            time.addAndGet(20);
+            return CompletableFuture.completedFuture(outcome);
+        };
+    }
+}
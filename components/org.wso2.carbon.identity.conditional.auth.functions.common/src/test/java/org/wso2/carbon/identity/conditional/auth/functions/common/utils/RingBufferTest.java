@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo() {
+
+        assertEquals(new RingBuffer<String>(1).capacity(), 2);
+        assertEquals(new RingBuffer<String>(4).capacity(), 4);
+        assertEquals(new RingBuffer<String>(5).capacity(), 8);
+        assertEquals(new RingBuffer<String>(1000).capacity(), 1024);
+    }
+
+    @Test
+    public void testPollInOfferOrder() {
+
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+
+        assertNull(buffer.poll());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertEquals(buffer.size(), 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(buffer.poll(), Integer.valueOf(i));
+        }
+        assertNull(buffer.poll());
+        assertEquals(buffer.size(), 0);
+    }
+
+    @Test
+    public void testOfferFailsWhenFull() {
+
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+
+        assertFalse(buffer.offer(4), "An element was added to a full buffer.");
+        assertEquals(buffer.size(), 4);
+
+        assertEquals(buffer.poll(), Integer.valueOf(0));
+        assertTrue(buffer.offer(4), "The slot freed by the consumer was not reused.");
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(buffer.poll(), Integer.valueOf(i));
+        }
+    }
+
+    @Test
+    public void testWrapsAround() {
+
+        RingBuffer<Integer> buffer = new RingBuffer<>(2);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(buffer.offer(i));
+            assertEquals(buffer.poll(), Integer.valueOf(i));
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+
+        int producers = 4;
+        int elementsPerProducer = 10000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < elementsPerProducer; i++) {
+                        // Spin on a full buffer until the consumer frees a slot.
+                        while (!buffer.offer(producer * elementsPerProducer + i)) {
+                            Thread.yield();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+
+            List<Integer> lastElements = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                lastElements.add(-1);
+            }
+            int received = 0;
+            long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (received < producers * elementsPerProducer && System.currentTimeMillis() < timeout) {
+                Integer element = buffer.poll();
+                if (element == null) {
+                    Thread.yield();
+                    continue;
+                }
+                int producer = element / elementsPerProducer;
+                assertTrue(element > lastElements.get(producer), "Elements of a producer were polled out of order.");
+                lastElements.set(producer, element);
+                received++;
+            }
+
+            assertEquals(received, producers * elementsPerProducer, "Elements were lost.");
+            assertNull(buffer.poll());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.client.config.RequestConfig;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+public class SharedHttpTransportTest {
+
+    private static final String NAME = "choreo";
+    private static final String DEFAULT_TLS_PROFILE = "default";
+    private static final int IO_THREAD_COUNT = 2;
+    private static final String CERTIFICATE = "-----BEGIN CERTIFICATE-----\n" +
+            "MIIBizCCATGgAwIBAgIUSWs9r+KGfTGd6mg0gMy1TRLZEnMwCgYIKoZIzj0EAwIw\n" +
+            "GjEYMBYGA1UEAwwPYXBpLmV4YW1wbGUuY29tMCAXDTI2MTAxNjA5NTIzMVoYDzIx\n" +
+            "MjYwOTIyMDk1MjMxWjAaMRgwFgYDVQQDDA9hcGkuZXhhbXBsZS5jb20wWTATBgcq\n" +
+            "hkjOPQIBBggqhkjOPQMBBwNCAASd1PZaS+q+50coPHH4iJ3WTjot4PWAxbeQPS0j\n" +
+            "ZNp8z4Jbzj5UP11lQvBYvNPxmhOzXrPb1Gx4y4ZP70oaOQzeo1MwUTAdBgNVHQ4E\n" +
+            "FgQUP4xaPIpjBVSROm64Mg9cC2eOs98wHwYDVR0jBBgwFoAUP4xaPIpjBVSROm64\n" +
+            "Mg9cC2eOs98wDwYDVR0TAQH/BAUwAwEB/zAKBggqhkjOPQQDAgNIADBFAiBZ19ae\n" +
+            "PZvMFYSkNsFtABfJTBHrrTMSIN/Jemij+OtekwIhAI0fmJuC9JFmgP9Qo8RweCCr\n" +
+            "Lh5t/Ft9VmMEvtkjyvgq\n" +
+            "-----END CERTIFICATE-----\n";
+
+    private SharedHttpTransport transport;
+    private AtomicInteger resolveCount;
+
+    @BeforeMethod
+    public void setUp() {
+
+        transport = new SharedHttpTransport(IO_THREAD_COUNT);
+        resolveCount = new AtomicInteger();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        transport.shutdown();
+    }
+
+    @Test
+    public void testClientIsReusedForTenant() throws Exception {
+
+        TenantHttpClient client = transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE));
+
+        assertSame(transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE)), client);
+        assertEquals(resolveCount.get(), 1, "The settings of the tenant were resolved again.");
+        assertEquals(client.getTenantDomain(), "carbon.super");
+    }
+
+    @Test
+    public void testTenantsShareClientOfTlsProfile() throws Exception {
+
+        for (int i = 0; i < 10; i++) {
+            transport.getClient(NAME, "tenant" + i + ".com", resolver(DEFAULT_TLS_PROFILE));
+        }
+
+        assertEquals(transport.getTenantPoolCount(), 10);
+        assertEquals(transport.getSharedClientCount(), 1);
+        assertEquals(transport.getIoThreadCount(), IO_THREAD_COUNT,
+                "The I/O threads grew with the number of tenants.");
+    }
+
+    @Test
+    public void testTlsProfilesHaveSeparateClients() throws Exception {
+
+        TenantHttpClient client = transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE));
+        TenantHttpClient otherClient = transport.getClient(NAME, "wso2.com", resolver("mutual-tls"));
+
+        assertNotSame(otherClient, client);
+        assertEquals(transport.getSharedClientCount(), 2);
+        assertEquals(transport.getIoThreadCount(), 2 * IO_THREAD_COUNT);
+    }
+
+    @Test
+    public void testTenantsWithSameTrustMaterialShareClient() throws Exception {
+
+        transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE, createTrustStore(true)));
+        transport.getClient(NAME, "wso2.com", resolver(DEFAULT_TLS_PROFILE, createTrustStore(true)));
+
+        assertEquals(transport.getSharedClientCount(), 1);
+    }
+
+    @Test
+    public void testTenantsWithDifferentTrustMaterialHaveSeparateClients() throws Exception {
+
+        transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE, createTrustStore(false)));
+        transport.getClient(NAME, "wso2.com", resolver(DEFAULT_TLS_PROFILE, createTrustStore(true)));
+
+        assertEquals(transport.getSharedClientCount(), 2,
+                "A tenant used the SSL context of a tenant with different trust material.");
+    }
+
+    @Test
+    public void testFunctionsHaveSeparateTenantClients() throws Exception {
+
+        TenantHttpClient client = transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE));
+        TenantHttpClient otherClient = transport.getClient("analytics", "carbon.super",
+                resolver(DEFAULT_TLS_PROFILE));
+
+        assertNotSame(otherClient, client);
+        assertEquals(transport.getTenantPoolCount(), 2);
+        assertEquals(transport.getSharedClientCount(), 1);
+    }
+
+    @Test
+    public void testEvict() throws Exception {
+
+        TenantHttpClient client = transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE));
+
+        transport.evict(NAME, "carbon.super");
+        transport.evict(NAME, "carbon.super");
+
+        assertEquals(transport.getTenantPoolCount(), 0);
+        assertEquals(transport.getEvictedTenantPoolCount(), 1);
+        assertNotSame(transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE)), client,
+                "The evicted client was returned.");
+        assertEquals(transport.getSharedClientCount(), 1, "The shared client was not kept for the other tenants.");
+    }
+
+    @Test
+    public void testClosingTenantClientEvictsIt() throws Exception {
+
+        TenantHttpClient client = transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE));
+
+        client.close();
+
+        assertEquals(transport.getTenantPoolCount(), 0);
+        assertEquals(transport.getEvictedTenantPoolCount(), 1);
+        assertEquals(transport.getSharedClientCount(), 1);
+    }
+
+    @Test
+    public void testResolverFailure() {
+
+        try {
+            transport.getClient(NAME, "carbon.super", tenantDomain -> {
+                throw new IOException("Error while resolving the TLS profile.");
+            });
+            fail("The failure of the resolver was not propagated.");
+        } catch (IOException e) {
+            assertEquals(transport.getTenantPoolCount(), 0);
+            assertEquals(transport.getSharedClientCount(), 0);
+        }
+    }
+
+    @Test
+    public void testPoolMetrics() throws Exception {
+
+        transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE));
+
+        assertEquals(transport.getLeasedConnectionCount(), 0);
+        assertEquals(transport.getPendingConnectionCount(), 0);
+        assertEquals(transport.getAvailableConnectionCount(), 0);
+        // Adaptive pool sizing is disabled by default, so the limits of the routes are static.
+        assertEquals(transport.getPoolResizeCount(), 0);
+        assertEquals(transport.getRoutePoolStats().length, 0);
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+
+        transport.getClient(NAME, "carbon.super", resolver(DEFAULT_TLS_PROFILE));
+
+        transport.shutdown();
+
+        assertEquals(transport.getTenantPoolCount(), 0);
+        assertEquals(transport.getSharedClientCount(), 0);
+        assertEquals(transport.getIoThreadCount(), 0);
+    }
+
+    private SharedHttpTransport.ConfigResolver resolver(String tlsProfile) {
+
+        return tenantDomain -> {
+            resolveCount.incrementAndGet();
+            return new TenantTransportConfig(tlsProfile, null, null, null, RequestConfig.DEFAULT, 10);
+        };
+    }
+
+    private SharedHttpTransport.ConfigResolver resolver(String tlsProfile, KeyStore trustStore) {
+
+        return tenantDomain -> {
+            try {
+                return new TenantTransportConfig(tlsProfile, SSLContext.getDefault(), trustStore, null,
+                        RequestConfig.DEFAULT, 10);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        };
+    }
+
+    private static KeyStore createTrustStore(boolean withCertificate) throws Exception {
+
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        if (withCertificate) {
+            trustStore.setCertificateEntry("api.example.com", CertificateFactory.getInstance("X.509")
+                    .generateCertificate(new ByteArrayInputStream(CERTIFICATE.getBytes(StandardCharsets.US_ASCII))));
+        }
+        return trustStore;
+    }
+}
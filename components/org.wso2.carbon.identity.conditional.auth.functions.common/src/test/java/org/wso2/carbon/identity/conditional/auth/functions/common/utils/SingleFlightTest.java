@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class SingleFlightTest {
+
+    private static final String KEY = "key";
+    private static final String VALUE = "value";
+
+    @Test
+    public void testConcurrentCallersShareOneLoad() throws Exception {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(0);
+        AtomicInteger loadCount = new AtomicInteger();
+        CompletableFuture<String> load = new CompletableFuture<>();
+        int callerCount = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callerCount);
+        try {
+            List<Future<CompletableFuture<String>>> callers = new ArrayList<>();
+            for (int i = 0; i < callerCount; i++) {
+                callers.add(executor.submit(() -> {
+                    start.await();
+                    return singleFlight.execute(KEY, () -> {
+                        loadCount.incrementAndGet();
+                        return load;
+                    });
+                }));
+            }
+            start.countDown();
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (Future<CompletableFuture<String>> caller : callers) {
+                results.add(caller.get(5, TimeUnit.SECONDS));
+            }
+            load.complete(VALUE);
+
+            assertEquals(loadCount.get(), 1, "Concurrent callers started more than one load.");
+            for (CompletableFuture<String> result : results) {
+                assertEquals(result.get(5, TimeUnit.SECONDS), VALUE);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCompletedLoadIsNotReused() throws Exception {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(0);
+        AtomicInteger loadCount = new AtomicInteger();
+
+        singleFlight.execute(KEY, () -> CompletableFuture.completedFuture(VALUE + loadCount.incrementAndGet()));
+        String result = singleFlight.execute(KEY, () ->
+                CompletableFuture.completedFuture(VALUE + loadCount.incrementAndGet())).get();
+
+        assertEquals(loadCount.get(), 2);
+        assertEquals(result, VALUE + 2);
+    }
+
+    @Test
+    public void testFailureIsCachedForTimeout() throws Exception {
+
+        AtomicLong time = new AtomicLong();
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(200, time::get);
+        AtomicInteger loadCount = new AtomicInteger();
+        IllegalStateException cause = new IllegalStateException("Load failed.");
+        CompletableFuture<String> failedLoad = new CompletableFuture<>();
+        failedLoad.completeExceptionally(cause);
+
+        assertSame(getFailure(singleFlight.execute(KEY, () -> {
+            loadCount.incrementAndGet();
+            return failedLoad;
+        })), cause);
+        assertSame(getFailure(singleFlight.execute(KEY, () -> {
+            loadCount.incrementAndGet();
+            return failedLoad;
+        })), cause);
+        time.set(199);
+        getFailure(singleFlight.execute(KEY, () -> {
+            loadCount.incrementAndGet();
+            return failedLoad;
+        }));
+        assertEquals(loadCount.get(), 1, "A failed load was retried while the failure is cached.");
+
+        time.set(200);
+        String result = singleFlight.execute(KEY, () -> {
+            loadCount.incrementAndGet();
+            return CompletableFuture.completedFuture(VALUE);
+        }).get();
+        assertEquals(loadCount.get(), 2, "A failed load was not retried once the failure expired.");
+        assertEquals(result, VALUE);
+    }
+
+    @Test
+    public void testFailureIsNotCachedWhenDisabled() throws Exception {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(0);
+        AtomicInteger loadCount = new AtomicInteger();
+
+        getFailure(singleFlight.execute(KEY, () -> {
+            loadCount.incrementAndGet();
+            throw new IllegalStateException("Load failed.");
+        }));
+        String result = singleFlight.execute(KEY, () -> {
+            loadCount.incrementAndGet();
+            return CompletableFuture.completedFuture(VALUE);
+        }).get();
+
+        assertEquals(loadCount.get(), 2);
+        assertEquals(result, VALUE);
+    }
+
+    @Test
+    public void testForgetFailure() throws Exception {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(60000);
+        AtomicInteger loadCount = new AtomicInteger();
+
+        getFailure(singleFlight.execute(KEY, () -> {
+            loadCount.incrementAndGet();
+            throw new IllegalStateException("Load failed.");
+        }));
+        singleFlight.forget(KEY);
+        String result = singleFlight.execute(KEY, () -> {
+            loadCount.incrementAndGet();
+            return CompletableFuture.completedFuture(VALUE);
+        }).get();
+
+        assertEquals(loadCount.get(), 2);
+        assertEquals(result, VALUE);
+    }
+
+    @Test
+    public void testFailureIsCachedPerKey() throws Exception {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(60000);
+
+        getFailure(singleFlight.execute(KEY, () -> {
+            throw new IllegalStateException("Load failed.");
+        }));
+        String result = singleFlight.execute("otherKey", () -> CompletableFuture.completedFuture(VALUE)).get();
+
+        assertEquals(result, VALUE);
+    }
+
+    private static Throwable getFailure(CompletableFuture<String> future) throws InterruptedException {
+
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            assertTrue(future.isCompletedExceptionally());
+            return e.getCause();
+        }
+        fail("The load was expected to fail.");
+        return null;
+    }
+}
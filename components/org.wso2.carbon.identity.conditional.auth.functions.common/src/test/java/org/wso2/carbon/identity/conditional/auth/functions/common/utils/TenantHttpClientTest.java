@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TenantHttpClientTest {
+
+    private static final String REQUEST_URL = "https://api.example.com/risk";
+    private static final String TENANT_DOMAIN = "carbon.super";
+
+    private SharedHttpTransport transport;
+    private StubHttpAsyncClient sharedClient;
+
+    @BeforeMethod
+    public void setUp() {
+
+        transport = new SharedHttpTransport(1);
+        sharedClient = new StubHttpAsyncClient();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        transport.shutdown();
+    }
+
+    @Test
+    public void testConcurrentRequestsAreLimited() throws Exception {
+
+        TenantHttpClient client = createClient(RequestConfig.DEFAULT, 2);
+
+        Future<HttpResponse> first = execute(client);
+        execute(client);
+        Future<HttpResponse> third = execute(client);
+
+        assertEquals(sharedClient.callbacks.size(), 2, "More requests than the limit of the tenant were sent.");
+        assertEquals(client.getActiveRequestCount(), 2);
+        assertEquals(client.getPendingRequestCount(), 1);
+
+        HttpResponse response = createResponse();
+        sharedClient.callbacks.get(0).completed(response);
+
+        assertSame(first.get(1, TimeUnit.SECONDS), response);
+        assertEquals(sharedClient.callbacks.size(), 3, "The queued request was not sent once a request completed.");
+        assertEquals(client.getPendingRequestCount(), 0);
+        sharedClient.callbacks.get(2).completed(response);
+        assertSame(third.get(1, TimeUnit.SECONDS), response);
+    }
+
+    @Test
+    public void testUnlimitedConcurrentRequests() {
+
+        TenantHttpClient client = createClient(RequestConfig.DEFAULT, 0);
+
+        for (int i = 0; i < 10; i++) {
+            execute(client);
+        }
+
+        assertEquals(sharedClient.callbacks.size(), 10);
+        assertEquals(client.getPendingRequestCount(), 0);
+    }
+
+    @Test
+    public void testQueuedRequestTimesOut() throws Exception {
+
+        TenantHttpClient client = createClient(RequestConfig.custom().setConnectionRequestTimeout(10).build(), 1);
+        execute(client);
+        Future<HttpResponse> queued = execute(client);
+
+        // The queued request times out although the request in flight does not complete.
+        try {
+            queued.get(5, TimeUnit.SECONDS);
+            fail("The request which waited longer than the connection request timeout was not failed.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConnectionPoolTimeoutException);
+        }
+        assertEquals(transport.getPoolTimeoutCount(), 1);
+        assertEquals(client.getPendingRequestCount(), 0);
+
+        sharedClient.callbacks.get(0).completed(createResponse());
+        assertEquals(sharedClient.callbacks.size(), 1, "The timed out request was sent.");
+        assertEquals(client.getActiveRequestCount(), 0);
+    }
+
+    @Test
+    public void testQueuedRequestSentBeforeTimeoutIsNotFailed() throws Exception {
+
+        TenantHttpClient client = createClient(RequestConfig.custom().setConnectionRequestTimeout(60000).build(), 1);
+        execute(client);
+        Future<HttpResponse> queued = execute(client);
+
+        sharedClient.callbacks.get(0).completed(createResponse());
+        HttpResponse response = createResponse();
+        sharedClient.callbacks.get(1).completed(response);
+
+        assertSame(queued.get(1, TimeUnit.SECONDS), response);
+        assertEquals(transport.getPoolTimeoutCount(), 0);
+    }
+
+    @Test
+    public void testCancelledQueuedRequestIsNotSent() {
+
+        TenantHttpClient client = createClient(RequestConfig.DEFAULT, 1);
+        execute(client);
+        Future<HttpResponse> queued = execute(client);
+
+        queued.cancel(true);
+        sharedClient.callbacks.get(0).completed(createResponse());
+
+        assertEquals(sharedClient.callbacks.size(), 1, "A cancelled request was sent.");
+        assertEquals(client.getActiveRequestCount(), 0);
+    }
+
+    @Test
+    public void testFailedRequestReleasesPermit() {
+
+        TenantHttpClient client = createClient(RequestConfig.DEFAULT, 1);
+        execute(client);
+        execute(client);
+
+        sharedClient.callbacks.get(0).failed(new IOException("Connection reset."));
+
+        assertEquals(sharedClient.callbacks.size(), 2, "The queued request was not sent once a request failed.");
+    }
+
+    @Test
+    public void testRequestConfigOfTenantIsApplied() {
+
+        RequestConfig tenantConfig = RequestConfig.custom().setSocketTimeout(1000).build();
+        RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(2000).build();
+        TenantHttpClient client = createClient(tenantConfig, 0);
+
+        execute(client);
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(requestConfig);
+        client.execute(HttpAsyncMethods.create(new HttpGet(REQUEST_URL)), HttpAsyncMethods.createConsumer(), context,
+                null);
+
+        assertSame(HttpClientContext.adapt(sharedClient.contexts.get(0)).getRequestConfig(), tenantConfig);
+        assertSame(HttpClientContext.adapt(sharedClient.contexts.get(1)).getRequestConfig(), requestConfig,
+                "The request config of the request was overridden.");
+    }
+
+    private TenantHttpClient createClient(RequestConfig requestConfig, int maxConcurrentRequests) {
+
+        return new TenantHttpClient(transport, "test|" + TENANT_DOMAIN, TENANT_DOMAIN, sharedClient, null,
+                new TenantTransportConfig("default", null, null, null, requestConfig, maxConcurrentRequests));
+    }
+
+    private static Future<HttpResponse> execute(TenantHttpClient client) {
+
+        return client.execute(HttpAsyncMethods.create(new HttpGet(REQUEST_URL)), HttpAsyncMethods.createConsumer(),
+                null, null);
+    }
+
+    private static HttpResponse createResponse() {
+
+        return new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+    }
+
+    /**
+     * Shared client which keeps the requests in flight until the test completes them.
+     */
+    private static class StubHttpAsyncClient extends CloseableHttpAsyncClient {
+
+        private final List<FutureCallback<HttpResponse>> callbacks = new CopyOnWriteArrayList<>();
+        private final List<HttpContext> contexts = new CopyOnWriteArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> Future<T> execute(HttpAsyncRequestProducer requestProducer,
+                                     HttpAsyncResponseConsumer<T> responseConsumer, HttpContext context,
+                                     FutureCallback<T> callback) {
+
+            callbacks.add((FutureCallback<HttpResponse>) callback);
+            contexts.add(context);
+            return new BasicFuture<>(null);
+        }
+
+        @Override
+        public boolean isRunning() {
+
+            return true;
+        }
+
+        @Override
+        public void start() {
+
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+}
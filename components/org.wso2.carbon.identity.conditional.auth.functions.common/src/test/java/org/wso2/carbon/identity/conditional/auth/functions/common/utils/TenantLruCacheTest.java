@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.common.utils;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TenantLruCacheTest {
+
+    private static final String TENANT_DOMAIN = "carbon.super";
+    private static final String OTHER_TENANT_DOMAIN = "wso2.com";
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+
+        TenantLruCache<String> cache = new TenantLruCache<>(2);
+        cache.put(TENANT_DOMAIN, "a", "1");
+        cache.put(TENANT_DOMAIN, "b", "2");
+        assertEquals(cache.get(TENANT_DOMAIN, "a"), "1");
+
+        cache.put(TENANT_DOMAIN, "c", "3");
+
+        assertNull(cache.get(TENANT_DOMAIN, "b"), "The least recently used entry was not evicted.");
+        assertEquals(cache.get(TENANT_DOMAIN, "a"), "1", "A recently used entry was evicted.");
+        assertEquals(cache.get(TENANT_DOMAIN, "c"), "3");
+        assertEquals(cache.getEvictionCount(), 1);
+        assertEquals(cache.size(), 2);
+    }
+
+    @Test
+    public void testTenantsAreIsolated() {
+
+        TenantLruCache<String> cache = new TenantLruCache<>(1);
+        cache.put(TENANT_DOMAIN, "a", "1");
+        cache.put(OTHER_TENANT_DOMAIN, "a", "2");
+        cache.put(OTHER_TENANT_DOMAIN, "b", "3");
+
+        assertEquals(cache.get(TENANT_DOMAIN, "a"), "1", "A tenant evicted the entries of another tenant.");
+        assertNull(cache.get(OTHER_TENANT_DOMAIN, "a"));
+        assertEquals(cache.size(), 2);
+
+        cache.clear(OTHER_TENANT_DOMAIN);
+        assertNull(cache.get(OTHER_TENANT_DOMAIN, "b"));
+        assertEquals(cache.get(TENANT_DOMAIN, "a"), "1");
+    }
+
+    @Test
+    public void testNullTenantDomain() {
+
+        TenantLruCache<String> cache = new TenantLruCache<>(1);
+        cache.put(null, "a", "1");
+
+        assertEquals(cache.get(null, "a"), "1");
+        assertEquals(cache.get("", "a"), "1");
+    }
+
+    @Test
+    public void testRemove() {
+
+        TenantLruCache<String> cache = new TenantLruCache<>(2);
+        cache.put(TENANT_DOMAIN, "a", "1");
+        cache.put(TENANT_DOMAIN, "b", "2");
+
+        cache.remove(TENANT_DOMAIN, "a", "other");
+        assertEquals(cache.get(TENANT_DOMAIN, "a"), "1", "An entry mapped to another value was removed.");
+        cache.remove(TENANT_DOMAIN, "a", "1");
+        assertNull(cache.get(TENANT_DOMAIN, "a"));
+        cache.remove(TENANT_DOMAIN, "b");
+        assertNull(cache.get(TENANT_DOMAIN, "b"));
+        cache.remove(OTHER_TENANT_DOMAIN, "b");
+
+        cache.put(TENANT_DOMAIN, "c", "3");
+        cache.clear();
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getEvictionCount(), 0);
+    }
+}
@@ -29,7 +29,8 @@ public interface CallElasticFunction {
     /**
      * ELK Risk Score Analysis
      *
-     * @param params        Parameters for ELK analytics query.
+     * @param params        Parameters for ELK analytics query. An optional timeout in milliseconds (params.timeout)
+     *                      bounds the call.
      * @param eventHandlers Event handlers.
      */
     void callElastic(Map<String, String> params, Map<String, Object> eventHandlers);
@@ -31,10 +31,15 @@ import org.apache.http.util.EntityUtils;
 import org.graalvm.polyglot.HostAccess;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncCaller;
 import org.wso2.carbon.identity.application.authentication.framework.AsyncProcess;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncReturn;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.graph.JsGraphBuilder;
 import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ParallelCallFactory;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.CommonUtils;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.HttpCompression;
 import org.wso2.carbon.identity.conditional.auth.functions.elk.util.ElasticConfigProvider;
 import org.wso2.carbon.identity.event.IdentityEventException;
 
@@ -55,9 +60,11 @@ import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.C
 /**
  * Implementation of the {@link CallElasticFunction}.
  */
-public class CallElasticFunctionImpl extends AbstractElasticHelper implements CallElasticFunction {
+public class CallElasticFunctionImpl extends AbstractElasticHelper implements CallElasticFunction,
+        ParallelCallFactory {
 
     private static final Log LOG = LogFactory.getLog(CallElasticFunctionImpl.class);
+    private static final String PARAM_TIMEOUT = "timeout";
 
     private static final ElasticConfigProvider elasticConfigProvider = ElasticConfigProvider.getInstance();
 
@@ -70,9 +77,35 @@ public class CallElasticFunctionImpl extends AbstractElasticHelper implements Ca
     @HostAccess.Export
     public void callElastic(Map<String, String> params, Map<String, Object> eventHandlers) {
 
+        AsyncProcess asyncProcess = new AsyncProcess(createCall(params));
+        JsGraphBuilder.addLongWaitProcess(asyncProcess, eventHandlers);
+    }
+
+    /**
+     * Create the call of callElastic to be executed in parallel with other calls.
+     * The only argument is the params of callElastic.
+     *
+     * @param arguments Arguments of callElastic, without the event handlers.
+     * @return Call querying Elasticsearch.
+     */
+    @Override
+    public AsyncCaller createCall(Object... arguments) {
+
+        if (arguments.length != 1 || !(arguments[0] instanceof Map)) {
+            throw new IllegalArgumentException("Invalid arguments for callElastic. Expected params " +
+                    "(Map<String, String>).");
+        }
+        return createCall((Map<String, String>) arguments[0]);
+    }
+
+    private AsyncCaller createCall(Map<String, String> params) {
+
         Map<String, String> paramsMap = new HashMap<>(params);
-        AsyncProcess asyncProcess = new AsyncProcess((authenticationContext, asyncReturn) -> {
+        return (authenticationContext, flowReturn) -> {
 
+            Deadline deadline = Deadline.forCall(authenticationContext,
+                    Deadline.parseTimeout(paramsMap.get(PARAM_TIMEOUT)));
+            AsyncReturn asyncReturn = deadline.bound(authenticationContext, flowReturn);
             try {
                 String tenantDomain = authenticationContext.getTenantDomain();
                 String targetHostUrl = CommonUtils.getConnectorConfig(ElasticAnalyticsEngineConfigImpl.RECEIVER,
@@ -88,7 +121,7 @@ public class CallElasticFunctionImpl extends AbstractElasticHelper implements Ca
                 handleAuthentication(request, authenticationContext.getTenantDomain());
 
                 String query = elasticConfigProvider.getQuery(paramsMap);
-                request.setEntity(new StringEntity(query, StandardCharsets.UTF_8));
+                HttpCompression.getInstance().setEntity(request, new StringEntity(query, StandardCharsets.UTF_8));
 
                 String[] targetHostUrls = targetHostUrl.split(";");
 
@@ -100,6 +133,10 @@ public class CallElasticFunctionImpl extends AbstractElasticHelper implements Ca
                 }
 
                 CloseableHttpAsyncClient client = HttpClientManager.getInstance().getClient(tenantDomain);
+                if (deadline.isBounded()) {
+                    request.setConfig(deadline.capTimeouts(
+                            HttpClientManager.getInstance().getRequestConfig(tenantDomain)));
+                }
 
                 AtomicInteger requestAtomicInteger = new AtomicInteger(targetHosts.length);
 
@@ -197,7 +234,6 @@ public class CallElasticFunctionImpl extends AbstractElasticHelper implements Ca
                 asyncReturn.accept(authenticationContext, Collections.emptyMap(), OUTCOME_FAIL);
             }
 
-        });
-        JsGraphBuilder.addLongWaitProcess(asyncProcess, eventHandlers);
+        };
     }
 }
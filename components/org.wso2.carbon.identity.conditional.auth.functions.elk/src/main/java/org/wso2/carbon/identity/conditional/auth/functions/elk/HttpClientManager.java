@@ -25,36 +25,32 @@ import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
-import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
-import org.apache.http.impl.nio.client.HttpAsyncClients;
-import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
-import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
-import org.apache.http.nio.reactor.ConnectingIOReactor;
-import org.apache.http.nio.reactor.IOReactorException;
 import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.CommonUtils;
-import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.SharedHttpTransport;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.TenantTransportConfig;
 import org.wso2.carbon.identity.conditional.auth.functions.elk.internal.ElasticFunctionsServiceHolder;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
-import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.event.IdentityEventException;
 
-import javax.net.ssl.SSLContext;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.security.KeyStore;
+import javax.net.ssl.SSLContext;
 
 /**
  * Class to retrieve the HTTP Clients.
+ * The clients of the tenants are logical connection pools over the {@link SharedHttpTransport}, so the tenants share
+ * the I/O threads and the connections to the Elasticsearch endpoints.
  */
 public class HttpClientManager {
 
     private static final Log LOG = LogFactory.getLog(HttpClientManager.class);
+    private static final String TRANSPORT_NAME = "elk";
+    private static final String TLS_PROFILE_PREFIX = "elk-";
 
     private static HttpClientManager instance = new HttpClientManager();
 
-    private static Map<Integer, CloseableHttpAsyncClient> clientMap = new HashMap<>();
-
     public static HttpClientManager getInstance() {
 
         return instance;
@@ -72,21 +68,23 @@ public class HttpClientManager {
      */
     public CloseableHttpAsyncClient getClient(String tenantDomain) throws FrameworkException {
 
-        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
-        CloseableHttpAsyncClient client = clientMap.get(tenantId);
-
-        if (client == null) {
-            PoolingNHttpClientConnectionManager poolingHttpClientConnectionManager = createPoolingConnectionManager();
-            RequestConfig config = createRequestConfig(tenantDomain);
-            HttpAsyncClientBuilder httpClientBuilder = HttpAsyncClients.custom().setDefaultRequestConfig(config);
-            addSslContext(httpClientBuilder, tenantDomain);
-            httpClientBuilder.setConnectionManager(poolingHttpClientConnectionManager);
-            client = httpClientBuilder.build();
-            client.start();
-            clientMap.put(tenantId, client);
+        try {
+            return SharedHttpTransport.getInstance().getClient(TRANSPORT_NAME, tenantDomain,
+                    this::createTransportConfig);
+        } catch (IOException e) {
+            throw new FrameworkException("Error while creating http client for tenant domain: " + tenantDomain, e);
         }
+    }
 
-        return client;
+    /**
+     * Get the request config with the timeouts configured for the tenant.
+     *
+     * @param tenantDomain tenant domain of the service provider.
+     * @return Request config.
+     */
+    public RequestConfig getRequestConfig(String tenantDomain) {
+
+        return createRequestConfig(tenantDomain);
     }
 
     private RequestConfig createRequestConfig(String tenantDomain) {
@@ -149,73 +147,52 @@ public class HttpClientManager {
                 .build();
     }
 
-    private PoolingNHttpClientConnectionManager createPoolingConnectionManager() throws FrameworkException {
+    private TenantTransportConfig createTransportConfig(String tenantDomain) {
 
-        String maxConnectionsString = IdentityUtil.getProperty(Constants.CONNECTION_POOL_MAX_CONNECTIONS);
-        String maxConnectionsPerRouteString = IdentityUtil.getProperty(Constants
-                .CONNECTION_POOL_MAX_CONNECTIONS_PER_ROUTE);
-        int defaultMaxConnections = 20;
-        int maxConnections = defaultMaxConnections;
-        int maxConnectionsPerRoute = defaultMaxConnections;
+        String hostnameVerifierConfig = null;
         try {
-            maxConnections = Integer.parseInt(maxConnectionsString);
-        } catch (NumberFormatException e) {
-            // Ignore. Default value is used.
+            hostnameVerifierConfig = CommonUtils.getConnectorConfig(ElasticAnalyticsEngineConfigImpl.HOSTNAME_VERIFIER,
+                    tenantDomain);
+        } catch (IdentityEventException e) {
+            // Ignore. If there was error while getting the property, continue with the strict verifier.
         }
-        try {
-            maxConnectionsPerRoute = Integer.parseInt(maxConnectionsPerRouteString);
-        } catch (NumberFormatException e) {
-            // Ignore. Default value is used.
+        X509HostnameVerifier hostnameVerifier;
+        String tlsProfile;
+        if (ElasticAnalyticsEngineConfigImpl.HOSTNAME_VERIFIER_ALLOW_ALL.equalsIgnoreCase(hostnameVerifierConfig)) {
+            hostnameVerifier = SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER;
+            tlsProfile = TLS_PROFILE_PREFIX + ElasticAnalyticsEngineConfigImpl.HOSTNAME_VERIFIER_ALLOW_ALL;
+        } else {
+            hostnameVerifier = SSLConnectionSocketFactory.STRICT_HOSTNAME_VERIFIER;
+            tlsProfile = TLS_PROFILE_PREFIX + ElasticAnalyticsEngineConfigImpl.HOSTNAME_VERIFIER_STRICT;
         }
 
-        ConnectingIOReactor ioReactor;
-        try {
-            ioReactor = new DefaultConnectingIOReactor();
-        } catch (IOReactorException e) {
-            throw new FrameworkException("Error while creating ConnectingIOReactor", e);
-        }
-        PoolingNHttpClientConnectionManager poolingHttpClientConnectionManager = new
-                PoolingNHttpClientConnectionManager(ioReactor);
-        // Increase max total connection to 50.
-        poolingHttpClientConnectionManager.setMaxTotal(maxConnections);
-        // Increase default max connection per route to 50.
-        poolingHttpClientConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
-        return poolingHttpClientConnectionManager;
+        KeyStore trustStore = ElasticFunctionsServiceHolder.getInstance().getTrustStore();
+        return new TenantTransportConfig(tlsProfile.toLowerCase(), createSslContext(trustStore, tenantDomain),
+                trustStore, hostnameVerifier, createRequestConfig(tenantDomain),
+                ConfigProvider.getInstance().getMaxConnections());
     }
 
-    public void closeClient(int tenantId) throws IOException {
-
-        CloseableHttpAsyncClient client = clientMap.get(tenantId);
+    /**
+     * Evict the client of an unloaded tenant.
+     * Requests already sent by the client are left to complete.
+     *
+     * @param tenantId Tenant id.
+     */
+    public void closeClient(int tenantId) {
 
-        if (client != null) {
-            clientMap.remove(tenantId);
-            client.close();
-        }
+        SharedHttpTransport.getInstance().evict(TRANSPORT_NAME, IdentityTenantUtil.getTenantDomain(tenantId));
     }
 
-    private void addSslContext(HttpAsyncClientBuilder builder, String tenantDomain) {
+    private SSLContext createSslContext(KeyStore trustStore, String tenantDomain) {
 
         try {
-            SSLContext sslContext = SSLContexts.custom()
-                    .loadTrustMaterial(ElasticFunctionsServiceHolder.getInstance().getTrustStore())
+            return SSLContexts.custom()
+                    .loadTrustMaterial(trustStore)
                     .build();
-
-            String hostnameVerifierConfig = CommonUtils.getConnectorConfig(ElasticAnalyticsEngineConfigImpl
-                    .HOSTNAME_VERIFIER, tenantDomain);
-            X509HostnameVerifier hostnameVerifier;
-            if (ElasticAnalyticsEngineConfigImpl.HOSTNAME_VERIFIER_STRICT.equalsIgnoreCase(hostnameVerifierConfig)) {
-                hostnameVerifier = SSLConnectionSocketFactory.STRICT_HOSTNAME_VERIFIER;
-            } else if (ElasticAnalyticsEngineConfigImpl.HOSTNAME_VERIFIER_ALLOW_ALL.equalsIgnoreCase(hostnameVerifierConfig)) {
-                hostnameVerifier = SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER;
-            } else {
-                hostnameVerifier = SSLConnectionSocketFactory.STRICT_HOSTNAME_VERIFIER;
-            }
-
-            builder.setSSLContext(sslContext);
-            builder.setHostnameVerifier(hostnameVerifier);
         } catch (Exception e) {
             LOG.error("Error while creating ssl context for analytics endpoint invocation in tenant domain: " +
                     tenantDomain, e);
+            return null;
         }
     }
 }
@@ -31,7 +31,7 @@ import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
 import org.wso2.carbon.base.api.ServerConfigurationService;
 import org.wso2.carbon.identity.application.authentication.framework.JsFunctionRegistry;
-import org.wso2.carbon.identity.conditional.auth.functions.elk.CallElasticFunction;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ParallelCallRegistry;
 import org.wso2.carbon.identity.conditional.auth.functions.elk.CallElasticFunctionImpl;
 import org.wso2.carbon.identity.conditional.auth.functions.elk.ElasticAnalyticsEngineConfigImpl;
 import org.wso2.carbon.identity.core.util.IdentityCoreInitializedEvent;
@@ -69,8 +69,9 @@ public class ElasticFunctionsServiceComponent {
         try {
             JsFunctionRegistry jsFunctionRegistry = ElasticFunctionsServiceHolder.getInstance().getJsFunctionRegistry();
 
-            CallElasticFunction callElastic = new CallElasticFunctionImpl();
+            CallElasticFunctionImpl callElastic = new CallElasticFunctionImpl();
             jsFunctionRegistry.register(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_CALL_ELASTIC, callElastic);
+            ParallelCallRegistry.getInstance().register(FUNC_CALL_ELASTIC, callElastic);
 
             BundleContext bundleContext = context.getBundleContext();
             ElasticAnalyticsEngineConfigImpl analyticsFunctionConfig = new ElasticAnalyticsEngineConfigImpl();
@@ -101,6 +102,7 @@ public class ElasticFunctionsServiceComponent {
         if (jsFunctionRegistry != null) {
             jsFunctionRegistry.deRegister(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_CALL_ELASTIC);
         }
+        ParallelCallRegistry.getInstance().unregister(FUNC_CALL_ELASTIC);
     }
 
     @Reference(
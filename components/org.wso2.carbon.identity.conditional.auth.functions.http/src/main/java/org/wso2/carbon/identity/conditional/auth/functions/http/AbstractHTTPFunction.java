@@ -22,33 +22,48 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.Header;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.conn.ConnectTimeoutException;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncCaller;
 import org.wso2.carbon.identity.application.authentication.framework.AsyncProcess;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncReturn;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.graph.JsGraphBuilder;
+import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
+import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
 import org.wso2.carbon.identity.central.log.mgt.utils.LoggerUtils;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.CompletionExecutor;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.DeadlineExceededException;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.DomainAllowlist;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.HttpResponseReader;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.LogEventPublisher;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.RetryPolicy;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.SingleFlight;
+import org.wso2.carbon.identity.conditional.auth.functions.http.cache.HTTPResponseCache;
 import org.wso2.carbon.identity.conditional.auth.functions.http.util.AuthConfig;
 import org.wso2.carbon.identity.conditional.auth.functions.http.util.AuthConfigFactory;
 import org.wso2.carbon.identity.conditional.auth.functions.http.util.AuthConfigModel;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.HTTPClientManager;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.HTTPFunctionMetrics;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.HedgedRequestExecutor;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.HttpUtil;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.ResponseClassifier;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.ResponseClassifier.Classification;
 import org.wso2.carbon.utils.DiagnosticLog;
 
 import java.io.IOException;
-import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.apache.http.HttpHeaders.ACCEPT;
 import static org.wso2.carbon.identity.conditional.auth.functions.http.util.HttpUtil.getInvokeApiActionId;
@@ -62,275 +77,409 @@ public abstract class AbstractHTTPFunction {
     protected static final String TYPE_APPLICATION_JSON = "application/json";
     protected static final String TYPE_APPLICATION_FORM_URLENCODED = "application/x-www-form-urlencoded";
     protected static final String TYPE_TEXT_PLAIN = "text/plain";
-    private static final char DOMAIN_SEPARATOR = '.';
     private static final String RESPONSE = "response";
+    private static final char COALESCING_KEY_SEPARATOR = '|';
+    private static final SingleFlight<String, Pair<String, JSONObject>> COALESCED_REQUESTS = new SingleFlight<>(0);
     private final int requestRetryCount;
-    private final List<String> allowedDomains;
-
-    private CloseableHttpClient client;
 
     public AbstractHTTPFunction() {
 
         requestRetryCount = ConfigProvider.getInstance().
                 getRequestRetryCount();
-        RequestConfig config = RequestConfig.custom()
-                .setConnectTimeout(ConfigProvider.getInstance().getConnectionTimeout())
-                .setConnectionRequestTimeout(ConfigProvider.getInstance().getConnectionRequestTimeout())
-                .setSocketTimeout(ConfigProvider.getInstance().getReadTimeout())
-                .setRedirectsEnabled(false)
-                .setRelativeRedirectsAllowed(false)
-                .build();
-        client = HttpClientBuilder.create().setDefaultRequestConfig(config).build();
-        allowedDomains = ConfigProvider.getInstance().getAllowedDomainsForHttpFunctions();
     }
 
-    private enum RetryDecision {
-        RETRY,
-        NO_RETRY;
+    protected void executeHttpMethod(HttpUriRequest clientRequest, Map<String, Object> eventHandlers,
+                                     AuthConfigModel authConfigModel) {
 
-        public boolean shouldRetry() {
-            return this == RETRY;
-        }
+        executeHttpMethod(clientRequest, eventHandlers, authConfigModel, false, false, 0);
     }
 
+    /**
+     * Execute the request as a long wait process of the authentication flow.
+     *
+     * @param clientRequest   Request to execute.
+     * @param eventHandlers   Event handlers of the authentication script.
+     * @param authConfigModel Authentication to apply to the request, if any.
+     * @param coalesce        Whether the request should be coalesced with an identical request which is in flight.
+     * @param cache           Whether the response of a GET request may be served from the response cache.
+     * @param timeout         End-to-end timeout of the call in milliseconds, or 0 to use the configured timeout.
+     */
     protected void executeHttpMethod(HttpUriRequest clientRequest, Map<String, Object> eventHandlers,
-                                     AuthConfigModel authConfigModel) {
+                                     AuthConfigModel authConfigModel, boolean coalesce, boolean cache,
+                                     long timeout) {
 
         Map<String, Object> eventHandlersMap = new HashMap<>(eventHandlers);
+        AsyncProcess asyncProcess = new AsyncProcess(createAsyncCaller(clientRequest, authConfigModel, coalesce, cache,
+                timeout));
+        JsGraphBuilder.addLongWaitProcess(asyncProcess, eventHandlersMap);
+    }
+
+    /**
+     * Create the call which authenticates and executes the request, and returns the outcome to the authentication
+     * flow. The call can be executed by a long wait process of its own, or along with other calls.
+     * The deadline of the call starts when the call is executed, and covers the authentication of the request and
+     * every attempt made to the endpoint.
+     *
+     * @param clientRequest   Request to execute.
+     * @param authConfigModel Authentication to apply to the request, if any.
+     * @param coalesce        Whether the request should be coalesced with an identical request which is in flight.
+     * @param cache           Whether the response of a GET request may be served from the response cache.
+     * @param timeout         End-to-end timeout of the call in milliseconds, or 0 to use the configured timeout.
+     * @return Call executing the request.
+     */
+    protected AsyncCaller createAsyncCaller(HttpUriRequest clientRequest, AuthConfigModel authConfigModel,
+                                            boolean coalesce, boolean cache, long timeout) {
+
         AuthConfigModel authConfigModelClone =
                 authConfigModel == null ? null : new AuthConfigModel(authConfigModel.getType(),
                         new HashMap<>(authConfigModel.getProperties()));
-        AsyncProcess asyncProcess = new AsyncProcess((context, asyncReturn) -> {
-            String outcome;
-            String endpointURL = null;
-
-            HttpUriRequest request;
+        return (context, flowReturn) -> {
+            Deadline deadline = Deadline.forCall(context, timeout);
+            AsyncReturn asyncReturn = deadline.bound(context, flowReturn);
+            CompletableFuture<HttpUriRequest> authenticatedRequest;
             try {
                 if (authConfigModelClone != null) {
                     AuthConfig authConfig = AuthConfigFactory.getAuthConfig(authConfigModelClone, context, asyncReturn);
-                    request = authConfig.applyAuth(clientRequest, authConfigModelClone);
+                    authenticatedRequest = authConfig.applyAuthAsync(clientRequest, authConfigModelClone);
                 } else {
-                    request = clientRequest;
+                    authenticatedRequest = CompletableFuture.completedFuture(clientRequest);
                 }
+            } catch (Exception e) {
+                LOG.error("Error while applying authentication to the request.", e);
+                asyncReturn.accept(context, Collections.emptyMap(), Constants.OUTCOME_FAIL);
+                return;
+            }
 
-                if (request.getURI() != null) {
-                    endpointURL = request.getURI().toString();
-                }
+            // When the credentials are being obtained by another request, the endpoint is invoked once they are
+            // available instead of holding this thread.
+            authenticatedRequest.whenComplete((request, error) -> invokeEndpoint(context, asyncReturn, request, error,
+                    coalesce, cache, timeout, deadline));
+        };
+    }
 
-                if (!isValidRequestDomain(request.getURI())) {
-                    LOG.error("Request URL does not match with the allowed domain list. Request Url: " +
-                            endpointURL);
-                    asyncReturn.accept(context, Collections.emptyMap(), Constants.OUTCOME_FAIL);
-                } else {
-                    Pair<RetryDecision, Pair<String, JSONObject>> result = executeRequest(request, endpointURL);
-                    if (result.getLeft().shouldRetry()) {
-                        LOG.info("Failed to invoke the endpoint. Url: " + endpointURL + ". Retrying the request.");
-                        result = executeRequestWithRetries(request, endpointURL, requestRetryCount);
+    /**
+     * Invoke the endpoint with the authenticated request and return the outcome to the authentication flow.
+     *
+     * @param context     Authentication context.
+     * @param asyncReturn Async return of the long wait process.
+     * @param request     Authenticated request.
+     * @param authError   Error occurred while authenticating the request, if any.
+     * @param coalesce    Whether the request should be coalesced with an identical request which is in flight.
+     * @param cache       Whether the response of a GET request may be served from the response cache.
+     * @param timeout     End-to-end timeout of the call in milliseconds, or 0 to use the configured timeout.
+     * @param deadline    Deadline of the call.
+     */
+    private void invokeEndpoint(AuthenticationContext context, AsyncReturn asyncReturn, HttpUriRequest request,
+                                Throwable authError, boolean coalesce, boolean cache, long timeout,
+                                Deadline deadline) {
+
+        String endpointURL = null;
+
+        try {
+            if (authError != null) {
+                LOG.error("Error while applying authentication to the request.", authError);
+                asyncReturn.accept(context, Collections.emptyMap(), Constants.OUTCOME_FAIL);
+                return;
+            }
+
+            if (request.getURI() != null) {
+                endpointURL = request.getURI().toString();
+            }
+
+            if (!isValidRequestDomain(request.getURI())) {
+                LOG.error("Request URL does not match with the allowed domain list. Request Url: " +
+                        endpointURL);
+                asyncReturn.accept(context, Collections.emptyMap(), Constants.OUTCOME_FAIL);
+            } else {
+                String url = endpointURL;
+                String tenantDomain = context.getTenantDomain();
+                CompletableFuture<Pair<String, JSONObject>> outcome;
+                try {
+                    if (coalesce) {
+                        // Identical requests of the tenant made with the same timeout and caching while this
+                        // request is in flight receive its outcome, instead of being sent again. The shared exchange
+                        // is bounded by the timeout of the call rather than by the budget of the flow which started
+                        // it, as the async return of each flow already returns no later than the deadline of that
+                        // flow.
+                        String requestKey = tenantDomain + COALESCING_KEY_SEPARATOR + timeout +
+                                COALESCING_KEY_SEPARATOR + cache + COALESCING_KEY_SEPARATOR +
+                                HttpUtil.getRequestKey(request);
+                        Deadline exchangeDeadline = Deadline.forCall(null, timeout);
+                        outcome = COALESCED_REQUESTS.execute(requestKey, () -> executeRequestWithRetries(request, url,
+                                tenantDomain, requestRetryCount, cache, exchangeDeadline))
+                                // Each flow gets its own copy of the response, which its script may modify.
+                                .thenApply(result -> Pair.of(result.getLeft(), copyJson(result.getRight())));
+                    } else {
+                        outcome = executeRequestWithRetries(request, endpointURL, tenantDomain, requestRetryCount,
+                                cache, deadline);
                     }
-                    outcome = result.getRight().getLeft();
-                    JSONObject json = result.getRight().getRight();
-                    asyncReturn.accept(context, json != null ? json : Collections.emptyMap(), outcome);
+                } catch (RuntimeException e) {
+                    outcome = new CompletableFuture<>();
+                    outcome.completeExceptionally(e);
                 }
-            } catch (Exception e) {
-                LOG.error("Error while applying authentication to the request.", e);
-                asyncReturn.accept(context, Collections.emptyMap(), Constants.OUTCOME_FAIL);
+                // The flow is resumed on the completion executor, as the outcome may be produced on a timer thread
+                // shared by every flow, e.g. when the deadline of the call passes.
+                outcome.whenCompleteAsync((result, error) -> returnOutcome(context, asyncReturn, result, error, url),
+                        CompletionExecutor.getInstance());
             }
-        });
-        JsGraphBuilder.addLongWaitProcess(asyncProcess, eventHandlersMap);
+        } catch (FrameworkException e) {
+            LOG.error("Error while returning the outcome of the request. Url: " + endpointURL, e);
+        }
     }
 
     /**
-     * Execute the request with retries.
+     * Return the outcome of the request to the authentication flow. The flow is failed if the request could not be
+     * executed, so that it does not wait for an outcome which never arrives.
      *
-     * @param request     HttpUriRequest.
+     * @param context     Authentication context.
+     * @param asyncReturn Async return of the long wait process.
+     * @param result      Pair of outcome and json, if the request was executed.
+     * @param error       Error which prevented the request from being executed, if any.
      * @param endpointURL Endpoint URL.
-     * @param maxRetries  Maximum number of retries.
-     * @return Pair of outcome and json.
      */
-    private Pair<RetryDecision, Pair<String, JSONObject>> executeRequestWithRetries
-    (HttpUriRequest request, String endpointURL, int maxRetries) {
-
-        Pair<RetryDecision, Pair<String, JSONObject>> result;
-        String outcome = Constants.OUTCOME_FAIL;
-        int attempts = 0;
-        RetryDecision isRetry = RetryDecision.NO_RETRY;
-
-        while (attempts < maxRetries) {
-            attempts++;
-            LOG.warn("Retrying the request for endpoint: " + endpointURL + ". Attempt: " + attempts);
-            if (LoggerUtils.isDiagnosticLogsEnabled()) {
-                DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
-                        DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
-                        getInvokeApiActionId(request));
-                diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.API, endpointURL)
-                        .configParam(Constants.LogConstants.ConfigKeys.MAX_REQUEST_ATTEMPTS, maxRetries)
-                        .resultMessage("Retrying the request for external api. Attempt: " + attempts)
-                        .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
-                        .resultStatus(DiagnosticLog.ResultStatus.FAILED);
-                LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder);
+    private void returnOutcome(AuthenticationContext context, AsyncReturn asyncReturn,
+                               Pair<String, JSONObject> result, Throwable error, String endpointURL) {
+
+        try {
+            if (error != null) {
+                LOG.error("Error while executing the request. Url: " + endpointURL, error);
+                asyncReturn.accept(context, Collections.emptyMap(), Constants.OUTCOME_FAIL);
+                return;
             }
-            result = executeRequest(request, endpointURL);
-            isRetry = result.getLeft();
-            if (!isRetry.shouldRetry()) {
-                return result;
+            JSONObject json = result.getRight();
+            asyncReturn.accept(context, json != null ? json : Collections.emptyMap(), result.getLeft());
+        } catch (FrameworkException e) {
+            LOG.error("Error while returning the outcome of the request. Url: " + endpointURL, e);
+        }
+    }
+
+    /**
+     * Copy a json object along with the json objects and arrays nested in it.
+     *
+     * @param json Json object to copy.
+     * @return Copy of the json object, or null if the json object is null.
+     */
+    private static JSONObject copyJson(JSONObject json) {
+
+        if (json == null) {
+            return null;
+        }
+        JSONObject copy = new JSONObject();
+        for (Object key : json.keySet()) {
+            copy.put(key, copyJsonValue(json.get(key)));
+        }
+        return copy;
+    }
+
+    private static Object copyJsonValue(Object value) {
+
+        if (value instanceof JSONObject) {
+            return copyJson((JSONObject) value);
+        }
+        if (value instanceof JSONArray) {
+            JSONArray copy = new JSONArray();
+            for (Object element : (JSONArray) value) {
+                copy.add(copyJsonValue(element));
             }
-            outcome = result.getRight().getLeft();
+            return copy;
         }
-        return Pair.of(isRetry, Pair.of(outcome, null));
+        return value;
     }
 
     /**
-     * Execute the request.
+     * Execute the request, retrying it when it fails with a retryable error. Retries are scheduled with backoff
+     * according to the {@link RetryPolicy}, so no thread is held while a request is in flight or waiting to be retried.
+     *
+     * @param request      HttpUriRequest.
+     * @param endpointURL  Endpoint URL.
+     * @param tenantDomain Tenant domain of the authentication flow.
+     * @param maxRetries   Maximum number of retries.
+     * @param cache        Whether the response of a GET request may be served from the response cache.
+     * @param deadline     Deadline of the call, which bounds every attempt.
+     * @return Future which completes with the pair of outcome and json.
+     */
+    private CompletableFuture<Pair<String, JSONObject>> executeRequestWithRetries(HttpUriRequest request,
+                                                                                 String endpointURL,
+                                                                                 String tenantDomain,
+                                                                                 int maxRetries,
+                                                                                 boolean cache,
+                                                                                 Deadline deadline) {
+
+        String endpoint = HttpUtil.getEndpoint(request.getURI());
+        CompletableFuture<Pair<Classification, JSONObject>> result = RetryPolicy.getInstance().execute(
+                endpoint, maxRetries, deadline, attempt -> {
+                    if (attempt > 0) {
+                        logRetry(request, endpointURL, maxRetries, attempt);
+                        HTTPFunctionMetrics.getInstance().recordRetry(endpoint, tenantDomain);
+                    }
+                    return executeRequest(request, endpointURL, tenantDomain, cache, deadline);
+                }, attemptResult -> attemptResult.getLeft().isRetry());
+        return result.thenApply(attemptResult -> Pair.of(attemptResult.getLeft().getOutcome(),
+                attemptResult.getRight()));
+    }
+
+    /**
+     * Log the retry of the request.
      *
      * @param request     HttpUriRequest.
      * @param endpointURL Endpoint URL.
-     * @return Pair of outcome and json.
+     * @param maxRetries  Maximum number of retries.
+     * @param attempt     Retry attempt.
      */
-    private Pair<RetryDecision, Pair<String, JSONObject>> executeRequest(HttpUriRequest request, String endpointURL) {
+    private void logRetry(HttpUriRequest request, String endpointURL, int maxRetries, int attempt) {
+
+        LOG.warn("Retrying the request for endpoint: " + endpointURL + ". Attempt: " + attempt);
+        if (LoggerUtils.isDiagnosticLogsEnabled()) {
+            DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
+                    DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
+                    getInvokeApiActionId(request));
+            diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.API, endpointURL)
+                    .configParam(Constants.LogConstants.ConfigKeys.MAX_REQUEST_ATTEMPTS, maxRetries)
+                    .resultMessage("Retrying the request for external api. Attempt: " + attempt)
+                    .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
+                    .resultStatus(DiagnosticLog.ResultStatus.FAILED);
+            LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.RETRY,
+                    () -> LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder));
+        }
+    }
 
-        JSONObject json = null;
-        String outcome;
-        RetryDecision isRetry = RetryDecision.NO_RETRY;
-
-        try (CloseableHttpResponse response = client.execute(request)) {
-            int responseCode = response.getStatusLine().getStatusCode();
-            if (responseCode >= 200 && responseCode < 300) {
-                if (response.getEntity() != null) {
-                    Header contentType = response.getEntity().getContentType();
-                    String jsonString = EntityUtils.toString(response.getEntity());
-                    if (contentType != null && contentType.getValue().contains(TYPE_TEXT_PLAIN)) {
-                        json = new JSONObject();
-                        json.put(RESPONSE, jsonString);
-                    } else {
-                        JSONParser parser = new JSONParser();
-                        json = (JSONObject) parser.parse(jsonString);
-                    }
-                }
-                if (LoggerUtils.isDiagnosticLogsEnabled()) {
-                    DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
-                            DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
-                            getInvokeApiActionId(request));
-                    diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.API, endpointURL)
-                            .resultMessage("Successfully called the external api. Status code: " + responseCode)
-                            .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
-                            .resultStatus(DiagnosticLog.ResultStatus.SUCCESS);
-                    LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder);
-                }
-                LOG.info("Successfully called the external api. Status code: " + responseCode + ". Url: " +
-                        endpointURL);
-                outcome = Constants.OUTCOME_SUCCESS;
-                return Pair.of(RetryDecision.NO_RETRY, Pair.of(outcome, json)); // Success, return immediately
-            } else if (responseCode >= 300 && responseCode < 400) {
-                if (LoggerUtils.isDiagnosticLogsEnabled()) {
-                    DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
-                            DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
-                            getInvokeApiActionId(request));
-                    diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.API, endpointURL)
-                            .resultMessage("External api invocation returned a redirection. Status code: " +
-                                    responseCode)
-                            .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
-                            .resultStatus(DiagnosticLog.ResultStatus.FAILED);
-                    LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder);
-                }
-                LOG.warn("External api invocation returned a redirection. Status code: " +
-                        responseCode + ". Url: " + endpointURL);
-                outcome = Constants.OUTCOME_FAIL;
-                return Pair.of(RetryDecision.NO_RETRY, Pair.of(outcome, null)); // Unauthorized, no retry
-            } else if (responseCode >= 400 && responseCode < 500) {
-                if (LoggerUtils.isDiagnosticLogsEnabled()) {
-                    DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
-                            DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
-                            getInvokeApiActionId(request));
-                    diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.API, endpointURL)
-                            .resultMessage("External api invocation returned a client error. Status code: " +
-                                    responseCode)
-                            .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
-                            .resultStatus(DiagnosticLog.ResultStatus.FAILED);
-                    LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder);
-                }
-                LOG.warn("External api invocation returned a client error. Status code: " +
-                        responseCode + ". Url: " + endpointURL);
-                outcome = Constants.OUTCOME_FAIL;
-                return Pair.of(RetryDecision.NO_RETRY, Pair.of(outcome, null)); // Unauthorized, no retry
-            } else {
-                if (LoggerUtils.isDiagnosticLogsEnabled()) {
-                    DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
-                            DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
-                            getInvokeApiActionId(request));
-                    diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.API, endpointURL)
-                            .resultMessage("Received unknown response from external API call. Status code: " +
-                                    responseCode)
-                            .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
-                            .resultStatus(DiagnosticLog.ResultStatus.FAILED);
-                    LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder);
-                }
-                LOG.error("Received unknown response from external API call. Status code: " +
-                        responseCode + ". Url: " + endpointURL);
-                outcome = Constants.OUTCOME_FAIL;
-                return Pair.of(RetryDecision.RETRY, Pair.of(outcome, null)); // Server error, retry if attempts left
-            }
-        } catch (Exception e) {
-            // Log the error based on its type
-            if (e instanceof IllegalArgumentException) {
-                if (LoggerUtils.isDiagnosticLogsEnabled()) {
-                    DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
-                            DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
-                            getInvokeApiActionId(request));
-                    diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.API, endpointURL)
-                            .resultMessage("Invalid Url for external API call.")
-                            .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
-                            .resultStatus(DiagnosticLog.ResultStatus.FAILED);
-                    LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder);
-                }
-                outcome = Constants.OUTCOME_FAIL;
-                LOG.error("Invalid Url: " + endpointURL, e);
-            } else if (e instanceof ConnectTimeoutException || e instanceof SocketTimeoutException) {
-                if (LoggerUtils.isDiagnosticLogsEnabled()) {
-                    DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
-                            DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
-                            getInvokeApiActionId(request));
-                    diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.API, endpointURL)
-                            .resultMessage("Request for the external API timed out.")
-                            .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
-                            .resultStatus(DiagnosticLog.ResultStatus.FAILED);
-                    LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder);
-                }
-                isRetry = RetryDecision.RETRY; // Timeout, retry if attempts left
-                outcome = Constants.OUTCOME_TIMEOUT;
-                LOG.error("Error while waiting to connect to " + endpointURL, e);
-            } else if (e instanceof IOException) {
-                outcome = Constants.OUTCOME_FAIL;
-                LOG.error("Error while calling endpoint. ", e);
-            } else if (e instanceof ParseException) {
-                if (LoggerUtils.isDiagnosticLogsEnabled()) {
-                    DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
-                            DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
-                            getInvokeApiActionId(request));
-                    diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.API, endpointURL)
-                            .resultMessage("Failed to parse the response from the external API.")
-                            .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
-                            .resultStatus(DiagnosticLog.ResultStatus.FAILED);
-                    LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder);
-                }
-                outcome = Constants.OUTCOME_FAIL;
-                LOG.error("Error while parsing response. ", e);
+    /**
+     * Execute the request. GET requests are served through the response cache when the call opts in to it and the
+     * cache is enabled, and the requests sent to the endpoint are hedged when hedging is enabled for the endpoint,
+     * including the ones made by the cache. The timeouts of the attempt are capped to the time remaining until the
+     * deadline.
+     * The outcome of the attempt is recorded in {@link HTTPFunctionMetrics}.
+     *
+     * @param request      HttpUriRequest.
+     * @param endpointURL  Endpoint URL.
+     * @param tenantDomain Tenant domain of the authentication flow.
+     * @param cache        Whether the response of a GET request may be served from the response cache.
+     * @param deadline     Deadline of the call.
+     * @return Future which completes with the pair of classification and json.
+     */
+    private CompletableFuture<Pair<Classification, JSONObject>> executeRequest(HttpUriRequest request,
+                                                                              String endpointURL,
+                                                                              String tenantDomain,
+                                                                              boolean cache,
+                                                                              Deadline deadline) {
+
+        if (deadline.isExpired()) {
+            Pair<Classification, JSONObject> result = handleRequestFailure(new DeadlineExceededException(
+                    "Deadline exceeded before the request could be sent."), request, endpointURL);
+            return CompletableFuture.completedFuture(recordOutcome(result, request, tenantDomain));
+        }
+        if (deadline.isBounded() && request instanceof HttpRequestBase) {
+            ((HttpRequestBase) request).setConfig(
+                    deadline.capTimeouts(HTTPClientManager.getInstance().getRequestConfig()));
+        }
+        CompletableFuture<HttpResponse> responseFuture;
+        if (cache && ConfigProvider.getInstance().isHttpResponseCacheEnabled() &&
+                HttpGet.METHOD_NAME.equals(request.getMethod())) {
+            responseFuture = HTTPResponseCache.getInstance().execute(request, tenantDomain);
+        } else if (HttpGet.METHOD_NAME.equals(request.getMethod())) {
+            responseFuture = HedgedRequestExecutor.getInstance().execute(request, tenantDomain);
+        } else {
+            responseFuture = HTTPClientManager.getInstance().execute(request, tenantDomain);
+        }
+        return deadline.bound(responseFuture).handle((response, error) -> {
+            Pair<Classification, JSONObject> result;
+            if (error != null) {
+                result = handleRequestFailure(error, request, endpointURL);
             } else {
-                if (LoggerUtils.isDiagnosticLogsEnabled()) {
-                    DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
-                            DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
-                            getInvokeApiActionId(request));
-                    diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.API, endpointURL)
-                            .resultMessage("Received an error while invoking the external API.")
-                            .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
-                            .resultStatus(DiagnosticLog.ResultStatus.FAILED);
-                    LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder);
+                try {
+                    result = handleResponse(response, request, endpointURL);
+                } catch (Exception e) {
+                    result = handleRequestFailure(e, request, endpointURL);
                 }
-                outcome = Constants.OUTCOME_FAIL;
-                LOG.error("Error while calling endpoint. ", e);
             }
+            return recordOutcome(result, request, tenantDomain);
+        });
+    }
+
+    /**
+     * Record the outcome of an attempt against the endpoint and the tenant.
+     *
+     * @param result       Pair of classification and json.
+     * @param request      HttpUriRequest.
+     * @param tenantDomain Tenant domain of the authentication flow.
+     * @return The given result.
+     */
+    private Pair<Classification, JSONObject> recordOutcome(Pair<Classification, JSONObject> result,
+                                                           HttpUriRequest request, String tenantDomain) {
+
+        String outcome = result.getLeft().getOutcome();
+        String endpoint = HttpUtil.getEndpoint(request.getURI());
+        if (Constants.OUTCOME_SUCCESS.equals(outcome)) {
+            HTTPFunctionMetrics.getInstance().recordSuccess(endpoint, tenantDomain);
+        } else if (Constants.OUTCOME_TIMEOUT.equals(outcome)) {
+            HTTPFunctionMetrics.getInstance().recordTimeout(endpoint, tenantDomain);
+        } else {
+            HTTPFunctionMetrics.getInstance().recordFailure(endpoint, tenantDomain);
+        }
+        return result;
+    }
+
+    /**
+     * Handle the response received from the endpoint. The response is classified by its status code, and the body
+     * is only read from successful responses.
+     *
+     * @param response    HttpResponse.
+     * @param request     HttpUriRequest.
+     * @param endpointURL Endpoint URL.
+     * @return Pair of classification and json.
+     * @throws IOException    If the response body could not be read.
+     * @throws ParseException If the response body could not be parsed.
+     */
+    private Pair<Classification, JSONObject> handleResponse(HttpResponse response, HttpUriRequest request,
+                                                            String endpointURL) throws IOException, ParseException {
+
+        int responseCode = response.getStatusLine().getStatusCode();
+        Classification classification = ResponseClassifier.EXTERNAL_API.classify(responseCode);
+        JSONObject json = null;
+        if (classification.isSuccess()) {
+            json = readResponse(response);
+        }
+        ResponseClassifier.EXTERNAL_API.report(classification, LOG, request, endpointURL, responseCode);
+        return Pair.of(classification, json);
+    }
+
+    /**
+     * Read the body of a successful response. Plain text bodies are wrapped in a json object.
+     *
+     * @param response HttpResponse.
+     * @return Json of the response body, or null if the response has no body.
+     * @throws IOException    If the response body could not be read.
+     * @throws ParseException If the response body could not be parsed.
+     */
+    private JSONObject readResponse(HttpResponse response) throws IOException, ParseException {
+
+        if (response.getEntity() == null) {
+            return null;
+        }
+        Header contentType = response.getEntity().getContentType();
+        int maxResponseSize = ConfigProvider.getInstance().getMaxResponseSize();
+        if (contentType != null && contentType.getValue().contains(TYPE_TEXT_PLAIN)) {
+            JSONObject json = new JSONObject();
+            json.put(RESPONSE, HttpResponseReader.readString(response.getEntity(), maxResponseSize));
+            return json;
         }
-        // Return the outcome and json (which might be null if never successful)
-        return Pair.of(isRetry, Pair.of(outcome, json));
+        return HttpResponseReader.readJsonObject(response.getEntity(), maxResponseSize);
+    }
+
+    /**
+     * Handle the failure of a request to the endpoint.
+     *
+     * @param e           Cause of the failure.
+     * @param request     HttpUriRequest.
+     * @param endpointURL Endpoint URL.
+     * @return Pair of classification and json, which is always null.
+     */
+    private Pair<Classification, JSONObject> handleRequestFailure(Throwable e, HttpUriRequest request,
+                                                                  String endpointURL) {
+
+        Classification classification = ResponseClassifier.EXTERNAL_API.classify(e);
+        ResponseClassifier.EXTERNAL_API.report(classification, LOG, request, endpointURL, e);
+        return Pair.of(classification, null);
     }
 
     private boolean isValidRequestDomain(URI url) {
@@ -342,6 +491,7 @@ public abstract class AbstractHTTPFunction {
             return false;
         }
 
+        DomainAllowlist allowedDomains = ConfigProvider.getInstance().getHttpFunctionDomainAllowlist();
         if (allowedDomains.isEmpty()) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("No domains configured for domain restriction. Allowing url by default. Url: "
@@ -350,43 +500,24 @@ public abstract class AbstractHTTPFunction {
             return true;
         }
 
-        String domain = getParentDomainFromUrl(url);
-        if (StringUtils.isEmpty(domain)) {
+        String host = url.getHost();
+        if (StringUtils.isEmpty(host)) {
             LOG.error("Unable to determine the domain of the url: " + url.toString());
             return false;
         }
 
-        if (allowedDomains.contains(domain)) {
+        if (allowedDomains.isAllowed(host)) {
             return true;
         }
 
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Domain: " + domain + " extracted from url: " + url.toString() + " is not available in the " +
-                    "allowed domain list: " + StringUtils.join(allowedDomains, ','));
+            LOG.debug("Host: " + host + " extracted from url: " + url.toString() + " is not allowed by the " +
+                    "allowed domain list: " + allowedDomains);
         }
 
         return false;
     }
 
-    private String getParentDomainFromUrl(URI url) {
-
-        String parentDomain = null;
-        String domain = url.getHost();
-        String[] domainArr;
-        if (domain != null) {
-            domainArr = StringUtils.split(domain, DOMAIN_SEPARATOR);
-            if (domainArr.length != 0) {
-                parentDomain = domainArr.length == 1 ? domainArr[0] : domainArr[domainArr.length - 2];
-                parentDomain = parentDomain.toLowerCase();
-            }
-        }
-
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Parent domain: " + parentDomain + " extracted from url: " + url.toString());
-        }
-        return parentDomain;
-    }
-
     /**
      * Validate the headers.
      *
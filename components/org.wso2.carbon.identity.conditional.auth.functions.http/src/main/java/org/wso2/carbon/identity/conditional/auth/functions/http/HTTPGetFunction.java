@@ -32,7 +32,14 @@ public interface HTTPGetFunction {
      * @param endpointURL Endpoint url.
      * @param params Parameters.
      *      1. headers          headers (optional).
-     *      2. eventHandlers    event handlers.
+     *      2. authConfig       authentication config (optional).
+     *      3. eventHandlers    event handlers.
+     *      4. options          request options (optional). Setting {@code coalesce} to true lets identical requests
+     *                          made while the request is in flight receive its response instead of being sent again.
+     *                          Setting {@code cache} to true lets the response be served from, and stored in, the
+     *                          response cache as allowed by the Cache-Control headers of the endpoint.
+     *                          Setting {@code timeout} limits the whole call, including retries, to the given
+     *                          number of milliseconds.
      */
     void httpGet(String endpointURL, Object... params);
 }
@@ -22,6 +22,10 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.client.methods.HttpGet;
 import org.graalvm.polyglot.HostAccess;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncCaller;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ParallelCallFactory;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.HttpCompression;
 import org.wso2.carbon.identity.conditional.auth.functions.http.util.AuthConfigModel;
 
 import java.util.HashMap;
@@ -30,9 +34,12 @@ import java.util.Map;
 /**
  * Implementation of the {@link HTTPGetFunction}
  */
-public class HTTPGetFunctionImpl extends AbstractHTTPFunction implements HTTPGetFunction {
+public class HTTPGetFunctionImpl extends AbstractHTTPFunction implements HTTPGetFunction, ParallelCallFactory {
 
     private static final Log LOG = LogFactory.getLog(HTTPGetFunctionImpl.class);
+    private static final String COALESCE = "coalesce";
+    private static final String CACHE = "cache";
+    private static final String TIMEOUT = "timeout";
 
     public HTTPGetFunctionImpl() {
 
@@ -46,6 +53,9 @@ public class HTTPGetFunctionImpl extends AbstractHTTPFunction implements HTTPGet
         Map<String, Object> eventHandlers;
         Map<String, String> headers = new HashMap<>();
         AuthConfigModel authConfig = null;
+        boolean coalesce = false;
+        boolean cache = false;
+        long timeout = 0;
 
         switch (params.length) {
             case 1:
@@ -76,14 +86,83 @@ public class HTTPGetFunctionImpl extends AbstractHTTPFunction implements HTTPGet
                             " and eventHandlers (Map<String, Object>) respectively.");
                 }
                 break;
+            case 4:
+                if (params[0] instanceof Map && (params[1] == null || params[1] instanceof Map) &&
+                        params[2] instanceof Map && params[3] instanceof Map) {
+                    headers = validateHeaders((Map<String, ?>) params[0]);
+                    if (params[1] != null) {
+                        authConfig = getAuthConfigModel((Map<String, Object>) params[1]);
+                    }
+                    eventHandlers = (Map<String, Object>) params[2];
+                    Map<String, ?> options = (Map<String, ?>) params[3];
+                    coalesce = Boolean.parseBoolean(String.valueOf(options.get(COALESCE)));
+                    cache = Boolean.parseBoolean(String.valueOf(options.get(CACHE)));
+                    timeout = Deadline.parseTimeout(options.get(TIMEOUT));
+                } else {
+                    throw new IllegalArgumentException("Invalid argument type. Expected " +
+                            "headers (Map<String, String>), authConfig (Map<String, String> or null)," +
+                            " eventHandlers (Map<String, Object>) and options (Map<String, Object>) respectively.");
+                }
+                break;
             default:
-                throw new IllegalArgumentException("Invalid number of arguments. Expected 1, 2 or 3, but got: " +
+                throw new IllegalArgumentException("Invalid number of arguments. Expected 1, 2, 3 or 4, but got: " +
                         params.length + ".");
         }
 
         HttpGet request = new HttpGet(endpointURL);
         setHeaders(request, headers);
+        HttpCompression.getInstance().acceptCompressedResponse(request, request.getURI());
+
+        executeHttpMethod(request, eventHandlers, authConfig, coalesce, cache, timeout);
+    }
+
+    /**
+     * Create the call of httpGet to be executed in parallel with other calls.
+     * The arguments are the endpoint URL, followed by the optional headers, authConfig and options of httpGet.
+     *
+     * @param arguments Arguments of httpGet, without the event handlers.
+     * @return Call executing the request.
+     */
+    @Override
+    public AsyncCaller createCall(Object... arguments) {
+
+        if (arguments.length < 1 || arguments.length > 4 || !(arguments[0] instanceof String)) {
+            throw new IllegalArgumentException("Invalid arguments for httpGet. Expected endpointURL (String), " +
+                    "and optionally headers (Map<String, String>), authConfig (Map<String, String> or null) and " +
+                    "options (Map<String, Object>) respectively.");
+        }
+        Map<String, String> headers = new HashMap<>();
+        AuthConfigModel authConfig = null;
+        boolean coalesce = false;
+        boolean cache = false;
+        long timeout = 0;
+        if (arguments.length > 1 && arguments[1] != null) {
+            if (!(arguments[1] instanceof Map)) {
+                throw new IllegalArgumentException("Invalid argument type. Expected headers (Map<String, String>).");
+            }
+            headers.putAll(validateHeaders((Map<String, ?>) arguments[1]));
+        }
+        if (arguments.length > 2 && arguments[2] != null) {
+            if (!(arguments[2] instanceof Map)) {
+                throw new IllegalArgumentException("Invalid argument type. Expected authConfig " +
+                        "(Map<String, String>).");
+            }
+            authConfig = getAuthConfigModel((Map<String, Object>) arguments[2]);
+        }
+        if (arguments.length > 3 && arguments[3] != null) {
+            if (!(arguments[3] instanceof Map)) {
+                throw new IllegalArgumentException("Invalid argument type. Expected options (Map<String, Object>).");
+            }
+            Map<String, ?> options = (Map<String, ?>) arguments[3];
+            coalesce = Boolean.parseBoolean(String.valueOf(options.get(COALESCE)));
+            cache = Boolean.parseBoolean(String.valueOf(options.get(CACHE)));
+            timeout = Deadline.parseTimeout(options.get(TIMEOUT));
+        }
+
+        HttpGet request = new HttpGet((String) arguments[0]);
+        setHeaders(request, headers);
+        HttpCompression.getInstance().acceptCompressedResponse(request, request.getURI());
 
-        executeHttpMethod(request, eventHandlers, authConfig);
+        return createAsyncCaller(request, authConfig, coalesce, cache, timeout);
     }
 }
@@ -34,7 +34,10 @@ public interface HTTPPostFunction {
      * @param params parameters.
      *      1. payloadData      payload data.
      *      2. headers          headers (optional).
-     *      3. eventHandlers    event handlers.
+     *      3. authConfig       authentication config (optional).
+     *      4. eventHandlers    event handlers.
+     *      5. options          request options (optional). Setting {@code timeout} limits the whole call, including
+     *                          retries, to the given number of milliseconds.
      */
     void httpPost(String endpointURL, Object... params);
 }
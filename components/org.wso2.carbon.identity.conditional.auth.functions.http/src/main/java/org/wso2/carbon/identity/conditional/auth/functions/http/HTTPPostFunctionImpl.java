@@ -28,6 +28,10 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicNameValuePair;
 import org.graalvm.polyglot.HostAccess;
 import org.json.simple.JSONObject;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncCaller;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ParallelCallFactory;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.HttpCompression;
 import org.wso2.carbon.identity.conditional.auth.functions.http.util.AuthConfigModel;
 
 import java.nio.charset.StandardCharsets;
@@ -42,9 +46,10 @@ import static org.apache.http.HttpHeaders.CONTENT_TYPE;
 /**
  * Implementation of the {@link HTTPPostFunction}
  */
-public class HTTPPostFunctionImpl extends AbstractHTTPFunction implements HTTPPostFunction {
+public class HTTPPostFunctionImpl extends AbstractHTTPFunction implements HTTPPostFunction, ParallelCallFactory {
 
     private static final Log LOG = LogFactory.getLog(HTTPPostFunctionImpl.class);
+    private static final String TIMEOUT = "timeout";
 
     public HTTPPostFunctionImpl() {
 
@@ -59,6 +64,7 @@ public class HTTPPostFunctionImpl extends AbstractHTTPFunction implements HTTPPo
         Map<String, Object> payloadData = new HashMap<>();
         Map<String, String> headers = new HashMap<>();
         AuthConfigModel authConfig = null;
+        long timeout = 0;
 
         switch (params.length) {
             case 1:
@@ -101,11 +107,79 @@ public class HTTPPostFunctionImpl extends AbstractHTTPFunction implements HTTPPo
                             " and eventHandlers (Map<String, Object>) respectively.");
                 }
                 break;
+            case 5:
+                if (params[0] instanceof Map && params[1] instanceof Map &&
+                        (params[2] == null || params[2] instanceof Map) && params[3] instanceof Map &&
+                        params[4] instanceof Map) {
+                    payloadData = (Map<String, Object>) params[0];
+                    headers = validateHeaders((Map<String, ?>) params[1]);
+                    if (params[2] != null) {
+                        authConfig = getAuthConfigModel((Map<String, Object>) params[2]);
+                    }
+                    eventHandlers = (Map<String, Object>) params[3];
+                    timeout = Deadline.parseTimeout(((Map<String, ?>) params[4]).get(TIMEOUT));
+                } else {
+                    throw new IllegalArgumentException("Invalid argument type. Expected payloadData " +
+                            "(Map<String, Object>), headers (Map<String, String>), authConfig (Map<String, String> " +
+                            "or null), eventHandlers (Map<String, Object>) and options (Map<String, Object>) " +
+                            "respectively.");
+                }
+                break;
             default:
-                throw new IllegalArgumentException("Invalid number of arguments. Expected 1, 2, 3, or 4. Found: "
+                throw new IllegalArgumentException("Invalid number of arguments. Expected 1, 2, 3, 4 or 5. Found: "
                         + params.length + ".");
         }
 
+        HttpPost request = buildRequest(endpointURL, payloadData, headers);
+        executeHttpMethod(request, eventHandlers, authConfig, false, false, timeout);
+    }
+
+    /**
+     * Create the call of httpPost to be executed in parallel with other calls.
+     * The arguments are the endpoint URL, followed by the optional payloadData, headers, authConfig and options of
+     * httpPost.
+     *
+     * @param arguments Arguments of httpPost, without the event handlers.
+     * @return Call executing the request.
+     */
+    @Override
+    public AsyncCaller createCall(Object... arguments) {
+
+        if (arguments.length < 1 || arguments.length > 5 || !(arguments[0] instanceof String)) {
+            throw new IllegalArgumentException("Invalid arguments for httpPost. Expected endpointURL (String), " +
+                    "and optionally payloadData (Map<String, Object>), headers (Map<String, String>), authConfig " +
+                    "(Map<String, String>) and options (Map<String, Object>) respectively.");
+        }
+        for (int i = 1; i < arguments.length; i++) {
+            if (arguments[i] != null && !(arguments[i] instanceof Map)) {
+                throw new IllegalArgumentException("Invalid argument type. Expected payloadData " +
+                        "(Map<String, Object>), headers (Map<String, String>), authConfig (Map<String, String>) " +
+                        "and options (Map<String, Object>) respectively.");
+            }
+        }
+        Map<String, Object> payloadData = new HashMap<>();
+        Map<String, String> headers = new HashMap<>();
+        AuthConfigModel authConfig = null;
+        long timeout = 0;
+        if (arguments.length > 1 && arguments[1] != null) {
+            payloadData.putAll((Map<String, Object>) arguments[1]);
+        }
+        if (arguments.length > 2 && arguments[2] != null) {
+            headers.putAll(validateHeaders((Map<String, ?>) arguments[2]));
+        }
+        if (arguments.length > 3 && arguments[3] != null) {
+            authConfig = getAuthConfigModel((Map<String, Object>) arguments[3]);
+        }
+        if (arguments.length > 4 && arguments[4] != null) {
+            timeout = Deadline.parseTimeout(((Map<String, ?>) arguments[4]).get(TIMEOUT));
+        }
+
+        return createAsyncCaller(buildRequest((String) arguments[0], payloadData, headers), authConfig, false,
+                false, timeout);
+    }
+
+    private HttpPost buildRequest(String endpointURL, Map<String, Object> payloadData, Map<String, String> headers) {
+
         HttpPost request = new HttpPost(endpointURL);
         headers.putIfAbsent(CONTENT_TYPE, TYPE_APPLICATION_JSON);
         setHeaders(request, headers);
@@ -121,14 +195,17 @@ public class HTTPPostFunctionImpl extends AbstractHTTPFunction implements HTTPPo
                     String value = (dataElements.getValue() != null) ? dataElements.getValue().toString() : null;
                     entities.add(new BasicNameValuePair(dataElements.getKey(), value));
                 }
-                request.setEntity(new UrlEncodedFormEntity(entities, StandardCharsets.UTF_8));
+                HttpCompression.getInstance().setEntity(request,
+                        new UrlEncodedFormEntity(entities, StandardCharsets.UTF_8));
             } else {
                 JSONObject jsonObject = new JSONObject();
                 jsonObject.putAll(payloadData);
-                request.setEntity(new StringEntity(jsonObject.toJSONString(), StandardCharsets.UTF_8));
+                HttpCompression.getInstance().setEntity(request,
+                        new StringEntity(jsonObject.toJSONString(), StandardCharsets.UTF_8));
             }
+        } else {
+            HttpCompression.getInstance().acceptCompressedResponse(request, request.getURI());
         }
-
-        executeHttpMethod(request, eventHandlers, authConfig);
+        return request;
     }
 }
@@ -17,12 +17,14 @@
  */
 package org.wso2.carbon.identity.conditional.auth.functions.http.cache;
 
+import org.wso2.carbon.identity.conditional.auth.functions.common.token.AccessTokenEntry;
 import org.wso2.carbon.identity.core.cache.BaseCache;
 
 /**
- * The cache implementation which stores the access tokens received from API.
+ * The cache implementation which stores the access tokens received from API along with
+ * their expiry metadata.
  */
-public class APIAccessTokenCache extends BaseCache<String, String> {
+public class APIAccessTokenCache extends BaseCache<String, AccessTokenEntry> {
 
     private static final String ACCESS_TOKEN_CACHE_NAME = "APIAccessTokenCache";
 
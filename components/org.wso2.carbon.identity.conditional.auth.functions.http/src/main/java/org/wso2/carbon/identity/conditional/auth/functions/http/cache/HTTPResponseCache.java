@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.MBeanRegistrar;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.TenantLruCache;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.HedgedRequestExecutor;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.HttpUtil;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * In memory cache of the responses received for the GET requests of the http functions.
+ * Responses are cached only when the endpoint allows it through the Cache-Control directives, and are served for
+ * the advertised max-age. Within the stale-while-revalidate window a stale response is served while it is
+ * revalidated in the background, and responses carrying an ETag are revalidated with a conditional request, so that
+ * an unchanged response does not have to be transferred again.
+ * Responses are isolated per tenant, and the cache of each tenant is bounded to the configured number of entries,
+ * evicting the least recently used response.
+ */
+public class HTTPResponseCache implements HTTPResponseCacheMBean {
+
+    private static final Log LOG = LogFactory.getLog(HTTPResponseCache.class);
+    private static final String MBEAN_TYPE = "ResponseCache";
+    private static final String MBEAN_NAME = "HTTPGet";
+    private static final String NO_STORE = "no-store";
+    private static final String NO_CACHE = "no-cache";
+    private static final String PRIVATE = "private";
+    private static final String MAX_AGE = "max-age";
+    private static final String S_MAX_AGE = "s-maxage";
+    private static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate";
+    private static final String VARY_ALL = "*";
+
+    private static final HTTPResponseCache instance = new HTTPResponseCache();
+
+    private final TenantLruCache<CachedResponse> responses;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+    private final int maxEntrySize;
+    private final BiFunction<HttpUriRequest, String, CompletableFuture<HttpResponse>> transport;
+    private final LongSupplier clock;
+
+    private HTTPResponseCache() {
+
+        this(ConfigProvider.getInstance().getHttpResponseCacheMaxEntriesPerTenant(),
+                ConfigProvider.getInstance().getHttpResponseCacheMaxEntrySize(),
+                (request, tenantDomain) -> HedgedRequestExecutor.getInstance().execute(request, tenantDomain));
+    }
+
+    HTTPResponseCache(int maxEntriesPerTenant, int maxEntrySize,
+                      BiFunction<HttpUriRequest, String, CompletableFuture<HttpResponse>> transport) {
+
+        this(maxEntriesPerTenant, maxEntrySize, transport, System::currentTimeMillis);
+    }
+
+    HTTPResponseCache(int maxEntriesPerTenant, int maxEntrySize,
+                      BiFunction<HttpUriRequest, String, CompletableFuture<HttpResponse>> transport,
+                      LongSupplier clock) {
+
+        this.responses = new TenantLruCache<>(maxEntriesPerTenant);
+        this.maxEntrySize = maxEntrySize;
+        this.transport = transport;
+        this.clock = clock;
+    }
+
+    public static HTTPResponseCache getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Serve the request from the cache when possible, and otherwise execute it on the shared HTTP client and cache
+     * the response if the endpoint allows it.
+     *
+     * @param request      GET request to execute.
+     * @param tenantDomain Tenant domain of the authentication flow the request belongs to.
+     * @return Future which completes with the response, or exceptionally with the cause of the failure.
+     */
+    public CompletableFuture<HttpResponse> execute(HttpUriRequest request, String tenantDomain) {
+
+        String key = HttpUtil.getRequestKey(request);
+        CachedResponse cachedResponse = responses.get(tenantDomain, key);
+        long now = clock.getAsLong();
+
+        if (cachedResponse != null) {
+            if (now < cachedResponse.freshUntil) {
+                hitCount.incrementAndGet();
+                return CompletableFuture.completedFuture(cachedResponse.toHttpResponse());
+            }
+            if (now < cachedResponse.staleUntil) {
+                staleHitCount.incrementAndGet();
+                if (cachedResponse.revalidating.compareAndSet(false, true)) {
+                    fetch(request, tenantDomain, key, cachedResponse).whenComplete((response, error) -> {
+                        cachedResponse.revalidating.set(false);
+                        if (error != null && LOG.isDebugEnabled()) {
+                            LOG.debug("Failed to revalidate the cached response of: " + request.getURI(), error);
+                        }
+                    });
+                }
+                return CompletableFuture.completedFuture(cachedResponse.toHttpResponse());
+            }
+        }
+        missCount.incrementAndGet();
+        return fetch(request, tenantDomain, key, cachedResponse);
+    }
+
+    /**
+     * Expose the statistics of the cache over JMX. The MBean is removed when the cache is closed.
+     */
+    public void registerMBean() {
+
+        MBeanRegistrar.register(MBEAN_TYPE, MBEAN_NAME, this);
+    }
+
+    /**
+     * Remove all the cached responses and the MBean of the cache.
+     */
+    public void close() {
+
+        responses.clear();
+        MBeanRegistrar.unregister(MBEAN_TYPE, MBEAN_NAME);
+    }
+
+    @Override
+    public long getHitCount() {
+
+        return hitCount.get();
+    }
+
+    @Override
+    public long getStaleHitCount() {
+
+        return staleHitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+
+        return missCount.get();
+    }
+
+    @Override
+    public long getRevalidationCount() {
+
+        return revalidationCount.get();
+    }
+
+    @Override
+    public long getEvictionCount() {
+
+        return responses.getEvictionCount();
+    }
+
+    @Override
+    public int getEntryCount() {
+
+        return responses.size();
+    }
+
+    private CompletableFuture<HttpResponse> fetch(HttpUriRequest request, String tenantDomain, String key,
+                                                  CachedResponse cachedResponse) {
+
+        boolean conditional = cachedResponse != null && cachedResponse.eTag != null;
+        // The request of the caller may be in use by another fetch, hence the conditional request is built as a copy.
+        HttpUriRequest fetchRequest = conditional ? RequestBuilder.copy(request)
+                .setHeader(HttpHeaders.IF_NONE_MATCH, cachedResponse.eTag).build() : request;
+        CompletableFuture<HttpResponse> exchange = transport.apply(fetchRequest, tenantDomain);
+        CompletableFuture<HttpResponse> result = exchange.thenApply(response -> {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == HttpStatus.SC_NOT_MODIFIED && conditional) {
+                revalidationCount.incrementAndGet();
+                cachedResponse.refresh(parseFreshness(response), clock.getAsLong());
+                return cachedResponse.toHttpResponse();
+            }
+            if (statusCode == HttpStatus.SC_OK) {
+                try {
+                    storeResponse(response, tenantDomain, key);
+                } catch (IOException e) {
+                    // The response body could not be read, hence let the caller observe the failure.
+                    throw new IllegalStateException("Error while reading the response of: " + request.getURI(), e);
+                }
+            } else {
+                responses.remove(tenantDomain, key);
+            }
+            return response;
+        });
+        // Let the exchange be aborted when the caller gives up on the response.
+        result.whenComplete((response, error) -> Deadline.abandon(exchange, error));
+        return result;
+    }
+
+    private void storeResponse(HttpResponse response, String tenantDomain, String key) throws IOException {
+
+        HttpEntity entity = response.getEntity();
+        Freshness freshness = parseFreshness(response);
+        Header eTagHeader = response.getFirstHeader(HttpHeaders.ETAG);
+        String eTag = eTagHeader != null ? eTagHeader.getValue() : null;
+        if (entity == null || freshness == null || (freshness.maxAge <= 0 && eTag == null) ||
+                entity.getContentLength() > maxEntrySize) {
+            responses.remove(tenantDomain, key);
+            return;
+        }
+
+        byte[] body = EntityUtils.toByteArray(entity);
+        // The body is consumed while caching it, hence hand over a repeatable copy to the caller.
+        ByteArrayEntity bufferedEntity = new ByteArrayEntity(body);
+        bufferedEntity.setContentType(entity.getContentType());
+        bufferedEntity.setContentEncoding(entity.getContentEncoding());
+        response.setEntity(bufferedEntity);
+        if (body.length > maxEntrySize) {
+            responses.remove(tenantDomain, key);
+            return;
+        }
+        // Compressed bodies are cached as received, and decompressed when read.
+        Header contentType = entity.getContentType();
+        Header contentEncoding = entity.getContentEncoding();
+        responses.put(tenantDomain, key, new CachedResponse(body, contentType != null ? contentType.getValue() : null,
+                contentEncoding != null ? contentEncoding.getValue() : null, eTag, freshness, clock.getAsLong()));
+    }
+
+    /**
+     * Resolve how long the response can be served from the cache using its Cache-Control directives.
+     *
+     * @param response HttpResponse.
+     * @return Freshness of the response, or null if the response must not be cached.
+     */
+    private static Freshness parseFreshness(HttpResponse response) {
+
+        for (Header vary : response.getHeaders(HttpHeaders.VARY)) {
+            if (VARY_ALL.equals(StringUtils.trim(vary.getValue()))) {
+                return null;
+            }
+        }
+
+        long maxAge = 0;
+        long sharedMaxAge = -1;
+        long staleWhileRevalidate = 0;
+        boolean noCache = false;
+        for (Header cacheControl : response.getHeaders(HttpHeaders.CACHE_CONTROL)) {
+            for (HeaderElement directive : cacheControl.getElements()) {
+                String name = directive.getName().toLowerCase(Locale.ENGLISH);
+                if (NO_STORE.equals(name) || PRIVATE.equals(name)) {
+                    return null;
+                } else if (NO_CACHE.equals(name)) {
+                    noCache = true;
+                } else if (MAX_AGE.equals(name)) {
+                    maxAge = parseSeconds(directive.getValue());
+                } else if (S_MAX_AGE.equals(name)) {
+                    sharedMaxAge = parseSeconds(directive.getValue());
+                } else if (STALE_WHILE_REVALIDATE.equals(name)) {
+                    staleWhileRevalidate = parseSeconds(directive.getValue());
+                }
+            }
+        }
+
+        // This cache is shared by the flows of a tenant, hence the lifetime meant for shared caches takes precedence.
+        long lifetime = noCache ? 0 : (sharedMaxAge >= 0 ? sharedMaxAge : maxAge);
+        Header age = response.getFirstHeader(HttpHeaders.AGE);
+        if (age != null) {
+            lifetime = Math.max(0, lifetime - parseSeconds(age.getValue()));
+        }
+        return new Freshness(lifetime * 1000L, noCache ? 0 : staleWhileRevalidate * 1000L);
+    }
+
+    private static long parseSeconds(String value) {
+
+        try {
+            return value != null ? Math.max(0, Long.parseLong(value.trim())) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Freshness lifetimes of a response, in milliseconds.
+     */
+    private static class Freshness {
+
+        private final long maxAge;
+        private final long staleWhileRevalidate;
+
+        private Freshness(long maxAge, long staleWhileRevalidate) {
+
+            this.maxAge = maxAge;
+            this.staleWhileRevalidate = staleWhileRevalidate;
+        }
+    }
+
+    /**
+     * A cached response.
+     */
+    private static class CachedResponse {
+
+        private final byte[] body;
+        private final String contentType;
+        private final String contentEncoding;
+        private final String eTag;
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+        private volatile Freshness freshness;
+        private volatile long freshUntil;
+        private volatile long staleUntil;
+
+        private CachedResponse(byte[] body, String contentType, String contentEncoding, String eTag,
+                               Freshness freshness, long now) {
+
+            this.body = body;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.eTag = eTag;
+            refresh(freshness, now);
+        }
+
+        /**
+         * Restart the freshness lifetime of the response once it is confirmed as unchanged. The lifetimes advertised
+         * with the revalidation take precedence over the ones received with the response.
+         *
+         * @param revalidatedFreshness Freshness advertised with the revalidation, if any.
+         * @param now                  Current time in epoch milliseconds.
+         */
+        private void refresh(Freshness revalidatedFreshness, long now) {
+
+            if (revalidatedFreshness != null) {
+                freshness = revalidatedFreshness;
+            }
+            freshUntil = now + freshness.maxAge;
+            staleUntil = freshUntil + freshness.staleWhileRevalidate;
+        }
+
+        private HttpResponse toHttpResponse() {
+
+            HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+            ByteArrayEntity entity = new ByteArrayEntity(body);
+            entity.setContentType(contentType);
+            entity.setContentEncoding(contentEncoding);
+            response.setEntity(entity);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.cache;
+
+/**
+ * JMX view of the statistics of the {@link HTTPResponseCache}.
+ */
+public interface HTTPResponseCacheMBean {
+
+    /**
+     * @return Number of requests served with a fresh cached response.
+     */
+    long getHitCount();
+
+    /**
+     * @return Number of requests served with a stale cached response while it was revalidated in the background.
+     */
+    long getStaleHitCount();
+
+    /**
+     * @return Number of requests which had to be sent to the endpoint.
+     */
+    long getMissCount();
+
+    /**
+     * @return Number of cached responses confirmed as unchanged by the endpoint.
+     */
+    long getRevalidationCount();
+
+    /**
+     * @return Number of cached responses evicted to keep the cache of a tenant within its bound.
+     */
+    long getEvictionCount();
+
+    /**
+     * @return Number of responses currently cached across all the tenants.
+     */
+    int getEntryCount();
+}
@@ -29,12 +29,15 @@ import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
 import org.wso2.carbon.identity.application.authentication.framework.JsFunctionRegistry;
+import org.wso2.carbon.identity.conditional.auth.functions.common.parallel.ParallelCallRegistry;
 import org.wso2.carbon.identity.conditional.auth.functions.http.GetCookieFunctionImpl;
-import org.wso2.carbon.identity.conditional.auth.functions.http.HTTPGetFunction;
 import org.wso2.carbon.identity.conditional.auth.functions.http.HTTPGetFunctionImpl;
-import org.wso2.carbon.identity.conditional.auth.functions.http.HTTPPostFunction;
 import org.wso2.carbon.identity.conditional.auth.functions.http.HTTPPostFunctionImpl;
 import org.wso2.carbon.identity.conditional.auth.functions.http.SetCookieFunctionImpl;
+import org.wso2.carbon.identity.conditional.auth.functions.http.cache.HTTPResponseCache;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.ClientCredentialAuthConfig;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.HTTPClientManager;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.HedgedRequestExecutor;
 import org.wso2.carbon.identity.core.util.IdentityCoreInitializedEvent;
 
 /**
@@ -62,11 +65,14 @@ public class HTTPFunctionsServiceComponent {
         jsFunctionRegistry.register(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER,
                 FUNC_SET_COOKIE, new SetCookieFunctionImpl());
 
-        HTTPPostFunction httpPost = new HTTPPostFunctionImpl();
+        HTTPPostFunctionImpl httpPost = new HTTPPostFunctionImpl();
         jsFunctionRegistry.register(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_HTTP_POST, httpPost);
+        ParallelCallRegistry.getInstance().register(FUNC_HTTP_POST, httpPost);
 
-        HTTPGetFunction httpGet = new HTTPGetFunctionImpl();
+        HTTPGetFunctionImpl httpGet = new HTTPGetFunctionImpl();
         jsFunctionRegistry.register(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_HTTP_GET, httpGet);
+        ParallelCallRegistry.getInstance().register(FUNC_HTTP_GET, httpGet);
+        HTTPResponseCache.getInstance().registerMBean();
     }
 
     @Deactivate
@@ -78,6 +84,12 @@ public class HTTPFunctionsServiceComponent {
             jsFunctionRegistry.deRegister(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_GET_COOKIE_VALUE);
             jsFunctionRegistry.deRegister(JsFunctionRegistry.Subsystem.SEQUENCE_HANDLER, FUNC_HTTP_POST);
         }
+        ParallelCallRegistry.getInstance().unregister(FUNC_HTTP_POST);
+        ParallelCallRegistry.getInstance().unregister(FUNC_HTTP_GET);
+        ClientCredentialAuthConfig.stopTokenRefresh();
+        HTTPResponseCache.getInstance().close();
+        HedgedRequestExecutor.getInstance().shutdown();
+        HTTPClientManager.getInstance().close();
     }
 
     @Reference(
@@ -19,6 +19,8 @@ package org.wso2.carbon.identity.conditional.auth.functions.http.util;
 
 import org.apache.http.client.methods.HttpUriRequest;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for the authentication configurations.
  */
@@ -33,4 +35,24 @@ public interface AuthConfig {
      * @throws Exception
      */
     HttpUriRequest applyAuth(HttpUriRequest request, AuthConfigModel authConfigModel) throws Exception;
+
+    /**
+     * Apply the authentication configurations to the request without blocking the caller on credentials that are
+     * being obtained by another request.
+     *
+     * @param request          HttpUriRequest
+     * @param authConfigModel  Authentication configuration model
+     * @return Future which completes with the authenticated request.
+     */
+    default CompletableFuture<HttpUriRequest> applyAuthAsync(HttpUriRequest request,
+                                                             AuthConfigModel authConfigModel) {
+
+        CompletableFuture<HttpUriRequest> authenticatedRequest = new CompletableFuture<>();
+        try {
+            authenticatedRequest.complete(applyAuth(request, authConfigModel));
+        } catch (Exception e) {
+            authenticatedRequest.completeExceptionally(e);
+        }
+        return authenticatedRequest;
+    }
 }
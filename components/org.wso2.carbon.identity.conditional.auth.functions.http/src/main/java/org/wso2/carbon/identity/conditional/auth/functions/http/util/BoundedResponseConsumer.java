@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ResponseTooLargeException;
+
+import java.io.IOException;
+
+/**
+ * Buffers the response in memory like the default response consumer of the non-blocking client, but aborts the
+ * exchange with a {@link ResponseTooLargeException} once the body exceeds the maximum size, so that an endpoint
+ * returning an unexpectedly large body does not inflate the heap.
+ * The body is not streamed into the parser. The response is handed over only once it is complete, and is then parsed
+ * from this buffer without a further copy, e.g. by {@code HttpResponseReader}. The memory held per response is
+ * therefore bounded by the maximum size rather than by the size of a read chunk.
+ */
+public class BoundedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    private final int maxSize;
+    private volatile HttpResponse response;
+    private volatile SimpleInputBuffer buffer;
+
+    /**
+     * Create a response consumer.
+     *
+     * @param maxSize Maximum size of the response body in bytes.
+     */
+    public BoundedResponseConsumer(int maxSize) {
+
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+
+        this.response = response;
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+
+        long contentLength = entity.getContentLength();
+        // Abort before reading the body when the declared length already exceeds the limit.
+        if (contentLength > maxSize) {
+            throw new ResponseTooLargeException(maxSize);
+        }
+        int bufferSize = contentLength >= 0 ? (int) contentLength : Math.min(DEFAULT_BUFFER_SIZE, maxSize);
+        buffer = new SimpleInputBuffer(Math.max(bufferSize, 1), HeapByteBufferAllocator.INSTANCE);
+        response.setEntity(new ContentBufferEntity(entity, buffer));
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+
+        buffer.consumeContent(decoder);
+        if (buffer.length() > maxSize) {
+            throw new ResponseTooLargeException(maxSize);
+        }
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+
+        response = null;
+        buffer = null;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicNameValuePair;
+import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
+import org.wso2.carbon.identity.central.log.mgt.utils.LoggerUtils;
+import org.wso2.carbon.identity.conditional.auth.functions.common.token.AccessTokenEntry;
+import org.wso2.carbon.identity.conditional.auth.functions.common.token.TokenExpiryResolver;
+import org.wso2.carbon.identity.conditional.auth.functions.common.token.TokenRefreshScheduler;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.HttpResponseReader;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.LogEventPublisher;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.RetryPolicy;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.SingleFlight;
+import org.wso2.carbon.identity.conditional.auth.functions.http.cache.APIAccessTokenCache;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.ResponseClassifier.Classification;
+import org.wso2.carbon.utils.DiagnosticLog;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.apache.http.HttpHeaders.ACCEPT;
+import static org.apache.http.HttpHeaders.CONTENT_TYPE;
+import static org.wso2.carbon.identity.conditional.auth.functions.http.util.HttpUtil.getRequestTokenActionId;
+
+/**
+ * Obtains access tokens of a client from a token endpoint with the client credentials grant, and caches them in the
+ * {@link APIAccessTokenCache}.
+ * A requester created for an authentication flow refers to the session data key and the request of the flow for
+ * logging. Tokens are renewed in the background by a detached requester, which holds only the tenant domain, the token
+ * endpoint and the client credentials, so that a tracked token does not keep the authentication flow which obtained
+ * it in memory.
+ */
+class ClientCredentialTokenRequester {
+
+    private static final Log LOG = LogFactory.getLog(ClientCredentialTokenRequester.class);
+    private static final String TYPE_APPLICATION_JSON = "application/json";
+    private static final String TYPE_FORM_DATA = "application/x-www-form-urlencoded";
+    private static final String AUTHORIZATION = "Authorization";
+    private static final String GRANT_TYPE = "grant_type";
+    private static final String GRANT_TYPE_CLIENT_CREDENTIALS = "client_credentials";
+    private static final String SCOPES = "scope";
+    private static final String ACCESS_TOKEN_KEY = "access_token";
+    private static final String EXPIRES_IN_KEY = "expires_in";
+    private static final String BASIC = "Basic ";
+    private static final char TOKEN_REQUEST_KEY_SEPARATOR = '|';
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final SingleFlight<String, String> TOKEN_REQUESTS =
+            new SingleFlight<>(ConfigProvider.getInstance().getTokenRequestFailureCacheTimeout());
+    private static final TokenRefreshScheduler TOKEN_REFRESH_SCHEDULER =
+            new TokenRefreshScheduler("HTTPFunctionAccessTokens");
+
+    private final String tenantDomain;
+    private final String tokenEndpoint;
+    private final String consumerKey;
+    private final String consumerSecret;
+    private final String scopes;
+    private final String sessionDataKey;
+    private final HttpUriRequest request;
+    private final int maxRequestAttempts;
+
+    /**
+     * Create a requester for an authentication flow.
+     *
+     * @param tenantDomain   Tenant domain the token is obtained for.
+     * @param tokenEndpoint  Token endpoint.
+     * @param consumerKey    Consumer key of the client.
+     * @param consumerSecret Consumer secret of the client.
+     * @param scopes         Scopes requested for the token, if any.
+     * @param sessionDataKey Session data key of the authentication flow, or null for a background renewal.
+     * @param request        Request the token is obtained for, or null for a background renewal.
+     */
+    ClientCredentialTokenRequester(String tenantDomain, String tokenEndpoint, String consumerKey,
+                                   String consumerSecret, String scopes, String sessionDataKey,
+                                   HttpUriRequest request) {
+
+        this.tenantDomain = tenantDomain;
+        this.tokenEndpoint = tokenEndpoint;
+        this.consumerKey = consumerKey;
+        this.consumerSecret = consumerSecret;
+        this.scopes = scopes;
+        this.sessionDataKey = sessionDataKey;
+        this.request = request;
+        this.maxRequestAttempts = ConfigProvider.getInstance().getRequestRetryCount();
+    }
+
+    /**
+     * Stop renewing the cached access tokens in the background.
+     */
+    static void stopTokenRefresh() {
+
+        TOKEN_REFRESH_SCHEDULER.shutdown();
+    }
+
+    /**
+     * Get the access token from the cache or request a new token from the token endpoint.
+     * Concurrent requests for the same client and token endpoint share a single token request, and the callers which
+     * did not start the request are notified through the returned future once the token is available.
+     *
+     * @return Future which completes with the access token.
+     */
+    CompletableFuture<String> getAccessToken() {
+
+        AccessTokenEntry accessTokenEntry = APIAccessTokenCache.getInstance().getValueFromCache(consumerKey,
+                tenantDomain);
+        if (accessTokenEntry != null && !accessTokenEntry.isExpired() &&
+                StringUtils.equals(accessTokenEntry.getScope(), scopes)) {
+            LOG.debug("Unexpired access token available in cache.");
+            TOKEN_REFRESH_SCHEDULER.recordHit(getTokenRequestKey());
+            return CompletableFuture.completedFuture(accessTokenEntry.getAccessToken());
+        }
+
+        TOKEN_REFRESH_SCHEDULER.recordMiss();
+        return TOKEN_REQUESTS.execute(getTokenRequestKey(), this::requestAccessTokenWithRetries);
+    }
+
+    /**
+     * Build the key identifying the token requests which can be shared between concurrent callers.
+     *
+     * @return Token request key.
+     */
+    private String getTokenRequestKey() {
+
+        return tenantDomain + TOKEN_REQUEST_KEY_SEPARATOR + tokenEndpoint + TOKEN_REQUEST_KEY_SEPARATOR +
+                consumerKey + TOKEN_REQUEST_KEY_SEPARATOR + StringUtils.defaultString(scopes);
+    }
+
+    /**
+     * Describe what the token is requested for, to be included in the logs.
+     *
+     * @return Session data key of the authentication flow, or a note that the token is renewed in the background.
+     */
+    private String getRequestDescription() {
+
+        return sessionDataKey != null ? "session data key: " + sessionDataKey :
+                "background renewal of the token from: " + tokenEndpoint;
+    }
+
+    /**
+     * Request an access token from the token endpoint, retrying when the token endpoint could not be reached.
+     * The request is executed without blocking the caller, and retries are scheduled with backoff according to the
+     * {@link RetryPolicy}.
+     *
+     * @return Future which completes with the access token.
+     */
+    private CompletableFuture<String> requestAccessTokenWithRetries() {
+
+        CompletableFuture<Pair<Classification, String>> tokenResponse = RetryPolicy.getInstance().execute(
+                HttpUtil.getEndpoint(tokenEndpoint), maxRequestAttempts,
+                this::attemptAccessTokenRequest, attemptResult -> attemptResult.getLeft().isRetry());
+        return tokenResponse.thenCompose(attemptResult -> {
+            String accessToken = attemptResult.getRight();
+            if (accessToken != null) {
+                return CompletableFuture.completedFuture(accessToken);
+            }
+            if (LoggerUtils.isDiagnosticLogsEnabled()) {
+                DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
+                        DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
+                        getRequestTokenActionId(request));
+                diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.TOKEN_ENDPOINT, tokenEndpoint)
+                        .inputParam(Constants.LogConstants.InputKeys.GRANT_TYPE, GRANT_TYPE_CLIENT_CREDENTIALS)
+                        .configParam(Constants.LogConstants.ConfigKeys.MAX_REQUEST_ATTEMPTS, maxRequestAttempts)
+                        .resultMessage("Failed to retrieve access token for the provided token endpoint.")
+                        .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
+                        .resultStatus(DiagnosticLog.ResultStatus.FAILED);
+                LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.FAILURE,
+                        () -> LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder));
+            }
+            LOG.error("Failed to retrieve access token. Aborting request.");
+            CompletableFuture<String> failedToken = new CompletableFuture<>();
+            failedToken.completeExceptionally(new FrameworkException("Failed to retrieve access token."));
+            return failedToken;
+        });
+    }
+
+    /**
+     * This method is used to attempt the access token request from the token endpoint.
+     *
+     * @param attemptCount Number of attempts made so far
+     * @return Future which completes with the retry decision and the access token
+     */
+    private CompletableFuture<Pair<Classification, String>> attemptAccessTokenRequest(int attemptCount) {
+
+        if (attemptCount == 0) {
+            LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.REQUEST, () -> LOG.info(
+                    "Attempting initial access token request for " + getRequestDescription()));
+            return requestAccessToken();
+        }
+        if (LoggerUtils.isDiagnosticLogsEnabled()) {
+            DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
+                    DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
+                    getRequestTokenActionId(request));
+            diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.TOKEN_ENDPOINT, tokenEndpoint)
+                    .inputParam(Constants.LogConstants.InputKeys.GRANT_TYPE, GRANT_TYPE_CLIENT_CREDENTIALS)
+                    .configParam(Constants.LogConstants.ConfigKeys.MAX_REQUEST_ATTEMPTS, maxRequestAttempts)
+                    .resultMessage("Retrying token request for the provided token endpoint. Attempt: " +
+                            attemptCount + ".")
+                    .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
+                    .resultStatus(DiagnosticLog.ResultStatus.FAILED);
+            LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.RETRY,
+                    () -> LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder));
+        }
+        LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.RETRY, () -> LOG.info(
+                "Retrying token request for " + getRequestDescription() + ". Attempt: " + attemptCount));
+        HTTPFunctionMetrics.getInstance().recordRetry(HttpUtil.getEndpoint(tokenEndpoint), tenantDomain);
+        return requestAccessToken();
+    }
+
+    /**
+     * This method is used to request the access token from the token endpoint. The outcome of the request is recorded
+     * in {@link HTTPFunctionMetrics}.
+     *
+     * @return Future which completes with the retry decision and the access token
+     */
+    private CompletableFuture<Pair<Classification, String>> requestAccessToken() {
+
+        HttpPost tokenRequest;
+        try {
+            tokenRequest = new HttpPost(tokenEndpoint);
+            tokenRequest.setHeader(ACCEPT, TYPE_APPLICATION_JSON);
+            tokenRequest.setHeader(CONTENT_TYPE, TYPE_FORM_DATA);
+
+            tokenRequest.setHeader(AUTHORIZATION, BASIC + Base64.getEncoder()
+                    .encodeToString((consumerKey + ":" + consumerSecret).getBytes(StandardCharsets.UTF_8)));
+
+            List<BasicNameValuePair> bodyParams = new ArrayList<>();
+            bodyParams.add(new BasicNameValuePair(GRANT_TYPE, GRANT_TYPE_CLIENT_CREDENTIALS));
+            if (StringUtils.isNotEmpty(scopes)) {
+                bodyParams.add(new BasicNameValuePair(SCOPES, scopes));
+            }
+            tokenRequest.setEntity(new UrlEncodedFormEntity(bodyParams));
+        } catch (IOException | IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(handleTokenRequestFailure(e));
+        }
+
+        // Token requests share the pooled keep-alive client of the http functions, so a token refresh reuses an
+        // already established connection to the token endpoint whenever one is available.
+        String endpoint = HttpUtil.getEndpoint(tokenRequest.getURI());
+        return HTTPClientManager.getInstance().execute(tokenRequest, tenantDomain).handle((response, error) -> {
+            Pair<Classification, String> result;
+            if (error != null) {
+                result = handleTokenRequestFailure(error);
+            } else {
+                try {
+                    result = handleTokenResponse(response);
+                } catch (Exception e) {
+                    result = handleTokenRequestFailure(e);
+                }
+            }
+            if (result.getRight() != null) {
+                HTTPFunctionMetrics.getInstance().recordSuccess(endpoint, tenantDomain);
+            } else if (Constants.OUTCOME_TIMEOUT.equals(result.getLeft().getOutcome())) {
+                HTTPFunctionMetrics.getInstance().recordTimeout(endpoint, tenantDomain);
+            } else {
+                HTTPFunctionMetrics.getInstance().recordFailure(endpoint, tenantDomain);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Handle the response received from the token endpoint.
+     *
+     * @param response {@link HttpResponse}
+     * @return Classification of the response and the access token
+     * @throws IOException {@link IOException}
+     */
+    private Pair<Classification, String> handleTokenResponse(HttpResponse response) throws IOException {
+
+        int responseCode = response.getStatusLine().getStatusCode();
+        Classification classification = ResponseClassifier.TOKEN_ENDPOINT.classify(responseCode);
+        if (classification.isSuccess()) {
+            return Pair.of(classification, processSuccessfulResponse(response));
+        }
+        ResponseClassifier.TOKEN_ENDPOINT.report(classification, LOG, request, tokenEndpoint, responseCode);
+        return Pair.of(classification, null);
+    }
+
+    /**
+     * Handle the failure of a request to the token endpoint.
+     *
+     * @param e Cause of the failure
+     * @return Classification of the failure and the access token, which is always null
+     */
+    private Pair<Classification, String> handleTokenRequestFailure(Throwable e) {
+
+        Classification classification = ResponseClassifier.TOKEN_ENDPOINT.classify(e);
+        ResponseClassifier.TOKEN_ENDPOINT.report(classification, LOG, request, tokenEndpoint, e);
+        return Pair.of(classification, null);
+    }
+
+    /**
+     * This method is used to process the successful response from the token endpoint. The received access token is
+     * cached and tracked for renewal.
+     *
+     * @param response {@link HttpResponse}
+     * @return Access token, or null if the response does not contain an access token
+     * @throws IOException {@link IOException}
+     */
+    private String processSuccessfulResponse(HttpResponse response) throws IOException {
+
+        Type responseBodyType = new TypeToken<Map<String, String>>(){}.getType();
+        Map<String, String> responseBody;
+        try (Reader reader = HttpResponseReader.getReader(response.getEntity(),
+                ConfigProvider.getInstance().getMaxResponseSize(), StandardCharsets.UTF_8)) {
+            responseBody = GSON.fromJson(reader, responseBodyType);
+        }
+        String accessToken = responseBody.get(ACCESS_TOKEN_KEY);
+
+        if (accessToken != null) {
+
+            if (LoggerUtils.isDiagnosticLogsEnabled()) {
+                DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
+                        DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
+                        getRequestTokenActionId(request));
+                diagnosticLogBuilder.inputParam(Constants.LogConstants.InputKeys.TOKEN_ENDPOINT, tokenEndpoint)
+                        .resultMessage("Received access token from the token endpoint.")
+                        .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
+                        .resultStatus(DiagnosticLog.ResultStatus.SUCCESS);
+                LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.SUCCESS,
+                        () -> LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder));
+            }
+            LogEventPublisher.getInstance().publish(LogEventPublisher.EventType.SUCCESS, () -> LOG.info(
+                    "Received access token from the token endpoint for " + getRequestDescription()));
+            long expiryTime = TokenExpiryResolver.resolveExpiryTime(accessToken, responseBody.get(EXPIRES_IN_KEY));
+            if (expiryTime > 0) {
+                APIAccessTokenCache.getInstance().addToCache(consumerKey,
+                        new AccessTokenEntry(accessToken, expiryTime, scopes), tenantDomain);
+                scheduleTokenRefresh(expiryTime);
+            } else {
+                LOG.warn("Expiry of the access token received from: " + tokenEndpoint + " could not be resolved. " +
+                        "The access token will not be cached.");
+            }
+            return accessToken;
+        }
+        LOG.error("Token response does not contain an access token for " + getRequestDescription());
+        return null;
+    }
+
+    /**
+     * Track the received access token so that it is renewed in the background before it expires. The renewal is
+     * made by a detached requester, so that the tracked token refers to neither this requester nor the
+     * authentication flow it was created for.
+     *
+     * @param expiryTime Expiry time of the access token in epoch milliseconds.
+     */
+    private void scheduleTokenRefresh(long expiryTime) {
+
+        String tokenRequestKey = getTokenRequestKey();
+        ClientCredentialTokenRequester refresher = new ClientCredentialTokenRequester(tenantDomain, tokenEndpoint,
+                consumerKey, consumerSecret, scopes, null, null);
+        TOKEN_REFRESH_SCHEDULER.track(tokenRequestKey, expiryTime,
+                () -> TOKEN_REQUESTS.execute(tokenRequestKey, refresher::requestAccessTokenWithRetries));
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ResponseTooLargeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Holds the HTTP/2 client used by the http functions when the HTTP/2 transport is enabled.
+ * Requests to an endpoint are multiplexed as concurrent streams over a single connection per endpoint, so the number
+ * of sockets and TLS sessions does not grow with the number of concurrent authentication flows.
+ * HTTP/2 is negotiated with ALPN for https endpoints, and is used with prior knowledge for http endpoints only when
+ * configured. An endpoint which fails to speak HTTP/2 before ever answering over it is served over HTTP/1.1 by the
+ * pooled client of {@link HTTPClientManager} until the fallback timeout elapses.
+ */
+public class HTTP2ClientManager {
+
+    private static final Log LOG = LogFactory.getLog(HTTP2ClientManager.class);
+    private static final String HTTPS = "https";
+    private static final String HTTP = "http";
+    private static final String IO_DISPATCHER_THREAD_NAME_PREFIX = "adaptive-auth-http2-io-";
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+    // Connection specific headers are not allowed in HTTP/2, and the content headers are derived from the body.
+    private static final Set<String> EXCLUDED_HEADERS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            HttpHeaders.CONNECTION.toLowerCase(), "keep-alive", "proxy-connection", HttpHeaders.UPGRADE.toLowerCase(),
+            HttpHeaders.TRANSFER_ENCODING.toLowerCase(), HttpHeaders.HOST.toLowerCase(),
+            HttpHeaders.CONTENT_LENGTH.toLowerCase(), HttpHeaders.CONTENT_TYPE.toLowerCase())));
+
+    private static final HTTP2ClientManager instance = new HTTP2ClientManager();
+
+    private volatile CloseableHttpAsyncClient client;
+    private final Set<String> http2Endpoints = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, Long> fallbackEndpoints = new ConcurrentHashMap<>();
+
+    private HTTP2ClientManager() {
+
+    }
+
+    public static HTTP2ClientManager getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Check whether requests to the given URI should be sent over HTTP/2.
+     *
+     * @param uri URI of the request.
+     * @return True if HTTP/2 is enabled for the scheme of the URI and the endpoint has not fallen back to HTTP/1.1.
+     */
+    public boolean isHttp2Endpoint(URI uri) {
+
+        ConfigProvider configProvider = ConfigProvider.getInstance();
+        if (!configProvider.isHttp2Enabled() || uri == null || uri.getHost() == null) {
+            return false;
+        }
+        if (!HTTPS.equalsIgnoreCase(uri.getScheme()) &&
+                !(HTTP.equalsIgnoreCase(uri.getScheme()) && configProvider.isHttp2PriorKnowledge())) {
+            return false;
+        }
+        String endpoint = HttpUtil.getEndpoint(uri);
+        Long fallbackExpiryTime = fallbackEndpoints.get(endpoint);
+        if (fallbackExpiryTime == null) {
+            return true;
+        }
+        if (fallbackExpiryTime > System.currentTimeMillis()) {
+            return false;
+        }
+        fallbackEndpoints.remove(endpoint, fallbackExpiryTime);
+        return true;
+    }
+
+    /**
+     * Execute the request over HTTP/2 without blocking the caller. If the endpoint fails to speak HTTP/2 before it
+     * has ever answered over HTTP/2, the endpoint falls back to HTTP/1.1 and the request is sent with the given
+     * fallback.
+     * Cancelling the returned future aborts the exchange.
+     *
+     * @param request  Request to execute.
+     * @param fallback Sends the request over HTTP/1.1.
+     * @return Future which completes with the response, or exceptionally with the cause of the failure.
+     */
+    public CompletableFuture<HttpResponse> execute(HttpUriRequest request,
+                                                   Function<HttpUriRequest, CompletableFuture<HttpResponse>> fallback) {
+
+        String endpoint = HttpUtil.getEndpoint(request.getURI());
+        CompletableFuture<HttpResponse> responseFuture = new CompletableFuture<>();
+        Future<HttpResponse> exchange;
+        try {
+            exchange = getClient().execute(SimpleRequestProducer.create(toHttp2Request(request)),
+                    new BoundedHttp2ResponseConsumer(ConfigProvider.getInstance().getMaxResponseSize()),
+                    new FutureCallback<HttpResponse>() {
+
+                        @Override
+                        public void completed(HttpResponse response) {
+
+                            http2Endpoints.add(endpoint);
+                            responseFuture.complete(response);
+                        }
+
+                        @Override
+                        public void failed(Exception e) {
+
+                            if (!isProtocolFailure(endpoint, e)) {
+                                responseFuture.completeExceptionally(e);
+                                return;
+                            }
+                            LOG.warn("Endpoint: " + endpoint + " failed to respond over HTTP/2. Falling back to " +
+                                    "HTTP/1.1 for the endpoint.", e);
+                            fallbackEndpoints.put(endpoint, System.currentTimeMillis() +
+                                    ConfigProvider.getInstance().getHttp2FallbackTimeout());
+                            fallback.apply(request).whenComplete((response, error) -> {
+                                if (error != null) {
+                                    responseFuture.completeExceptionally(error);
+                                } else {
+                                    responseFuture.complete(response);
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void cancelled() {
+
+                            responseFuture.cancel(false);
+                        }
+                    });
+        } catch (IOException | RuntimeException e) {
+            responseFuture.completeExceptionally(e);
+            return responseFuture;
+        }
+        responseFuture.whenComplete((response, error) -> {
+            if (responseFuture.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return responseFuture;
+    }
+
+    /**
+     * Close the HTTP/2 client and the connections it holds.
+     */
+    public synchronized void close() {
+
+        if (client == null) {
+            return;
+        }
+        client.close(CloseMode.GRACEFUL);
+        client = null;
+        http2Endpoints.clear();
+        fallbackEndpoints.clear();
+    }
+
+    private CloseableHttpAsyncClient getClient() {
+
+        CloseableHttpAsyncClient httpClient = client;
+        if (httpClient == null) {
+            synchronized (this) {
+                httpClient = client;
+                if (httpClient == null) {
+                    httpClient = createClient();
+                    httpClient.start();
+                    client = httpClient;
+                }
+            }
+        }
+        return httpClient;
+    }
+
+    /**
+     * Check whether the failure is caused by the endpoint not speaking HTTP/2. Failures of endpoints which have
+     * answered over HTTP/2 before, and failures which are not related to the protocol such as timeouts, unreachable
+     * hosts and oversized responses are reported as they are.
+     *
+     * @param endpoint Endpoint the request was sent to.
+     * @param e        Cause of the failure.
+     * @return True if the request should be sent over HTTP/1.1.
+     */
+    private boolean isProtocolFailure(String endpoint, Exception e) {
+
+        return !http2Endpoints.contains(endpoint) && !(e instanceof InterruptedIOException) &&
+                !(e instanceof ConnectException) && !(e instanceof UnknownHostException) &&
+                !(e instanceof ResponseTooLargeException) && !(e instanceof CancellationException);
+    }
+
+    private CloseableHttpAsyncClient createClient() {
+
+        ConfigProvider configProvider = ConfigProvider.getInstance();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Creating HTTP/2 client for http functions. Prior knowledge for http endpoints: " +
+                    configProvider.isHttp2PriorKnowledge() + ", fallback timeout: " +
+                    configProvider.getHttp2FallbackTimeout());
+        }
+        return HttpAsyncClients.customHttp2()
+                .setH2Config(H2Config.custom().setPushEnabled(false).build())
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setSoTimeout(Timeout.ofMilliseconds(configProvider.getReadTimeout()))
+                        .setSoKeepAlive(true)
+                        .setTcpNoDelay(true)
+                        .build())
+                .setTlsStrategy(ClientTlsStrategyBuilder.create().useSystemProperties().build())
+                .setDefaultRequestConfig(toHttp2RequestConfig(HTTPClientManager.getInstance().getRequestConfig()))
+                .setThreadFactory(createThreadFactory())
+                .build();
+    }
+
+    private ThreadFactory createThreadFactory() {
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, IO_DISPATCHER_THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Convert the request built for the HTTP/1.1 client to a request of the HTTP/2 client.
+     *
+     * @param request Request to convert.
+     * @return HTTP/2 request.
+     * @throws IOException If the request body could not be read.
+     */
+    private SimpleHttpRequest toHttp2Request(HttpUriRequest request) throws IOException {
+
+        SimpleHttpRequest http2Request = new SimpleHttpRequest(request.getMethod(), request.getURI());
+        for (Header header : request.getAllHeaders()) {
+            if (!EXCLUDED_HEADERS.contains(header.getName().toLowerCase())) {
+                http2Request.addHeader(header.getName(), header.getValue());
+            }
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                Header contentType = entity.getContentType() != null ? entity.getContentType() :
+                        request.getFirstHeader(HttpHeaders.CONTENT_TYPE);
+                http2Request.setBody(EntityUtils.toByteArray(entity),
+                        contentType != null ? ContentType.parse(contentType.getValue()) : null);
+                // The content encoding of the entity is sent as a header by the HTTP/1.1 client, e.g. for compressed
+                // bodies, hence it needs to be carried over explicitly.
+                if (entity.getContentEncoding() != null && !request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+                    http2Request.addHeader(HttpHeaders.CONTENT_ENCODING, entity.getContentEncoding().getValue());
+                }
+            }
+        }
+        if (request instanceof HttpRequestBase && ((HttpRequestBase) request).getConfig() != null) {
+            http2Request.setConfig(toHttp2RequestConfig(((HttpRequestBase) request).getConfig()));
+        }
+        return http2Request;
+    }
+
+    /**
+     * Convert the timeouts of a request config of the HTTP/1.1 client to a request config of the HTTP/2 client.
+     *
+     * @param config Request config of the HTTP/1.1 client.
+     * @return Request config of the HTTP/2 client.
+     */
+    @SuppressWarnings("deprecation")
+    private static org.apache.hc.client5.http.config.RequestConfig toHttp2RequestConfig(RequestConfig config) {
+
+        return org.apache.hc.client5.http.config.RequestConfig.custom()
+                .setConnectionRequestTimeout(toTimeout(config.getConnectionRequestTimeout()))
+                .setConnectTimeout(toTimeout(config.getConnectTimeout()))
+                .setResponseTimeout(toTimeout(config.getSocketTimeout()))
+                .setRedirectsEnabled(false)
+                .build();
+    }
+
+    /**
+     * Convert a timeout of the HTTP/1.1 client to a timeout of the HTTP/2 client.
+     *
+     * @param timeout Timeout in milliseconds, or a negative value if undefined.
+     * @return Timeout, or null to use the default of the HTTP/2 client.
+     */
+    private static Timeout toTimeout(int timeout) {
+
+        return timeout >= 0 ? Timeout.ofMilliseconds(timeout) : null;
+    }
+
+    /**
+     * Buffers the HTTP/2 response in memory as a response of the HTTP/1.1 client, so that responses are handled the
+     * same regardless of the transport. The exchange is aborted with a {@link ResponseTooLargeException} once the
+     * body exceeds the maximum size.
+     */
+    private static class BoundedHttp2ResponseConsumer extends AbstractBinResponseConsumer<HttpResponse> {
+
+        private final int maxSize;
+        private HttpResponse response;
+        private ContentType contentType;
+        private ByteArrayOutputStream body;
+
+        private BoundedHttp2ResponseConsumer(int maxSize) {
+
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected void start(org.apache.hc.core5.http.HttpResponse http2Response, ContentType contentType)
+                throws IOException {
+
+            org.apache.hc.core5.http.Header contentLength = http2Response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+            // Abort before reading the body when the declared length already exceeds the limit.
+            if (contentLength != null && Long.parseLong(contentLength.getValue().trim()) > maxSize) {
+                throw new ResponseTooLargeException(maxSize);
+            }
+            response = new BasicHttpResponse(HTTP_2, http2Response.getCode(), http2Response.getReasonPhrase());
+            for (org.apache.hc.core5.http.Header header : http2Response.getHeaders()) {
+                response.addHeader(header.getName(), header.getValue());
+            }
+            this.contentType = contentType;
+            this.body = new ByteArrayOutputStream();
+        }
+
+        @Override
+        protected int capacityIncrement() {
+
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        protected void data(ByteBuffer data, boolean endOfStream) throws IOException {
+
+            if (body.size() + data.remaining() > maxSize) {
+                throw new ResponseTooLargeException(maxSize);
+            }
+            if (data.hasArray()) {
+                body.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                data.position(data.limit());
+            } else {
+                byte[] chunk = new byte[data.remaining()];
+                data.get(chunk);
+                body.write(chunk, 0, chunk.length);
+            }
+        }
+
+        @Override
+        protected HttpResponse buildResult() {
+
+            if (body.size() > 0 || contentType != null) {
+                ByteArrayEntity entity = new ByteArrayEntity(body.toByteArray());
+                if (contentType != null) {
+                    entity.setContentType(contentType.toString());
+                }
+                entity.setContentEncoding(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+                response.setEntity(entity);
+            }
+            return response;
+        }
+
+        @Override
+        public void releaseResources() {
+
+            body = null;
+        }
+    }
+}
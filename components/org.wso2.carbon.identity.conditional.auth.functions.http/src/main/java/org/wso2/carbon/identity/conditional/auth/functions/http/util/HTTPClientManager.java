@@ -0,0 +1,525 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpConnection;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.CircuitBreaker;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.CompletionExecutor;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.DeadlineExceededException;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.MBeanRegistrar;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the pooled non-blocking HTTP client shared by the http functions and the client credential token requests.
+ * A single connection pool and TLS session strategy is used so that connections (and TLS sessions) to an endpoint
+ * are kept alive and reused across authentication flows instead of being set up for every request.
+ * Requests are multiplexed over a small, fixed set of I/O dispatcher threads, so the number of threads does not grow
+ * with the number of outstanding external calls.
+ * When enabled, the requests to each endpoint are guarded by a circuit breaker, so that a degraded endpoint is not
+ * called until it recovers.
+ * Expired and idle connections are evicted from the pool in the background, and the statistics of the pool are
+ * exposed over JMX.
+ * When enabled, requests are sent over HTTP/2 through {@link HTTP2ClientManager}.
+ * The latency of each exchange is recorded in {@link HTTPFunctionMetrics}.
+ */
+public class HTTPClientManager implements HTTPClientManagerMBean {
+
+    private static final Log LOG = LogFactory.getLog(HTTPClientManager.class);
+    private static final String HTTP = "http";
+    private static final String HTTPS = "https";
+    private static final String IO_DISPATCHER_THREAD_NAME_PREFIX = "adaptive-auth-http-io-";
+    private static final String CONNECTION_EVICTOR_THREAD_NAME = "adaptive-auth-http-connection-evictor";
+    private static final String MBEAN_TYPE = "ConnectionPool";
+    private static final String MBEAN_NAME = "HTTPFunctions";
+
+    private static final HTTPClientManager instance = new HTTPClientManager();
+
+    private volatile CloseableHttpAsyncClient client;
+    private volatile PoolingNHttpClientConnectionManager connectionManager;
+    private ScheduledExecutorService connectionEvictor;
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final RequestConfig requestConfig;
+
+    private HTTPClientManager() {
+
+        ConfigProvider configProvider = ConfigProvider.getInstance();
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(configProvider.getConnectionTimeout())
+                .setConnectionRequestTimeout(configProvider.getConnectionRequestTimeout())
+                .setSocketTimeout(configProvider.getReadTimeout())
+                .setRedirectsEnabled(false)
+                .setRelativeRedirectsAllowed(false)
+                .build();
+    }
+
+    public static HTTPClientManager getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Get the shared HTTP client. The client is created and started on first use.
+     *
+     * @return Pooled non-blocking HTTP client.
+     * @throws IOException If the I/O reactor of the client could not be created.
+     */
+    public CloseableHttpAsyncClient getClient() throws IOException {
+
+        CloseableHttpAsyncClient httpClient = client;
+        if (httpClient == null) {
+            synchronized (this) {
+                httpClient = client;
+                if (httpClient == null) {
+                    httpClient = createClient();
+                    httpClient.start();
+                    startConnectionEvictor();
+                    MBeanRegistrar.register(MBEAN_TYPE, MBEAN_NAME, this);
+                    client = httpClient;
+                }
+            }
+        }
+        return httpClient;
+    }
+
+    /**
+     * Get the request config the shared HTTP client uses by default.
+     *
+     * @return Default request config.
+     */
+    public RequestConfig getRequestConfig() {
+
+        return requestConfig;
+    }
+
+    /**
+     * Execute the request on the shared HTTP client without blocking the caller.
+     * The returned future is completed through the {@link CompletionExecutor} once the response is fully received,
+     * so that dependent actions do not hold the I/O dispatcher threads of the client.
+     * When the HTTP/2 transport is enabled for the endpoint, the request is sent through {@link HTTP2ClientManager}
+     * instead, which falls back to the shared HTTP/1.1 client if the endpoint does not speak HTTP/2.
+     * If the circuit breaker of the endpoint is open, the returned future fails immediately with a
+     * {@link CircuitBreakerOpenException} without sending the request.
+     * Cancelling the returned future aborts the exchange. Completing it exceptionally with a
+     * {@link DeadlineExceededException} aborts the exchange as well, and counts the call as a failure against the
+     * circuit breaker, as the endpoint did not answer within the deadline.
+     *
+     * @param request Request to execute.
+     * @return Future which completes with the response, or exceptionally with the cause of the failure.
+     */
+    public CompletableFuture<HttpResponse> execute(HttpUriRequest request) {
+
+        return execute(request, null);
+    }
+
+    /**
+     * Execute the request on the shared HTTP client as in {@link #execute(HttpUriRequest)}, and record the latency of
+     * the exchange against the endpoint and the tenant in {@link HTTPFunctionMetrics}.
+     *
+     * @param request      Request to execute.
+     * @param tenantDomain Tenant domain the request is made for, or null if not known.
+     * @return Future which completes with the response, or exceptionally with the cause of the failure.
+     */
+    public CompletableFuture<HttpResponse> execute(HttpUriRequest request, String tenantDomain) {
+
+        CompletableFuture<HttpResponse> responseFuture = new CompletableFuture<>();
+        CircuitBreaker circuitBreaker = getCircuitBreaker(request.getURI());
+        CircuitBreaker.Permit permit = null;
+        if (circuitBreaker != null) {
+            permit = circuitBreaker.tryAcquirePermission();
+            if (permit == null) {
+                responseFuture.completeExceptionally(new CircuitBreakerOpenException(
+                        "Circuit breaker of " + circuitBreaker.getName() + " is open. Request is not sent."));
+                return responseFuture;
+            }
+        }
+
+        CircuitBreaker.Permit callPermit = permit;
+        HTTPFunctionMetrics.Exchange timing = HTTPFunctionMetrics.getInstance().startExchange(request.getURI(),
+                tenantDomain);
+        CompletableFuture<HttpResponse> exchange = HTTP2ClientManager.getInstance().isHttp2Endpoint(request.getURI()) ?
+                HTTP2ClientManager.getInstance().execute(request, http1Request -> executeHttp1(http1Request, timing)) :
+                executeHttp1(request, timing);
+        // The outcome is handed over to the completion executor, so that the I/O dispatcher threads only do I/O.
+        exchange.whenCompleteAsync((response, error) -> {
+            timing.onCompleted();
+            if (error instanceof CancellationException) {
+                if (callPermit != null) {
+                    if (isAbandonedAtDeadline(responseFuture)) {
+                        // The endpoint kept the call hanging until the deadline, which the breaker has to know about.
+                        callPermit.onFailure();
+                    } else {
+                        callPermit.release();
+                    }
+                }
+                responseFuture.cancel(false);
+            } else if (error != null) {
+                if (callPermit != null) {
+                    callPermit.onFailure();
+                }
+                responseFuture.completeExceptionally(error);
+            } else {
+                if (callPermit != null) {
+                    if (response.getStatusLine().getStatusCode() >= 500) {
+                        callPermit.onFailure();
+                    } else {
+                        callPermit.onSuccess();
+                    }
+                }
+                responseFuture.complete(response);
+            }
+        }, CompletionExecutor.getInstance());
+        // Abort the exchange when the caller is no longer interested in the response, e.g. when a hedged request has
+        // already been answered, or when the deadline of the call has passed.
+        responseFuture.whenComplete((response, error) -> {
+            if (responseFuture.isCancelled() || Deadline.isExceeded(error)) {
+                exchange.cancel(true);
+            }
+        });
+        return responseFuture;
+    }
+
+    /**
+     * Check whether the caller gave up on the response because the deadline of the call passed.
+     *
+     * @param responseFuture Future of the response handed to the caller.
+     * @return True if the caller completed the future with a {@link DeadlineExceededException}.
+     */
+    private static boolean isAbandonedAtDeadline(CompletableFuture<HttpResponse> responseFuture) {
+
+        try {
+            responseFuture.getNow(null);
+            return false;
+        } catch (CompletionException e) {
+            return Deadline.isExceeded(e);
+        } catch (CancellationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Execute the request over HTTP/1.1 on the shared pooled client.
+     *
+     * @param request Request to execute.
+     * @param timing  Exchange to record the time spent obtaining a connection and the time to first byte on.
+     * @return Future which completes with the response, or exceptionally with the cause of the failure.
+     */
+    private CompletableFuture<HttpResponse> executeHttp1(HttpUriRequest request, HTTPFunctionMetrics.Exchange timing) {
+
+        CompletableFuture<HttpResponse> responseFuture = new CompletableFuture<>();
+        FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+
+            @Override
+            public void completed(HttpResponse response) {
+
+                responseFuture.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+
+                responseFuture.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+
+                responseFuture.cancel(false);
+            }
+        };
+        try {
+            // The response is consumed with a bounded consumer, so that the exchange is aborted as soon as the body
+            // exceeds the maximum size instead of buffering it fully.
+            HttpClientContext context = HttpClientContext.create();
+            timing.attach(context);
+            Future<HttpResponse> exchange = getClient().execute(HttpAsyncMethods.create(request),
+                    new BoundedResponseConsumer(ConfigProvider.getInstance().getMaxResponseSize()), context, callback);
+            responseFuture.whenComplete((response, error) -> {
+                if (responseFuture.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            responseFuture.completeExceptionally(e);
+        }
+        return responseFuture;
+    }
+
+    /**
+     * Close the shared HTTP client, along with the HTTP/2 client, and release the pooled connections.
+     */
+    public synchronized void close() {
+
+        HTTP2ClientManager.getInstance().close();
+        if (client == null) {
+            return;
+        }
+        MBeanRegistrar.unregister(MBEAN_TYPE, MBEAN_NAME);
+        if (connectionEvictor != null) {
+            connectionEvictor.shutdownNow();
+            connectionEvictor = null;
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+            LOG.error("Error while closing the HTTP client used by the http functions.", e);
+        } finally {
+            client = null;
+            connectionManager = null;
+        }
+    }
+
+    @Override
+    public int getMaxTotal() {
+
+        PoolingNHttpClientConnectionManager manager = connectionManager;
+        return manager != null ? manager.getMaxTotal() : 0;
+    }
+
+    @Override
+    public int getDefaultMaxPerRoute() {
+
+        PoolingNHttpClientConnectionManager manager = connectionManager;
+        return manager != null ? manager.getDefaultMaxPerRoute() : 0;
+    }
+
+    @Override
+    public int getLeased() {
+
+        PoolingNHttpClientConnectionManager manager = connectionManager;
+        return manager != null ? manager.getTotalStats().getLeased() : 0;
+    }
+
+    @Override
+    public int getPending() {
+
+        PoolingNHttpClientConnectionManager manager = connectionManager;
+        return manager != null ? manager.getTotalStats().getPending() : 0;
+    }
+
+    @Override
+    public int getAvailable() {
+
+        PoolingNHttpClientConnectionManager manager = connectionManager;
+        return manager != null ? manager.getTotalStats().getAvailable() : 0;
+    }
+
+    @Override
+    public String[] getRouteStats() {
+
+        PoolingNHttpClientConnectionManager manager = connectionManager;
+        if (manager == null) {
+            return new String[0];
+        }
+        Set<HttpRoute> routes = manager.getRoutes();
+        return routes.stream().map(route -> {
+            PoolStats stats = manager.getStats(route);
+            return route.getTargetHost().toURI() + " [leased: " + stats.getLeased() + "; pending: " +
+                    stats.getPending() + "; available: " + stats.getAvailable() + "; max: " + stats.getMax() + "]";
+        }).toArray(String[]::new);
+    }
+
+    /**
+     * Periodically close the pooled connections which are expired as per the keep alive duration, or which have
+     * been idle longer than the configured idle timeout, so that connections are not reused after the server has
+     * dropped them.
+     */
+    private void startConnectionEvictor() {
+
+        long evictionInterval = ConfigProvider.getInstance().getConnectionEvictionInterval();
+        if (evictionInterval <= 0) {
+            return;
+        }
+        connectionEvictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, CONNECTION_EVICTOR_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        connectionEvictor.scheduleWithFixedDelay(this::evictStaleConnections, evictionInterval, evictionInterval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Close the pooled connections which are expired, or which have been idle longer than the idle timeout.
+     */
+    void evictStaleConnections() {
+
+        PoolingNHttpClientConnectionManager manager = connectionManager;
+        if (manager == null) {
+            return;
+        }
+        long idleTimeout = ConfigProvider.getInstance().getConnectionIdleTimeout();
+        try {
+            manager.closeExpiredConnections();
+            if (idleTimeout > 0) {
+                manager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Error while evicting connections of the HTTP client used by the http functions.", e);
+        }
+    }
+
+    /**
+     * Get the circuit breaker of the endpoint. Endpoints are identified by their scheme, host and port.
+     *
+     * @param uri URI of the request.
+     * @return Circuit breaker of the endpoint, or null if circuit breakers are disabled.
+     */
+    private CircuitBreaker getCircuitBreaker(URI uri) {
+
+        if (!ConfigProvider.getInstance().isCircuitBreakerEnabled() || uri == null || uri.getHost() == null) {
+            return null;
+        }
+        return circuitBreakers.computeIfAbsent(HttpUtil.getEndpoint(uri), CircuitBreaker::new);
+    }
+
+    private CloseableHttpAsyncClient createClient() throws IOException {
+
+        ConfigProvider configProvider = ConfigProvider.getInstance();
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setConnectTimeout(configProvider.getConnectionTimeout())
+                .setSoTimeout(configProvider.getReadTimeout())
+                .setSoKeepAlive(true)
+                .setTcpNoDelay(true)
+                .build();
+        // The same SSL strategy (and hence SSL context) is used for every connection, which lets the JSSE client
+        // session cache resume TLS sessions when a new connection to a known endpoint has to be opened.
+        Registry<SchemeIOSessionStrategy> sessionStrategyRegistry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register(HTTP, NoopIOSessionStrategy.INSTANCE)
+                .register(HTTPS, SSLIOSessionStrategy.getDefaultStrategy())
+                .build();
+        connectionManager = new PoolingNHttpClientConnectionManager(
+                new DefaultConnectingIOReactor(ioReactorConfig, createThreadFactory()), sessionStrategyRegistry);
+        connectionManager.setMaxTotal(configProvider.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(configProvider.getMaxConnectionsPerRoute());
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Creating pooled non-blocking HTTP client for http functions. Max connections: " +
+                    configProvider.getMaxConnections() + ", max connections per route: " +
+                    configProvider.getMaxConnectionsPerRoute() + ", keep alive timeout: " +
+                    configProvider.getConnectionKeepAliveTimeout() + ", idle connection timeout: " +
+                    configProvider.getConnectionIdleTimeout());
+        }
+        return HttpAsyncClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(createKeepAliveStrategy(configProvider.getConnectionKeepAliveTimeout()))
+                // Requests are not bound to a user principal, so pooled TLS connections can be reused by any flow.
+                .disableConnectionState()
+                // Request interceptors run once the connection is obtained, and response interceptors once the head
+                // of the response is received.
+                .addInterceptorLast((HttpRequestInterceptor) (request, context) -> {
+                    HTTPFunctionMetrics.Exchange timing = HTTPFunctionMetrics.getExchange(context);
+                    if (timing != null) {
+                        timing.onRequestSent(isNewConnection(context));
+                    }
+                })
+                .addInterceptorLast((HttpResponseInterceptor) (response, context) -> {
+                    HTTPFunctionMetrics.Exchange timing = HTTPFunctionMetrics.getExchange(context);
+                    if (timing != null) {
+                        timing.onResponseReceived();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Check whether the connection of the exchange is newly opened, i.e. no request has been sent over it yet.
+     *
+     * @param context HTTP context of the exchange.
+     * @return True if the connection is newly opened.
+     */
+    private static boolean isNewConnection(HttpContext context) {
+
+        Object connection = context.getAttribute(HttpCoreContext.HTTP_CONNECTION);
+        try {
+            return connection instanceof HttpConnection &&
+                    ((HttpConnection) connection).getMetrics().getRequestCount() == 0;
+        } catch (RuntimeException e) {
+            // The connection may have been released from the exchange already.
+            return false;
+        }
+    }
+
+    private ThreadFactory createThreadFactory() {
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, IO_DISPATCHER_THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Honor the keep alive duration advertised by the server, and fall back to the configured keep alive timeout
+     * when the server does not advertise one.
+     *
+     * @param defaultKeepAliveTimeout Keep alive timeout in milliseconds.
+     * @return Keep alive strategy.
+     */
+    private ConnectionKeepAliveStrategy createKeepAliveStrategy(int defaultKeepAliveTimeout) {
+
+        return (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : defaultKeepAliveTimeout;
+        };
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+/**
+ * JMX view of the connection pool of the HTTP client shared by the http functions.
+ */
+public interface HTTPClientManagerMBean {
+
+    /**
+     * @return Maximum number of connections in the pool.
+     */
+    int getMaxTotal();
+
+    /**
+     * @return Maximum number of connections per route.
+     */
+    int getDefaultMaxPerRoute();
+
+    /**
+     * @return Number of connections currently leased by requests.
+     */
+    int getLeased();
+
+    /**
+     * @return Number of requests waiting for a connection.
+     */
+    int getPending();
+
+    /**
+     * @return Number of idle connections kept alive in the pool.
+     */
+    int getAvailable();
+
+    /**
+     * @return Leased, pending and available connections of each route.
+     */
+    String[] getRouteStats();
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.http.protocol.HttpContext;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.LatencyHistogram;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.MBeanRegistrar;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of the calls made by the http functions and the client credential token requests, tracked
+ * per endpoint and per tenant.
+ * The latency of each exchange is split into the time spent waiting for a pooled connection, the time spent opening
+ * a new connection, the time to the first byte of the response once the request is sent, and the total time. The
+ * outcomes of the calls are counted as successes, failures, timeouts and retries.
+ * Recording only updates atomic counters, so no lock is taken on the request path. The number of endpoints and
+ * tenants tracked is bounded, and calls beyond the bound are tracked together.
+ */
+public class HTTPFunctionMetrics implements HTTPFunctionMetricsMBean {
+
+    private static final String MBEAN_TYPE = "Metrics";
+    private static final String MBEAN_NAME = "HTTPFunctions";
+    private static final String EXCHANGE_ATTRIBUTE = HTTPFunctionMetrics.class.getName() + ".exchange";
+    private static final String OTHER_KEY = "other";
+    private static final int MAX_TRACKED_KEYS = 1000;
+
+    private static final HTTPFunctionMetrics instance = new HTTPFunctionMetrics();
+
+    private final ConcurrentMap<String, Stats> endpointStats = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Stats> tenantStats = new ConcurrentHashMap<>();
+
+    private HTTPFunctionMetrics() {
+
+        MBeanRegistrar.register(MBEAN_TYPE, MBEAN_NAME, this);
+    }
+
+    public static HTTPFunctionMetrics getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Start timing an exchange with an endpoint.
+     *
+     * @param uri          URI of the request.
+     * @param tenantDomain Tenant domain the request is made for, or null if not known.
+     * @return Exchange to record the phases of the exchange on.
+     */
+    public Exchange startExchange(URI uri, String tenantDomain) {
+
+        return new Exchange(getStats(endpointStats, HttpUtil.getEndpoint(uri)), getTenantStats(tenantDomain));
+    }
+
+    /**
+     * Get the exchange timed as part of an HTTP context.
+     *
+     * @param context HTTP context of the exchange.
+     * @return Exchange, or null if the exchange is not timed.
+     */
+    public static Exchange getExchange(HttpContext context) {
+
+        Object exchange = context.getAttribute(EXCHANGE_ATTRIBUTE);
+        return exchange instanceof Exchange ? (Exchange) exchange : null;
+    }
+
+    /**
+     * Record a call which completed successfully.
+     *
+     * @param endpoint     Endpoint of the request, as given by {@link HttpUtil#getEndpoint(URI)}.
+     * @param tenantDomain Tenant domain the request is made for, or null if not known.
+     */
+    public void recordSuccess(String endpoint, String tenantDomain) {
+
+        getStats(endpointStats, endpoint).successCount.increment();
+        Stats stats = getTenantStats(tenantDomain);
+        if (stats != null) {
+            stats.successCount.increment();
+        }
+    }
+
+    /**
+     * Record a call which failed.
+     *
+     * @param endpoint     Endpoint of the request, as given by {@link HttpUtil#getEndpoint(URI)}.
+     * @param tenantDomain Tenant domain the request is made for, or null if not known.
+     */
+    public void recordFailure(String endpoint, String tenantDomain) {
+
+        getStats(endpointStats, endpoint).failureCount.increment();
+        Stats stats = getTenantStats(tenantDomain);
+        if (stats != null) {
+            stats.failureCount.increment();
+        }
+    }
+
+    /**
+     * Record a call which timed out.
+     *
+     * @param endpoint     Endpoint of the request, as given by {@link HttpUtil#getEndpoint(URI)}.
+     * @param tenantDomain Tenant domain the request is made for, or null if not known.
+     */
+    public void recordTimeout(String endpoint, String tenantDomain) {
+
+        getStats(endpointStats, endpoint).timeoutCount.increment();
+        Stats stats = getTenantStats(tenantDomain);
+        if (stats != null) {
+            stats.timeoutCount.increment();
+        }
+    }
+
+    /**
+     * Record a retry of a call.
+     *
+     * @param endpoint     Endpoint of the request, as given by {@link HttpUtil#getEndpoint(URI)}.
+     * @param tenantDomain Tenant domain the request is made for, or null if not known.
+     */
+    public void recordRetry(String endpoint, String tenantDomain) {
+
+        getStats(endpointStats, endpoint).retryCount.increment();
+        Stats stats = getTenantStats(tenantDomain);
+        if (stats != null) {
+            stats.retryCount.increment();
+        }
+    }
+
+    @Override
+    public String[] getEndpointStats() {
+
+        return toStrings(endpointStats);
+    }
+
+    @Override
+    public String[] getTenantStats() {
+
+        return toStrings(tenantStats);
+    }
+
+    private Stats getTenantStats(String tenantDomain) {
+
+        return tenantDomain != null ? getStats(tenantStats, tenantDomain) : null;
+    }
+
+    private static Stats getStats(ConcurrentMap<String, Stats> statsMap, String key) {
+
+        // Look up before computing, as computing locks the map bin even when the key is present.
+        Stats stats = statsMap.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        String trackedKey = statsMap.size() < MAX_TRACKED_KEYS ? key : OTHER_KEY;
+        return statsMap.computeIfAbsent(trackedKey, k -> new Stats());
+    }
+
+    private static String[] toStrings(Map<String, Stats> statsMap) {
+
+        return statsMap.entrySet().stream()
+                .map(entry -> entry.getKey() + " [" + entry.getValue() + "]")
+                .sorted()
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Phases of an exchange with an endpoint. The phases are recorded by the I/O thread processing the exchange.
+     */
+    public static class Exchange {
+
+        private final Stats endpointStats;
+        private final Stats tenantStats;
+        private final long startTime = System.nanoTime();
+        private volatile long requestSentTime;
+
+        private Exchange(Stats endpointStats, Stats tenantStats) {
+
+            this.endpointStats = endpointStats;
+            this.tenantStats = tenantStats;
+        }
+
+        /**
+         * Attach the exchange to the HTTP context it is executed with.
+         *
+         * @param context HTTP context of the exchange.
+         */
+        public void attach(HttpContext context) {
+
+            context.setAttribute(EXCHANGE_ATTRIBUTE, this);
+        }
+
+        /**
+         * Record that a connection is obtained and the request is being sent. The time taken to obtain the connection
+         * is recorded as connect time if a new connection had to be opened, which dominates any time spent waiting
+         * for the pool, and as pool wait time otherwise.
+         *
+         * @param newConnection Whether the connection is newly opened for this exchange.
+         */
+        public void onRequestSent(boolean newConnection) {
+
+            requestSentTime = System.nanoTime();
+            long elapsed = requestSentTime - startTime;
+            record(newConnection ? Phase.CONNECT : Phase.POOL_WAIT, elapsed);
+        }
+
+        /**
+         * Record that the head of the response is received.
+         */
+        public void onResponseReceived() {
+
+            long sentTime = requestSentTime;
+            if (sentTime != 0) {
+                record(Phase.FIRST_BYTE, System.nanoTime() - sentTime);
+            }
+        }
+
+        /**
+         * Record that the exchange completed, successfully or not.
+         */
+        public void onCompleted() {
+
+            record(Phase.TOTAL, System.nanoTime() - startTime);
+        }
+
+        private void record(Phase phase, long elapsed) {
+
+            endpointStats.getHistogram(phase).record(elapsed, TimeUnit.NANOSECONDS);
+            if (tenantStats != null) {
+                tenantStats.getHistogram(phase).record(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private enum Phase {
+        POOL_WAIT,
+        CONNECT,
+        FIRST_BYTE,
+        TOTAL
+    }
+
+    /**
+     * Outcome counts and latency histograms of an endpoint or a tenant.
+     */
+    private static class Stats {
+
+        private final LongAdder successCount = new LongAdder();
+        private final LongAdder failureCount = new LongAdder();
+        private final LongAdder timeoutCount = new LongAdder();
+        private final LongAdder retryCount = new LongAdder();
+        private final LatencyHistogram poolWait = new LatencyHistogram();
+        private final LatencyHistogram connect = new LatencyHistogram();
+        private final LatencyHistogram firstByte = new LatencyHistogram();
+        private final LatencyHistogram total = new LatencyHistogram();
+
+        private LatencyHistogram getHistogram(Phase phase) {
+
+            switch (phase) {
+                case POOL_WAIT:
+                    return poolWait;
+                case CONNECT:
+                    return connect;
+                case FIRST_BYTE:
+                    return firstByte;
+                default:
+                    return total;
+            }
+        }
+
+        @Override
+        public String toString() {
+
+            return "success: " + successCount.sum() + "; failure: " + failureCount.sum() + "; timeout: " +
+                    timeoutCount.sum() + "; retry: " + retryCount.sum() + "; pool wait (ms): {" + poolWait +
+                    "}; connect (ms): {" + connect + "}; first byte (ms): {" + firstByte + "}; total (ms): {" +
+                    total + "}";
+        }
+    }
+}
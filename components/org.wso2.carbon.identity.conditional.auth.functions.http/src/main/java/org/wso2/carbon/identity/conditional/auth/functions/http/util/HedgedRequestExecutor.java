@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.DeadlineExceededException;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.DomainAllowlist;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.RequestBudget;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/**
+ * Executes GET requests with hedging, to cut the tail latency of calls to replicated endpoints.
+ * If the response of a request has not arrived within the hedging delay, an identical request is sent on another
+ * pooled connection. The first response received is used and the other request is cancelled. The hedging delay is
+ * either the configured delay, or the 95th percentile of the latencies recently observed for the endpoint when no
+ * delay is configured. Hedged requests to an endpoint are limited by a budget, so that they stay within the
+ * configured percentage of the requests made to the endpoint.
+ * A response with a status the call would be retried on, such as a 5xx, does not end the race while another request
+ * is in flight, as the other request may still get a usable response. It is used only if no other response arrives.
+ * Only the requests to the domains in the hedging domain list are hedged, as the endpoints have to be replicated for
+ * a hedged request to help. Other requests, and all requests when hedging is disabled, are executed as they are.
+ */
+public class HedgedRequestExecutor {
+
+    private static final Log LOG = LogFactory.getLog(HedgedRequestExecutor.class);
+    private static final String THREAD_NAME_PREFIX = "adaptive-auth-http-hedge-";
+    private static final int LATENCY_WINDOW_SIZE = 100;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final int LATENCY_PERCENTILE = 95;
+
+    private static final HedgedRequestExecutor instance = new HedgedRequestExecutor();
+
+    private final ConcurrentMap<String, EndpointStats> endpointStats = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final DomainAllowlist hedgingDomains;
+    private final long hedgingDelay;
+    private final int budgetPercentage;
+    private final BiFunction<HttpUriRequest, String, CompletableFuture<HttpResponse>> transport;
+    private volatile ScheduledExecutorService scheduler;
+
+    private HedgedRequestExecutor() {
+
+        this(ConfigProvider.getInstance().isHttpHedgingEnabled(),
+                ConfigProvider.getInstance().getHttpHedgingDomainAllowlist(),
+                ConfigProvider.getInstance().getHttpHedgingDelay(),
+                ConfigProvider.getInstance().getHttpHedgingBudgetPercentage(),
+                (request, tenantDomain) -> HTTPClientManager.getInstance().execute(request, tenantDomain));
+    }
+
+    HedgedRequestExecutor(boolean enabled, DomainAllowlist hedgingDomains, long hedgingDelay, int budgetPercentage,
+                          BiFunction<HttpUriRequest, String, CompletableFuture<HttpResponse>> transport) {
+
+        this.enabled = enabled;
+        this.hedgingDomains = hedgingDomains;
+        this.hedgingDelay = hedgingDelay;
+        this.budgetPercentage = budgetPercentage;
+        this.transport = transport;
+    }
+
+    public static HedgedRequestExecutor getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Execute the request, sending a hedged request if the response does not arrive within the hedging delay.
+     * Only GET requests to the domains in the hedging domain list are hedged, as they can be safely sent more than
+     * once. Cancelling the returned future, or
+     * completing it with a {@link DeadlineExceededException}, aborts the requests which are in flight.
+     *
+     * @param request Request to execute.
+     * @return Future which completes with the first response received, or exceptionally if all the requests fail.
+     */
+    public CompletableFuture<HttpResponse> execute(HttpUriRequest request) {
+
+        return execute(request, null);
+    }
+
+    /**
+     * Execute the request as in {@link #execute(HttpUriRequest)}, recording the latency of each request sent against
+     * the tenant.
+     *
+     * @param request      Request to execute.
+     * @param tenantDomain Tenant domain the request is made for, or null if not known.
+     * @return Future which completes with the first response received, or exceptionally if all the requests fail.
+     */
+    public CompletableFuture<HttpResponse> execute(HttpUriRequest request, String tenantDomain) {
+
+        if (!enabled || !HttpGet.METHOD_NAME.equals(request.getMethod()) || request.getURI() == null ||
+                request.getURI().getHost() == null || hedgingDomains.isEmpty() ||
+                !hedgingDomains.isAllowed(request.getURI().getHost())) {
+            return transport.apply(request, tenantDomain);
+        }
+
+        String endpoint = HttpUtil.getEndpoint(request.getURI());
+        EndpointStats stats = endpointStats.computeIfAbsent(endpoint, key -> new EndpointStats());
+        stats.hedgeBudget.recordRequest();
+
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        AtomicReference<HttpResponse> retryableResponse = new AtomicReference<>();
+        CompletableFuture<HttpResponse> primary = send(request, tenantDomain, stats, result, outstanding,
+                retryableResponse);
+        // Once the result is complete, or abandoned by the caller, the primary request is no longer needed.
+        result.whenComplete((response, error) -> Deadline.abandon(primary, error));
+
+        long delay = hedgingDelay > 0 ? hedgingDelay : stats.getLatencyPercentile();
+        if (delay <= 0) {
+            return result;
+        }
+        ScheduledFuture<?> hedgeTimer = schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (!stats.hedgeBudget.tryAcquire()) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Not hedging the request to " + endpoint + " as the hedging budget of the endpoint " +
+                            "is exhausted.");
+                }
+                return;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No response received from " + endpoint + " within " + delay + " ms. Sending a hedged " +
+                        "request.");
+            }
+            outstanding.incrementAndGet();
+            CompletableFuture<HttpResponse> hedge = send(copy(request), tenantDomain, stats, result, outstanding,
+                    retryableResponse);
+            // The request which did not win is no longer needed.
+            result.whenComplete((response, error) -> Deadline.abandon(hedge, error));
+        }, delay);
+        result.whenComplete((response, error) -> hedgeTimer.cancel(false));
+        return result;
+    }
+
+    /**
+     * Send a request, completing the result with its response unless another request has completed it already.
+     * A failed request, or a response with a status the call would be retried on, only completes the result if no
+     * other request is outstanding. The result then completes with the last such response, if any, and otherwise
+     * with the failure.
+     *
+     * @param request           Request to send.
+     * @param tenantDomain      Tenant domain the request is made for, or null if not known.
+     * @param stats             Statistics of the endpoint.
+     * @param result            Result shared by the primary and the hedged requests.
+     * @param outstanding       Number of requests sent and not completed yet.
+     * @param retryableResponse Last response received with a status the call would be retried on.
+     * @return Future of the response of the request.
+     */
+    private CompletableFuture<HttpResponse> send(HttpUriRequest request, String tenantDomain, EndpointStats stats,
+                                                 CompletableFuture<HttpResponse> result, AtomicInteger outstanding,
+                                                 AtomicReference<HttpResponse> retryableResponse) {
+
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<HttpResponse> responseFuture = transport.apply(request, tenantDomain);
+        responseFuture.whenComplete((response, error) -> {
+            if (responseFuture.isCancelled()) {
+                return;
+            }
+            if (error == null) {
+                stats.recordLatency(System.currentTimeMillis() - startTime);
+                if (!isRetryable(response)) {
+                    result.complete(response);
+                    return;
+                }
+                retryableResponse.set(response);
+            }
+            if (outstanding.decrementAndGet() == 0) {
+                HttpResponse lastResponse = retryableResponse.get();
+                if (lastResponse != null) {
+                    result.complete(lastResponse);
+                } else {
+                    result.completeExceptionally(error);
+                }
+            }
+        });
+        return responseFuture;
+    }
+
+    private static boolean isRetryable(HttpResponse response) {
+
+        return ResponseClassifier.EXTERNAL_API.classify(response.getStatusLine().getStatusCode()).isRetry();
+    }
+
+    private static HttpUriRequest copy(HttpUriRequest request) {
+
+        HttpGet hedge = new HttpGet(request.getURI());
+        hedge.setHeaders(request.getAllHeaders());
+        if (request instanceof HttpRequestBase) {
+            hedge.setConfig(((HttpRequestBase) request).getConfig());
+        }
+        return hedge;
+    }
+
+    /**
+     * Stop the scheduler which sends the hedged requests. A new scheduler is started if a request is hedged
+     * afterwards.
+     */
+    public void shutdown() {
+
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+            scheduler = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run a task on the scheduler which sends the hedged requests. The tasks run one at a time, in the order they are
+     * due.
+     *
+     * @param task  Task to run.
+     * @param delay Delay in milliseconds.
+     * @return Future of the task.
+     */
+    ScheduledFuture<?> schedule(Runnable task, long delay) {
+
+        return getScheduler().schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private ScheduledExecutorService getScheduler() {
+
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            synchronized (this) {
+                executor = scheduler;
+                if (executor == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    ScheduledThreadPoolExecutor threadPoolExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                        Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    threadPoolExecutor.setRemoveOnCancelPolicy(true);
+                    executor = threadPoolExecutor;
+                    scheduler = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Latencies recently observed for an endpoint and the hedging budget of the endpoint.
+     */
+    private class EndpointStats {
+
+        private final RequestBudget hedgeBudget = new RequestBudget(budgetPercentage, 0);
+        private final long[] latencies = new long[LATENCY_WINDOW_SIZE];
+        private final long[] sortedLatencies = new long[LATENCY_WINDOW_SIZE];
+        private int sampleCount;
+        private int nextSample;
+        private long latencyPercentile;
+
+        private synchronized void recordLatency(long latency) {
+
+            latencies[nextSample] = latency;
+            nextSample = (nextSample + 1) % LATENCY_WINDOW_SIZE;
+            if (sampleCount < LATENCY_WINDOW_SIZE) {
+                sampleCount++;
+            }
+            // The percentile is recomputed periodically rather than on every sample, as it is used as an estimate.
+            if (sampleCount >= MIN_LATENCY_SAMPLES && nextSample % (MIN_LATENCY_SAMPLES / 2) == 0) {
+                System.arraycopy(latencies, 0, sortedLatencies, 0, sampleCount);
+                Arrays.sort(sortedLatencies, 0, sampleCount);
+                latencyPercentile = sortedLatencies[(sampleCount * LATENCY_PERCENTILE - 1) / 100];
+            }
+        }
+
+        /**
+         * @return 95th percentile of the recent latencies, or 0 if not enough latencies are observed yet.
+         */
+        private synchronized long getLatencyPercentile() {
+
+            return latencyPercentile;
+        }
+    }
+}
@@ -17,9 +17,22 @@
  */
 package org.wso2.carbon.identity.conditional.auth.functions.http.util;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants;
 
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
 /**
  * Utility class for HTTP related operations.
  */
@@ -54,7 +67,10 @@ public class HttpUtil {
      */
     public static String getRequestTokenActionId(HttpUriRequest request) {
         String requestToken;
-        if (request.getMethod().equals(Constants.GET)) {
+        if (request == null) {
+            // Tokens renewed in the background are not requested for a particular request.
+            requestToken = "request-token";
+        } else if (request.getMethod().equals(Constants.GET)) {
             requestToken = Constants.LogConstants.ActionIDs.REQUEST_TOKEN_HTTP_GET;
         } else if (request.getMethod().equals(Constants.POST)) {
             requestToken = Constants.LogConstants.ActionIDs.REQUEST_TOKEN_HTTP_POST;
@@ -63,4 +79,68 @@ public class HttpUtil {
         }
         return requestToken;
     }
+
+    /**
+     * Get the endpoint a request is sent to, identified by the scheme, host and port of the URL.
+     *
+     * @param url URL of the request.
+     * @return Endpoint of the URL, or the URL itself if it does not have a host.
+     */
+    public static String getEndpoint(String url) {
+
+        try {
+            return getEndpoint(URI.create(url));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return StringUtils.defaultString(url);
+        }
+    }
+
+    /**
+     * Get the endpoint a request is sent to, identified by the scheme, host and port of the URI.
+     *
+     * @param uri URI of the request.
+     * @return Endpoint of the URI, or the URI itself if it does not have a host.
+     */
+    public static String getEndpoint(URI uri) {
+
+        if (uri == null) {
+            return StringUtils.EMPTY;
+        }
+        if (uri.getHost() == null) {
+            return uri.toString();
+        }
+        return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() != -1 ? ":" + uri.getPort() : "");
+    }
+
+    /**
+     * Build a key identifying the request from the method, the URI and the request headers. The headers are hashed,
+     * so that the credentials sent with the request are not held in memory as part of the key. The If-None-Match
+     * header is left out, as it only makes the request conditional.
+     *
+     * @param request HttpUriRequest.
+     * @return Key of the request.
+     */
+    public static String getRequestKey(HttpUriRequest request) {
+
+        List<String> headers = new ArrayList<>();
+        for (Header header : request.getAllHeaders()) {
+            String name = header.getName().toLowerCase(Locale.ENGLISH);
+            if (!HttpHeaders.IF_NONE_MATCH.toLowerCase(Locale.ENGLISH).equals(name)) {
+                headers.add(name + ":" + header.getValue());
+            }
+        }
+        Collections.sort(headers);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String header : headers) {
+                digest.update(header.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return request.getMethod() + " " + request.getURI() + "#" +
+                    Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandated by the Java platform.
+            throw new IllegalStateException(e);
+        }
+    }
 }
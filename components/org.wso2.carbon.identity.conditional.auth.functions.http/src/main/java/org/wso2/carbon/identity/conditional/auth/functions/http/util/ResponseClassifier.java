@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.json.simple.parser.ParseException;
+import org.wso2.carbon.identity.central.log.mgt.utils.LoggerUtils;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.LogEventPublisher;
+import org.wso2.carbon.utils.DiagnosticLog;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Classifies the response status or the failure of an outbound call into its outcome, the retry decision and the
+ * messages to log, using tables instead of a chain of conditions per call site.
+ * Classifying is a table lookup with no logging, so the hot path of a call stays small enough to be compiled and
+ * inlined. The messages are only built when the classification is reported.
+ */
+public final class ResponseClassifier {
+
+    /**
+     * Classifies calls made to external APIs by the http functions.
+     */
+    public static final ResponseClassifier EXTERNAL_API = new ResponseClassifier(
+            Constants.LogConstants.InputKeys.API, HttpUtil::getInvokeApiActionId,
+            new Classification[]{
+                    null,
+                    null,
+                    success("Successfully called the external api."),
+                    failure(false, Level.WARN, "External api invocation returned a redirection."),
+                    failure(false, Level.WARN, "External api invocation returned a client error.")
+            },
+            failure(true, Level.ERROR, "Received unknown response from external API call."),
+            new FailureRule[]{
+                    new FailureRule(failure(false, "Invalid Url for external API call.", "Invalid Url: %s", true),
+                            IllegalArgumentException.class),
+                    new FailureRule(timeout("Request for the external API timed out.",
+                            "Error while waiting to connect to %s"),
+                            ConnectTimeoutException.class, SocketTimeoutException.class),
+                    new FailureRule(failure(false, "External api is not invoked as its circuit breaker is open.",
+                            "%2$s Url: %1$s", false), CircuitBreakerOpenException.class),
+                    new FailureRule(failure(false, null, "Error while calling endpoint. ", true), IOException.class),
+                    new FailureRule(failure(false, "Failed to parse the response from the external API.",
+                            "Error while parsing response. ", true), ParseException.class)
+            },
+            failure(false, "Received an error while invoking the external API.", "Error while calling endpoint. ",
+                    true));
+
+    /**
+     * Classifies access token requests made to token endpoints. Successful responses are not reported, as the
+     * caller reports them once the access token is read from the response.
+     */
+    public static final ResponseClassifier TOKEN_ENDPOINT = new ResponseClassifier(
+            Constants.LogConstants.InputKeys.TOKEN_ENDPOINT, HttpUtil::getRequestTokenActionId,
+            new Classification[]{
+                    null,
+                    null,
+                    success(null),
+                    failure(false, Level.WARN, "Token endpoint returned a redirection."),
+                    failure(false, Level.WARN, "Token endpoint returned a client error.")
+            },
+            failure(true, Level.ERROR, "Received unknown response from token endpoint."),
+            new FailureRule[]{
+                    new FailureRule(failure(false, "Invalid Url for token endpoint.", "Invalid Url: %s", true),
+                            IllegalArgumentException.class),
+                    new FailureRule(timeout("Request for the token endpoint timed out.",
+                            "Error while waiting to connect to %s"),
+                            ConnectTimeoutException.class, SocketTimeoutException.class),
+                    new FailureRule(failure(false, "Token endpoint is not invoked as its circuit breaker is open.",
+                            "%2$s Url: %1$s", false), CircuitBreakerOpenException.class),
+                    new FailureRule(failure(false, null, "Error while calling token endpoint. ", true),
+                            IOException.class)
+            },
+            failure(false, "Received an error while invoking the token endpoint.",
+                    "Error while calling token endpoint. ", true));
+
+    private final String inputKey;
+    private final Function<HttpUriRequest, String> actionIdResolver;
+    private final Classification[] statusClasses;
+    private final Classification unknownStatus;
+    private final FailureRule[] failureRules;
+    private final Classification unknownFailure;
+
+    private ResponseClassifier(String inputKey, Function<HttpUriRequest, String> actionIdResolver,
+                               Classification[] statusClasses, Classification unknownStatus,
+                               FailureRule[] failureRules, Classification unknownFailure) {
+
+        this.inputKey = inputKey;
+        this.actionIdResolver = actionIdResolver;
+        this.statusClasses = statusClasses;
+        this.unknownStatus = unknownStatus;
+        this.failureRules = failureRules;
+        this.unknownFailure = unknownFailure;
+    }
+
+    /**
+     * Classify a response by the class of its status code.
+     *
+     * @param statusCode Status code of the response.
+     * @return Classification of the response.
+     */
+    public Classification classify(int statusCode) {
+
+        int statusClass = statusCode / 100;
+        if (statusClass >= 0 && statusClass < statusClasses.length && statusClasses[statusClass] != null) {
+            return statusClasses[statusClass];
+        }
+        return unknownStatus;
+    }
+
+    /**
+     * Classify the failure of a call by the type of its cause. The first rule matching the cause applies.
+     *
+     * @param error Cause of the failure.
+     * @return Classification of the failure.
+     */
+    public Classification classify(Throwable error) {
+
+        Throwable cause = unwrap(error);
+        for (FailureRule rule : failureRules) {
+            if (rule.matches(cause)) {
+                return rule.classification;
+            }
+        }
+        return unknownFailure;
+    }
+
+    /**
+     * Log a classified response and publish its diagnostic event.
+     *
+     * @param classification Classification of the response.
+     * @param log            Log of the caller.
+     * @param request        Request the diagnostic event is published for.
+     * @param url            Url of the called endpoint.
+     * @param statusCode     Status code of the response.
+     */
+    public void report(Classification classification, Log log, HttpUriRequest request, String url,
+                       int statusCode) {
+
+        if (classification.message == null) {
+            return;
+        }
+        String message = classification.message + " Status code: " + statusCode;
+        publishDiagnosticLog(classification, request, url, message);
+        log(classification, log, message + ". Url: " + url, null);
+    }
+
+    /**
+     * Log a classified failure and publish its diagnostic event, if the failure has a diagnostic message.
+     *
+     * @param classification Classification of the failure.
+     * @param log            Log of the caller.
+     * @param request        Request the diagnostic event is published for.
+     * @param url            Url of the called endpoint.
+     * @param error          Cause of the failure.
+     */
+    public void report(Classification classification, Log log, HttpUriRequest request, String url,
+                       Throwable error) {
+
+        Throwable cause = unwrap(error);
+        if (classification.message != null) {
+            publishDiagnosticLog(classification, request, url, classification.message);
+        }
+        log(classification, log, String.format(classification.logFormat, url, cause.getMessage()),
+                classification.logCause ? cause : null);
+    }
+
+    private void publishDiagnosticLog(Classification classification, HttpUriRequest request, String url,
+                                      String message) {
+
+        if (!LoggerUtils.isDiagnosticLogsEnabled()) {
+            return;
+        }
+        DiagnosticLog.DiagnosticLogBuilder diagnosticLogBuilder = new
+                DiagnosticLog.DiagnosticLogBuilder(Constants.LogConstants.ADAPTIVE_AUTH_SERVICE,
+                actionIdResolver.apply(request));
+        diagnosticLogBuilder.inputParam(inputKey, url)
+                .resultMessage(message)
+                .logDetailLevel(DiagnosticLog.LogDetailLevel.APPLICATION)
+                .resultStatus(classification.isSuccess() ? DiagnosticLog.ResultStatus.SUCCESS :
+                        DiagnosticLog.ResultStatus.FAILED);
+        LogEventPublisher.getInstance().publish(classification.getEventType(),
+                () -> LoggerUtils.triggerDiagnosticLogEvent(diagnosticLogBuilder));
+    }
+
+    private static void log(Classification classification, Log log, String message, Throwable cause) {
+
+        switch (classification.level) {
+            case INFO:
+                LogEventPublisher.getInstance().publish(classification.getEventType(), () -> log.info(message));
+                break;
+            case WARN:
+                if (cause != null) {
+                    log.warn(message, cause);
+                } else {
+                    log.warn(message);
+                }
+                break;
+            default:
+                if (cause != null) {
+                    log.error(message, cause);
+                } else {
+                    log.error(message);
+                }
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static Classification success(String message) {
+
+        return new Classification(Constants.OUTCOME_SUCCESS, false, Level.INFO, message, null, false);
+    }
+
+    private static Classification failure(boolean retry, Level level, String message) {
+
+        return new Classification(Constants.OUTCOME_FAIL, retry, level, message, null, false);
+    }
+
+    private static Classification failure(boolean retry, String message, String logFormat, boolean logCause) {
+
+        return new Classification(Constants.OUTCOME_FAIL, retry, Level.ERROR, message, logFormat, logCause);
+    }
+
+    private static Classification timeout(String message, String logFormat) {
+
+        return new Classification(Constants.OUTCOME_TIMEOUT, true, Level.ERROR, message, logFormat, true);
+    }
+
+    /**
+     * Level the classified outcome is logged at.
+     */
+    private enum Level {
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    /**
+     * Outcome of a call, whether it should be retried, and the messages it is reported with.
+     */
+    public static final class Classification {
+
+        private final String outcome;
+        private final boolean retry;
+        private final Level level;
+        private final String message;
+        private final String logFormat;
+        private final boolean logCause;
+
+        /**
+         * @param outcome   Outcome of the call, one of the outcomes in {@link Constants}.
+         * @param retry     Whether the call should be retried if attempts are left.
+         * @param level     Level the outcome is logged at.
+         * @param message   Message of the diagnostic event, or null if no diagnostic event is published.
+         * @param logFormat Format of the logged message of a failure, with the url and the message of the cause as
+         *                  arguments.
+         * @param logCause  Whether the cause of a failure is logged along with its stack trace.
+         */
+        private Classification(String outcome, boolean retry, Level level, String message, String logFormat,
+                               boolean logCause) {
+
+            this.outcome = outcome;
+            this.retry = retry;
+            this.level = level;
+            this.message = message;
+            this.logFormat = logFormat;
+            this.logCause = logCause;
+        }
+
+        public String getOutcome() {
+
+            return outcome;
+        }
+
+        public boolean isRetry() {
+
+            return retry;
+        }
+
+        public boolean isSuccess() {
+
+            return Constants.OUTCOME_SUCCESS.equals(outcome);
+        }
+
+        private LogEventPublisher.EventType getEventType() {
+
+            return isSuccess() ? LogEventPublisher.EventType.SUCCESS : LogEventPublisher.EventType.FAILURE;
+        }
+    }
+
+    /**
+     * Classification applied to failures caused by any of the given types.
+     */
+    private static final class FailureRule {
+
+        private final Class<?>[] types;
+        private final Classification classification;
+
+        private FailureRule(Classification classification, Class<?>... types) {
+
+            this.classification = classification;
+            this.types = types;
+        }
+
+        private boolean matches(Throwable error) {
+
+            for (Class<?> type : types) {
+                if (type.isInstance(error)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
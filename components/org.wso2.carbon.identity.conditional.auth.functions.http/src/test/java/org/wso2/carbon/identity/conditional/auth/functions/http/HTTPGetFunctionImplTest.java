@@ -27,12 +27,15 @@ import com.nimbusds.jose.jwk.RSAKey;
 import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.http.client.methods.HttpGet;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Parameters;
 import org.testng.annotations.Test;
 import org.wso2.carbon.CarbonConstants;
+import org.wso2.carbon.identity.application.authentication.framework.AsyncCaller;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.SequenceConfig;
 import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
 import org.wso2.carbon.identity.application.authentication.framework.dao.impl.CacheBackedLongWaitStatusDAO;
@@ -48,14 +51,22 @@ import org.wso2.carbon.identity.common.testng.WithH2Database;
 import org.wso2.carbon.identity.common.testng.WithMicroService;
 import org.wso2.carbon.identity.common.testng.WithRealmService;
 import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants;
+import org.wso2.carbon.identity.conditional.auth.functions.http.util.AuthConfigModel;
 import org.wso2.carbon.identity.conditional.auth.functions.test.utils.sequence.JsSequenceHandlerAbstractTest;
 import org.wso2.carbon.identity.conditional.auth.functions.test.utils.sequence.JsTestException;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 
+import java.util.Collections;
 import java.util.Date;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -72,6 +83,7 @@ import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.doNothing;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
 
 @WithCarbonHome
 @WithMicroService
@@ -82,6 +94,7 @@ public class HTTPGetFunctionImplTest extends JsSequenceHandlerAbstractTest {
 
     private static final String TEST_SP_CONFIG = "http-get-test-sp.xml";
     private static final String TEST_HEADERS = "http-get-test-headers.xml";
+    private static final String TEST_REQUEST_OPTIONS = "http-get-test-request-options.xml";
     private static final String TEST_AUTH_CONFIG_WITH_BASICAUTH = "http-get-test-auth-config-with-basicauth.xml";
     private static final String TEST_AUTH_CONFIG_WITH_APIKEY = "http-get-test-auth-config-with-apikey.xml";
     private static final String TEST_AUTH_CONFIG_WITH_BEARERTOKEN = "http-get-test-auth-config-with-bearertoken.xml";
@@ -96,6 +109,11 @@ public class HTTPGetFunctionImplTest extends JsSequenceHandlerAbstractTest {
     private static final String ALLOWED_DOMAIN = "abc";
     private static final String AUTHORIZATION = "Authorization";
     private static final String API_KEY_HEADER = "X-API-KEY";
+    private static final long WAIT_TIMEOUT = 5000;
+    private static final AtomicInteger COALESCED_REQUEST_COUNT = new AtomicInteger();
+    private static volatile CountDownLatch coalescedResponseRelease = new CountDownLatch(0);
+    private static final AtomicInteger SHARED_TOKEN_REQUEST_COUNT = new AtomicInteger();
+    private static volatile CountDownLatch sharedTokenResponseRelease = new CountDownLatch(0);
     private HTTPGetFunctionImpl httpGetFunction;
 
     @InjectMicroservicePort
@@ -165,6 +183,21 @@ public class HTTPGetFunctionImplTest extends JsSequenceHandlerAbstractTest {
         assertEquals(result, SUCCESS, "The http get request was not successful. Result from request: " + result);
     }
 
+    /**
+     * Test httpGet method with request options.
+     * Check if a request opted in to coalescing is sent with its headers.
+     *
+     * @throws JsTestException
+     */
+    @Test
+    public void testHttpGetMethodWithRequestOptions() throws JsTestException {
+
+        String result = executeHttpGetFunction("dummy-get-with-headers", TEST_REQUEST_OPTIONS);
+
+        assertEquals(result, SUCCESS, "The http get request was not successful with request options. Result from " +
+                "request: " + result);
+    }
+
     /**
      * Test httpGet method with basicauth auth config.
      * Check if the auth config is applied to the request.
@@ -229,6 +262,75 @@ public class HTTPGetFunctionImplTest extends JsSequenceHandlerAbstractTest {
                         result);
     }
 
+    /**
+     * Tests that identical concurrent requests which are coalesced invoke the endpoint once, and that each flow
+     * receives its own copy of the response.
+     */
+    @Test
+    public void testHttpGetMethodWithCoalescedRequests() throws Exception {
+
+        unsetAllowedDomains();
+        COALESCED_REQUEST_COUNT.set(0);
+        coalescedResponseRelease = new CountDownLatch(1);
+        CompletableFuture<Pair<String, Map<String, Object>>> firstResult = new CompletableFuture<>();
+        CompletableFuture<Pair<String, Map<String, Object>>> secondResult = new CompletableFuture<>();
+
+        AsyncCaller firstCaller = new HTTPGetFunctionImpl().createAsyncCaller(
+                new HttpGet(getRequestUrl("dummy-get-coalesced")), null, true, false, 0);
+        AsyncCaller secondCaller = new HTTPGetFunctionImpl().createAsyncCaller(
+                new HttpGet(getRequestUrl("dummy-get-coalesced")), null, true, false, 0);
+        firstCaller.accept(createContext(), (context, data, outcome) -> firstResult.complete(Pair.of(outcome, data)));
+        secondCaller.accept(createContext(), (context, data, outcome) -> secondResult.complete(Pair.of(outcome, data)));
+        // Both the requests are in flight once the callers return, as no credentials have to be obtained first.
+        coalescedResponseRelease.countDown();
+
+        Pair<String, Map<String, Object>> first = firstResult.get(10, TimeUnit.SECONDS);
+        Pair<String, Map<String, Object>> second = secondResult.get(10, TimeUnit.SECONDS);
+        assertEquals(COALESCED_REQUEST_COUNT.get(), 1, "The coalesced requests were sent more than once.");
+        assertEquals(first.getLeft(), Constants.OUTCOME_SUCCESS);
+        assertEquals(second.getLeft(), Constants.OUTCOME_SUCCESS);
+        assertEquals(first.getRight().get(STATUS), SUCCESS);
+        assertEquals(second.getRight().get(STATUS), SUCCESS);
+        assertNotSame(first.getRight(), second.getRight(), "The coalesced flows received the same response object.");
+    }
+
+    /**
+     * Tests that concurrent flows which need an access token of the same client share a single token request, sent
+     * on the pooled client of the http functions.
+     */
+    @Test
+    public void testConcurrentTokenRequestsAreShared() throws Exception {
+
+        unsetAllowedDomains();
+        SHARED_TOKEN_REQUEST_COUNT.set(0);
+        sharedTokenResponseRelease = new CountDownLatch(1);
+        Map<String, Object> properties = new HashMap<>();
+        // A new client is used so that no access token is cached for it yet.
+        properties.put("consumerKey", UUID.randomUUID().toString());
+        properties.put("consumerSecret", "clientSecret");
+        properties.put("tokenEndpoint", getRequestUrl("dummy-token-endpoint-shared"));
+        AuthConfigModel authConfigModel = new AuthConfigModel("clientcredential", properties);
+        CompletableFuture<Pair<String, Map<String, Object>>> firstResult = new CompletableFuture<>();
+        CompletableFuture<Pair<String, Map<String, Object>>> secondResult = new CompletableFuture<>();
+
+        AsyncCaller firstCaller = new HTTPGetFunctionImpl().createAsyncCaller(
+                new HttpGet(getRequestUrl("dummy-get-with-bearertoken-auth-config")), authConfigModel, false, false, 0);
+        AsyncCaller secondCaller = new HTTPGetFunctionImpl().createAsyncCaller(
+                new HttpGet(getRequestUrl("dummy-get-with-bearertoken-auth-config")), authConfigModel, false, false, 0);
+        firstCaller.accept(createContext(), (context, data, outcome) -> firstResult.complete(Pair.of(outcome, data)));
+        secondCaller.accept(createContext(), (context, data, outcome) -> secondResult.complete(Pair.of(outcome, data)));
+        // Both the flows wait for the token once the callers return, as the token request is held by the endpoint.
+        sharedTokenResponseRelease.countDown();
+
+        Pair<String, Map<String, Object>> first = firstResult.get(10, TimeUnit.SECONDS);
+        Pair<String, Map<String, Object>> second = secondResult.get(10, TimeUnit.SECONDS);
+        assertEquals(SHARED_TOKEN_REQUEST_COUNT.get(), 1, "The concurrent flows requested the token more than once.");
+        assertEquals(first.getLeft(), Constants.OUTCOME_SUCCESS);
+        assertEquals(second.getLeft(), Constants.OUTCOME_SUCCESS);
+        assertEquals(first.getRight().get(STATUS), SUCCESS);
+        assertEquals(second.getRight().get(STATUS), SUCCESS);
+    }
+
     /**
      * Tests the behavior of the httpGet function when provided with null headers.
      *
@@ -249,17 +351,35 @@ public class HTTPGetFunctionImplTest extends JsSequenceHandlerAbstractTest {
     public void testHttpGetWithInvalidNumberOfArguments() {
         Map<String, Object> eventHandlers = new HashMap<>();
         httpGetFunction.httpGet(getRequestUrl("dummy-get"),
-                eventHandlers, eventHandlers, eventHandlers, eventHandlers);
+                eventHandlers, eventHandlers, eventHandlers, eventHandlers, eventHandlers);
+    }
+
+    /**
+     * Tests that a parallel httpGet call is rejected when its options are not given as a map.
+     *
+     * @throws IllegalArgumentException if the provided arguments are not valid.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCreateCallWithInvalidOptions() {
+
+        httpGetFunction.createCall(getRequestUrl("dummy-get"), new HashMap<>(), null, "coalesce");
     }
 
     private void setAllowedDomain(String domain) {
 
-        ConfigProvider.getInstance().getAllowedDomainsForHttpFunctions().add(domain);
+        ConfigProvider.getInstance().setAllowedDomainsForHttpFunctions(Collections.singletonList(domain));
     }
 
     private void unsetAllowedDomains() {
 
-        ConfigProvider.getInstance().getAllowedDomainsForHttpFunctions().clear();
+        ConfigProvider.getInstance().setAllowedDomainsForHttpFunctions(Collections.emptyList());
+    }
+
+    private AuthenticationContext createContext() {
+
+        AuthenticationContext context = new AuthenticationContext();
+        context.setTenantDomain(TENANT_DOMAIN);
+        return context;
     }
 
     private String getRequestUrl(String path) {
@@ -355,6 +475,19 @@ public class HTTPGetFunctionImplTest extends JsSequenceHandlerAbstractTest {
         return response;
     }
 
+    @GET
+    @Path("/dummy-get-coalesced")
+    @Produces("application/json")
+    public Map<String, String> dummyGetCoalesced() throws InterruptedException {
+
+        COALESCED_REQUEST_COUNT.incrementAndGet();
+        // Keep the request in flight until the identical request has joined it.
+        coalescedResponseRelease.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        Map<String, String> response = new HashMap<>();
+        response.put(STATUS, SUCCESS);
+        return response;
+    }
+
     @GET
     @Path("/dummy-get-with-headers")
     @Produces("application/json")
@@ -474,4 +607,23 @@ public class HTTPGetFunctionImplTest extends JsSequenceHandlerAbstractTest {
         }
         return response;
     }
+
+    /**
+     * Dummy token endpoint which counts the token requests, and holds them until the test releases them.
+     *
+     * @param grantType Grant type of the token request.
+     * @return Token response.
+     */
+    @POST
+    @Path("/dummy-token-endpoint-shared")
+    @Consumes("application/x-www-form-urlencoded")
+    @Produces("application/json")
+    public Map<String, String> dummyTokenEndpointShared(@FormParam("grant_type") String grantType)
+            throws JOSEException, InterruptedException {
+
+        SHARED_TOKEN_REQUEST_COUNT.incrementAndGet();
+        // Keep the token request in flight until the concurrent flow has joined it.
+        sharedTokenResponseRelease.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        return dummyTokenEndpoint(null, grantType);
+    }
 }
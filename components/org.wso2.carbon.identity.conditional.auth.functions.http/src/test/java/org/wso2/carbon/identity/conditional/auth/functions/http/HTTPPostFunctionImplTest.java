@@ -52,6 +52,7 @@ import org.wso2.carbon.identity.conditional.auth.functions.test.utils.sequence.J
 import org.wso2.carbon.identity.conditional.auth.functions.test.utils.sequence.JsTestException;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 
+import java.util.Collections;
 import java.util.Date;
 import java.time.Instant;
 import java.util.HashMap;
@@ -257,12 +258,12 @@ public class HTTPPostFunctionImplTest extends JsSequenceHandlerAbstractTest {
 
     private void setAllowedDomain(String domain) {
 
-        ConfigProvider.getInstance().getAllowedDomainsForHttpFunctions().add(domain);
+        ConfigProvider.getInstance().setAllowedDomainsForHttpFunctions(Collections.singletonList(domain));
     }
 
     private void unsetAllowedDomains() {
 
-        ConfigProvider.getInstance().getAllowedDomainsForHttpFunctions().clear();
+        ConfigProvider.getInstance().setAllowedDomainsForHttpFunctions(Collections.emptyList());
     }
 
     private String getRequestUrl(String path) {
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.cache;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class HTTPResponseCacheTest {
+
+    private static final String REQUEST_URL = "https://api.example.com/risk";
+    private static final String TENANT_DOMAIN = "carbon.super";
+    private static final String RESPONSE_BODY = "{\"risk\":0}";
+    private static final String ETAG = "\"v1\"";
+    private static final String MBEAN_NAME =
+            "org.wso2.carbon.identity.conditional.auth.functions:type=ResponseCache,name=\"HTTPGet\"";
+
+    private List<HttpUriRequest> sentRequests;
+    private Queue<HttpResponse> responses;
+    private HTTPResponseCache responseCache;
+    private AtomicLong time;
+
+    @BeforeMethod
+    public void setUp() {
+
+        time = new AtomicLong();
+        sentRequests = new CopyOnWriteArrayList<>();
+        responses = new ConcurrentLinkedQueue<>();
+        responseCache = createCache(10, 1024);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        responseCache.close();
+    }
+
+    @Test
+    public void testFreshResponseIsServedFromCache() throws Exception {
+
+        responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, HttpHeaders.CACHE_CONTROL, "max-age=60"));
+
+        assertEquals(readBody(execute(REQUEST_URL, TENANT_DOMAIN)), RESPONSE_BODY,
+                "The body was not readable by the caller after it was cached.");
+        assertEquals(readBody(execute(REQUEST_URL, TENANT_DOMAIN)), RESPONSE_BODY);
+
+        assertEquals(sentRequests.size(), 1, "A fresh cached response was fetched again.");
+        assertEquals(responseCache.getMissCount(), 1);
+        assertEquals(responseCache.getHitCount(), 1);
+        assertEquals(responseCache.getEntryCount(), 1);
+    }
+
+    @Test
+    public void testSharedMaxAgeTakesPrecedence() throws Exception {
+
+        responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, HttpHeaders.CACHE_CONTROL,
+                "max-age=60, s-maxage=0"));
+        responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY));
+
+        execute(REQUEST_URL, TENANT_DOMAIN);
+        execute(REQUEST_URL, TENANT_DOMAIN);
+
+        assertEquals(sentRequests.size(), 2, "The response was cached beyond its shared max age.");
+    }
+
+    @Test
+    public void testAgeReducesLifetime() throws Exception {
+
+        responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, HttpHeaders.CACHE_CONTROL, "max-age=60",
+                HttpHeaders.AGE, "60"));
+        responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY));
+
+        execute(REQUEST_URL, TENANT_DOMAIN);
+        execute(REQUEST_URL, TENANT_DOMAIN);
+
+        assertEquals(sentRequests.size(), 2, "The age of the response was not deducted from its lifetime.");
+    }
+
+    @Test
+    public void testUncacheableResponsesAreNotCached() throws Exception {
+
+        String[][] uncacheableHeaders = {
+                {HttpHeaders.CACHE_CONTROL, "no-store, max-age=60"},
+                {HttpHeaders.CACHE_CONTROL, "private, max-age=60"},
+                {HttpHeaders.CACHE_CONTROL, "max-age=60", HttpHeaders.VARY, "*"},
+                {HttpHeaders.CACHE_CONTROL, "no-cache"},
+                {}
+        };
+        for (String[] headers : uncacheableHeaders) {
+            responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, headers));
+            assertEquals(readBody(execute(REQUEST_URL, TENANT_DOMAIN)), RESPONSE_BODY);
+        }
+
+        assertEquals(responseCache.getEntryCount(), 0, "An uncacheable response was cached.");
+        assertEquals(responseCache.getHitCount(), 0);
+    }
+
+    @Test
+    public void testConditionalRequestWithETag() throws Exception {
+
+        responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, HttpHeaders.CACHE_CONTROL, "max-age=0",
+                HttpHeaders.ETAG, ETAG));
+        responses.add(createResponse(HttpStatus.SC_NOT_MODIFIED, null));
+
+        execute(REQUEST_URL, TENANT_DOMAIN);
+        HttpGet request = new HttpGet(REQUEST_URL);
+        HttpResponse response = responseCache.execute(request, TENANT_DOMAIN).get(1, TimeUnit.SECONDS);
+
+        assertEquals(sentRequests.get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue(), ETAG);
+        assertNull(request.getFirstHeader(HttpHeaders.IF_NONE_MATCH), "The request of the caller was modified.");
+        assertEquals(response.getStatusLine().getStatusCode(), HttpStatus.SC_OK);
+        assertEquals(readBody(response), RESPONSE_BODY, "The cached body was not served for a 304 response.");
+        assertEquals(responseCache.getRevalidationCount(), 1);
+    }
+
+    @Test
+    public void testStaleResponseIsServedWhileRevalidating() throws Exception {
+
+        responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, HttpHeaders.CACHE_CONTROL,
+                "max-age=0, stale-while-revalidate=60", HttpHeaders.ETAG, ETAG));
+        execute(REQUEST_URL, TENANT_DOMAIN);
+        time.addAndGet(5);
+
+        responses.add(createResponse(HttpStatus.SC_NOT_MODIFIED, null, HttpHeaders.CACHE_CONTROL,
+                "max-age=60"));
+        assertEquals(readBody(execute(REQUEST_URL, TENANT_DOMAIN)), RESPONSE_BODY);
+
+        assertEquals(responseCache.getStaleHitCount(), 1);
+        assertEquals(responseCache.getRevalidationCount(), 1);
+        assertEquals(sentRequests.size(), 2);
+
+        // The revalidation advertised a new lifetime, hence the response is fresh again.
+        execute(REQUEST_URL, TENANT_DOMAIN);
+        assertEquals(responseCache.getHitCount(), 1);
+        assertEquals(sentRequests.size(), 2);
+    }
+
+    @Test
+    public void testErrorResponseRemovesCachedResponse() throws Exception {
+
+        responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, HttpHeaders.CACHE_CONTROL, "max-age=0",
+                HttpHeaders.ETAG, ETAG));
+        responses.add(createResponse(HttpStatus.SC_NOT_FOUND, null));
+
+        execute(REQUEST_URL, TENANT_DOMAIN);
+        assertEquals(responseCache.getEntryCount(), 1);
+        HttpResponse response = execute(REQUEST_URL, TENANT_DOMAIN);
+
+        assertEquals(response.getStatusLine().getStatusCode(), HttpStatus.SC_NOT_FOUND);
+        assertEquals(responseCache.getEntryCount(), 0);
+    }
+
+    @Test
+    public void testResponsesAreIsolatedPerTenant() throws Exception {
+
+        responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, HttpHeaders.CACHE_CONTROL, "max-age=60"));
+        responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, HttpHeaders.CACHE_CONTROL, "max-age=60"));
+
+        execute(REQUEST_URL, TENANT_DOMAIN);
+        execute(REQUEST_URL, "wso2.com");
+
+        assertEquals(sentRequests.size(), 2, "The response cached for a tenant was served to another tenant.");
+        assertEquals(responseCache.getEntryCount(), 2);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResponseIsEvicted() throws Exception {
+
+        HTTPResponseCache boundedCache = createCache(2, 1024);
+        try {
+            for (int i = 0; i < 3; i++) {
+                responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, HttpHeaders.CACHE_CONTROL,
+                        "max-age=60"));
+            }
+            boundedCache.execute(new HttpGet(REQUEST_URL + "/1"), TENANT_DOMAIN).get(1, TimeUnit.SECONDS);
+            boundedCache.execute(new HttpGet(REQUEST_URL + "/2"), TENANT_DOMAIN).get(1, TimeUnit.SECONDS);
+            // Use the first response, so that the second one is the least recently used.
+            boundedCache.execute(new HttpGet(REQUEST_URL + "/1"), TENANT_DOMAIN).get(1, TimeUnit.SECONDS);
+            boundedCache.execute(new HttpGet(REQUEST_URL + "/3"), TENANT_DOMAIN).get(1, TimeUnit.SECONDS);
+
+            assertEquals(boundedCache.getEntryCount(), 2);
+            assertEquals(boundedCache.getEvictionCount(), 1);
+            boundedCache.execute(new HttpGet(REQUEST_URL + "/1"), TENANT_DOMAIN).get(1, TimeUnit.SECONDS);
+            assertEquals(sentRequests.size(), 3, "The most recently used response was evicted.");
+        } finally {
+            boundedCache.close();
+        }
+    }
+
+    @Test
+    public void testLargeResponseIsNotCached() throws Exception {
+
+        HTTPResponseCache smallCache = createCache(10, 4);
+        try {
+            responses.add(createResponse(HttpStatus.SC_OK, RESPONSE_BODY, HttpHeaders.CACHE_CONTROL, "max-age=60"));
+
+            HttpResponse response = smallCache.execute(new HttpGet(REQUEST_URL), TENANT_DOMAIN)
+                    .get(1, TimeUnit.SECONDS);
+
+            assertEquals(readBody(response), RESPONSE_BODY);
+            assertEquals(smallCache.getEntryCount(), 0, "A response larger than the maximum entry size was cached.");
+        } finally {
+            smallCache.close();
+        }
+    }
+
+    @Test
+    public void testMBeanIsRegisteredUntilClosed() throws Exception {
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(MBEAN_NAME);
+        assertFalse(mBeanServer.isRegistered(objectName), "The MBean was registered when the cache was created.");
+
+        responseCache.registerMBean();
+        assertTrue(mBeanServer.isRegistered(objectName), "The MBean was not registered.");
+
+        responseCache.close();
+        assertFalse(mBeanServer.isRegistered(objectName), "The MBean was not removed when the cache was closed.");
+    }
+
+    private HTTPResponseCache createCache(int maxEntriesPerTenant, int maxEntrySize) {
+
+        return new HTTPResponseCache(maxEntriesPerTenant, maxEntrySize, (request, tenantDomain) -> {
+            sentRequests.add(request);
+            return CompletableFuture.completedFuture(responses.remove());
+        }, time::get);
+    }
+
+    private HttpResponse execute(String url, String tenantDomain) throws Exception {
+
+        return responseCache.execute(new HttpGet(url), tenantDomain).get(1, TimeUnit.SECONDS);
+    }
+
+    private static HttpResponse createResponse(int statusCode, String body, String... headers) {
+
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null);
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        if (body != null) {
+            // Streamed like a response read from a connection, so that the body can only be read once.
+            byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            response.setEntity(new InputStreamEntity(new ByteArrayInputStream(content), content.length,
+                    ContentType.APPLICATION_JSON));
+        }
+        return response;
+    }
+
+    private static String readBody(HttpResponse response) throws Exception {
+
+        return EntityUtils.toString(response.getEntity());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.support.AsyncResponseBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ResponseTooLargeException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class HTTP2ClientManagerTest {
+
+    private static final String RESPONSE_BODY = "{\"allowed\":true}";
+    private static final String REQUEST_BODY = "{\"user\":\"alex\"}";
+    private static final long WAIT_TIMEOUT = 5000;
+
+    private final HTTP2ClientManager clientManager = HTTP2ClientManager.getInstance();
+    private final AtomicInteger fallbackCount = new AtomicInteger();
+    private StubHttpServer server;
+
+    @AfterMethod
+    public void tearDown() {
+
+        fallbackCount.set(0);
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+    }
+
+    @AfterClass
+    public void closeClient() {
+
+        clientManager.close();
+    }
+
+    @Test
+    public void testHttp2IsDisabledByDefault() {
+
+        assertFalse(ConfigProvider.getInstance().isHttp2Enabled());
+        assertFalse(clientManager.isHttp2Endpoint(URI.create("https://api.example.com/risk")),
+                "HTTP/2 should only be used when enabled in the configuration.");
+    }
+
+    @Test
+    public void testRequestIsSentOverHttp2() throws Exception {
+
+        AtomicReference<Message<HttpRequest, String>> received = new AtomicReference<>();
+        server = new StubHttpServer(HttpVersionPolicy.FORCE_HTTP_2, (request, trigger, context) -> {
+            received.set(request);
+            StubHttpServer.respondWith(HttpStatus.SC_OK, RESPONSE_BODY).respond(request, trigger, context);
+        });
+        HttpPost request = new HttpPost(server.start() + "/risk");
+        request.setEntity(new StringEntity(REQUEST_BODY, org.apache.http.entity.ContentType.APPLICATION_JSON));
+        request.setHeader("X-Flow-Id", "flow-1");
+        request.setHeader(HttpHeaders.CONNECTION, "keep-alive");
+
+        HttpResponse response = clientManager.execute(request, this::failingFallback)
+                .get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(response.getStatusLine().getStatusCode(), HttpStatus.SC_OK);
+        assertEquals(response.getStatusLine().getProtocolVersion().getMajor(), 2, "The response was not HTTP/2.");
+        assertEquals(EntityUtils.toString(response.getEntity()), RESPONSE_BODY);
+        assertEquals(fallbackCount.get(), 0);
+
+        Message<HttpRequest, String> sent = received.get();
+        assertEquals(sent.getHead().getMethod(), HttpPost.METHOD_NAME);
+        assertEquals(sent.getBody(), REQUEST_BODY);
+        assertTrue(sent.getHead().getFirstHeader(HttpHeaders.CONTENT_TYPE).getValue()
+                .startsWith(ContentType.APPLICATION_JSON.getMimeType()));
+        assertEquals(sent.getHead().getFirstHeader("X-Flow-Id").getValue(), "flow-1");
+        assertNull(sent.getHead().getFirstHeader(HttpHeaders.CONNECTION),
+                "A connection specific header was sent over HTTP/2.");
+    }
+
+    @Test
+    public void testFallbackWhenEndpointDoesNotSpeakHttp2() throws Exception {
+
+        server = new StubHttpServer(HttpVersionPolicy.FORCE_HTTP_1,
+                StubHttpServer.respondWith(HttpStatus.SC_OK, RESPONSE_BODY));
+        HttpResponse fallbackResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+
+        HttpResponse response = clientManager.execute(new HttpGet(server.start() + "/risk"), request -> {
+            fallbackCount.incrementAndGet();
+            return CompletableFuture.completedFuture(fallbackResponse);
+        }).get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertSame(response, fallbackResponse, "The request was not sent over HTTP/1.1.");
+        assertEquals(fallbackCount.get(), 1);
+    }
+
+    @Test
+    public void testResponseOverMaxSizeIsRejected() throws Exception {
+
+        byte[] body = new byte[ConfigProvider.getInstance().getMaxResponseSize() + 1];
+        server = new StubHttpServer(HttpVersionPolicy.FORCE_HTTP_2, (request, trigger, context) ->
+                trigger.submitResponse(AsyncResponseBuilder.create(HttpStatus.SC_OK)
+                        .setEntity(AsyncEntityProducers.create(body, ContentType.APPLICATION_OCTET_STREAM))
+                        .build(), context));
+
+        try {
+            clientManager.execute(new HttpGet(server.start() + "/risk"), this::failingFallback)
+                    .get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            fail("A response beyond the maximum size was read.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ResponseTooLargeException, "Unexpected failure: " + e.getCause());
+        }
+        assertEquals(fallbackCount.get(), 0, "An oversized response should not fall back to HTTP/1.1.");
+    }
+
+    @Test
+    public void testCancellingFutureAbortsExchange() throws Exception {
+
+        CountDownLatch requestReceived = new CountDownLatch(1);
+        // The server never responds, so the exchange only ends when it is aborted.
+        server = new StubHttpServer(HttpVersionPolicy.FORCE_HTTP_2, (request, trigger, context) ->
+                requestReceived.countDown());
+
+        CompletableFuture<HttpResponse> responseFuture =
+                clientManager.execute(new HttpGet(server.start() + "/risk"), this::failingFallback);
+        assertTrue(requestReceived.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS), "The request was not received.");
+        assertTrue(responseFuture.cancel(true));
+
+        assertTrue(responseFuture.isCancelled());
+        assertEquals(fallbackCount.get(), 0, "A cancelled request should not fall back to HTTP/1.1.");
+    }
+
+    private CompletableFuture<HttpResponse> failingFallback(HttpUriRequest request) {
+
+        fallbackCount.incrementAndGet();
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        future.completeExceptionally(new IOException("Unexpected fallback to HTTP/1.1."));
+        return future;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.entity.DiscardingEntityConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncResponseBuilder;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the HTTP/1.1 pooled transport with the HTTP/2 multiplexed transport against a local stub server that
+ * speaks both protocols in clear text. For each transport, the given number of GET requests is sent with the given
+ * number of requests in flight, and the number of sockets accepted by the server and the request latencies are
+ * reported.
+ * This is not part of the test suite. Run it from the test classpath with the optional arguments
+ * [requests] [concurrency] [server latency in milliseconds], e.g. 20000 500 20.
+ */
+public class HTTP2TransportBenchmark {
+
+    private static final String RESPONSE_BODY = "{\"allowed\":true}";
+
+    public static void main(String[] args) throws Exception {
+
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        long serverLatency = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+        StubServer server = new StubServer(serverLatency);
+        try {
+            URI uri = URI.create("http://localhost:" + server.start() + "/decision");
+            // Warm up both transports before measuring, so that class loading and JIT do not skew the results.
+            runHttp1(uri, Math.min(requests, 1000), concurrency);
+            runHttp2(uri, Math.min(requests, 1000), concurrency);
+
+            server.resetStats();
+            long[] http1Latencies = runHttp1(uri, requests, concurrency);
+            report("HTTP/1.1", http1Latencies, server);
+
+            server.resetStats();
+            long[] http2Latencies = runHttp2(uri, requests, concurrency);
+            report("HTTP/2", http2Latencies, server);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Send the requests with a pooled HTTP/1.1 client configured like the shared client of the http functions.
+     */
+    private static long[] runHttp1(URI uri, int requests, int concurrency) throws Exception {
+
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setMaxConnTotal(concurrency)
+                .setMaxConnPerRoute(concurrency)
+                .disableConnectionState()
+                .build();
+        client.start();
+        try {
+            return run(requests, concurrency, (latencies, index, done) -> {
+                long start = System.nanoTime();
+                client.execute(new HttpGet(uri), new FutureCallback<HttpResponse>() {
+
+                    @Override
+                    public void completed(HttpResponse response) {
+
+                        EntityUtils.consumeQuietly(response.getEntity());
+                        latencies[index] = System.nanoTime() - start;
+                        done.run();
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+
+                        latencies[index] = -1;
+                        done.run();
+                    }
+
+                    @Override
+                    public void cancelled() {
+
+                        latencies[index] = -1;
+                        done.run();
+                    }
+                });
+            });
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Send the requests with an HTTP/2 client configured like the HTTP/2 client of the http functions, using prior
+     * knowledge as the stub server does not use TLS.
+     */
+    private static long[] runHttp2(URI uri, int requests, int concurrency) throws Exception {
+
+        org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient client =
+                org.apache.hc.client5.http.impl.async.HttpAsyncClients.customHttp2().build();
+        client.start();
+        try {
+            return run(requests, concurrency, (latencies, index, done) -> {
+                long start = System.nanoTime();
+                client.execute(SimpleRequestProducer.create(new SimpleHttpRequest(HttpGet.METHOD_NAME, uri)),
+                        SimpleResponseConsumer.create(),
+                        new org.apache.hc.core5.concurrent.FutureCallback<SimpleHttpResponse>() {
+
+                            @Override
+                            public void completed(SimpleHttpResponse response) {
+
+                                latencies[index] = System.nanoTime() - start;
+                                done.run();
+                            }
+
+                            @Override
+                            public void failed(Exception e) {
+
+                                latencies[index] = -1;
+                                done.run();
+                            }
+
+                            @Override
+                            public void cancelled() {
+
+                                latencies[index] = -1;
+                                done.run();
+                            }
+                        });
+            });
+        } finally {
+            client.close(CloseMode.GRACEFUL);
+        }
+    }
+
+    private static long[] run(int requests, int concurrency, RequestSender sender) throws InterruptedException {
+
+        long[] latencies = new long[requests];
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch completed = new CountDownLatch(requests);
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            sender.send(latencies, i, () -> {
+                inFlight.release();
+                completed.countDown();
+            });
+        }
+        completed.await();
+        return latencies;
+    }
+
+    private static void report(String transport, long[] latencies, StubServer server) {
+
+        long failures = Arrays.stream(latencies).filter(latency -> latency < 0).count();
+        long[] sorted = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+        System.out.printf("%-8s sockets opened: %5d, max open sockets: %5d, failures: %d, latency ms " +
+                        "p50: %.2f, p99: %.2f, max: %.2f%n", transport, server.getOpenedConnections(),
+                server.getMaxOpenConnections(), failures, percentile(sorted, 50), percentile(sorted, 99),
+                percentile(sorted, 100));
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    /**
+     * Sends a single request and runs the given action once the request completes.
+     */
+    private interface RequestSender {
+
+        void send(long[] latencies, int index, Runnable done);
+    }
+
+    /**
+     * Stub server answering every request with a small JSON body after a fixed latency. HTTP/2 with prior knowledge
+     * and HTTP/1.1 are both served on the same clear text port.
+     */
+    private static class StubServer {
+
+        private final long latency;
+        private final ScheduledExecutorService responder = Executors.newSingleThreadScheduledExecutor();
+        private final AtomicInteger openedConnections = new AtomicInteger();
+        private final AtomicInteger openConnections = new AtomicInteger();
+        private final AtomicInteger maxOpenConnections = new AtomicInteger();
+        private HttpAsyncServer server;
+
+        private StubServer(long latency) {
+
+            this.latency = latency;
+        }
+
+        private int start() throws Exception {
+
+            server = H2ServerBootstrap.bootstrap()
+                    .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                    .setIOSessionListener(new ConnectionCounter())
+                    .register("*", new AsyncServerRequestHandler<Message<HttpRequest, Void>>() {
+
+                        @Override
+                        public AsyncRequestConsumer<Message<HttpRequest, Void>> prepare(
+                                HttpRequest request, EntityDetails entityDetails, HttpContext context) {
+
+                            return new BasicRequestConsumer<>(new DiscardingEntityConsumer<>());
+                        }
+
+                        @Override
+                        public void handle(Message<HttpRequest, Void> message, ResponseTrigger responseTrigger,
+                                           HttpContext context) {
+
+                            responder.schedule(() -> {
+                                try {
+                                    responseTrigger.submitResponse(AsyncResponseBuilder.create(200)
+                                            .setEntity(AsyncEntityProducers.create(RESPONSE_BODY,
+                                                    ContentType.APPLICATION_JSON))
+                                            .build(), context);
+                                } catch (Exception e) {
+                                    System.err.println("Failed to respond: " + e.getMessage());
+                                }
+                            }, latency, TimeUnit.MILLISECONDS);
+                        }
+                    })
+                    .create();
+            server.start();
+            ListenerEndpoint endpoint = server.listen(new InetSocketAddress(0), URIScheme.HTTP).get();
+            return ((InetSocketAddress) endpoint.getAddress()).getPort();
+        }
+
+        private void stop() {
+
+            server.close(CloseMode.GRACEFUL);
+            responder.shutdownNow();
+        }
+
+        private void resetStats() {
+
+            openedConnections.set(0);
+            maxOpenConnections.set(openConnections.get());
+        }
+
+        private int getOpenedConnections() {
+
+            return openedConnections.get();
+        }
+
+        private int getMaxOpenConnections() {
+
+            return maxOpenConnections.get();
+        }
+
+        /**
+         * Counts the connections accepted by the server.
+         */
+        private class ConnectionCounter implements IOSessionListener {
+
+            @Override
+            public void connected(IOSession session) {
+
+                openedConnections.incrementAndGet();
+                maxOpenConnections.accumulateAndGet(openConnections.incrementAndGet(), Math::max);
+            }
+
+            @Override
+            public void startTls(IOSession session) {
+
+            }
+
+            @Override
+            public void inputReady(IOSession session) {
+
+            }
+
+            @Override
+            public void outputReady(IOSession session) {
+
+            }
+
+            @Override
+            public void timeout(IOSession session) {
+
+            }
+
+            @Override
+            public void exception(IOSession session, Exception e) {
+
+            }
+
+            @Override
+            public void disconnected(IOSession session) {
+
+                openConnections.decrementAndGet();
+            }
+        }
+    }
+}
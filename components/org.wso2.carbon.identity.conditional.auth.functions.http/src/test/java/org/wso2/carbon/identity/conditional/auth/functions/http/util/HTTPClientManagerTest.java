@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.ConfigProvider;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class HTTPClientManagerTest {
+
+    private static final String RESPONSE_BODY = "{\"allowed\":true}";
+    private static final long WAIT_TIMEOUT = 5000;
+    private static final String IO_DISPATCHER_THREAD_NAME_PREFIX = "adaptive-auth-http-io-";
+    private static final String POOL_MBEAN_NAME =
+            "org.wso2.carbon.identity.conditional.auth.functions:type=ConnectionPool,name=\"HTTPFunctions\"";
+    private static final long EVICTION_POLL_INTERVAL = 100;
+
+    private final HTTPClientManager clientManager = HTTPClientManager.getInstance();
+    private StubHttpServer server;
+
+    @AfterMethod
+    public void tearDown() {
+
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+    }
+
+    @Test
+    public void testConnectionIsReusedAcrossRequests() throws Exception {
+
+        server = new StubHttpServer(HttpVersionPolicy.FORCE_HTTP_1,
+                StubHttpServer.respondWith(HttpStatus.SC_OK, RESPONSE_BODY));
+        String url = server.start();
+
+        for (int i = 0; i < 3; i++) {
+            HttpResponse response = clientManager.execute(new HttpGet(url + "/risk"))
+                    .get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            assertEquals(EntityUtils.toString(response.getEntity()), RESPONSE_BODY);
+        }
+        // Token requests share the client of the http functions, hence the connection to the endpoint as well.
+        HttpPost tokenRequest = new HttpPost(url + "/token");
+        tokenRequest.setEntity(new StringEntity("grant_type=client_credentials",
+                ContentType.APPLICATION_FORM_URLENCODED));
+        HttpResponse tokenResponse = clientManager.execute(tokenRequest, "carbon.super")
+                .get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(tokenResponse.getStatusLine().getStatusCode(), HttpStatus.SC_OK);
+
+        assertEquals(server.getOpenedConnections(), 1, "A new connection was opened for a request to the endpoint.");
+    }
+
+    @Test
+    public void testResponseIsCompletedOffIoDispatcherThreads() throws Exception {
+
+        CompletableFuture<StubHttpServer.DeferredResponse> heldResponse = new CompletableFuture<>();
+        // Hold the response until the dependent action is registered, so that it runs on the completing thread.
+        server = new StubHttpServer(HttpVersionPolicy.FORCE_HTTP_1, (request, trigger, context) ->
+                heldResponse.complete(() -> StubHttpServer.respondWith(HttpStatus.SC_OK, RESPONSE_BODY)
+                        .respond(request, trigger, context)));
+        String url = server.start();
+
+        CompletableFuture<String> completingThread = clientManager.execute(new HttpGet(url + "/risk"))
+                .thenApply(response -> Thread.currentThread().getName());
+        heldResponse.get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS).send();
+
+        String threadName = completingThread.get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        assertFalse(threadName.startsWith(IO_DISPATCHER_THREAD_NAME_PREFIX),
+                "The response was completed on the I/O dispatcher thread: " + threadName);
+    }
+
+    @Test
+    public void testCancellingFutureAbortsExchange() throws Exception {
+
+        CountDownLatch requestReceived = new CountDownLatch(1);
+        // The server never responds, so the exchange only ends when it is aborted.
+        server = new StubHttpServer(HttpVersionPolicy.FORCE_HTTP_1, (request, trigger, context) ->
+                requestReceived.countDown());
+        String url = server.start();
+
+        CompletableFuture<HttpResponse> responseFuture = clientManager.execute(new HttpGet(url + "/risk"));
+        assertTrue(requestReceived.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS), "The request was not received.");
+        assertTrue(responseFuture.cancel(true));
+
+        assertTrue(server.awaitClosedConnection(WAIT_TIMEOUT),
+                "The connection of the cancelled exchange was not closed.");
+    }
+
+    @Test
+    public void testConnectionFailureCompletesExceptionally() throws Exception {
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        try {
+            clientManager.execute(new HttpGet("http://localhost:" + port + "/risk"))
+                    .get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            fail("A request to a closed port completed successfully.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException, "Unexpected failure: " + e.getCause());
+        }
+    }
+
+    @Test
+    public void testPoolIsSizedFromConfiguration() throws Exception {
+
+        clientManager.getClient();
+
+        ConfigProvider configProvider = ConfigProvider.getInstance();
+        assertEquals(clientManager.getMaxTotal(), configProvider.getMaxConnections());
+        assertEquals(clientManager.getDefaultMaxPerRoute(), configProvider.getMaxConnectionsPerRoute());
+    }
+
+    @Test
+    public void testRouteStatsAreExposed() throws Exception {
+
+        server = new StubHttpServer(HttpVersionPolicy.FORCE_HTTP_1,
+                StubHttpServer.respondWith(HttpStatus.SC_OK, RESPONSE_BODY));
+        String url = server.start();
+
+        HttpResponse response = clientManager.execute(new HttpGet(url + "/risk"))
+                .get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        EntityUtils.consume(response.getEntity());
+
+        String routeStats = getRouteStats(url);
+        assertNotNull(routeStats, "No stats were exposed for the route to the endpoint.");
+        assertEquals(routeStats, url + " [leased: 0; pending: 0; available: 1; max: " +
+                ConfigProvider.getInstance().getMaxConnectionsPerRoute() + "]");
+    }
+
+    @Test
+    public void testMBeanIsRegisteredUntilClosed() throws Exception {
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(POOL_MBEAN_NAME);
+
+        clientManager.getClient();
+        assertTrue(mBeanServer.isRegistered(objectName), "The connection pool MBean was not registered.");
+        assertEquals(mBeanServer.getAttribute(objectName, "MaxTotal"), clientManager.getMaxTotal());
+
+        clientManager.close();
+        assertFalse(mBeanServer.isRegistered(objectName), "The connection pool MBean was not unregistered.");
+        assertEquals(clientManager.getMaxTotal(), 0);
+        assertEquals(clientManager.getAvailable(), 0);
+        assertEquals(clientManager.getRouteStats().length, 0);
+    }
+
+    @Test
+    public void testExpiredConnectionIsEvicted() throws Exception {
+
+        // The endpoint allows keeping the connection alive for a second only.
+        server = new StubHttpServer(HttpVersionPolicy.FORCE_HTTP_1, StubHttpServer.respondWith(HttpStatus.SC_OK,
+                RESPONSE_BODY, new BasicHeader("Keep-Alive", "timeout=1")));
+        String url = server.start();
+
+        HttpResponse response = clientManager.execute(new HttpGet(url + "/risk"))
+                .get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        EntityUtils.consume(response.getEntity());
+
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+        boolean evicted = false;
+        while (!evicted && System.currentTimeMillis() < deadline) {
+            clientManager.evictStaleConnections();
+            evicted = server.awaitClosedConnection(EVICTION_POLL_INTERVAL);
+        }
+        assertTrue(evicted, "The expired connection was not evicted.");
+        assertEquals(clientManager.getAvailable(), 0, "The evicted connection is still pooled.");
+    }
+
+    private String getRouteStats(String url) {
+
+        return Arrays.stream(clientManager.getRouteStats())
+                .filter(stats -> stats.startsWith(url + " ["))
+                .findFirst()
+                .orElse(null);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class HTTPFunctionMetricsTest {
+
+    private final HTTPFunctionMetrics metrics = HTTPFunctionMetrics.getInstance();
+
+    @Test
+    public void testOutcomesAreCountedPerEndpointAndTenant() {
+
+        String endpoint = newEndpoint();
+        String tenantDomain = newTenantDomain();
+
+        metrics.recordSuccess(endpoint, tenantDomain);
+        metrics.recordSuccess(endpoint, tenantDomain);
+        metrics.recordFailure(endpoint, tenantDomain);
+        metrics.recordTimeout(endpoint, null);
+        metrics.recordRetry(endpoint, tenantDomain);
+
+        String expectedEndpointCounts = "success: 2; failure: 1; timeout: 1; retry: 1;";
+        assertTrue(getStats(metrics.getEndpointStats(), endpoint).startsWith(expectedEndpointCounts),
+                "Unexpected endpoint stats: " + getStats(metrics.getEndpointStats(), endpoint));
+        String expectedTenantCounts = "success: 2; failure: 1; timeout: 0; retry: 1;";
+        assertTrue(getStats(metrics.getTenantStats(), tenantDomain).startsWith(expectedTenantCounts),
+                "Unexpected tenant stats: " + getStats(metrics.getTenantStats(), tenantDomain));
+    }
+
+    @Test
+    public void testPhasesOfExchangeOnNewConnection() {
+
+        String endpoint = newEndpoint();
+        String tenantDomain = newTenantDomain();
+
+        HTTPFunctionMetrics.Exchange exchange = metrics.startExchange(URI.create(endpoint + "/risk"), tenantDomain);
+        exchange.onRequestSent(true);
+        exchange.onResponseReceived();
+        exchange.onCompleted();
+
+        for (String stats : Arrays.asList(getStats(metrics.getEndpointStats(), endpoint),
+                getStats(metrics.getTenantStats(), tenantDomain))) {
+            assertTrue(stats.contains("pool wait (ms): {count: 0;"), "Unexpected pool wait in: " + stats);
+            assertTrue(stats.contains("connect (ms): {count: 1;"), "Connect time was not recorded in: " + stats);
+            assertTrue(stats.contains("first byte (ms): {count: 1;"), "First byte time was not recorded in: " + stats);
+            assertTrue(stats.contains("total (ms): {count: 1;"), "Total time was not recorded in: " + stats);
+        }
+    }
+
+    @Test
+    public void testPhasesOfExchangeOnPooledConnection() {
+
+        String endpoint = newEndpoint();
+
+        HTTPFunctionMetrics.Exchange exchange = metrics.startExchange(URI.create(endpoint + "/risk"), null);
+        exchange.onRequestSent(false);
+        exchange.onCompleted();
+
+        String stats = getStats(metrics.getEndpointStats(), endpoint);
+        assertTrue(stats.contains("pool wait (ms): {count: 1;"), "Pool wait time was not recorded in: " + stats);
+        assertTrue(stats.contains("connect (ms): {count: 0;"), "Unexpected connect time in: " + stats);
+        assertTrue(stats.contains("total (ms): {count: 1;"), "Total time was not recorded in: " + stats);
+    }
+
+    @Test
+    public void testFirstByteIsNotRecordedBeforeRequestIsSent() {
+
+        String endpoint = newEndpoint();
+
+        HTTPFunctionMetrics.Exchange exchange = metrics.startExchange(URI.create(endpoint + "/risk"), null);
+        exchange.onResponseReceived();
+        exchange.onCompleted();
+
+        String stats = getStats(metrics.getEndpointStats(), endpoint);
+        assertTrue(stats.contains("first byte (ms): {count: 0;"), "Unexpected first byte time in: " + stats);
+        assertTrue(stats.contains("total (ms): {count: 1;"), "Total time was not recorded in: " + stats);
+    }
+
+    @Test
+    public void testExchangeIsAttachedToContext() {
+
+        HttpContext context = new BasicHttpContext();
+        assertNull(HTTPFunctionMetrics.getExchange(context));
+
+        HTTPFunctionMetrics.Exchange exchange = metrics.startExchange(URI.create(newEndpoint()), null);
+        exchange.attach(context);
+
+        assertSame(HTTPFunctionMetrics.getExchange(context), exchange);
+    }
+
+    @Test
+    public void testStatsAreSorted() {
+
+        metrics.recordSuccess(newEndpoint(), null);
+        metrics.recordSuccess(newEndpoint(), null);
+
+        String[] endpointStats = metrics.getEndpointStats();
+        String[] sorted = endpointStats.clone();
+        Arrays.sort(sorted);
+        assertTrue(Arrays.equals(endpointStats, sorted), "Endpoint stats are not sorted.");
+    }
+
+    private static String getStats(String[] stats, String key) {
+
+        String prefix = key + " [";
+        for (String entry : stats) {
+            if (entry.startsWith(prefix)) {
+                return entry.substring(prefix.length(), entry.length() - 1);
+            }
+        }
+        fail("No stats found for " + key + ".");
+        return null;
+    }
+
+    private static String newEndpoint() {
+
+        return "https://" + UUID.randomUUID() + ".example.com";
+    }
+
+    private static String newTenantDomain() {
+
+        return UUID.randomUUID() + ".com";
+    }
+}
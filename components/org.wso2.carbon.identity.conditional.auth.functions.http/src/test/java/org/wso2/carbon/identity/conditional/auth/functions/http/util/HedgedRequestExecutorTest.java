@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.Deadline;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.DeadlineExceededException;
+import org.wso2.carbon.identity.conditional.auth.functions.common.utils.DomainAllowlist;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class HedgedRequestExecutorTest {
+
+    private static final String HEDGED_DOMAIN = "api.example.com";
+    private static final String REQUEST_URL = "https://" + HEDGED_DOMAIN + "/risk";
+    private static final String TENANT_DOMAIN = "carbon.super";
+    private static final long HEDGING_DELAY = 50;
+    private static final long WAIT_TIMEOUT = 5000;
+
+    private List<HttpUriRequest> sentRequests;
+    private List<CompletableFuture<HttpResponse>> responseFutures;
+    private HedgedRequestExecutor hedgedRequestExecutor;
+
+    @BeforeMethod
+    public void setUp() {
+
+        sentRequests = new CopyOnWriteArrayList<>();
+        responseFutures = new CopyOnWriteArrayList<>();
+        hedgedRequestExecutor = createExecutor(true, 100);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        hedgedRequestExecutor.shutdown();
+    }
+
+    @Test
+    public void testNoHedgeWhenResponseIsFast() throws Exception {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(new HttpGet(REQUEST_URL),
+                TENANT_DOMAIN);
+        HttpResponse response = createResponse();
+        responseFutures.get(0).complete(response);
+
+        assertSame(result.get(1, TimeUnit.SECONDS), response);
+        awaitHedgingDelay(hedgedRequestExecutor);
+        assertEquals(sentRequests.size(), 1, "A hedged request was sent after the response was received.");
+    }
+
+    @Test
+    public void testHedgeWhenResponseIsSlow() throws Exception {
+
+        HttpGet request = new HttpGet(REQUEST_URL);
+        request.setHeader("Accept", "application/json");
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(request, TENANT_DOMAIN);
+
+        waitFor(() -> sentRequests.size() == 2);
+        HttpUriRequest hedge = sentRequests.get(1);
+        assertNotSame(hedge, request);
+        assertEquals(hedge.getURI(), request.getURI());
+        assertEquals(hedge.getFirstHeader("Accept").getValue(), "application/json");
+
+        HttpResponse response = createResponse();
+        responseFutures.get(1).complete(response);
+
+        assertSame(result.get(1, TimeUnit.SECONDS), response, "The response of the hedged request was not used.");
+        assertTrue(responseFutures.get(0).isCancelled(), "The slow primary request was not cancelled.");
+    }
+
+    @Test
+    public void testPrimaryResponseAfterHedgeIsSent() throws Exception {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(new HttpGet(REQUEST_URL),
+                TENANT_DOMAIN);
+
+        waitFor(() -> sentRequests.size() == 2);
+        HttpResponse response = createResponse();
+        responseFutures.get(0).complete(response);
+
+        assertSame(result.get(1, TimeUnit.SECONDS), response);
+        // The hedged request is recorded before the executor registers its cancellation, hence wait for it.
+        waitFor(() -> responseFutures.get(1).isCancelled(), "The hedged request was not cancelled.");
+    }
+
+    @Test
+    public void testFailedRequestWaitsForOutstandingRequest() throws Exception {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(new HttpGet(REQUEST_URL),
+                TENANT_DOMAIN);
+
+        waitFor(() -> sentRequests.size() == 2);
+        responseFutures.get(0).completeExceptionally(new IOException("Connection reset."));
+        assertFalse(result.isDone(), "The result failed while the hedged request was outstanding.");
+
+        HttpResponse response = createResponse();
+        responseFutures.get(1).complete(response);
+        assertSame(result.get(1, TimeUnit.SECONDS), response);
+    }
+
+    @Test
+    public void testFailsWhenAllRequestsFail() throws Exception {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(new HttpGet(REQUEST_URL),
+                TENANT_DOMAIN);
+
+        waitFor(() -> sentRequests.size() == 2);
+        responseFutures.get(0).completeExceptionally(new IOException("Connection reset."));
+        IOException error = new IOException("Connection refused.");
+        responseFutures.get(1).completeExceptionally(error);
+
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail("The result did not fail when all the requests failed.");
+        } catch (ExecutionException e) {
+            assertSame(e.getCause(), error);
+        }
+    }
+
+    @Test
+    public void testRetryableResponseWaitsForOutstandingRequest() throws Exception {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(new HttpGet(REQUEST_URL),
+                TENANT_DOMAIN);
+
+        waitFor(() -> sentRequests.size() == 2);
+        responseFutures.get(0).complete(createResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable"));
+        assertFalse(result.isDone(), "A retryable response won over the hedged request in flight.");
+
+        HttpResponse response = createResponse();
+        responseFutures.get(1).complete(response);
+        assertSame(result.get(1, TimeUnit.SECONDS), response, "The response of the hedged request was not used.");
+    }
+
+    @Test
+    public void testRetryableResponseUsedWhenNoOtherResponse() throws Exception {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(new HttpGet(REQUEST_URL),
+                TENANT_DOMAIN);
+
+        waitFor(() -> sentRequests.size() == 2);
+        HttpResponse retryableResponse = createResponse(HttpStatus.SC_BAD_GATEWAY, "Bad Gateway");
+        responseFutures.get(0).complete(retryableResponse);
+        responseFutures.get(1).completeExceptionally(new IOException("Connection reset."));
+
+        assertSame(result.get(1, TimeUnit.SECONDS), retryableResponse,
+                "The retryable response was not used when the other request failed.");
+    }
+
+    @Test
+    public void testClientErrorIsNotRetryable() throws Exception {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(new HttpGet(REQUEST_URL),
+                TENANT_DOMAIN);
+
+        waitFor(() -> sentRequests.size() == 2);
+        HttpResponse response = createResponse(HttpStatus.SC_NOT_FOUND, "Not Found");
+        responseFutures.get(0).complete(response);
+
+        assertSame(result.get(1, TimeUnit.SECONDS), response);
+        // The hedged request is recorded before the executor registers its cancellation, hence wait for it.
+        waitFor(() -> responseFutures.get(1).isCancelled(), "The hedged request was not cancelled.");
+    }
+
+    @Test
+    public void testDomainNotInHedgingListIsNotHedged() {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(
+                new HttpGet("https://other.example.com/risk"), TENANT_DOMAIN);
+
+        assertSame(result, responseFutures.get(0), "The request to a domain outside the hedging list was hedged.");
+    }
+
+    @Test
+    public void testNoHedgeWhenHedgingListIsEmpty() {
+
+        HedgedRequestExecutor unlistedExecutor = createExecutor(true, Collections.emptyList(), 100);
+        try {
+            CompletableFuture<HttpResponse> result = unlistedExecutor.execute(new HttpGet(REQUEST_URL),
+                    TENANT_DOMAIN);
+
+            assertSame(result, responseFutures.get(0), "A request was hedged with an empty hedging list.");
+        } finally {
+            unlistedExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testNoHedgeWhenBudgetIsExhausted() throws Exception {
+
+        HedgedRequestExecutor budgetedExecutor = createExecutor(true, 0);
+        try {
+            budgetedExecutor.execute(new HttpGet(REQUEST_URL), TENANT_DOMAIN);
+
+            awaitHedgingDelay(budgetedExecutor);
+            assertEquals(sentRequests.size(), 1, "A hedged request was sent beyond the hedging budget.");
+        } finally {
+            budgetedExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPostIsNotHedged() throws Exception {
+
+        hedgedRequestExecutor.execute(new HttpPost(REQUEST_URL), TENANT_DOMAIN);
+
+        awaitHedgingDelay(hedgedRequestExecutor);
+        assertEquals(sentRequests.size(), 1, "A POST request was hedged.");
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+
+        HedgedRequestExecutor disabledExecutor = createExecutor(false, 100);
+        try {
+            CompletableFuture<HttpResponse> result = disabledExecutor.execute(new HttpGet(REQUEST_URL),
+                    TENANT_DOMAIN);
+
+            assertSame(result, responseFutures.get(0), "The request was not executed as it is.");
+            awaitHedgingDelay(disabledExecutor);
+            assertEquals(sentRequests.size(), 1);
+        } finally {
+            disabledExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancellingResultCancelsRequests() throws Exception {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(new HttpGet(REQUEST_URL),
+                TENANT_DOMAIN);
+
+        waitFor(() -> sentRequests.size() == 2);
+        result.cancel(true);
+
+        assertTrue(responseFutures.get(0).isCancelled(), "The primary request was not cancelled.");
+        // The hedged request is recorded before the executor registers its cancellation, hence wait for it.
+        waitFor(() -> responseFutures.get(1).isCancelled(), "The hedged request was not cancelled.");
+    }
+
+    @Test
+    public void testCancellingResultBeforeHedgeCancelsPrimary() throws Exception {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(new HttpGet(REQUEST_URL),
+                TENANT_DOMAIN);
+        result.cancel(true);
+
+        assertTrue(responseFutures.get(0).isCancelled(), "The primary request was not cancelled.");
+        awaitHedgingDelay(hedgedRequestExecutor);
+        assertEquals(sentRequests.size(), 1, "A hedged request was sent after the result was cancelled.");
+    }
+
+    @Test
+    public void testDeadlineIsPassedOnToRequests() throws Exception {
+
+        CompletableFuture<HttpResponse> result = hedgedRequestExecutor.execute(new HttpGet(REQUEST_URL),
+                TENANT_DOMAIN);
+
+        waitFor(() -> sentRequests.size() == 2);
+        result.completeExceptionally(new DeadlineExceededException("Deadline exceeded."));
+
+        for (CompletableFuture<HttpResponse> responseFuture : responseFutures) {
+            assertFalse(responseFuture.isCancelled(), "A request cut off by the deadline was only cancelled.");
+            try {
+                responseFuture.getNow(null);
+                fail("A request was not completed when the deadline passed.");
+            } catch (CompletionException e) {
+                assertTrue(Deadline.isExceeded(e), "A request was not told that the deadline passed.");
+            }
+        }
+    }
+
+    private HedgedRequestExecutor createExecutor(boolean enabled, int budgetPercentage) {
+
+        return createExecutor(enabled, Collections.singletonList(HEDGED_DOMAIN), budgetPercentage);
+    }
+
+    private HedgedRequestExecutor createExecutor(boolean enabled, List<String> hedgingDomains, int budgetPercentage) {
+
+        return new HedgedRequestExecutor(enabled, DomainAllowlist.compile(hedgingDomains), HEDGING_DELAY,
+                budgetPercentage, (request, tenantDomain) -> {
+                    CompletableFuture<HttpResponse> responseFuture = new CompletableFuture<>();
+                    sentRequests.add(request);
+                    responseFutures.add(responseFuture);
+                    return responseFuture;
+                });
+    }
+
+    private static HttpResponse createResponse() {
+
+        return createResponse(HttpStatus.SC_OK, "OK");
+    }
+
+    private static HttpResponse createResponse(int statusCode, String reasonPhrase) {
+
+        return new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, reasonPhrase);
+    }
+
+    /**
+     * Wait until a hedged request would have been sent for the requests executed so far. The hedging timers run in
+     * the order they are due, so they have all run once a task due after them has run.
+     */
+    private static void awaitHedgingDelay(HedgedRequestExecutor executor) throws InterruptedException {
+
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.schedule(latch::countDown, HEDGING_DELAY);
+        assertTrue(latch.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS), "The hedging delay did not pass in time.");
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+
+        waitFor(condition, "The condition was not met in time.");
+    }
+
+    private static void waitFor(BooleanSupplier condition, String message) throws InterruptedException {
+
+        long timeout = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), message);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the cost of classifying responses and failures with {@link ResponseClassifier}, and checks that the
+ * classification is compiled by the optimizing compiler and inlined into its callers.
+ * This is not part of the test suite. Run it from the test classpath with the optional arguments
+ * [iterations], e.g. 20000000, to measure the classification. Run it with the arguments check-compilation
+ * [iterations] to measure the classification in a child JVM started with -XX:+PrintCompilation and
+ * -XX:+PrintInlining, and to fail if the classification is not compiled at tier 4, is not inlined, or is rejected
+ * for inlining as too big.
+ */
+public class ResponseClassifierBenchmark {
+
+    private static final String CHECK_COMPILATION = "check-compilation";
+    private static final int DEFAULT_ITERATIONS = 20000000;
+    private static final String[] HOT_METHODS = {"ResponseClassifier::classify",
+            "ResponseClassifier$FailureRule::matches"};
+    private static final Pattern COMPILATION = Pattern.compile(
+            "^\\s*\\d+\\s+\\d+\\s+[%sbn! ]*([0-4])\\s+(\\S+::\\S+)\\s+\\(");
+    private static final int[] STATUS_CODES = {200, 200, 201, 204, 200, 302, 400, 401, 404, 500, 502, 503};
+    private static final Throwable[] FAILURES = {new SocketTimeoutException("Read timed out"),
+            new ConnectTimeoutException("Connect timed out"), new CircuitBreakerOpenException("Circuit is open."),
+            new IOException("Connection reset"), new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, "}"),
+            new IllegalArgumentException("Invalid url"), new IllegalStateException("Unexpected")};
+
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length > 0 && CHECK_COMPILATION.equals(args[0])) {
+            int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+            System.exit(checkCompilation(iterations) ? 0 : 1);
+        }
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+        // Warm up before measuring, so that the measured iterations run the compiled code.
+        classifyResponses(iterations / 10);
+        classifyFailures(iterations / 10);
+
+        long start = System.nanoTime();
+        classifyResponses(iterations);
+        report("status code", iterations, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        classifyFailures(iterations);
+        report("failure", iterations, System.nanoTime() - start);
+    }
+
+    private static void classifyResponses(int iterations) {
+
+        int retries = 0;
+        for (int i = 0; i < iterations; i++) {
+            ResponseClassifier classifier = (i & 1) == 0 ? ResponseClassifier.EXTERNAL_API :
+                    ResponseClassifier.TOKEN_ENDPOINT;
+            if (classifier.classify(STATUS_CODES[i % STATUS_CODES.length]).isRetry()) {
+                retries++;
+            }
+        }
+        sink = retries;
+    }
+
+    private static void classifyFailures(int iterations) {
+
+        int retries = 0;
+        for (int i = 0; i < iterations; i++) {
+            ResponseClassifier classifier = (i & 1) == 0 ? ResponseClassifier.EXTERNAL_API :
+                    ResponseClassifier.TOKEN_ENDPOINT;
+            if (classifier.classify(FAILURES[i % FAILURES.length]).isRetry()) {
+                retries++;
+            }
+        }
+        sink = retries;
+    }
+
+    private static void report(String input, int iterations, long elapsed) {
+
+        System.out.printf("Classify by %-11s %8.2f ns/op%n", input + ":", (double) elapsed / iterations);
+    }
+
+    /**
+     * Run the benchmark in a child JVM which prints its compilations and inlining decisions, and check the
+     * decisions made for the classification methods.
+     */
+    private static boolean checkCompilation(int iterations) throws IOException, InterruptedException {
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>(Arrays.asList(java, "-XX:+UnlockDiagnosticVMOptions",
+                "-XX:+PrintCompilation", "-XX:+PrintInlining", "-cp", System.getProperty("java.class.path"),
+                ResponseClassifierBenchmark.class.getName(), String.valueOf(iterations)));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        boolean[] compiled = new boolean[HOT_METHODS.length];
+        boolean[] inlined = new boolean[HOT_METHODS.length];
+        boolean tooBig = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Classify by")) {
+                    System.out.println(line);
+                }
+                for (int i = 0; i < HOT_METHODS.length; i++) {
+                    if (!line.contains(HOT_METHODS[i])) {
+                        continue;
+                    }
+                    Matcher matcher = COMPILATION.matcher(line);
+                    if (matcher.find() && "4".equals(matcher.group(1)) && matcher.group(2).endsWith(HOT_METHODS[i])) {
+                        compiled[i] = true;
+                    } else if (line.contains("inline (hot)")) {
+                        inlined[i] = true;
+                    } else if (line.contains("too big")) {
+                        System.out.println("Rejected for inlining: " + line.trim());
+                        tooBig = true;
+                    }
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            System.out.println("Benchmark JVM exited with status " + process.exitValue());
+            return false;
+        }
+
+        boolean passed = !tooBig;
+        for (int i = 0; i < HOT_METHODS.length; i++) {
+            System.out.printf("%-40s compiled at tier 4: %-5s inlined: %s%n", HOT_METHODS[i], compiled[i],
+                    inlined[i]);
+            passed &= compiled[i] && inlined[i];
+        }
+        System.out.println(passed ? "Compilation check passed." : "Compilation check failed.");
+        return passed;
+    }
+}
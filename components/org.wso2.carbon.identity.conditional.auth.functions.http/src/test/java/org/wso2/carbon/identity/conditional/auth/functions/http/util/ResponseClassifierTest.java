@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.json.simple.parser.ParseException;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletionException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_FAIL;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_SUCCESS;
+import static org.wso2.carbon.identity.conditional.auth.functions.common.utils.Constants.OUTCOME_TIMEOUT;
+
+public class ResponseClassifierTest {
+
+    @DataProvider
+    public Object[][] statusCodes() {
+
+        return new Object[][]{
+                {200, OUTCOME_SUCCESS, false},
+                {204, OUTCOME_SUCCESS, false},
+                {302, OUTCOME_FAIL, false},
+                {400, OUTCOME_FAIL, false},
+                {404, OUTCOME_FAIL, false},
+                {500, OUTCOME_FAIL, true},
+                {503, OUTCOME_FAIL, true},
+                {100, OUTCOME_FAIL, true},
+                {600, OUTCOME_FAIL, true},
+                {-1, OUTCOME_FAIL, true}
+        };
+    }
+
+    @Test(dataProvider = "statusCodes")
+    public void testClassifyStatusCode(int statusCode, String outcome, boolean retry) {
+
+        for (ResponseClassifier classifier : new ResponseClassifier[]{ResponseClassifier.EXTERNAL_API,
+                ResponseClassifier.TOKEN_ENDPOINT}) {
+            ResponseClassifier.Classification classification = classifier.classify(statusCode);
+
+            assertEquals(classification.getOutcome(), outcome, "Unexpected outcome for status " + statusCode);
+            assertEquals(classification.isRetry(), retry, "Unexpected retry decision for status " + statusCode);
+            assertEquals(classification.isSuccess(), OUTCOME_SUCCESS.equals(outcome));
+        }
+    }
+
+    @DataProvider
+    public Object[][] failures() {
+
+        return new Object[][]{
+                {new IllegalArgumentException("Illegal character in path"), OUTCOME_FAIL, false},
+                {new ConnectTimeoutException("Connect timed out"), OUTCOME_TIMEOUT, true},
+                {new SocketTimeoutException("Read timed out"), OUTCOME_TIMEOUT, true},
+                {new CircuitBreakerOpenException("Circuit breaker is open"), OUTCOME_FAIL, false},
+                {new IOException("Connection reset"), OUTCOME_FAIL, false},
+                {new IllegalStateException("Unexpected"), OUTCOME_FAIL, false}
+        };
+    }
+
+    @Test(dataProvider = "failures")
+    public void testClassifyFailure(Throwable error, String outcome, boolean retry) {
+
+        ResponseClassifier.Classification classification = ResponseClassifier.EXTERNAL_API.classify(error);
+
+        assertEquals(classification.getOutcome(), outcome, "Unexpected outcome for " + error);
+        assertEquals(classification.isRetry(), retry, "Unexpected retry decision for " + error);
+        assertFalse(classification.isSuccess());
+    }
+
+    @Test
+    public void testTimeoutIsMatchedBeforeIOException() {
+
+        // Socket timeouts are IO exceptions, hence the timeout rule has to apply first.
+        assertTrue(new SocketTimeoutException() instanceof IOException);
+        assertEquals(ResponseClassifier.TOKEN_ENDPOINT.classify(new SocketTimeoutException()).getOutcome(),
+                OUTCOME_TIMEOUT);
+    }
+
+    @Test
+    public void testCompletionExceptionIsUnwrapped() {
+
+        CompletionException error = new CompletionException(new SocketTimeoutException("Read timed out"));
+
+        assertEquals(ResponseClassifier.EXTERNAL_API.classify(error).getOutcome(), OUTCOME_TIMEOUT,
+                "The failure should be classified by the cause of the completion exception.");
+        assertEquals(ResponseClassifier.EXTERNAL_API.classify(new CompletionException(null)).getOutcome(),
+                OUTCOME_FAIL);
+    }
+
+    @Test
+    public void testParseFailureOfExternalApi() {
+
+        ParseException error = new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, null);
+
+        ResponseClassifier.Classification classification = ResponseClassifier.EXTERNAL_API.classify(error);
+
+        assertEquals(classification.getOutcome(), OUTCOME_FAIL);
+        assertFalse(classification.isRetry());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.conditional.auth.functions.http.util;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.entity.StringAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncResponseBuilder;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clear text stub server for the tests of the HTTP clients, speaking the given protocol versions. The connections
+ * opened and closed by the clients are counted.
+ */
+class StubHttpServer {
+
+    private final HttpVersionPolicy versionPolicy;
+    private final Responder responder;
+    private final AtomicInteger openedConnections = new AtomicInteger();
+    private final Semaphore closedConnections = new Semaphore(0);
+    private HttpAsyncServer server;
+
+    StubHttpServer(HttpVersionPolicy versionPolicy, Responder responder) {
+
+        this.versionPolicy = versionPolicy;
+        this.responder = responder;
+    }
+
+    /**
+     * Create a responder answering every request with the given status, JSON body and headers.
+     *
+     * @param status  Status code of the responses.
+     * @param body    JSON body of the responses.
+     * @param headers Headers of the responses.
+     * @return Responder.
+     */
+    static Responder respondWith(int status, String body, Header... headers) {
+
+        return (request, trigger, context) -> {
+            AsyncResponseBuilder response = AsyncResponseBuilder.create(status)
+                    .setEntity(AsyncEntityProducers.create(body, ContentType.APPLICATION_JSON));
+            for (Header header : headers) {
+                response.addHeader(header);
+            }
+            trigger.submitResponse(response.build(), context);
+        };
+    }
+
+    /**
+     * Start the server on a free port.
+     *
+     * @return Base URL of the server.
+     * @throws Exception If the server could not be started.
+     */
+    String start() throws Exception {
+
+        server = H2ServerBootstrap.bootstrap()
+                .setVersionPolicy(versionPolicy)
+                .setIOSessionListener(new ConnectionCounter())
+                .register("*", new AsyncServerRequestHandler<Message<HttpRequest, String>>() {
+
+                    @Override
+                    public AsyncRequestConsumer<Message<HttpRequest, String>> prepare(
+                            HttpRequest request, EntityDetails entityDetails, HttpContext context) {
+
+                        return new BasicRequestConsumer<>(new StringAsyncEntityConsumer());
+                    }
+
+                    @Override
+                    public void handle(Message<HttpRequest, String> message, ResponseTrigger responseTrigger,
+                                       HttpContext context) throws HttpException, IOException {
+
+                        responder.respond(message, responseTrigger, context);
+                    }
+                })
+                .create();
+        server.start();
+        ListenerEndpoint endpoint = server.listen(new InetSocketAddress(0), URIScheme.HTTP).get();
+        return "http://localhost:" + ((InetSocketAddress) endpoint.getAddress()).getPort();
+    }
+
+    void stop() {
+
+        server.close(CloseMode.IMMEDIATE);
+    }
+
+    /**
+     * @return Number of connections opened to the server.
+     */
+    int getOpenedConnections() {
+
+        return openedConnections.get();
+    }
+
+    /**
+     * Wait until a connection to the server is closed.
+     *
+     * @param timeout Time to wait in milliseconds.
+     * @return True if a connection was closed within the time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    boolean awaitClosedConnection(long timeout) throws InterruptedException {
+
+        return closedConnections.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Answers the requests received by the server.
+     */
+    interface Responder {
+
+        void respond(Message<HttpRequest, String> request, AsyncServerRequestHandler.ResponseTrigger trigger,
+                     HttpContext context) throws HttpException, IOException;
+    }
+
+    /**
+     * Response held back by a responder, to be sent when the test is ready for it.
+     */
+    interface DeferredResponse {
+
+        void send() throws HttpException, IOException;
+    }
+
+    /**
+     * Counts the connections opened and closed by the clients.
+     */
+    private class ConnectionCounter implements IOSessionListener {
+
+        @Override
+        public void connected(IOSession session) {
+
+            openedConnections.incrementAndGet();
+        }
+
+        @Override
+        public void startTls(IOSession session) {
+
+        }
+
+        @Override
+        public void inputReady(IOSession session) {
+
+        }
+
+        @Override
+        public void outputReady(IOSession session) {
+
+        }
+
+        @Override
+        public void timeout(IOSession session) {
+
+        }
+
+        @Override
+        public void exception(IOSession session, Exception e) {
+
+        }
+
+        @Override
+        public void disconnected(IOSession session) {
+
+            closedConnections.release();
+        }
+    }
+}